@@ -57,6 +57,10 @@ public class GrpcConfig {
 
         return ManagedChannelBuilder.forAddress("invest-public-api.tinkoff.ru", 443)
                 .useTransportSecurity().intercept(authInterceptor)
+                // Обратные вызовы выполняются прямо в транспортных потоках без передачи в общий
+                // пул: MarketDataStreamingService в них только ставит сообщение в очередь разбора,
+                // а следующие сообщения запрашивает по мере разбора (управление потоком HTTP/2)
+                .directExecutor()
                 // Оптимизация для потоковых данных с минимальными задержками
                 .keepAliveTime(30, java.util.concurrent.TimeUnit.SECONDS)
                 .keepAliveTimeout(5, java.util.concurrent.TimeUnit.SECONDS)
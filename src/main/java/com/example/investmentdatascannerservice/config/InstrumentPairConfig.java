@@ -1,5 +1,6 @@
 package com.example.investmentdatascannerservice.config;
 
+import java.math.BigDecimal;
 import java.util.List;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.ApplicationContext;
@@ -23,6 +24,17 @@ public class InstrumentPairConfig implements ApplicationContextAware {
      */
     private List<PairConfig> pairs = List.of();
 
+    /**
+     * Минимальный интервал между публикациями результата одной пары (мс), по умолчанию для пар
+     */
+    private long minPublishIntervalMs = 250;
+
+    /**
+     * Минимальное изменение дельты в процентах относительно последней публикации, по умолчанию для
+     * пар (меньшие изменения не публикуются)
+     */
+    private BigDecimal minDeltaPercentChange = new BigDecimal("0.01");
+
     @PostConstruct
     public void init() {
         log.info("InstrumentPairConfig initialized with {} pairs", pairs.size());
@@ -46,5 +58,8 @@ public class InstrumentPairConfig implements ApplicationContextAware {
         private String secondInstrument;
         private String firstInstrumentName;
         private String secondInstrumentName;
+        // Переопределение политики публикации для пары (null - значение по умолчанию)
+        private Long minPublishIntervalMs;
+        private BigDecimal minDeltaPercentChange;
     }
 }
@@ -2,6 +2,9 @@ package com.example.investmentdatascannerservice.config;
 
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import org.springframework.context.annotation.Bean;
@@ -19,38 +22,6 @@ import lombok.extern.slf4j.Slf4j;
 @EnableAsync
 public class PerformanceConfig {
 
-    /**
-     * Пул потоков для обработки рыночных данных
-     * 
-     * Оптимизирован для высокой пропускной способности и низкой задержки
-     */
-    @Bean(name = "marketDataExecutor")
-    public ExecutorService marketDataExecutor() {
-        // Размер пула основан на количестве ядер процессора
-        int corePoolSize = Runtime.getRuntime().availableProcessors() * 2;
-        int maxPoolSize = Runtime.getRuntime().availableProcessors() * 4;
-
-        log.info("Creating marketDataExecutor: corePoolSize={}, maxPoolSize={}, queueCapacity=10000",
-                corePoolSize, maxPoolSize);
-        return new ThreadPoolExecutor(corePoolSize, maxPoolSize, 60L, TimeUnit.SECONDS,
-                new LinkedBlockingQueue<>(10000),
-                r -> new Thread(r, "MarketData-" + System.currentTimeMillis()),
-                new ThreadPoolExecutor.CallerRunsPolicy());
-    }
-
-    /**
-     * Пул потоков для уведомлений подписчиков
-     * 
-     * Оптимизирован для быстрой доставки уведомлений
-     */
-    @Bean(name = "notificationExecutor")
-    public ExecutorService notificationExecutor() {
-        log.info("Creating notificationExecutor: corePoolSize=5, maxPoolSize=10, queueCapacity=1000");
-        return new ThreadPoolExecutor(5, 10, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(1000),
-                r -> new Thread(r, "Notification-" + System.currentTimeMillis()),
-                new ThreadPoolExecutor.CallerRunsPolicy());
-    }
-
     /**
      * Пул потоков для обработки пар инструментов
      * 
@@ -81,4 +52,33 @@ public class PerformanceConfig {
                 r -> new Thread(r, "Database-" + System.currentTimeMillis()),
                 new ThreadPoolExecutor.CallerRunsPolicy());
     }
+
+    /**
+     * Пул потоков для отправки сообщений WebSocket клиентам
+     * 
+     * Каждая сессия занимает не больше одного потока и только пока у нее есть что отправлять,
+     * поэтому медленные клиенты не задерживают рассылку остальным
+     */
+    @Bean(name = "webSocketSendExecutor")
+    public ExecutorService webSocketSendExecutor() {
+        log.info("Creating webSocketSendExecutor: corePoolSize=2, maxPoolSize=256, no queue");
+        return new ThreadPoolExecutor(2, 256, 60L, TimeUnit.SECONDS, new SynchronousQueue<>(),
+                r -> new Thread(r, "WebSocketSend-" + System.currentTimeMillis()),
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * Планировщик пакетной отправки WebSocket сообщений
+     * 
+     * Только ставит задачи разбора очередей сессий в webSocketSendExecutor, поэтому одного потока
+     * достаточно
+     */
+    @Bean(name = "webSocketFlushScheduler")
+    public ScheduledExecutorService webSocketFlushScheduler() {
+        log.info("Creating webSocketFlushScheduler: poolSize=1");
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1,
+                r -> new Thread(r, "WebSocketFlush-" + System.currentTimeMillis()));
+        scheduler.setRemoveOnCancelPolicy(true);
+        return scheduler;
+    }
 }
@@ -68,6 +68,59 @@ public class QuoteScannerConfig implements ApplicationContextAware {
      */
     private double keyRate = 16.5;
 
+    /**
+     * Количество шардов обработки рыночных данных (0 - по числу ядер процессора)
+     */
+    private int marketDataShards = 0;
+
+    /**
+     * Емкость очереди одного шарда обработки рыночных данных
+     */
+    private int marketDataShardQueueCapacity = 4096;
+
+    /**
+     * Количество потоков разбора сообщений stream-соединений
+     */
+    private int marketDataDecodeThreads = 2;
+
+    /**
+     * Окно управления потоком stream-соединения: сколько сообщений сервер может передать сверх
+     * уже обработанных (ограничивает очередь разбора без отбрасывания данных)
+     */
+    private int marketDataStreamWindow = 4096;
+
+    /**
+     * Начальная задержка переподключения stream-соединения (мс), удваивается с каждой неудачей
+     */
+    private long streamReconnectBaseDelayMs = 1000;
+
+    /**
+     * Максимальная задержка переподключения stream-соединения (мс)
+     */
+    private long streamReconnectMaxDelayMs = 60000;
+
+    /**
+     * Количество неудач подряд, после которого цепь переподключения stream размыкается
+     */
+    private int streamCircuitFailureThreshold = 8;
+
+    /**
+     * Пауза перед следующей попыткой при разомкнутой цепи (мс)
+     */
+    private long streamCircuitOpenMs = 300000;
+
+    /**
+     * Время работы stream с подтвержденной подпиской, после которого соединение считается
+     * устойчивым и счетчик неудач переподключения сбрасывается (мс)
+     */
+    private long streamStableAfterMs = 30000;
+
+    /**
+     * Время без данных во время торговой сессии, после которого stream считается зависшим и
+     * переподключается (мс, 0 - не проверять)
+     */
+    private long staleStreamTimeoutMs = 120000;
+
     /**
      * Проверяет, включен ли тестовый режим для утреннего сканера Определяется автоматически на
      * основе активного Spring профиля (test = true, иначе = false)
@@ -4,8 +4,10 @@ import org.springframework.context.annotation.Configuration;
 import org.springframework.web.socket.config.annotation.EnableWebSocket;
 import org.springframework.web.socket.config.annotation.WebSocketConfigurer;
 import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry;
+import com.example.investmentdatascannerservice.controller.FuturesBasisWebSocketController;
 import com.example.investmentdatascannerservice.controller.PairWebSocketController;
 import com.example.investmentdatascannerservice.controller.QuoteWebSocketController;
+import com.example.investmentdatascannerservice.controller.RankingWebSocketController;
 import lombok.extern.slf4j.Slf4j;
 
 /**
@@ -18,12 +20,19 @@ public class WebSocketConfig implements WebSocketConfigurer {
 
     private final QuoteWebSocketController quoteWebSocketController;
     private final PairWebSocketController pairWebSocketController;
+    private final RankingWebSocketController rankingWebSocketController;
+    private final FuturesBasisWebSocketController futuresBasisWebSocketController;
 
     public WebSocketConfig(QuoteWebSocketController quoteWebSocketController,
-            PairWebSocketController pairWebSocketController) {
+            PairWebSocketController pairWebSocketController,
+            RankingWebSocketController rankingWebSocketController,
+            FuturesBasisWebSocketController futuresBasisWebSocketController) {
         this.quoteWebSocketController = quoteWebSocketController;
         this.pairWebSocketController = pairWebSocketController;
-        log.info("WebSocketConfig initialized with QuoteWebSocketController and PairWebSocketController");
+        this.rankingWebSocketController = rankingWebSocketController;
+        this.futuresBasisWebSocketController = futuresBasisWebSocketController;
+        log.info("WebSocketConfig initialized with quote, pair, ranking and futures basis "
+                + "WebSocket controllers");
     }
 
     @Override
@@ -35,5 +44,13 @@ public class WebSocketConfig implements WebSocketConfigurer {
         // По умолчанию Spring разрешает только same-origin подключения, что безопаснее
         registry.addHandler(pairWebSocketController, "/ws/pairs");
         log.info("Registered WebSocket handler for pairs at /ws/pairs");
+
+        // По умолчанию Spring разрешает только same-origin подключения, что безопаснее
+        registry.addHandler(rankingWebSocketController, "/ws/rankings");
+        log.info("Registered WebSocket handler for rankings at /ws/rankings");
+
+        // По умолчанию Spring разрешает только same-origin подключения, что безопаснее
+        registry.addHandler(futuresBasisWebSocketController, "/ws/futures-basis");
+        log.info("Registered WebSocket handler for futures basis at /ws/futures-basis");
     }
 }
@@ -0,0 +1,144 @@
+package com.example.investmentdatascannerservice.controller;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import org.springframework.web.socket.BinaryMessage;
+import com.example.investmentdatascannerservice.dto.PairComparisonResult;
+import com.example.investmentdatascannerservice.dto.QuoteData;
+import com.example.investmentdatascannerservice.utils.FixedPoint;
+
+/**
+ * Двоичный формат котировок и результатов сравнения пар для WebSocket
+ *
+ * Кадр - последовательность записей, все числа little-endian. Запись начинается с заголовка
+ * u8 тип, u8 версия формата, u16 длина записи вместе с заголовком, поэтому записи неизвестного
+ * типа клиент может пропустить. Цены передаются как i64 с фиксированной точкой (см.
+ * {@link FixedPoint}, {@link FixedPoint#NONE} - нет значения), изменения в процентах - как i64 в
+ * базисных пунктах, время - i64 секунды LocalDateTime как UTC (Long.MIN_VALUE - нет значения),
+ * строки - u16 длина и UTF-8.
+ *
+ * Котировка (тип 1 - полная, тип 2 - без figi, ticker и instrumentName, которые клиент берет из
+ * последней полной записи того же id): i32 id инструмента, i64 timestamp, i64 currentPrice,
+ * previousPrice, priceChange, priceChangePercent, closePrice, openPrice, closePriceChange,
+ * closePriceChangePercent, closePriceOS, closePriceVS, closePriceVSChange,
+ * closePriceVSChangePercent, bestBid, bestAsk, bestBidQuantity, bestAskQuantity, volume,
+ * totalVolume, avgVolumeMorning, avgVolumeWeekend, u8 флаги (1 - shortEnabled, 2 - hasDividend),
+ * строка direction и для полной записи строки figi, ticker, instrumentName.
+ *
+ * Сравнение пары (тип 3): i64 timestamp, i64 firstPrice, secondPrice, delta, deltaPercent (все с
+ * фиксированной точкой), u8 флаги (1 - hasValidPrices), строки pairId, firstInstrument,
+ * secondInstrument, firstInstrumentName, secondInstrumentName, direction.
+ */
+final class BinaryFrames {
+
+    static final int QUOTE_FULL = 1;
+    static final int QUOTE_COMPACT = 2;
+    static final int PAIR = 3;
+
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_SIZE = 4;
+    private static final int QUOTE_FIXED_SIZE = 4 + 8 + 20 * 8 + 1;
+    private static final int PAIR_FIXED_SIZE = 8 + 4 * 8 + 1;
+
+    private BinaryFrames() {}
+
+    /**
+     * Запись котировки
+     *
+     * @param full true - с figi, ticker и instrumentName
+     */
+    static BinaryMessage quote(int id, QuoteData quote, boolean full) {
+        byte[] direction = utf8(quote.getDirection());
+        byte[] figi = full ? utf8(quote.getFigi()) : null;
+        byte[] ticker = full ? utf8(quote.getTicker()) : null;
+        byte[] name = full ? utf8(quote.getInstrumentName()) : null;
+        int size = HEADER_SIZE + QUOTE_FIXED_SIZE + 2 + direction.length;
+        if (full) {
+            size += 6 + figi.length + ticker.length + name.length;
+        }
+
+        ByteBuffer buffer = allocate(size, full ? QUOTE_FULL : QUOTE_COMPACT);
+        buffer.putInt(id);
+        buffer.putLong(seconds(quote.getTimestamp()));
+        buffer.putLong(quote.currentPriceScaled());
+        buffer.putLong(quote.previousPriceScaled());
+        buffer.putLong(quote.priceChangeScaled());
+        buffer.putLong(quote.priceChangeBasisPoints());
+        buffer.putLong(quote.closePriceScaled());
+        buffer.putLong(quote.openPriceScaled());
+        buffer.putLong(quote.closePriceChangeScaled());
+        buffer.putLong(quote.closePriceChangeBasisPoints());
+        buffer.putLong(quote.closePriceOSScaled());
+        buffer.putLong(quote.closePriceVSScaled());
+        buffer.putLong(quote.closePriceVSChangeScaled());
+        buffer.putLong(quote.closePriceVSChangeBasisPoints());
+        buffer.putLong(quote.bestBidScaled());
+        buffer.putLong(quote.bestAskScaled());
+        buffer.putLong(quote.getBestBidQuantity());
+        buffer.putLong(quote.getBestAskQuantity());
+        buffer.putLong(quote.getVolume());
+        buffer.putLong(quote.getTotalVolume());
+        buffer.putLong(FixedPoint.fromDecimal(quote.getAvgVolumeMorning()));
+        buffer.putLong(FixedPoint.fromDecimal(quote.getAvgVolumeWeekend()));
+        buffer.put((byte) ((quote.isShortEnabled() ? 1 : 0) | (quote.isHasDividend() ? 2 : 0)));
+        putString(buffer, direction);
+        if (full) {
+            putString(buffer, figi);
+            putString(buffer, ticker);
+            putString(buffer, name);
+        }
+        return new BinaryMessage(buffer.array());
+    }
+
+    /**
+     * Запись результата сравнения пары
+     */
+    static BinaryMessage pair(PairComparisonResult result) {
+        byte[][] strings = {utf8(result.pairId()), utf8(result.firstInstrument()),
+                utf8(result.secondInstrument()), utf8(result.firstInstrumentName()),
+                utf8(result.secondInstrumentName()), utf8(result.direction())};
+        int size = HEADER_SIZE + PAIR_FIXED_SIZE;
+        for (byte[] string : strings) {
+            size += 2 + string.length;
+        }
+
+        ByteBuffer buffer = allocate(size, PAIR);
+        buffer.putLong(seconds(result.timestamp()));
+        buffer.putLong(FixedPoint.fromDecimal(result.firstPrice()));
+        buffer.putLong(FixedPoint.fromDecimal(result.secondPrice()));
+        buffer.putLong(FixedPoint.fromDecimal(result.delta()));
+        buffer.putLong(FixedPoint.fromDecimal(result.deltaPercent()));
+        buffer.put((byte) (result.hasValidPrices() ? 1 : 0));
+        for (byte[] string : strings) {
+            putString(buffer, string);
+        }
+        return new BinaryMessage(buffer.array());
+    }
+
+    private static ByteBuffer allocate(int size, int type) {
+        if (size > 0xFFFF) {
+            throw new IllegalArgumentException("Binary record too large: " + size);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put((byte) type);
+        buffer.put((byte) FORMAT_VERSION);
+        buffer.putShort((short) size);
+        return buffer;
+    }
+
+    private static long seconds(LocalDateTime timestamp) {
+        return timestamp != null ? timestamp.toEpochSecond(ZoneOffset.UTC) : Long.MIN_VALUE;
+    }
+
+    private static byte[] utf8(String value) {
+        return value != null ? value.getBytes(StandardCharsets.UTF_8) : new byte[0];
+    }
+
+    private static void putString(ByteBuffer buffer, byte[] value) {
+        buffer.putShort((short) value.length);
+        buffer.put(value);
+    }
+}
@@ -0,0 +1,454 @@
+package com.example.investmentdatascannerservice.controller;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+/**
+ * Исходящая очередь одной WebSocket сессии со слиянием обновлений
+ *
+ * Рассылка только кладет сообщение в очередь и не ждет отправки. Очередь разбирается отдельной
+ * задачей в webSocketSendExecutor (не больше одной задачи на сессию), поэтому медленный клиент
+ * задерживает только себя. Пока клиент не успевает, новое сообщение с тем же ключом (FIGI или
+ * pairId) заменяет ожидающее, сохраняя его место в очереди. Количество ключей ограничено; при
+ * переполнении отбрасывается самое старое ожидающее сообщение.
+ *
+ * Для {@link VersionedMessage} окончательный вид сообщения выбирается при отправке по последней
+ * отправленной этой сессии версии ключа: так дельта, предыдущая версия которой была слита или
+ * отброшена, заменяется полным снимком. Версии ключа могут приходить не по порядку (рассылка
+ * идет из нескольких потоков), поэтому ожидающее сообщение заменяется только более новой версией,
+ * а версия не выше уже отправленной не отправляется.
+ *
+ * В режиме пакетной отправки ({@link #enableBatching}) очередь разбирается не сразу, а раз в
+ * заданный интервал, и все накопленные текстовые сообщения уходят одним кадром - JSON массивом,
+ * а двоичные - одним кадром из последовательных записей.
+ */
+final class ConflatingSessionSender {
+
+    private static final Logger log = LoggerFactory.getLogger(ConflatingSessionSender.class);
+
+    /** Максимальное количество ожидающих сообщений (различных ключей) на сессию */
+    static final int DEFAULT_CAPACITY = 5000;
+
+    /** Допустимый интервал пакетной отправки */
+    static final long MIN_BATCH_INTERVAL_MS = 50;
+    static final long MAX_BATCH_INTERVAL_MS = 1000;
+
+    /**
+     * Сообщение, вид которого зависит от версии, уже отправленной сессии по тому же ключу
+     */
+    interface VersionedMessage {
+
+        /** Версия сообщения (возрастает для ключа) */
+        long version();
+
+        /**
+         * Сообщение для отправки
+         *
+         * @param sentVersion последняя отправленная сессии версия ключа или -1
+         */
+        WebSocketMessage<?> since(long sentVersion);
+    }
+
+    /**
+     * Ожидающее сообщение (WebSocketMessage или VersionedMessage) и время постановки в очередь
+     * первой версии
+     */
+    private record Pending(Object message, long enqueuedAtNanos) {
+    }
+
+    private final WebSocketSession session;
+    private final Executor executor;
+    private final int capacity;
+
+    // Доступ только под блокировкой this
+    private final LinkedHashMap<String, Pending> pending = new LinkedHashMap<>();
+    private boolean scheduled;
+    private boolean closed;
+    private ScheduledFuture<?> flushTask; // не null в режиме пакетной отправки
+    private long batchIntervalMs;
+    private boolean resetVersions;
+    private long enqueued;
+    private long batches;
+    private long sent;
+    private long conflated;
+    private long dropped;
+    private long failed;
+    private long maxLagNanos;
+
+    // Отправленные версии по ключам; доступ только из задачи разбора очереди
+    private final Map<String, Long> sentVersions = new HashMap<>();
+
+    ConflatingSessionSender(WebSocketSession session, Executor executor, int capacity) {
+        this.session = session;
+        this.executor = executor;
+        this.capacity = capacity;
+    }
+
+    WebSocketSession getSession() {
+        return session;
+    }
+
+    synchronized boolean isClosed() {
+        return closed || !session.isOpen();
+    }
+
+    /**
+     * Поставить сообщение в очередь (не блокирует вызывающий поток)
+     */
+    void enqueue(String key, WebSocketMessage<?> message) {
+        offer(key, message);
+    }
+
+    /**
+     * Поставить в очередь сообщение, вид которого выбирается при отправке
+     */
+    void enqueue(String key, VersionedMessage message) {
+        offer(key, message);
+    }
+
+    private void offer(String key, Object message) {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            enqueued++;
+            Pending previous = pending.get(key);
+            if (previous != null) {
+                conflated++;
+                if (isOlder(message, previous.message())) {
+                    return;
+                }
+                // Сохраняем время первой версии, чтобы отставание не обнулялось при слиянии
+                pending.put(key, new Pending(message, previous.enqueuedAtNanos()));
+            } else {
+                if (pending.size() >= capacity) {
+                    Iterator<Map.Entry<String, Pending>> oldest = pending.entrySet().iterator();
+                    oldest.next();
+                    oldest.remove();
+                    dropped++;
+                }
+                pending.put(key, new Pending(message, System.nanoTime()));
+            }
+            // В пакетном режиме очередь разбирает задача flush по расписанию
+            if (scheduled || flushTask != null) {
+                return;
+            }
+            scheduled = true;
+        }
+        submitDrain();
+    }
+
+    /**
+     * Забыть отправленные версии (после смены формата следующие сообщения уйдут полными)
+     */
+    synchronized void resetVersions() {
+        resetVersions = true;
+    }
+
+    /**
+     * Включить пакетную отправку с интервалом intervalMs (ограничивается допустимым диапазоном)
+     *
+     * @return установленный интервал
+     */
+    synchronized long enableBatching(ScheduledExecutorService scheduler, long intervalMs) {
+        long interval =
+                Math.max(MIN_BATCH_INTERVAL_MS, Math.min(MAX_BATCH_INTERVAL_MS, intervalMs));
+        if (closed || (flushTask != null && batchIntervalMs == interval)) {
+            return batchIntervalMs;
+        }
+        if (flushTask != null) {
+            flushTask.cancel(false);
+        }
+        flushTask = scheduler.scheduleAtFixedRate(this::flush, interval, interval,
+                TimeUnit.MILLISECONDS);
+        batchIntervalMs = interval;
+        return interval;
+    }
+
+    /**
+     * Вернуться к отправке каждого сообщения отдельным кадром
+     */
+    void disableBatching() {
+        synchronized (this) {
+            if (flushTask == null) {
+                return;
+            }
+            flushTask.cancel(false);
+            flushTask = null;
+            batchIntervalMs = 0;
+            if (scheduled || pending.isEmpty()) {
+                return;
+            }
+            scheduled = true;
+        }
+        submitDrain();
+    }
+
+    private void flush() {
+        synchronized (this) {
+            if (closed) {
+                if (flushTask != null) {
+                    flushTask.cancel(false);
+                    flushTask = null;
+                }
+                return;
+            }
+            if (scheduled || pending.isEmpty()) {
+                return;
+            }
+            scheduled = true;
+        }
+        submitDrain();
+    }
+
+    private void submitDrain() {
+        try {
+            executor.execute(this::drain);
+        } catch (RejectedExecutionException e) {
+            // Повторим при следующем сообщении или следующем flush
+            synchronized (this) {
+                scheduled = false;
+            }
+            log.warn("Send task for session {} rejected: {}", session.getId(), e.getMessage());
+        }
+    }
+
+    /**
+     * Закрыть очередь и отбросить ожидающие сообщения
+     */
+    synchronized void close() {
+        closed = true;
+        pending.clear();
+        if (flushTask != null) {
+            flushTask.cancel(false);
+            flushTask = null;
+        }
+    }
+
+    /**
+     * Статистика сессии: размер очереди, отставание, количество слитых и отброшенных сообщений
+     */
+    synchronized Map<String, Object> getStats() {
+        long lagNanos = 0L;
+        if (!pending.isEmpty()) {
+            lagNanos = System.nanoTime() - pending.values().iterator().next().enqueuedAtNanos();
+        }
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("sessionId", session.getId());
+        stats.put("open", !closed && session.isOpen());
+        stats.put("pending", pending.size());
+        stats.put("lagMs", TimeUnit.NANOSECONDS.toMillis(lagNanos));
+        stats.put("maxLagMs", TimeUnit.NANOSECONDS.toMillis(maxLagNanos));
+        stats.put("enqueued", enqueued);
+        stats.put("sent", sent);
+        stats.put("conflated", conflated);
+        stats.put("dropped", dropped);
+        stats.put("failed", failed);
+        stats.put("batchIntervalMs", batchIntervalMs);
+        stats.put("batches", batches);
+        return stats;
+    }
+
+    private void drain() {
+        boolean batching;
+        synchronized (this) {
+            batching = flushTask != null;
+        }
+        if (batching) {
+            drainBatch();
+            return;
+        }
+        while (true) {
+            String key;
+            Pending next;
+            synchronized (this) {
+                if (closed || pending.isEmpty()) {
+                    scheduled = false;
+                    return;
+                }
+                Iterator<Map.Entry<String, Pending>> iterator = pending.entrySet().iterator();
+                Map.Entry<String, Pending> entry = iterator.next();
+                key = entry.getKey();
+                next = entry.getValue();
+                iterator.remove();
+            }
+            WebSocketMessage<?> message;
+            try {
+                message = resolve(key, next.message());
+            } catch (Exception e) {
+                log.error("Ошибка подготовки сообщения для сессии {}", session.getId(), e);
+                synchronized (this) {
+                    failed++;
+                }
+                continue;
+            }
+            if (message == null) {
+                synchronized (this) {
+                    conflated++;
+                }
+                continue;
+            }
+            try {
+                session.sendMessage(message);
+                long lagNanos = System.nanoTime() - next.enqueuedAtNanos();
+                synchronized (this) {
+                    sent++;
+                    maxLagNanos = Math.max(maxLagNanos, lagNanos);
+                }
+            } catch (Exception e) {
+                log.error("Ошибка отправки сообщения клиенту, закрываем сессию: {}",
+                        session.getId(), e);
+                synchronized (this) {
+                    failed++;
+                    closed = true;
+                    pending.clear();
+                    scheduled = false;
+                }
+                closeQuietly();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Отправить все ожидающие сообщения одним кадром: текстовые - JSON массивом, двоичные -
+     * последовательностью записей (при смене формата в пакете могут оказаться оба вида)
+     */
+    private void drainBatch() {
+        List<Map.Entry<String, Pending>> batch;
+        synchronized (this) {
+            if (closed || pending.isEmpty()) {
+                scheduled = false;
+                return;
+            }
+            batch = new ArrayList<>(pending.entrySet());
+            pending.clear();
+        }
+        long oldestNanos = Long.MAX_VALUE;
+        ByteArrayOutputStream text = new ByteArrayOutputStream(batch.size() * 256);
+        ByteArrayOutputStream binary = new ByteArrayOutputStream();
+        text.write('[');
+        int textCount = 0;
+        int binaryCount = 0;
+        int skipped = 0;
+        int stale = 0;
+        for (Map.Entry<String, Pending> entry : batch) {
+            try {
+                WebSocketMessage<?> message = resolve(entry.getKey(), entry.getValue().message());
+                if (message == null) {
+                    stale++;
+                    continue;
+                }
+                if (message instanceof TextMessage textMessage) {
+                    if (textCount > 0) {
+                        text.write(',');
+                    }
+                    text.writeBytes(textMessage.asBytes());
+                    textCount++;
+                } else if (message instanceof BinaryMessage binaryMessage) {
+                    ByteBuffer payload = binaryMessage.getPayload().duplicate();
+                    byte[] bytes = new byte[payload.remaining()];
+                    payload.get(bytes);
+                    binary.writeBytes(bytes);
+                    binaryCount++;
+                } else {
+                    throw new IllegalStateException("Unsupported message for batching");
+                }
+                oldestNanos = Math.min(oldestNanos, entry.getValue().enqueuedAtNanos());
+            } catch (Exception e) {
+                log.error("Ошибка подготовки сообщения для сессии {}", session.getId(), e);
+                skipped++;
+            }
+        }
+        text.write(']');
+        int count = textCount + binaryCount;
+        try {
+            if (textCount > 0) {
+                session.sendMessage(new TextMessage(text.toByteArray()));
+            }
+            if (binaryCount > 0) {
+                session.sendMessage(new BinaryMessage(binary.toByteArray()));
+            }
+            long lagNanos = count > 0 ? System.nanoTime() - oldestNanos : 0L;
+            synchronized (this) {
+                sent += count;
+                failed += skipped;
+                conflated += stale;
+                if (count > 0) {
+                    batches++;
+                }
+                maxLagNanos = Math.max(maxLagNanos, lagNanos);
+                scheduled = false;
+            }
+        } catch (Exception e) {
+            log.error("Ошибка отправки сообщения клиенту, закрываем сессию: {}",
+                    session.getId(), e);
+            synchronized (this) {
+                failed++;
+                closed = true;
+                pending.clear();
+                scheduled = false;
+            }
+            closeQuietly();
+        }
+    }
+
+    /**
+     * Окончательный вид сообщения для отправки
+     *
+     * @return null, если версия сообщения не новее уже отправленной сессии (сообщение устарело)
+     */
+    private WebSocketMessage<?> resolve(String key, Object message) {
+        synchronized (this) {
+            if (resetVersions) {
+                sentVersions.clear();
+                resetVersions = false;
+            }
+        }
+        if (message instanceof VersionedMessage versioned) {
+            long sentVersion = sentVersions.getOrDefault(key, -1L);
+            if (versioned.version() <= sentVersion) {
+                return null;
+            }
+            WebSocketMessage<?> resolved = versioned.since(sentVersion);
+            sentVersions.put(key, versioned.version());
+            return resolved;
+        }
+        return (WebSocketMessage<?>) message;
+    }
+
+    /**
+     * Новое сообщение - более старая (или та же) версия ожидающего
+     */
+    private static boolean isOlder(Object message, Object previous) {
+        return message instanceof VersionedMessage versioned
+                && previous instanceof VersionedMessage pendingVersioned
+                && versioned.version() <= pendingVersioned.version();
+    }
+
+    private void closeQuietly() {
+        try {
+            session.close(CloseStatus.SERVER_ERROR);
+        } catch (Exception e) {
+            log.debug("Error closing session {}: {}", session.getId(), e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.example.investmentdatascannerservice.controller;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Consumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import com.example.investmentdatascannerservice.dto.FuturesBasisUpdate;
+import com.example.investmentdatascannerservice.service.FuturesBasisService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * WebSocket контроллер для трансляции расхождений акций и фьючерсов (/ws/futures-basis)
+ *
+ * При подключении клиент получает последний расчет, затем каждый новый (см.
+ * {@link FuturesBasisService}). Неотправленный расчет заменяется более новым.
+ */
+@Component
+public class FuturesBasisWebSocketController implements WebSocketHandler {
+
+    private static final Logger log =
+            LoggerFactory.getLogger(FuturesBasisWebSocketController.class);
+
+    /** Ключ слияния: в очереди сессии нужен только последний расчет */
+    private static final String BASIS_KEY = "basis";
+
+    private final List<ConflatingSessionSender> senders = new CopyOnWriteArrayList<>();
+    private final FuturesBasisService futuresBasisService;
+    private final ExecutorService webSocketSendExecutor;
+    private final ObjectMapper objectMapper;
+
+    // Постоянная ссылка на обработчик: подписка и отписка должны передавать один и тот же объект
+    private final Consumer<FuturesBasisUpdate> basisListener = this::broadcastBasis;
+
+    public FuturesBasisWebSocketController(FuturesBasisService futuresBasisService,
+            @Qualifier("webSocketSendExecutor") ExecutorService webSocketSendExecutor) {
+        this.futuresBasisService = futuresBasisService;
+        this.webSocketSendExecutor = webSocketSendExecutor;
+        this.objectMapper = new ObjectMapper();
+
+        // Настраиваем ObjectMapper для работы с LocalDateTime
+        this.objectMapper.findAndRegisterModules();
+    }
+
+    @Override
+    public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+        ConflatingSessionSender sender = new ConflatingSessionSender(session,
+                webSocketSendExecutor, ConflatingSessionSender.DEFAULT_CAPACITY);
+        senders.add(sender);
+        log.info("WebSocket соединение для расхождений фьючерсов установлено. Всего соединений: {}",
+                senders.size());
+
+        if (senders.size() == 1) {
+            futuresBasisService.subscribe(basisListener);
+        }
+
+        FuturesBasisUpdate snapshot = futuresBasisService.getSnapshot();
+        if (snapshot != null) {
+            TextMessage message = serialize(snapshot);
+            if (message != null) {
+                sender.enqueue(BASIS_KEY, message);
+            }
+        }
+    }
+
+    @Override
+    public void handleMessage(WebSocketSession session, WebSocketMessage<?> message)
+            throws Exception {
+        // Клиент только получает данные
+        log.debug("Получено сообщение от клиента расхождений фьючерсов: {}",
+                message.getPayload());
+    }
+
+    @Override
+    public void handleTransportError(WebSocketSession session, Throwable exception)
+            throws Exception {
+        log.error("Ошибка WebSocket транспорта для расхождений фьючерсов", exception);
+    }
+
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus closeStatus)
+            throws Exception {
+        senders.removeIf(sender -> {
+            if (sender.getSession() == session) {
+                sender.close();
+                return true;
+            }
+            return false;
+        });
+        log.info("WebSocket соединение для расхождений фьючерсов закрыто. Всего соединений: {}",
+                senders.size());
+        if (senders.isEmpty()) {
+            futuresBasisService.unsubscribe(basisListener);
+        }
+    }
+
+    @Override
+    public boolean supportsPartialMessages() {
+        return false;
+    }
+
+    /**
+     * Статистика исходящих очередей по сессиям
+     */
+    public List<Map<String, Object>> getSessionStats() {
+        List<Map<String, Object>> stats = new ArrayList<>(senders.size());
+        for (ConflatingSessionSender sender : senders) {
+            stats.add(sender.getStats());
+        }
+        return stats;
+    }
+
+    private void broadcastBasis(FuturesBasisUpdate update) {
+        if (senders.isEmpty()) {
+            return;
+        }
+        // Сериализуем один раз для всех сессий
+        TextMessage message = serialize(update);
+        if (message == null) {
+            return;
+        }
+        for (ConflatingSessionSender sender : senders) {
+            if (!sender.isClosed()) {
+                sender.enqueue(BASIS_KEY, message);
+            }
+        }
+    }
+
+    private TextMessage serialize(FuturesBasisUpdate update) {
+        try {
+            return new TextMessage(objectMapper.writeValueAsBytes(update));
+        } catch (Exception e) {
+            log.error("Ошибка сериализации расхождений фьючерсов", e);
+            return null;
+        }
+    }
+}
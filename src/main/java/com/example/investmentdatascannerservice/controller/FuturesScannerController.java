@@ -12,6 +12,8 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 import com.example.investmentdatascannerservice.config.QuoteScannerConfig;
+import com.example.investmentdatascannerservice.dto.FuturesBasisUpdate;
+import com.example.investmentdatascannerservice.service.FuturesBasisService;
 import com.example.investmentdatascannerservice.service.PriceCacheService;
 import com.example.investmentdatascannerservice.service.QuoteScannerService;
 import lombok.RequiredArgsConstructor;
@@ -29,6 +31,8 @@ public class FuturesScannerController {
     private final QuoteScannerService quoteScannerService;
     private final PriceCacheService priceCacheService;
     private final QuoteScannerConfig config;
+    private final FuturesBasisService futuresBasisService;
+    private final FuturesBasisWebSocketController futuresBasisWebSocketController;
 
     /**
      * Получить текущий список индексов для сканера фьючерсов
@@ -239,5 +243,23 @@ public class FuturesScannerController {
         response.put("message", "Ключевая ставка ЦБ РФ получена");
         return ResponseEntity.ok(response);
     }
-}
 
+    /**
+     * Получить последний расчет расхождений акций и фьючерсов
+     */
+    @GetMapping("/basis")
+    public ResponseEntity<FuturesBasisUpdate> getFuturesBasis() {
+        FuturesBasisUpdate snapshot = futuresBasisService.getSnapshot();
+        return snapshot != null ? ResponseEntity.ok(snapshot) : ResponseEntity.noContent().build();
+    }
+
+    /**
+     * Получить статистику расчета расхождений
+     */
+    @GetMapping("/basis/stats")
+    public ResponseEntity<Map<String, Object>> getFuturesBasisStats() {
+        Map<String, Object> stats = futuresBasisService.getStats();
+        stats.put("sessions", futuresBasisWebSocketController.getSessionStats());
+        return ResponseEntity.ok(stats);
+    }
+}
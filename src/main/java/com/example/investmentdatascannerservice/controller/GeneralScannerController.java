@@ -2,6 +2,7 @@ package com.example.investmentdatascannerservice.controller;
 
 import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
@@ -10,11 +11,15 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import com.example.investmentdatascannerservice.config.QuoteScannerConfig;
+import com.example.investmentdatascannerservice.dto.LeaderboardUpdate;
 import com.example.investmentdatascannerservice.entity.ShareEntity;
+import com.example.investmentdatascannerservice.service.QuoteRankingService;
 import com.example.investmentdatascannerservice.service.QuoteScannerService;
 import com.example.investmentdatascannerservice.utils.FutureService;
+import com.example.investmentdatascannerservice.utils.InstrumentCatalog;
 import com.example.investmentdatascannerservice.utils.SessionTimeService;
 import com.example.investmentdatascannerservice.utils.ShareService;
 import lombok.RequiredArgsConstructor;
@@ -34,6 +39,10 @@ public class GeneralScannerController {
     private final FutureService futureService;
     private final QuoteScannerConfig config;
     private final SessionTimeService sessionTimeService;
+    private final QuoteWebSocketController quoteWebSocketController;
+    private final PairWebSocketController pairWebSocketController;
+    private final RankingWebSocketController rankingWebSocketController;
+    private final QuoteRankingService quoteRankingService;
 
     /**
      * Получить общую статистику сканера
@@ -46,6 +55,39 @@ public class GeneralScannerController {
         return ResponseEntity.ok(stats);
     }
 
+    /**
+     * Получить статистику исходящих очередей WebSocket сессий (отставание медленных клиентов)
+     */
+    @GetMapping("/websocket-sessions")
+    public ResponseEntity<Map<String, Object>> getWebSocketSessions() {
+        return ResponseEntity.ok(Map.of("quotes", quoteWebSocketController.getSessionStats(),
+                "pairs", pairWebSocketController.getSessionStats(), "rankings",
+                rankingWebSocketController.getSessionStats()));
+    }
+
+    /**
+     * Получить текущие рейтинги инструментов заданного типа (SHARE, FUTURE, INDICATIVE)
+     */
+    @GetMapping("/leaderboards")
+    public ResponseEntity<List<LeaderboardUpdate>> getLeaderboards(
+            @RequestParam(defaultValue = "SHARE") String type) {
+        try {
+            InstrumentCatalog.Type instrumentType =
+                    InstrumentCatalog.Type.valueOf(type.toUpperCase(Locale.ROOT));
+            return ResponseEntity.ok(quoteRankingService.getLeaderboards(instrumentType));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    /**
+     * Получить статистику рейтингов
+     */
+    @GetMapping("/leaderboards/stats")
+    public ResponseEntity<Map<String, Object>> getLeaderboardStats() {
+        return ResponseEntity.ok(quoteRankingService.getStats());
+    }
+
     /**
      * Получить текущие цены всех инструментов
      */
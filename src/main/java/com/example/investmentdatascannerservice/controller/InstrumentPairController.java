@@ -7,6 +7,7 @@ import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
@@ -72,6 +73,43 @@ public class InstrumentPairController {
         }
     }
 
+    /**
+     * Получить политику публикации результатов пары
+     */
+    @GetMapping("/{pairId}/publish-policy")
+    public ResponseEntity<InstrumentPairService.PublishPolicy> getPublishPolicy(
+            @PathVariable String pairId) {
+        return ResponseEntity.ok(instrumentPairService.getPublishPolicy(pairId));
+    }
+
+    /**
+     * Установить политику публикации результатов пары
+     */
+    @PutMapping("/{pairId}/publish-policy")
+    public ResponseEntity<String> setPublishPolicy(@PathVariable String pairId,
+            @RequestBody InstrumentPairService.PublishPolicy policy) {
+        log.info("Request to set publish policy: pairId={}, policy={}", pairId, policy);
+        try {
+            instrumentPairService.setPublishPolicy(pairId, policy);
+            return ResponseEntity.ok("Политика публикации пары обновлена");
+        } catch (Exception e) {
+            log.error("Error setting publish policy: pairId={}, error={}", pairId,
+                    e.getMessage(), e);
+            return ResponseEntity.badRequest()
+                    .body("Ошибка обновления политики публикации: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Вернуть политику публикации пары по умолчанию
+     */
+    @DeleteMapping("/{pairId}/publish-policy")
+    public ResponseEntity<String> resetPublishPolicy(@PathVariable String pairId) {
+        log.info("Request to reset publish policy: pairId={}", pairId);
+        instrumentPairService.setPublishPolicy(pairId, null);
+        return ResponseEntity.ok("Политика публикации пары сброшена");
+    }
+
     /**
      * Получить статистику пар инструментов
      */
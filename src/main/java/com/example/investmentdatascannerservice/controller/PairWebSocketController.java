@@ -1,10 +1,16 @@
 package com.example.investmentdatascannerservice.controller;
 
-import java.util.Set;
-import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Component;
+import org.springframework.web.socket.BinaryMessage;
 import org.springframework.web.socket.CloseStatus;
 import org.springframework.web.socket.TextMessage;
 import org.springframework.web.socket.WebSocketHandler;
@@ -12,22 +18,34 @@ import org.springframework.web.socket.WebSocketMessage;
 import org.springframework.web.socket.WebSocketSession;
 import com.example.investmentdatascannerservice.dto.PairComparisonResult;
 import com.example.investmentdatascannerservice.service.InstrumentPairService;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 /**
  * WebSocket контроллер для трансляции результатов сравнения пар
+ *
+ * Результаты ставятся в исходящие очереди сессий (см. {@link ConflatingSessionSender}); если
+ * клиент не успевает, ожидающие результаты одной пары сливаются в последний.
+ *
+ * Сообщением {"action":"format","format":"binary"} клиент переключается на двоичные записи
+ * {@link BinaryFrames}; "json" возвращает формат по умолчанию. Каждый формат сериализуется не
+ * больше одного раза на результат и только при наличии сессий с этим форматом.
  */
 @Component
 public class PairWebSocketController implements WebSocketHandler {
 
     private static final Logger log = LoggerFactory.getLogger(PairWebSocketController.class);
 
-    private final Set<WebSocketSession> sessions = new CopyOnWriteArraySet<>();
+    private final List<ConflatingSessionSender> senders = new CopyOnWriteArrayList<>();
     private final InstrumentPairService instrumentPairService;
+    private final ExecutorService webSocketSendExecutor;
     private final ObjectMapper objectMapper;
+    private final Map<WebSocketSession, WireFormat> formats = new ConcurrentHashMap<>();
 
-    public PairWebSocketController(InstrumentPairService instrumentPairService) {
+    public PairWebSocketController(InstrumentPairService instrumentPairService,
+            @Qualifier("webSocketSendExecutor") ExecutorService webSocketSendExecutor) {
         this.instrumentPairService = instrumentPairService;
+        this.webSocketSendExecutor = webSocketSendExecutor;
         this.objectMapper = new ObjectMapper();
 
         // Настраиваем ObjectMapper для работы с LocalDateTime
@@ -39,15 +57,30 @@ public class PairWebSocketController implements WebSocketHandler {
 
     @Override
     public void afterConnectionEstablished(WebSocketSession session) throws Exception {
-        sessions.add(session);
-        log.info("WebSocket соединение для пар установлено. Всего соединений: {}", sessions.size());
+        senders.add(new ConflatingSessionSender(session, webSocketSendExecutor,
+                ConflatingSessionSender.DEFAULT_CAPACITY));
+        log.info("WebSocket соединение для пар установлено. Всего соединений: {}", senders.size());
     }
 
     @Override
     public void handleMessage(WebSocketSession session, WebSocketMessage<?> message)
             throws Exception {
-        // Обработка входящих сообщений (если необходимо)
         log.debug("Получено сообщение от клиента пар: {}", message.getPayload());
+        if (!(message instanceof TextMessage textMessage)) {
+            return;
+        }
+        try {
+            JsonNode request = objectMapper.readTree(textMessage.getPayload());
+            if ("format".equals(request.path("action").asText(""))) {
+                WireFormat format = WireFormat.parse(request.path("format").asText(""));
+                // Дельта-формат для пар не поддерживается
+                formats.put(session, format == WireFormat.BINARY ? format : WireFormat.JSON);
+                log.info("Pair session {} uses {} frames", session.getId(), formats.get(session));
+            }
+        } catch (Exception e) {
+            log.warn("Некорректное сообщение от клиента пар {}: {}", session.getId(),
+                    e.getMessage());
+        }
     }
 
     @Override
@@ -59,8 +92,15 @@ public class PairWebSocketController implements WebSocketHandler {
     @Override
     public void afterConnectionClosed(WebSocketSession session, CloseStatus closeStatus)
             throws Exception {
-        sessions.remove(session);
-        log.info("WebSocket соединение для пар закрыто. Всего соединений: {}", sessions.size());
+        formats.remove(session);
+        senders.removeIf(sender -> {
+            if (sender.getSession() == session) {
+                sender.close();
+                return true;
+            }
+            return false;
+        });
+        log.info("WebSocket соединение для пар закрыто. Всего соединений: {}", senders.size());
     }
 
     @Override
@@ -72,58 +112,75 @@ public class PairWebSocketController implements WebSocketHandler {
      * Очистка неактивных WebSocket сессий
      */
     public void cleanupInactiveSessions() {
-        var iterator = sessions.iterator();
-        int removedCount = 0;
-        while (iterator.hasNext()) {
-            WebSocketSession session = iterator.next();
-            if (!session.isOpen()) {
-                iterator.remove();
-                removedCount++;
-                log.debug("Removed inactive pair session: {}", session.getId());
+        int initialSize = senders.size();
+        senders.removeIf(sender -> {
+            if (sender.isClosed()) {
+                log.debug("Removed inactive pair session: {}", sender.getSession().getId());
+                formats.remove(sender.getSession());
+                sender.close();
+                return true;
             }
-        }
+            return false;
+        });
+        int removedCount = initialSize - senders.size();
         if (removedCount > 0) {
             log.info("Cleaned up {} inactive pair sessions. Active sessions: {}", removedCount,
-                    sessions.size());
+                    senders.size());
         }
     }
 
+    /**
+     * Статистика исходящих очередей по сессиям (отставание, слитые и отброшенные сообщения)
+     */
+    public List<Map<String, Object>> getSessionStats() {
+        List<Map<String, Object>> stats = new ArrayList<>(senders.size());
+        for (ConflatingSessionSender sender : senders) {
+            Map<String, Object> sessionStats = sender.getStats();
+            sessionStats.put("format", formatOf(sender));
+            stats.add(sessionStats);
+        }
+        return stats;
+    }
+
     private void broadcastComparison(PairComparisonResult comparisonResult) {
-        if (sessions.isEmpty()) {
+        if (senders.isEmpty()) {
             log.debug("No WebSocket sessions for pair comparisons, skipping broadcast");
             return;
         }
 
         try {
-            String json = objectMapper.writeValueAsString(comparisonResult);
-            TextMessage message = new TextMessage(json);
-            log.debug("Broadcasting pair comparison to {} sessions: {}", sessions.size(),
+            TextMessage text = null;
+            BinaryMessage binary = null;
+            log.debug("Broadcasting pair comparison to {} sessions: {}", senders.size(),
                     comparisonResult);
 
-            int sentCount = 0;
-            // Используем итератор для безопасного удаления сессий
-            var iterator = sessions.iterator();
-            while (iterator.hasNext()) {
-                WebSocketSession session = iterator.next();
-                if (session.isOpen()) {
-                    try {
-                        session.sendMessage(message);
-                        sentCount++;
-                        log.debug("Successfully sent pair comparison to session {}",
-                                session.getId());
-                    } catch (Exception e) {
-                        log.error("Ошибка отправки сообщения клиенту пар, удаляем сессию: {}",
-                                session.getId(), e);
-                        iterator.remove(); // Безопасное удаление через итератор
+            int queuedCount = 0;
+            for (ConflatingSessionSender sender : senders) {
+                if (sender.isClosed()) {
+                    log.debug("Removing closed pair session: {}", sender.getSession().getId());
+                    sender.close();
+                    senders.remove(sender);
+                } else if (formatOf(sender) == WireFormat.BINARY) {
+                    if (binary == null) {
+                        binary = BinaryFrames.pair(comparisonResult);
                     }
+                    sender.enqueue(comparisonResult.pairId(), binary);
+                    queuedCount++;
                 } else {
-                    log.debug("Removing closed pair session: {}", session.getId());
-                    iterator.remove(); // Безопасное удаление через итератор
+                    if (text == null) {
+                        text = new TextMessage(objectMapper.writeValueAsBytes(comparisonResult));
+                    }
+                    sender.enqueue(comparisonResult.pairId(), text);
+                    queuedCount++;
                 }
             }
-            log.debug("Sent pair comparison to {} sessions successfully", sentCount);
+            log.debug("Queued pair comparison for {} sessions", queuedCount);
         } catch (Exception e) {
             log.error("Ошибка сериализации данных сравнения пар", e);
         }
     }
+
+    private WireFormat formatOf(ConflatingSessionSender sender) {
+        return formats.getOrDefault(sender.getSession(), WireFormat.JSON);
+    }
 }
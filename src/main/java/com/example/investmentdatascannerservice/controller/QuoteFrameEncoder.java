@@ -0,0 +1,243 @@
+package com.example.investmentdatascannerservice.controller;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import com.example.investmentdatascannerservice.dto.QuoteData;
+import com.example.investmentdatascannerservice.utils.InstrumentRegistry;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Кодирование котировок в кадры для /ws/quotes (JSON, дельта и двоичный формат)
+ *
+ * Формат кадров:
+ * <ul>
+ * <li>снимок: {"t":"s","i":id,"v":версия,"q":{все поля QuoteData}}</li>
+ * <li>дельта: {"t":"d","i":id,"v":версия,"q":{только изменившиеся поля}}</li>
+ * </ul>
+ * id - плотный идентификатор инструмента из {@link InstrumentRegistry}, версия - номер снимка
+ * состояния инструмента ({@link QuoteData#getSequence()}): она отражает порядок данных, а не
+ * порядок кодирования, и возрастает, но не обязательно на 1. Дельта считается один раз
+ * относительно полей последней закодированной версии FIGI (базовой) и общая для всех сессий;
+ * сессия получает ее, только если последней ей была отправлена базовая версия, иначе (первая
+ * котировка, слияние или отбрасывание в очереди) - снимок. Котировка старее уже закодированной
+ * уходит только снимком и не меняет базу. Раз в {@link #RESYNC_INTERVAL_MS} по каждому FIGI всем
+ * отправляется снимок.
+ *
+ * Двоичный формат (см. {@link BinaryFrames}) по тем же правилам выбирает между полной записью и
+ * записью без строк инструмента. JSON дерево котировки строится, только если среди получателей
+ * есть сессии с JSON форматом.
+ */
+final class QuoteFrameEncoder {
+
+    /** Интервал принудительной отправки полного снимка по FIGI */
+    static final long RESYNC_INTERVAL_MS = TimeUnit.SECONDS.toMillis(30);
+
+    /**
+     * Последняя (по версии) закодированная котировка FIGI (fields - null, если JSON не строился)
+     */
+    private record Last(long version, ObjectNode fields, long snapshotAtMs) {
+    }
+
+    private final ObjectMapper objectMapper;
+    private final InstrumentRegistry instrumentRegistry;
+    private final LongSupplier clock; // текущее время в мс
+    private final Map<String, Last> last = new ConcurrentHashMap<>();
+
+    QuoteFrameEncoder(ObjectMapper objectMapper, InstrumentRegistry instrumentRegistry) {
+        this(objectMapper, instrumentRegistry, System::currentTimeMillis);
+    }
+
+    QuoteFrameEncoder(ObjectMapper objectMapper, InstrumentRegistry instrumentRegistry,
+            LongSupplier clock) {
+        this.objectMapper = objectMapper;
+        this.instrumentRegistry = instrumentRegistry;
+        this.clock = clock;
+    }
+
+    /**
+     * Закодировать котировку; сериализация выполняется лениво и не больше одного раза на вид
+     *
+     * @param json есть ли получатели с JSON форматом (иначе JSON дерево и дельта не строятся)
+     */
+    QuoteFrame encode(QuoteData quoteData, boolean json) {
+        ObjectNode fields = json ? objectMapper.valueToTree(quoteData) : null;
+        int id = instrumentRegistry.register(quoteData.getFigi());
+        long now = clock.getAsLong();
+        QuoteFrame[] frame = new QuoteFrame[1];
+        long version = quoteData.getSequence();
+        last.compute(quoteData.getFigi(), (figi, previous) -> {
+            if (previous != null && version <= previous.version()) {
+                // Запоздавшая котировка: только снимок, база дельт не меняется
+                frame[0] = new QuoteFrame(id, version, -1L, quoteData, fields, null, true);
+                return previous;
+            }
+            boolean resync =
+                    previous == null || now - previous.snapshotAtMs() >= RESYNC_INTERVAL_MS;
+            ObjectNode changed = resync || fields == null || previous.fields() == null ? null
+                    : diff(previous.fields(), fields);
+            long baseVersion = previous != null ? previous.version() : -1L;
+            frame[0] = new QuoteFrame(id, version, baseVersion, quoteData, fields, changed, resync);
+            return new Last(version, fields, resync ? now : previous.snapshotAtMs());
+        });
+        return frame[0];
+    }
+
+    /**
+     * Забыть последние котировки (следующие котировки уйдут снимками)
+     */
+    void clear() {
+        last.clear();
+    }
+
+    int size() {
+        return last.size();
+    }
+
+    private ObjectNode diff(ObjectNode previous, ObjectNode current) {
+        ObjectNode changed = objectMapper.createObjectNode();
+        Iterator<Map.Entry<String, JsonNode>> iterator = current.fields();
+        while (iterator.hasNext()) {
+            Map.Entry<String, JsonNode> field = iterator.next();
+            if (!field.getValue().equals(previous.get(field.getKey()))) {
+                changed.set(field.getKey(), field.getValue());
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Кадр одной котировки: полный JSON QuoteData (старый формат), снимок, дельта и двоичные записи
+     */
+    final class QuoteFrame implements ConflatingSessionSender.VersionedMessage {
+
+        private final int id;
+        private final long version;
+        private final long baseVersion; // версия, относительно которой посчитана дельта
+        private final QuoteData quoteData;
+        private final ObjectNode changed; // null - только снимок
+        private final boolean resync;
+        private final ConflatingSessionSender.VersionedMessage binary;
+
+        private ObjectNode fields;
+        private TextMessage plain;
+        private TextMessage snapshot;
+        private TextMessage delta;
+        private BinaryMessage binaryFull;
+        private BinaryMessage binaryCompact;
+
+        private QuoteFrame(int id, long version, long baseVersion, QuoteData quoteData,
+                ObjectNode fields, ObjectNode changed, boolean resync) {
+            this.id = id;
+            this.version = version;
+            this.baseVersion = baseVersion;
+            this.quoteData = quoteData;
+            this.fields = fields;
+            this.changed = changed;
+            this.resync = resync;
+            this.binary = new ConflatingSessionSender.VersionedMessage() {
+                @Override
+                public long version() {
+                    return version;
+                }
+
+                @Override
+                public WebSocketMessage<?> since(long sentVersion) {
+                    // Строки инструмента нужны, пока сессия не получила ни одной записи FIGI
+                    return !QuoteFrame.this.resync && sentVersion >= 0 ? binaryCompact()
+                            : binaryFull();
+                }
+            };
+        }
+
+        /**
+         * Двоичное представление кадра
+         */
+        ConflatingSessionSender.VersionedMessage binary() {
+            return binary;
+        }
+
+        @Override
+        public long version() {
+            return version;
+        }
+
+        @Override
+        public WebSocketMessage<?> since(long sentVersion) {
+            if (changed != null && sentVersion == baseVersion) {
+                return delta();
+            }
+            return snapshot();
+        }
+
+        /**
+         * Котировка в прежнем формате (полный QuoteData без обертки)
+         */
+        synchronized TextMessage plain() {
+            if (plain == null) {
+                plain = write(fields());
+            }
+            return plain;
+        }
+
+        private synchronized ObjectNode fields() {
+            if (fields == null) {
+                fields = objectMapper.valueToTree(quoteData);
+            }
+            return fields;
+        }
+
+        private synchronized TextMessage snapshot() {
+            if (snapshot == null) {
+                snapshot = write(wrap("s", fields()));
+            }
+            return snapshot;
+        }
+
+        private synchronized BinaryMessage binaryFull() {
+            if (binaryFull == null) {
+                binaryFull = BinaryFrames.quote(id, quoteData, true);
+            }
+            return binaryFull;
+        }
+
+        private synchronized BinaryMessage binaryCompact() {
+            if (binaryCompact == null) {
+                binaryCompact = BinaryFrames.quote(id, quoteData, false);
+            }
+            return binaryCompact;
+        }
+
+        private synchronized TextMessage delta() {
+            if (delta == null) {
+                delta = write(wrap("d", changed));
+            }
+            return delta;
+        }
+
+        private ObjectNode wrap(String type, ObjectNode payload) {
+            ObjectNode node = objectMapper.createObjectNode();
+            node.put("t", type);
+            node.put("i", id);
+            node.put("v", version);
+            node.set("q", payload);
+            return node;
+        }
+
+        private TextMessage write(JsonNode node) {
+            try {
+                return new TextMessage(objectMapper.writeValueAsBytes(node));
+            } catch (JsonProcessingException e) {
+                throw new IllegalStateException("Ошибка сериализации кадра котировки", e);
+            }
+        }
+    }
+}
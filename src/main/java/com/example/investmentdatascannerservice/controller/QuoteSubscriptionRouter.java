@@ -0,0 +1,248 @@
+package com.example.investmentdatascannerservice.controller;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.UnaryOperator;
+import org.springframework.web.socket.WebSocketSession;
+import com.example.investmentdatascannerservice.utils.InstrumentCatalog;
+import com.example.investmentdatascannerservice.utils.InstrumentCatalogService;
+
+/**
+ * Маршрутизация котировок по подпискам WebSocket сессий
+ *
+ * Сессия, не приславшая ни одной подписки, получает все котировки (совместимость со старыми
+ * клиентами). После первой подписки сессия получает только котировки FIGI из своего списка и
+ * инструментов подписанных типов. Для каждого FIGI лениво строится массив получателей (индекс
+ * FIGI -> сессии); индекс пересоздается целиком при любом изменении сессий или подписок и при
+ * обновлении справочника инструментов, поэтому рассылка не проверяет фильтры на каждое сообщение.
+ */
+final class QuoteSubscriptionRouter {
+
+    /**
+     * Профили сканеров: набор типов инструментов, нужных странице (первый - тип, по которому
+     * строятся рейтинги страницы)
+     */
+    enum Profile {
+        MORNING(InstrumentCatalog.Type.SHARE, InstrumentCatalog.Type.INDICATIVE),
+        WEEKEND(InstrumentCatalog.Type.SHARE, InstrumentCatalog.Type.INDICATIVE),
+        FUTURES(InstrumentCatalog.Type.FUTURE, InstrumentCatalog.Type.SHARE,
+                InstrumentCatalog.Type.INDICATIVE);
+
+        private final InstrumentCatalog.Type rankedType;
+        private final Set<InstrumentCatalog.Type> types;
+
+        Profile(InstrumentCatalog.Type first, InstrumentCatalog.Type... rest) {
+            this.rankedType = first;
+            this.types = EnumSet.of(first, rest);
+        }
+
+        Set<InstrumentCatalog.Type> getTypes() {
+            return types;
+        }
+
+        InstrumentCatalog.Type getRankedType() {
+            return rankedType;
+        }
+    }
+
+    /**
+     * Неизменяемый фильтр сессии
+     */
+    record Filter(boolean all, Set<String> figis, Set<InstrumentCatalog.Type> types) {
+
+        static final Filter ALL = new Filter(true, Set.of(), Set.of());
+
+        boolean matches(String figi, InstrumentCatalog.Type type) {
+            return all || figis.contains(figi) || (type != null && types.contains(type));
+        }
+
+        Filter subscribe(Collection<String> addFigis, Collection<InstrumentCatalog.Type> addTypes) {
+            Set<String> nextFigis = all ? new HashSet<>() : new HashSet<>(figis);
+            nextFigis.addAll(addFigis);
+            Set<InstrumentCatalog.Type> nextTypes = EnumSet.noneOf(InstrumentCatalog.Type.class);
+            if (!all) {
+                nextTypes.addAll(types);
+            }
+            nextTypes.addAll(addTypes);
+            return new Filter(false, Set.copyOf(nextFigis), Set.copyOf(nextTypes));
+        }
+
+        Filter unsubscribe(Collection<String> removeFigis,
+                Collection<InstrumentCatalog.Type> removeTypes) {
+            if (all) {
+                return this;
+            }
+            Set<String> nextFigis = new HashSet<>(figis);
+            nextFigis.removeAll(removeFigis);
+            Set<InstrumentCatalog.Type> nextTypes = new HashSet<>(types);
+            nextTypes.removeAll(removeTypes);
+            return new Filter(false, Set.copyOf(nextFigis), Set.copyOf(nextTypes));
+        }
+    }
+
+    /**
+     * Снимок сессий, их фильтров и построенных по ним маршрутов
+     */
+    private record State(Map<ConflatingSessionSender, Filter> filters, long catalogVersion,
+            Map<String, ConflatingSessionSender[]> routes) {
+    }
+
+    private static final ConflatingSessionSender[] NO_SENDERS = new ConflatingSessionSender[0];
+
+    private final InstrumentCatalogService catalogService;
+    private volatile State state;
+
+    QuoteSubscriptionRouter(InstrumentCatalogService catalogService) {
+        this.catalogService = catalogService;
+        this.state = new State(Map.of(), 0L, new ConcurrentHashMap<>());
+    }
+
+    /**
+     * Получатели котировки по FIGI
+     */
+    ConflatingSessionSender[] route(String figi) {
+        State current = state;
+        InstrumentCatalog catalog = catalogService.current();
+        if (current.catalogVersion() != catalog.getVersion()) {
+            current = refresh(catalog.getVersion());
+        }
+        if (current.filters().isEmpty()) {
+            return NO_SENDERS;
+        }
+        State snapshot = current;
+        return current.routes().computeIfAbsent(figi, key -> build(snapshot, key, catalog));
+    }
+
+    /**
+     * Все сессии
+     */
+    Collection<ConflatingSessionSender> senders() {
+        return state.filters().keySet();
+    }
+
+    int size() {
+        return state.filters().size();
+    }
+
+    boolean isEmpty() {
+        return state.filters().isEmpty();
+    }
+
+    synchronized void add(ConflatingSessionSender sender) {
+        Map<ConflatingSessionSender, Filter> next = new LinkedHashMap<>(state.filters());
+        next.put(sender, Filter.ALL);
+        replace(next);
+    }
+
+    /**
+     * Удалить сессию
+     *
+     * @return удаленная очередь сессии или null
+     */
+    synchronized ConflatingSessionSender remove(WebSocketSession session) {
+        ConflatingSessionSender removed = find(session);
+        if (removed != null) {
+            Map<ConflatingSessionSender, Filter> next = new LinkedHashMap<>(state.filters());
+            next.remove(removed);
+            replace(next);
+        }
+        return removed;
+    }
+
+    /**
+     * Удалить закрытые сессии
+     *
+     * @return удаленные очереди
+     */
+    synchronized List<ConflatingSessionSender> removeClosed() {
+        List<ConflatingSessionSender> removed = new ArrayList<>();
+        Map<ConflatingSessionSender, Filter> next = new LinkedHashMap<>(state.filters());
+        next.keySet().removeIf(sender -> {
+            if (sender.isClosed()) {
+                removed.add(sender);
+                return true;
+            }
+            return false;
+        });
+        if (!removed.isEmpty()) {
+            replace(next);
+        }
+        return removed;
+    }
+
+    synchronized Filter subscribe(WebSocketSession session, Collection<String> figis,
+            Collection<InstrumentCatalog.Type> types) {
+        return update(session, filter -> filter.subscribe(figis, types));
+    }
+
+    synchronized Filter unsubscribe(WebSocketSession session, Collection<String> figis,
+            Collection<InstrumentCatalog.Type> types) {
+        return update(session, filter -> filter.unsubscribe(figis, types));
+    }
+
+    synchronized Filter subscribeAll(WebSocketSession session) {
+        return update(session, filter -> Filter.ALL);
+    }
+
+    private Filter update(WebSocketSession session, UnaryOperator<Filter> change) {
+        ConflatingSessionSender sender = find(session);
+        if (sender == null) {
+            return null;
+        }
+        Map<ConflatingSessionSender, Filter> next = new LinkedHashMap<>(state.filters());
+        Filter updated = change.apply(next.get(sender));
+        next.put(sender, updated);
+        replace(next);
+        return updated;
+    }
+
+    /**
+     * Очередь сессии (null, если сессия не зарегистрирована)
+     */
+    ConflatingSessionSender find(WebSocketSession session) {
+        for (ConflatingSessionSender sender : state.filters().keySet()) {
+            if (sender.getSession() == session) {
+                return sender;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Пересоздать маршруты после обновления справочника (типы инструментов могли измениться)
+     */
+    private synchronized State refresh(long catalogVersion) {
+        if (state.catalogVersion() != catalogVersion) {
+            replace(state.filters());
+        }
+        return state;
+    }
+
+    // Вызывается только под блокировкой this
+    private State replace(Map<ConflatingSessionSender, Filter> filters) {
+        State next = new State(Map.copyOf(filters), catalogService.current().getVersion(),
+                new ConcurrentHashMap<>());
+        state = next;
+        return next;
+    }
+
+    private static ConflatingSessionSender[] build(State state, String figi,
+            InstrumentCatalog catalog) {
+        InstrumentCatalog.Instrument instrument = catalog.getInstrument(figi);
+        InstrumentCatalog.Type type = instrument != null ? instrument.type() : null;
+        List<ConflatingSessionSender> matched = new ArrayList<>();
+        state.filters().forEach((sender, filter) -> {
+            if (filter.matches(figi, type)) {
+                matched.add(sender);
+            }
+        });
+        return matched.toArray(NO_SENDERS);
+    }
+}
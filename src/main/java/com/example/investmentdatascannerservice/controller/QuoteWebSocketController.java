@@ -1,9 +1,18 @@
 package com.example.investmentdatascannerservice.controller;
 
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.function.Consumer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Component;
 import org.springframework.web.socket.CloseStatus;
 import org.springframework.web.socket.TextMessage;
@@ -12,36 +21,75 @@ import org.springframework.web.socket.WebSocketMessage;
 import org.springframework.web.socket.WebSocketSession;
 import com.example.investmentdatascannerservice.dto.QuoteData;
 import com.example.investmentdatascannerservice.service.QuoteScannerService;
+import com.example.investmentdatascannerservice.utils.InstrumentCatalog;
+import com.example.investmentdatascannerservice.utils.InstrumentCatalogService;
+import com.example.investmentdatascannerservice.utils.InstrumentRegistry;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 /**
  * WebSocket контроллер для трансляции котировок
+ *
+ * Каждая котировка сериализуется в байты один раз, и одно и то же сообщение ставится в исходящие
+ * очереди всех сессий (см. {@link ConflatingSessionSender}); если клиент не успевает, ожидающие
+ * котировки одного FIGI сливаются в последнюю.
+ *
+ * Клиент может ограничить поток котировок сообщениями вида
+ * {"action":"subscribe","profile":"morning","types":["SHARE"],"figis":[...],"tickers":[...]},
+ * {"action":"unsubscribe",...} и {"action":"subscribeAll"}. Профили: morning, weekend, futures.
+ * Получатели котировки выбираются по индексу FIGI -> сессии (см. {@link QuoteSubscriptionRouter});
+ * сессия без подписок получает все котировки.
+ *
+ * По умолчанию каждое сообщение - полный QuoteData. После {"action":"format","format":"delta"}
+ * сессия получает кадры {@link QuoteFrameEncoder}: первый по FIGI - снимок, следующие - только
+ * изменившиеся поля; "binary" - двоичные записи {@link BinaryFrames}; "json" возвращает прежний
+ * формат.
+ *
+ * {"action":"batch","intervalMs":100} включает пакетную отправку: накопленные за интервал
+ * сообщения уходят одним кадром - JSON массивом или последовательностью двоичных записей;
+ * intervalMs = 0 выключает ее.
  */
 @Component
 public class QuoteWebSocketController implements WebSocketHandler {
 
     private static final Logger log = LoggerFactory.getLogger(QuoteWebSocketController.class);
 
-    private final Set<WebSocketSession> sessions = new CopyOnWriteArraySet<>();
+    private final QuoteSubscriptionRouter router;
     private final QuoteScannerService quoteScannerService;
+    private final ExecutorService webSocketSendExecutor;
+    private final ScheduledExecutorService webSocketFlushScheduler;
     private final ObjectMapper objectMapper;
+    private final QuoteFrameEncoder frameEncoder;
+    private final Map<WebSocketSession, WireFormat> formats = new ConcurrentHashMap<>();
 
-    public QuoteWebSocketController(QuoteScannerService quoteScannerService) {
+    // Постоянная ссылка на обработчик: подписка и отписка должны передавать один и тот же объект
+    private final Consumer<QuoteData> quoteListener = this::broadcastQuote;
+
+    public QuoteWebSocketController(QuoteScannerService quoteScannerService,
+            InstrumentCatalogService catalogService, InstrumentRegistry instrumentRegistry,
+            @Qualifier("webSocketSendExecutor") ExecutorService webSocketSendExecutor,
+            @Qualifier("webSocketFlushScheduler")
+            ScheduledExecutorService webSocketFlushScheduler) {
         this.quoteScannerService = quoteScannerService;
+        this.router = new QuoteSubscriptionRouter(catalogService);
+        this.webSocketSendExecutor = webSocketSendExecutor;
+        this.webSocketFlushScheduler = webSocketFlushScheduler;
         this.objectMapper = new ObjectMapper();
 
         // Настраиваем ObjectMapper для работы с LocalDateTime
         this.objectMapper.findAndRegisterModules();
+        this.frameEncoder = new QuoteFrameEncoder(objectMapper, instrumentRegistry);
     }
 
     @Override
     public void afterConnectionEstablished(WebSocketSession session) throws Exception {
-        sessions.add(session);
-        log.info("WebSocket соединение установлено. Всего соединений: {}", sessions.size());
+        router.add(new ConflatingSessionSender(session, webSocketSendExecutor,
+                ConflatingSessionSender.DEFAULT_CAPACITY));
+        log.info("WebSocket соединение установлено. Всего соединений: {}", router.size());
 
         // Подписываемся на обновления котировок только при первом подключении
-        if (sessions.size() == 1) {
-            this.quoteScannerService.subscribeToQuotes(this::broadcastQuote);
+        if (router.size() == 1) {
+            this.quoteScannerService.subscribeToQuotes(quoteListener);
             log.info("Subscribed to quote updates for WebSocket broadcasting");
         }
     }
@@ -49,8 +97,91 @@ public class QuoteWebSocketController implements WebSocketHandler {
     @Override
     public void handleMessage(WebSocketSession session, WebSocketMessage<?> message)
             throws Exception {
-        // Обработка входящих сообщений (если необходимо)
         log.debug("Получено сообщение от клиента: {}", message.getPayload());
+        if (!(message instanceof TextMessage textMessage)) {
+            return;
+        }
+        try {
+            handleSubscription(session, objectMapper.readTree(textMessage.getPayload()));
+        } catch (Exception e) {
+            log.warn("Некорректное сообщение подписки от {}: {}", session.getId(), e.getMessage());
+        }
+    }
+
+    /**
+     * Изменение подписки сессии по сообщению клиента
+     */
+    private void handleSubscription(WebSocketSession session, JsonNode request) {
+        String action = request.path("action").asText("");
+        if ("format".equals(action)) {
+            configureFormat(session, WireFormat.parse(request.path("format").asText("")));
+            return;
+        }
+        if ("batch".equals(action)) {
+            configureBatching(session, request.path("intervalMs").asLong(0));
+            return;
+        }
+        if ("subscribeAll".equals(action)) {
+            router.subscribeAll(session);
+            log.info("Session {} subscribed to all quotes", session.getId());
+            return;
+        }
+        if (!"subscribe".equals(action) && !"unsubscribe".equals(action)) {
+            log.debug("Unknown action from {}: {}", session.getId(), action);
+            return;
+        }
+
+        Set<String> figis = new LinkedHashSet<>();
+        request.path("figis").forEach(node -> figis.add(node.asText()));
+        request.path("tickers").forEach(node -> {
+            String figi = quoteScannerService.getInstrumentCacheService()
+                    .getFigiByTicker(node.asText());
+            if (figi != null) {
+                figis.add(figi);
+            }
+        });
+
+        Set<InstrumentCatalog.Type> types = new LinkedHashSet<>();
+        request.path("types").forEach(node -> types
+                .add(InstrumentCatalog.Type.valueOf(node.asText().toUpperCase(Locale.ROOT))));
+        if (request.hasNonNull("profile")) {
+            types.addAll(QuoteSubscriptionRouter.Profile
+                    .valueOf(request.get("profile").asText().toUpperCase(Locale.ROOT)).getTypes());
+        }
+
+        QuoteSubscriptionRouter.Filter filter = "subscribe".equals(action)
+                ? router.subscribe(session, figis, types)
+                : router.unsubscribe(session, figis, types);
+        if (filter != null) {
+            log.info("Session {} {}: {} FIGIs, types {}", session.getId(), action,
+                    filter.figis().size(), filter.types());
+        }
+    }
+
+    private void configureFormat(WebSocketSession session, WireFormat format) {
+        ConflatingSessionSender sender = router.find(session);
+        if (sender == null) {
+            return;
+        }
+        WireFormat previous = formats.put(session, format);
+        if (previous != format) {
+            sender.resetVersions();
+        }
+        log.info("Session {} uses {} quote frames", session.getId(), format);
+    }
+
+    private void configureBatching(WebSocketSession session, long intervalMs) {
+        ConflatingSessionSender sender = router.find(session);
+        if (sender == null) {
+            return;
+        }
+        if (intervalMs <= 0) {
+            sender.disableBatching();
+            log.info("Session {} batching disabled", session.getId());
+        } else {
+            long interval = sender.enableBatching(webSocketFlushScheduler, intervalMs);
+            log.info("Session {} batching every {} ms", session.getId(), interval);
+        }
     }
 
     @Override
@@ -62,12 +193,17 @@ public class QuoteWebSocketController implements WebSocketHandler {
     @Override
     public void afterConnectionClosed(WebSocketSession session, CloseStatus closeStatus)
             throws Exception {
-        sessions.remove(session);
-        log.info("WebSocket соединение закрыто. Всего соединений: {}", sessions.size());
+        ConflatingSessionSender sender = router.remove(session);
+        formats.remove(session);
+        if (sender != null) {
+            sender.close();
+        }
+        log.info("WebSocket соединение закрыто. Всего соединений: {}", router.size());
 
         // Отписываемся от обновлений котировок, если нет активных соединений
-        if (sessions.isEmpty()) {
-            this.quoteScannerService.unsubscribeFromQuotes(this::broadcastQuote);
+        if (router.isEmpty()) {
+            this.quoteScannerService.unsubscribeFromQuotes(quoteListener);
+            frameEncoder.clear();
             log.info("Unsubscribed from quote updates - no active WebSocket connections");
         }
     }
@@ -81,64 +217,72 @@ public class QuoteWebSocketController implements WebSocketHandler {
      * Очистка неактивных WebSocket сессий
      */
     public void cleanupInactiveSessions() {
-        int initialSize = sessions.size();
-        var iterator = sessions.iterator();
-        while (iterator.hasNext()) {
-            WebSocketSession session = iterator.next();
-            if (!session.isOpen()) {
-                log.debug("Cleaning up inactive session: {}", session.getId());
-                iterator.remove();
-            }
+        List<ConflatingSessionSender> removed = router.removeClosed();
+        for (ConflatingSessionSender sender : removed) {
+            log.debug("Cleaning up inactive session: {}", sender.getSession().getId());
+            formats.remove(sender.getSession());
+            sender.close();
         }
-        int finalSize = sessions.size();
-        if (initialSize != finalSize) {
+        if (!removed.isEmpty()) {
             log.info("Cleaned up {} inactive WebSocket sessions. Active sessions: {}",
-                    initialSize - finalSize, finalSize);
+                    removed.size(), router.size());
         }
     }
 
-    private void broadcastQuote(QuoteData quoteData) {
+    /**
+     * Статистика исходящих очередей по сессиям (отставание, слитые и отброшенные сообщения)
+     */
+    public List<Map<String, Object>> getSessionStats() {
+        List<Map<String, Object>> stats = new ArrayList<>(router.size());
+        for (ConflatingSessionSender sender : router.senders()) {
+            Map<String, Object> sessionStats = sender.getStats();
+            sessionStats.put("format", formatOf(sender));
+            stats.add(sessionStats);
+        }
+        return stats;
+    }
 
-        log.debug("Broadcasting quote data: {} to {} sessions", quoteData, sessions.size());
+    private void broadcastQuote(QuoteData quoteData) {
 
-        if (sessions.isEmpty()) {
-            log.debug("No WebSocket sessions available for broadcasting");
+        // Получатели по подпискам; котировки без подписчиков не сериализуются
+        ConflatingSessionSender[] recipients = router.route(quoteData.getFigi());
+        if (recipients.length == 0) {
+            log.debug("No WebSocket sessions subscribed to {}", quoteData.getFigi());
             return;
         }
 
         try {
-            String json = objectMapper.writeValueAsString(quoteData);
-            TextMessage message = new TextMessage(json);
-            log.debug("Serialized quote data: {}", json);
-
-            // Отправляем всем подключенным клиентам
-            int sentCount = 0;
-            // Создаем копию для безопасной итерации
-            Set<WebSocketSession> sessionsCopy = new java.util.HashSet<>(sessions);
-            for (WebSocketSession session : sessionsCopy) {
-                if (session.isOpen()) {
-                    try {
-                        // Синхронизируем отправку сообщения
-                        synchronized (session) {
-                            session.sendMessage(message);
-                        }
-                        sentCount++;
-                        log.debug("Quote data sent to session: {}", session.getId());
-                    } catch (Exception e) {
-                        log.error("Ошибка отправки сообщения клиенту, удаляем сессию: {}",
-                                session.getId(), e);
-                        // Безопасное удаление из CopyOnWriteArraySet
-                        sessions.remove(session);
-                    }
-                } else {
-                    log.debug("Removing closed session: {}", session.getId());
-                    // Безопасное удаление из CopyOnWriteArraySet
-                    sessions.remove(session);
+            // Кадр общий для всех сессий; каждый вид сериализуется не больше одного раза
+            boolean json = false;
+            for (ConflatingSessionSender sender : recipients) {
+                if (formatOf(sender) != WireFormat.BINARY) {
+                    json = true;
+                    break;
                 }
             }
-            log.debug("Quote data sent to {} sessions", sentCount);
+            QuoteFrameEncoder.QuoteFrame frame = frameEncoder.encode(quoteData, json);
+
+            // Ставим в очереди сессий; отправка выполняется в webSocketSendExecutor.
+            // Закрытые сессии удаляются в afterConnectionClosed и cleanupInactiveSessions
+            int queuedCount = 0;
+            for (ConflatingSessionSender sender : recipients) {
+                if (sender.isClosed()) {
+                    continue;
+                }
+                switch (formatOf(sender)) {
+                    case DELTA -> sender.enqueue(quoteData.getFigi(), frame);
+                    case BINARY -> sender.enqueue(quoteData.getFigi(), frame.binary());
+                    default -> sender.enqueue(quoteData.getFigi(), frame.plain());
+                }
+                queuedCount++;
+            }
+            log.debug("Quote data queued for {} sessions", queuedCount);
         } catch (Exception e) {
             log.error("Ошибка сериализации данных котировки", e);
         }
     }
+
+    private WireFormat formatOf(ConflatingSessionSender sender) {
+        return formats.getOrDefault(sender.getSession(), WireFormat.JSON);
+    }
 }
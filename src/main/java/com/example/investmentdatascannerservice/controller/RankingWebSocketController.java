@@ -0,0 +1,203 @@
+package com.example.investmentdatascannerservice.controller;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Consumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import com.example.investmentdatascannerservice.dto.LeaderboardUpdate;
+import com.example.investmentdatascannerservice.service.QuoteRankingService;
+import com.example.investmentdatascannerservice.utils.InstrumentCatalog;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * WebSocket контроллер для трансляции рейтингов инструментов (/ws/rankings)
+ *
+ * Клиент выбирает тип инструментов сообщением {"action":"subscribe","profile":"morning"} или
+ * {"action":"subscribe","type":"SHARE"}, сразу получает текущие рейтинги этого типа и затем только
+ * изменившиеся (см. {@link QuoteRankingService}). Каждое сообщение - {@link LeaderboardUpdate};
+ * ожидающие обновления одного рейтинга сливаются в последнее.
+ */
+@Component
+public class RankingWebSocketController implements WebSocketHandler {
+
+    private static final Logger log = LoggerFactory.getLogger(RankingWebSocketController.class);
+
+    private final List<ConflatingSessionSender> senders = new CopyOnWriteArrayList<>();
+    private final Map<WebSocketSession, InstrumentCatalog.Type> types = new ConcurrentHashMap<>();
+    private final QuoteRankingService rankingService;
+    private final ExecutorService webSocketSendExecutor;
+    private final ObjectMapper objectMapper;
+
+    // Постоянная ссылка на обработчик: подписка и отписка должны передавать один и тот же объект
+    private final Consumer<LeaderboardUpdate> leaderboardListener = this::broadcastLeaderboard;
+
+    public RankingWebSocketController(QuoteRankingService rankingService,
+            @Qualifier("webSocketSendExecutor") ExecutorService webSocketSendExecutor) {
+        this.rankingService = rankingService;
+        this.webSocketSendExecutor = webSocketSendExecutor;
+        this.objectMapper = new ObjectMapper();
+
+        // Настраиваем ObjectMapper для работы с LocalDateTime
+        this.objectMapper.findAndRegisterModules();
+    }
+
+    @Override
+    public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+        senders.add(new ConflatingSessionSender(session, webSocketSendExecutor,
+                ConflatingSessionSender.DEFAULT_CAPACITY));
+        log.info("WebSocket соединение для рейтингов установлено. Всего соединений: {}",
+                senders.size());
+
+        // Публикация рейтингов нужна только при наличии соединений
+        if (senders.size() == 1) {
+            rankingService.subscribe(leaderboardListener);
+        }
+    }
+
+    @Override
+    public void handleMessage(WebSocketSession session, WebSocketMessage<?> message)
+            throws Exception {
+        log.debug("Получено сообщение от клиента рейтингов: {}", message.getPayload());
+        if (!(message instanceof TextMessage textMessage)) {
+            return;
+        }
+        try {
+            JsonNode request = objectMapper.readTree(textMessage.getPayload());
+            if (!"subscribe".equals(request.path("action").asText(""))) {
+                return;
+            }
+            InstrumentCatalog.Type type = request.hasNonNull("profile")
+                    ? QuoteSubscriptionRouter.Profile
+                            .valueOf(request.get("profile").asText().toUpperCase(Locale.ROOT))
+                            .getRankedType()
+                    : InstrumentCatalog.Type
+                            .valueOf(request.path("type").asText().toUpperCase(Locale.ROOT));
+            subscribe(session, type);
+        } catch (Exception e) {
+            log.warn("Некорректное сообщение от клиента рейтингов {}: {}", session.getId(),
+                    e.getMessage());
+        }
+    }
+
+    @Override
+    public void handleTransportError(WebSocketSession session, Throwable exception)
+            throws Exception {
+        log.error("Ошибка WebSocket транспорта для рейтингов", exception);
+    }
+
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus closeStatus)
+            throws Exception {
+        types.remove(session);
+        senders.removeIf(sender -> {
+            if (sender.getSession() == session) {
+                sender.close();
+                return true;
+            }
+            return false;
+        });
+        log.info("WebSocket соединение для рейтингов закрыто. Всего соединений: {}",
+                senders.size());
+        if (senders.isEmpty()) {
+            rankingService.unsubscribe(leaderboardListener);
+        }
+    }
+
+    @Override
+    public boolean supportsPartialMessages() {
+        return false;
+    }
+
+    /**
+     * Очистка неактивных WebSocket сессий
+     */
+    public void cleanupInactiveSessions() {
+        senders.removeIf(sender -> {
+            if (sender.isClosed()) {
+                log.debug("Removed inactive ranking session: {}", sender.getSession().getId());
+                types.remove(sender.getSession());
+                sender.close();
+                return true;
+            }
+            return false;
+        });
+        if (senders.isEmpty()) {
+            rankingService.unsubscribe(leaderboardListener);
+        }
+    }
+
+    /**
+     * Статистика исходящих очередей по сессиям
+     */
+    public List<Map<String, Object>> getSessionStats() {
+        List<Map<String, Object>> stats = new ArrayList<>(senders.size());
+        for (ConflatingSessionSender sender : senders) {
+            Map<String, Object> sessionStats = sender.getStats();
+            sessionStats.put("type", types.get(sender.getSession()));
+            stats.add(sessionStats);
+        }
+        return stats;
+    }
+
+    private void subscribe(WebSocketSession session, InstrumentCatalog.Type type) {
+        ConflatingSessionSender sender = findSender(session);
+        if (sender == null) {
+            return;
+        }
+        types.put(session, type);
+        log.info("Ranking session {} subscribed to {}", session.getId(), type);
+
+        // Текущее состояние рейтингов; дальше приходят только изменения
+        for (LeaderboardUpdate board : rankingService.getLeaderboards(type)) {
+            try {
+                sender.enqueue(board.board(),
+                        new TextMessage(objectMapper.writeValueAsBytes(board)));
+            } catch (Exception e) {
+                log.error("Ошибка сериализации рейтинга {}", board.board(), e);
+            }
+        }
+    }
+
+    private ConflatingSessionSender findSender(WebSocketSession session) {
+        for (ConflatingSessionSender sender : senders) {
+            if (sender.getSession() == session) {
+                return sender;
+            }
+        }
+        return null;
+    }
+
+    private void broadcastLeaderboard(LeaderboardUpdate update) {
+        TextMessage message = null;
+        for (ConflatingSessionSender sender : senders) {
+            if (sender.isClosed()
+                    || !update.type().equals(String.valueOf(types.get(sender.getSession())))) {
+                continue;
+            }
+            try {
+                // Сериализуем один раз и только если есть получатели
+                if (message == null) {
+                    message = new TextMessage(objectMapper.writeValueAsBytes(update));
+                }
+                sender.enqueue(update.board(), message);
+            } catch (Exception e) {
+                log.error("Ошибка сериализации рейтинга {}", update.board(), e);
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.example.investmentdatascannerservice.controller;
+
+import java.util.Locale;
+
+/**
+ * Формат сообщений WebSocket сессии, выбираемый клиентом сообщением
+ * {"action":"format","format":"json|delta|binary"}
+ */
+enum WireFormat {
+
+    /** Полный JSON объект на каждое обновление (по умолчанию) */
+    JSON,
+
+    /** JSON снимок и затем только изменившиеся поля (см. {@link QuoteFrameEncoder}) */
+    DELTA,
+
+    /** Двоичные записи (см. {@link BinaryFrames}) */
+    BINARY;
+
+    /**
+     * Формат по имени без учета регистра (JSON для неизвестного имени)
+     */
+    static WireFormat parse(String name) {
+        try {
+            return valueOf(name.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return JSON;
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.example.investmentdatascannerservice.dto;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+import com.fasterxml.jackson.annotation.JsonFormat;
+
+/**
+ * Сравнения акций с фьючерсами по базовым активам (акция - ближний, акция - дальний, ближний -
+ * дальний), каждый список отсортирован по спреду по убыванию
+ *
+ * keyRate - ключевая ставка (% годовых), по которой считалось справедливое расхождение.
+ */
+public record FuturesBasisUpdate(List<Basis> stockNear, List<Basis> stockFar,
+        List<Basis> nearFar, double keyRate,
+        @JsonFormat(pattern = "yyyy-MM-dd'T'HH:mm:ss") LocalDateTime timestamp) {
+
+    /**
+     * Сравнение двух инструментов одного базового актива
+     *
+     * first - акция или ближний фьючерс, second - фьючерс. lotSize - количество базового актива в
+     * фьючерсе second (для сравнения акции с фьючерсом) или first. spreadPercent - расхождение
+     * цен в процентах, annualizedSpread - оно же в процентах годовых, fairSpread - справедливое
+     * расхождение по ключевой ставке за daysToExpiration дней, delta - отклонение спреда от
+     * справедливого. Проценты округлены до 4 знаков.
+     */
+    public record Basis(String baseAsset, String firstFigi, String firstTicker,
+            String secondFigi, String secondTicker, BigDecimal firstPrice, BigDecimal secondPrice,
+            BigDecimal lotSize, long daysToExpiration, BigDecimal spreadPercent,
+            BigDecimal annualizedSpread, BigDecimal fairSpread, BigDecimal delta,
+            @JsonFormat(pattern = "yyyy-MM-dd'T'HH:mm:ss") LocalDateTime timestamp) {
+    }
+}
@@ -0,0 +1,24 @@
+package com.example.investmentdatascannerservice.dto;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+import com.fasterxml.jackson.annotation.JsonFormat;
+
+/**
+ * Состояние одного рейтинга инструментов (топ-N по метрике)
+ *
+ * board - идентификатор рейтинга вида "SHARE:CHANGE_CLOSE:TOP". value - значение метрики: для
+ * изменений и спреда в процентах, для объема в лотах.
+ */
+public record LeaderboardUpdate(String board, String type, String metric, String side,
+        List<Entry> entries,
+        @JsonFormat(pattern = "yyyy-MM-dd'T'HH:mm:ss") LocalDateTime timestamp) {
+
+    /**
+     * Позиция рейтинга
+     */
+    public record Entry(String figi, String ticker, String instrumentName, BigDecimal value,
+            BigDecimal currentPrice) {
+    }
+}
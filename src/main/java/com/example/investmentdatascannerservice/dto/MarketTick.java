@@ -0,0 +1,63 @@
+package com.example.investmentdatascannerservice.dto;
+
+/**
+ * Декодированное рыночное событие (LastPrice, Trade или OrderBook)
+ *
+ * Создается один раз на каждый MarketDataResponse и переиспользуется всеми потребителями. Цены
+ * хранятся как long с масштабом 10^9 (units * 10^9 + nano, как в Quotation), время - в
+ * наносекундах от эпохи. Для OrderBook заполняются только поля лучших BID/ASK. instrumentId -
+ * плотный числовой идентификатор инструмента из InstrumentRegistry.
+ */
+public record MarketTick(String figi, int instrumentId, Type type, long price,
+        long timestampNanos, long quantity, Direction direction, long bestBid, long bestAsk,
+        long bestBidQuantity, long bestAskQuantity) {
+
+    /**
+     * Тип рыночного события
+     */
+    public enum Type {
+        LAST_PRICE, TRADE, ORDER_BOOK
+    }
+
+    /**
+     * Направление сделки
+     */
+    public enum Direction {
+        BUY, SELL, UNSPECIFIED
+    }
+
+    /**
+     * Событие последней цены
+     */
+    public static MarketTick lastPrice(String figi, int instrumentId, long price,
+            long timestampNanos) {
+        return new MarketTick(figi, instrumentId, Type.LAST_PRICE, price, timestampNanos, 0L,
+                Direction.UNSPECIFIED, 0L, 0L, 0L, 0L);
+    }
+
+    /**
+     * Событие сделки
+     */
+    public static MarketTick trade(String figi, int instrumentId, long price, long timestampNanos,
+            long quantity, Direction direction) {
+        return new MarketTick(figi, instrumentId, Type.TRADE, price, timestampNanos, quantity,
+                direction, 0L, 0L, 0L, 0L);
+    }
+
+    /**
+     * Событие стакана (только лучшие BID/ASK)
+     */
+    public static MarketTick orderBook(String figi, int instrumentId, long timestampNanos,
+            long bestBid, long bestBidQuantity, long bestAsk, long bestAskQuantity) {
+        return new MarketTick(figi, instrumentId, Type.ORDER_BOOK, 0L, timestampNanos, 0L,
+                Direction.UNSPECIFIED, bestBid, bestAsk, bestBidQuantity, bestAskQuantity);
+    }
+
+    /**
+     * Копия события с другим количеством (для объединенных сделок)
+     */
+    public MarketTick withQuantity(long newQuantity) {
+        return new MarketTick(figi, instrumentId, type, price, timestampNanos, newQuantity,
+                direction, bestBid, bestAsk, bestBidQuantity, bestAskQuantity);
+    }
+}
@@ -2,32 +2,37 @@ package com.example.investmentdatascannerservice.dto;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import com.example.investmentdatascannerservice.utils.FixedPoint;
 import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.Getter;
 
 /**
  * DTO для хранения данных о котировке инструмента Оптимизирован для максимальной производительности
  * и минимальных задержек
+ *
+ * Цены хранятся как long с фиксированной точкой (см. {@link FixedPoint}), изменения в процентах -
+ * в базисных пунктах. В BigDecimal они переводятся только в геттерах при сериализации в JSON.
  */
 @Getter
 public class QuoteData {
     private final String figi;
     private final String ticker;
     private final String instrumentName;
-    private final BigDecimal currentPrice;
-    private final BigDecimal previousPrice;
-    private final BigDecimal priceChange;
-    private final BigDecimal priceChangePercent;
-    private final BigDecimal closePrice; // Цена закрытия за предыдущий день
-    private final BigDecimal openPrice; // Цена открытия
-    private final BigDecimal closePriceChange; // Изменение от цены закрытия
-    private final BigDecimal closePriceChangePercent; // Изменение в % от основной сессии
-    private final BigDecimal closePriceOS; // Цена закрытия основной сессии
-    private final BigDecimal closePriceVS; // Цена закрытия вечерней сессии
-    private final BigDecimal closePriceVSChange; // Изменение от цены закрытия вечерней сессии
-    private final BigDecimal closePriceVSChangePercent; // Изменение в % от вечерней сессии
-    private final BigDecimal bestBid; // Лучший BID
-    private final BigDecimal bestAsk; // Лучший ASK
+    private final long currentPrice;
+    private final long previousPrice;
+    private final long priceChange;
+    private final long priceChangePercent; // в базисных пунктах
+    private final long closePrice; // Цена закрытия за предыдущий день
+    private final long openPrice; // Цена открытия
+    private final long closePriceChange; // Изменение от цены закрытия
+    private final long closePriceChangePercent; // Изменение в % от основной сессии (б.п.)
+    private final long closePriceOS; // Цена закрытия основной сессии
+    private final long closePriceVS; // Цена закрытия вечерней сессии
+    private final long closePriceVSChange; // Изменение от цены закрытия вечерней сессии
+    private final long closePriceVSChangePercent; // Изменение в % от вечерней сессии (б.п.)
+    private final long bestBid; // Лучший BID
+    private final long bestAsk; // Лучший ASK
     private final long bestBidQuantity; // Количество лотов лучшего BID
     private final long bestAskQuantity; // Количество лотов лучшего ASK
     @JsonFormat(pattern = "yyyy-MM-dd'T'HH:mm:ss")
@@ -39,27 +44,43 @@ public class QuoteData {
     private final String direction;
     private final boolean shortEnabled; // признак доступности шорта
     private final boolean hasDividend; // признак дивидендного события (declared_date >= now-1d)
+    @JsonIgnore
+    private final long sequence; // номер снимка InstrumentState (0 - неизвестен)
 
     public QuoteData(String figi, String ticker, String instrumentName, BigDecimal currentPrice,
             BigDecimal previousPrice, LocalDateTime timestamp, long volume, String direction) {
-        this(figi, ticker, instrumentName, currentPrice, previousPrice, null, null, null, null,
-                null, null, 0, 0, timestamp, volume, volume, direction, null, null, false, false);
+        this(figi, ticker, instrumentName, currentPrice, previousPrice, null, timestamp, volume,
+                direction);
     }
 
     public QuoteData(String figi, String ticker, String instrumentName, BigDecimal currentPrice,
             BigDecimal previousPrice, BigDecimal closePrice, LocalDateTime timestamp, long volume,
             String direction) {
-        this(figi, ticker, instrumentName, currentPrice, previousPrice, closePrice, null, null,
-                null, null, null, 0, 0, timestamp, volume, volume, direction, null, null, false,
+        this(figi, ticker, instrumentName, FixedPoint.fromDecimal(currentPrice),
+                FixedPoint.fromDecimal(previousPrice), FixedPoint.fromDecimal(closePrice),
+                FixedPoint.NONE, FixedPoint.NONE, FixedPoint.NONE, FixedPoint.NONE,
+                FixedPoint.NONE, 0, 0, timestamp, volume, volume, direction, null, null, false,
                 false);
     }
 
-    public QuoteData(String figi, String ticker, String instrumentName, BigDecimal currentPrice,
-            BigDecimal previousPrice, BigDecimal closePrice, BigDecimal openPrice,
-            BigDecimal closePriceOS, BigDecimal closePriceVS, BigDecimal bestBid,
-            BigDecimal bestAsk, long bestBidQuantity, long bestAskQuantity, LocalDateTime timestamp,
-            long volume, long totalVolume, String direction, BigDecimal avgVolumeMorning,
-            BigDecimal avgVolumeWeekend, boolean shortEnabled, boolean hasDividend) {
+    public QuoteData(String figi, String ticker, String instrumentName, long currentPrice,
+            long previousPrice, long closePrice, long openPrice, long closePriceOS,
+            long closePriceVS, long bestBid, long bestAsk, long bestBidQuantity,
+            long bestAskQuantity, LocalDateTime timestamp, long volume, long totalVolume,
+            String direction, BigDecimal avgVolumeMorning, BigDecimal avgVolumeWeekend,
+            boolean shortEnabled, boolean hasDividend) {
+        this(figi, ticker, instrumentName, currentPrice, previousPrice, closePrice, openPrice,
+                closePriceOS, closePriceVS, bestBid, bestAsk, bestBidQuantity, bestAskQuantity,
+                timestamp, volume, totalVolume, direction, avgVolumeMorning, avgVolumeWeekend,
+                shortEnabled, hasDividend, 0L);
+    }
+
+    public QuoteData(String figi, String ticker, String instrumentName, long currentPrice,
+            long previousPrice, long closePrice, long openPrice, long closePriceOS,
+            long closePriceVS, long bestBid, long bestAsk, long bestBidQuantity,
+            long bestAskQuantity, LocalDateTime timestamp, long volume, long totalVolume,
+            String direction, BigDecimal avgVolumeMorning, BigDecimal avgVolumeWeekend,
+            boolean shortEnabled, boolean hasDividend, long sequence) {
         this.figi = figi;
         this.ticker = ticker;
         this.instrumentName = instrumentName;
@@ -81,46 +102,163 @@ public class QuoteData {
         this.direction = direction;
         this.shortEnabled = shortEnabled;
         this.hasDividend = hasDividend;
+        this.sequence = sequence;
+
+        boolean hasCurrentPrice = FixedPoint.isPresent(currentPrice);
 
         // Вычисляем разницу в цене от предыдущей цены
-        if (previousPrice != null && previousPrice.compareTo(BigDecimal.ZERO) > 0) {
-            this.priceChange = currentPrice.subtract(previousPrice);
-            this.priceChangePercent =
-                    this.priceChange.divide(previousPrice, 4, java.math.RoundingMode.HALF_UP)
-                            .multiply(BigDecimal.valueOf(100));
+        if (hasCurrentPrice && FixedPoint.isPositive(previousPrice)) {
+            this.priceChange = currentPrice - previousPrice;
+            this.priceChangePercent = FixedPoint.changeBasisPoints(priceChange, previousPrice);
         } else {
-            this.priceChange = BigDecimal.ZERO;
-            this.priceChangePercent = BigDecimal.ZERO;
+            this.priceChange = 0L;
+            this.priceChangePercent = 0L;
         }
 
         // Вычисляем изменение от цены закрытия
-        if (closePrice != null && closePrice.compareTo(BigDecimal.ZERO) > 0) {
-            this.closePriceChange = currentPrice.subtract(closePrice);
+        if (hasCurrentPrice && FixedPoint.isPositive(closePrice)) {
+            this.closePriceChange = currentPrice - closePrice;
             this.closePriceChangePercent =
-                    this.closePriceChange.divide(closePrice, 4, java.math.RoundingMode.HALF_UP)
-                            .multiply(BigDecimal.valueOf(100));
+                    FixedPoint.changeBasisPoints(closePriceChange, closePrice);
         } else {
-            this.closePriceChange = BigDecimal.ZERO;
-            this.closePriceChangePercent = BigDecimal.ZERO;
+            this.closePriceChange = 0L;
+            this.closePriceChangePercent = 0L;
         }
 
         // Вычисляем изменение от цены закрытия вечерней сессии
-        if (closePriceVS != null && closePriceVS.compareTo(BigDecimal.ZERO) > 0) {
-            this.closePriceVSChange = currentPrice.subtract(closePriceVS);
+        if (hasCurrentPrice && FixedPoint.isPositive(closePriceVS)) {
+            this.closePriceVSChange = currentPrice - closePriceVS;
             this.closePriceVSChangePercent =
-                    this.closePriceVSChange.divide(closePriceVS, 4, java.math.RoundingMode.HALF_UP)
-                            .multiply(BigDecimal.valueOf(100));
+                    FixedPoint.changeBasisPoints(closePriceVSChange, closePriceVS);
         } else {
-            this.closePriceVSChange = BigDecimal.ZERO;
-            this.closePriceVSChangePercent = BigDecimal.ZERO;
+            this.closePriceVSChange = 0L;
+            this.closePriceVSChangePercent = 0L;
         }
     }
 
+    // Геттеры для JSON: перевод в BigDecimal только на границе сериализации
+
+    public BigDecimal getCurrentPrice() {
+        return FixedPoint.toDecimal(currentPrice);
+    }
+
+    public BigDecimal getPreviousPrice() {
+        return FixedPoint.toDecimal(previousPrice);
+    }
+
+    public BigDecimal getPriceChange() {
+        return FixedPoint.toDecimal(priceChange);
+    }
+
+    public BigDecimal getPriceChangePercent() {
+        return FixedPoint.basisPointsToPercent(priceChangePercent);
+    }
+
+    public BigDecimal getClosePrice() {
+        return FixedPoint.toDecimal(closePrice);
+    }
+
+    public BigDecimal getOpenPrice() {
+        return FixedPoint.toDecimal(openPrice);
+    }
+
+    public BigDecimal getClosePriceChange() {
+        return FixedPoint.toDecimal(closePriceChange);
+    }
+
+    public BigDecimal getClosePriceChangePercent() {
+        return FixedPoint.basisPointsToPercent(closePriceChangePercent);
+    }
+
+    public BigDecimal getClosePriceOS() {
+        return FixedPoint.toDecimal(closePriceOS);
+    }
+
+    public BigDecimal getClosePriceVS() {
+        return FixedPoint.toDecimal(closePriceVS);
+    }
+
+    public BigDecimal getClosePriceVSChange() {
+        return FixedPoint.toDecimal(closePriceVSChange);
+    }
+
+    public BigDecimal getClosePriceVSChangePercent() {
+        return FixedPoint.basisPointsToPercent(closePriceVSChangePercent);
+    }
+
+    public BigDecimal getBestBid() {
+        return FixedPoint.toDecimal(bestBid);
+    }
+
+    public BigDecimal getBestAsk() {
+        return FixedPoint.toDecimal(bestAsk);
+    }
+
+    // Доступ к ценам с фиксированной точкой без создания объектов (не сериализуется в JSON)
+
+    public long currentPriceScaled() {
+        return currentPrice;
+    }
+
+    public long closePriceScaled() {
+        return closePrice;
+    }
+
+    public long closePriceVSScaled() {
+        return closePriceVS;
+    }
+
+    public long bestBidScaled() {
+        return bestBid;
+    }
+
+    public long bestAskScaled() {
+        return bestAsk;
+    }
+
+    public long previousPriceScaled() {
+        return previousPrice;
+    }
+
+    public long priceChangeScaled() {
+        return priceChange;
+    }
+
+    public long openPriceScaled() {
+        return openPrice;
+    }
+
+    public long closePriceChangeScaled() {
+        return closePriceChange;
+    }
+
+    public long closePriceOSScaled() {
+        return closePriceOS;
+    }
+
+    public long closePriceVSChangeScaled() {
+        return closePriceVSChange;
+    }
+
+    // Изменения в базисных пунктах
+
+    public long priceChangeBasisPoints() {
+        return priceChangePercent;
+    }
+
+    public long closePriceChangeBasisPoints() {
+        return closePriceChangePercent;
+    }
+
+    public long closePriceVSChangeBasisPoints() {
+        return closePriceVSChangePercent;
+    }
+
     @Override
     public String toString() {
         return String.format(
                 "QuoteData{figi='%s', price=%s, change=%s (%.2f%%), closeChange=%s (%.2f%%), time=%s}",
-                figi, currentPrice, priceChange, priceChangePercent, closePriceChange,
-                closePriceChangePercent, timestamp);
+                figi, getCurrentPrice(), getPriceChange(), getPriceChangePercent(),
+                getClosePriceChange(), getClosePriceChangePercent(), timestamp);
     }
 }
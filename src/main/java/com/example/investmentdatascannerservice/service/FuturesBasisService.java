@@ -0,0 +1,374 @@
+package com.example.investmentdatascannerservice.service;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import com.example.investmentdatascannerservice.config.QuoteScannerConfig;
+import com.example.investmentdatascannerservice.dto.FuturesBasisUpdate;
+import com.example.investmentdatascannerservice.dto.QuoteData;
+import com.example.investmentdatascannerservice.entity.FutureEntity;
+import com.example.investmentdatascannerservice.utils.FixedPoint;
+import com.example.investmentdatascannerservice.utils.InstrumentCatalog;
+import com.example.investmentdatascannerservice.utils.InstrumentCatalogService;
+import jakarta.annotation.PostConstruct;
+
+/**
+ * Расчет расхождений акций и фьючерсов по базовым активам для сканера фьючерсов
+ *
+ * Фьючерсы группируются по базовому активу один раз на версию справочника и дату: акция - по
+ * тикеру, равному базовому активу, ближний фьючерс - ближайший неистекший, дальний - фьючерс
+ * следующего квартала. Котировки только отмечают затронутые группы, пересчет и публикация
+ * выполняются раз в {@link #PUBLISH_INTERVAL_MS} для изменившихся групп.
+ *
+ * Формулы совпадают со страницей сканера: спред акция - фьючерс = (фьючерс / (акция * лотность) -
+ * 1) * 100, ближний - дальний = (дальний / ближний - 1) * 100, справедливое расхождение =
+ * ключевая ставка / 365 * дни до экспирации (для пары фьючерсов - разница дней).
+ */
+@Service
+public class FuturesBasisService {
+
+    private static final Logger log = LoggerFactory.getLogger(FuturesBasisService.class);
+
+    /** Интервал пересчета и публикации */
+    static final long PUBLISH_INTERVAL_MS = 250;
+
+    /** Лотность фьючерса, если она не указана в справочнике */
+    private static final BigDecimal DEFAULT_LOT_SIZE = BigDecimal.valueOf(100);
+
+    private static final int PERCENT_SCALE = 4;
+    private static final double DAYS_IN_YEAR = 365.0;
+
+    private static final Comparator<FuturesBasisUpdate.Basis> BY_SPREAD_DESC = Comparator
+            .comparing(FuturesBasisUpdate.Basis::spreadPercent).reversed()
+            .thenComparing(FuturesBasisUpdate.Basis::baseAsset);
+
+    /**
+     * Инструменты базового актива (stockFigi и farFigi могут быть null)
+     */
+    private record Group(String baseAsset, String stockFigi, Leg near, Leg far) {
+    }
+
+    /**
+     * Фьючерс группы: FIGI, дата экспирации и лотность
+     */
+    private record Leg(String figi, LocalDate expiration, BigDecimal lotSize) {
+    }
+
+    /**
+     * Группы, построенные по версии справочника на дату
+     */
+    private record Groups(long catalogVersion, LocalDate date, Map<String, Group> byAsset,
+            Map<String, List<String>> assetsByFigi) {
+    }
+
+    /**
+     * Последние сравнения группы (null - сравнение недоступно)
+     */
+    private record Result(FuturesBasisUpdate.Basis stockNear, FuturesBasisUpdate.Basis stockFar,
+            FuturesBasisUpdate.Basis nearFar) {
+    }
+
+    private final QuoteScannerService quoteScannerService;
+    private final InstrumentCatalogService catalogService;
+    private final QuoteScannerConfig config;
+
+    private volatile Groups groups = new Groups(-1L, LocalDate.MIN, Map.of(), Map.of());
+    private final Map<String, QuoteData> latest = new ConcurrentHashMap<>();
+    private final Set<String> dirty = ConcurrentHashMap.newKeySet();
+
+    // Доступ только из publishChanges
+    private final Map<String, Result> results = new HashMap<>();
+    private volatile FuturesBasisUpdate snapshot;
+
+    @SuppressWarnings("unchecked")
+    private volatile Consumer<FuturesBasisUpdate>[] subscribers = new Consumer[0];
+    private final Consumer<QuoteData> quoteListener = this::onQuote;
+
+    public FuturesBasisService(QuoteScannerService quoteScannerService,
+            InstrumentCatalogService catalogService, QuoteScannerConfig config) {
+        this.quoteScannerService = quoteScannerService;
+        this.catalogService = catalogService;
+        this.config = config;
+    }
+
+    @PostConstruct
+    public void init() {
+        quoteScannerService.subscribeToQuotes(quoteListener);
+        log.info("FuturesBasisService subscribed to quotes");
+    }
+
+    /**
+     * Подписка на пересчитанные сравнения
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized void subscribe(Consumer<FuturesBasisUpdate> subscriber) {
+        if (Arrays.asList(subscribers).contains(subscriber)) {
+            return;
+        }
+        Consumer<FuturesBasisUpdate>[] next = Arrays.copyOf(subscribers, subscribers.length + 1);
+        next[subscribers.length] = subscriber;
+        subscribers = next;
+    }
+
+    @SuppressWarnings("unchecked")
+    public synchronized void unsubscribe(Consumer<FuturesBasisUpdate> subscriber) {
+        subscribers = Arrays.stream(subscribers).filter(s -> s != subscriber)
+                .toArray(Consumer[]::new);
+    }
+
+    /**
+     * Последние опубликованные сравнения (null до первого расчета)
+     */
+    public FuturesBasisUpdate getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Пересчет изменившихся групп и публикация результата
+     */
+    @Scheduled(fixedDelay = PUBLISH_INTERVAL_MS)
+    public void publishChanges() {
+        Groups current = refreshGroups();
+        if (dirty.isEmpty()) {
+            return;
+        }
+
+        double keyRate = config.getKeyRate();
+        for (String asset : drainDirty()) {
+            Group group = current.byAsset().get(asset);
+            if (group == null) {
+                results.remove(asset);
+                continue;
+            }
+            results.put(asset, calculate(group, current.date(), keyRate));
+        }
+
+        List<FuturesBasisUpdate.Basis> stockNear = new ArrayList<>();
+        List<FuturesBasisUpdate.Basis> stockFar = new ArrayList<>();
+        List<FuturesBasisUpdate.Basis> nearFar = new ArrayList<>();
+        for (Result result : results.values()) {
+            addIfPresent(stockNear, result.stockNear());
+            addIfPresent(stockFar, result.stockFar());
+            addIfPresent(nearFar, result.nearFar());
+        }
+        stockNear.sort(BY_SPREAD_DESC);
+        stockFar.sort(BY_SPREAD_DESC);
+        nearFar.sort(BY_SPREAD_DESC);
+
+        FuturesBasisUpdate update = new FuturesBasisUpdate(stockNear, stockFar, nearFar, keyRate,
+                LocalDateTime.now());
+        snapshot = update;
+        for (Consumer<FuturesBasisUpdate> subscriber : subscribers) {
+            try {
+                subscriber.accept(update);
+            } catch (Exception e) {
+                log.warn("Error notifying futures basis subscriber", e);
+            }
+        }
+    }
+
+    /**
+     * Статистика расчета
+     */
+    public Map<String, Object> getStats() {
+        Groups current = groups;
+        FuturesBasisUpdate last = snapshot;
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("catalogVersion", current.catalogVersion());
+        stats.put("groups", current.byAsset().size());
+        stats.put("instruments", latest.size());
+        stats.put("subscribers", subscribers.length);
+        stats.put("stockNear", last != null ? last.stockNear().size() : 0);
+        stats.put("stockFar", last != null ? last.stockFar().size() : 0);
+        stats.put("nearFar", last != null ? last.nearFar().size() : 0);
+        return stats;
+    }
+
+    private void onQuote(QuoteData quoteData) {
+        List<String> assets = groups.assetsByFigi().get(quoteData.getFigi());
+        if (assets == null || !FixedPoint.isPositive(quoteData.currentPriceScaled())) {
+            return;
+        }
+        latest.put(quoteData.getFigi(), quoteData);
+        dirty.addAll(assets);
+    }
+
+    private List<String> drainDirty() {
+        List<String> assets = new ArrayList<>(dirty.size());
+        for (String asset : dirty) {
+            // Удаляем по одному: отметки, добавленные во время обхода, не теряются
+            if (dirty.remove(asset)) {
+                assets.add(asset);
+            }
+        }
+        return assets;
+    }
+
+    /**
+     * Перестроить группы при смене справочника или даты (меняются ближние фьючерсы и дни)
+     */
+    private Groups refreshGroups() {
+        InstrumentCatalog catalog = catalogService.current();
+        LocalDate today = LocalDate.now();
+        Groups current = groups;
+        if (current.catalogVersion() == catalog.getVersion() && current.date().equals(today)) {
+            return current;
+        }
+
+        Groups rebuilt = buildGroups(catalog, today);
+        groups = rebuilt;
+        results.clear();
+        dirty.addAll(rebuilt.byAsset().keySet());
+        log.info("Futures basis groups rebuilt: {} base assets (catalog version {})",
+                rebuilt.byAsset().size(), catalog.getVersion());
+        return rebuilt;
+    }
+
+    private static Groups buildGroups(InstrumentCatalog catalog, LocalDate today) {
+        Map<String, List<FutureEntity>> futuresByAsset = new HashMap<>();
+        for (FutureEntity future : catalog.getFutures()) {
+            String asset = InstrumentCatalog.normalizeTicker(future.getBasicAsset());
+            if (asset == null || future.getExpirationDate() == null
+                    || future.getExpirationDate().toLocalDate().isBefore(today)) {
+                continue;
+            }
+            futuresByAsset.computeIfAbsent(asset, k -> new ArrayList<>()).add(future);
+        }
+
+        Map<String, Group> byAsset = new HashMap<>();
+        Map<String, List<String>> assetsByFigi = new HashMap<>();
+        futuresByAsset.forEach((asset, futures) -> {
+            futures.sort(Comparator.comparing(FutureEntity::getExpirationDate));
+            Leg near = leg(futures.get(0));
+            Leg far = null;
+            int nextQuarter = quarterIndex(near.expiration()) + 1;
+            for (FutureEntity candidate : futures) {
+                if (quarterIndex(candidate.getExpirationDate().toLocalDate()) == nextQuarter) {
+                    far = leg(candidate);
+                    break;
+                }
+            }
+            String stockFigi = findShareFigi(catalog, asset);
+
+            Group group = new Group(asset, stockFigi, near, far);
+            byAsset.put(asset, group);
+            index(assetsByFigi, stockFigi, asset);
+            index(assetsByFigi, near.figi(), asset);
+            index(assetsByFigi, far != null ? far.figi() : null, asset);
+        });
+        return new Groups(catalog.getVersion(), today, byAsset, assetsByFigi);
+    }
+
+    private static void index(Map<String, List<String>> assetsByFigi, String figi,
+            String asset) {
+        if (figi != null) {
+            assetsByFigi.computeIfAbsent(figi, k -> new ArrayList<>()).add(asset);
+        }
+    }
+
+    private static String findShareFigi(InstrumentCatalog catalog, String ticker) {
+        for (InstrumentCatalog.Instrument instrument : catalog.findInstrumentsByTicker(ticker)) {
+            if (instrument.type() == InstrumentCatalog.Type.SHARE) {
+                return instrument.figi();
+            }
+        }
+        return null;
+    }
+
+    private static Leg leg(FutureEntity future) {
+        BigDecimal lotSize = future.getBasicAssetSize();
+        if (lotSize == null || lotSize.signum() <= 0) {
+            lotSize = future.getLot() != null && future.getLot() > 0
+                    ? BigDecimal.valueOf(future.getLot())
+                    : DEFAULT_LOT_SIZE;
+        }
+        return new Leg(future.getFigi(), future.getExpirationDate().toLocalDate(), lotSize);
+    }
+
+    private static int quarterIndex(LocalDate date) {
+        return date.getYear() * 4 + (date.getMonthValue() - 1) / 3;
+    }
+
+    private Result calculate(Group group, LocalDate today, double keyRate) {
+        QuoteData stock = group.stockFigi() != null ? latest.get(group.stockFigi()) : null;
+        QuoteData near = latest.get(group.near().figi());
+        QuoteData far = group.far() != null ? latest.get(group.far().figi()) : null;
+
+        long nearDays = ChronoUnit.DAYS.between(today, group.near().expiration());
+        long farDays = group.far() != null
+                ? ChronoUnit.DAYS.between(today, group.far().expiration())
+                : 0;
+        return new Result(
+                stockVsFutures(group.baseAsset(), stock, near, group.near(), nearDays, keyRate),
+                stockVsFutures(group.baseAsset(), stock, far, group.far(), farDays, keyRate),
+                nearVsFar(group, near, far, farDays - nearDays, keyRate));
+    }
+
+    private static FuturesBasisUpdate.Basis stockVsFutures(String asset, QuoteData stock,
+            QuoteData futures, Leg leg, long days, double keyRate) {
+        if (stock == null || futures == null) {
+            return null;
+        }
+        double stockValue = price(stock) * leg.lotSize().doubleValue();
+        double spread = (price(futures) / stockValue - 1) * 100;
+        return basis(asset, stock, futures, leg.lotSize(), days, spread, keyRate);
+    }
+
+    private static FuturesBasisUpdate.Basis nearVsFar(Group group, QuoteData near, QuoteData far,
+            long days, double keyRate) {
+        if (near == null || far == null) {
+            return null;
+        }
+        double spread = (price(far) / price(near) - 1) * 100;
+        return basis(group.baseAsset(), near, far, group.near().lotSize(), days, spread, keyRate);
+    }
+
+    private static FuturesBasisUpdate.Basis basis(String asset, QuoteData first,
+            QuoteData second, BigDecimal lotSize, long days, double spread, double keyRate) {
+        double fairSpread = days > 0 ? keyRate / DAYS_IN_YEAR * days : 0;
+        double annualized = days > 0 ? spread * DAYS_IN_YEAR / days : 0;
+        return new FuturesBasisUpdate.Basis(asset, first.getFigi(), first.getTicker(),
+                second.getFigi(), second.getTicker(), first.getCurrentPrice(),
+                second.getCurrentPrice(), lotSize, days, percent(spread), percent(annualized),
+                percent(fairSpread), percent(spread - fairSpread),
+                latest(first.getTimestamp(), second.getTimestamp()));
+    }
+
+    private static LocalDateTime latest(LocalDateTime first, LocalDateTime second) {
+        if (first == null || second == null) {
+            return first != null ? first : second;
+        }
+        return first.isAfter(second) ? first : second;
+    }
+
+    private static double price(QuoteData quote) {
+        return (double) quote.currentPriceScaled() / FixedPoint.SCALE;
+    }
+
+    private static BigDecimal percent(double value) {
+        return BigDecimal.valueOf(value).setScale(PERCENT_SCALE, RoundingMode.HALF_UP);
+    }
+
+    private static void addIfPresent(List<FuturesBasisUpdate.Basis> list,
+            FuturesBasisUpdate.Basis basis) {
+        if (basis != null) {
+            list.add(basis);
+        }
+    }
+}
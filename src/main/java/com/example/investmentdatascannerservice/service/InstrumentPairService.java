@@ -2,13 +2,17 @@ package com.example.investmentdatascannerservice.service;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArraySet;
-import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
 import org.slf4j.Logger;
@@ -17,6 +21,8 @@ import org.springframework.stereotype.Service;
 import com.example.investmentdatascannerservice.config.InstrumentPairConfig;
 import com.example.investmentdatascannerservice.dto.InstrumentPair;
 import com.example.investmentdatascannerservice.dto.PairComparisonResult;
+import com.example.investmentdatascannerservice.dto.QuoteData;
+import com.example.investmentdatascannerservice.utils.FixedPoint;
 import com.example.investmentdatascannerservice.utils.InstrumentCacheService;
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
@@ -26,18 +32,57 @@ import jakarta.annotation.PreDestroy;
  * 
  * Обеспечивает отслеживание пар инструментов, получение последних цен и расчет дельт в реальном
  * времени с минимальными задержками.
+ *
+ * Пересчет управляется потоком обработанных котировок: котировка по инструменту пары только
+ * отмечает пару, а отмеченные пары пересчитываются раз в {@link #RECALC_INTERVAL_MS}. Серия
+ * котировок по одной ноге за интервал дает один пересчет по последним ценам.
+ *
+ * Публикация результата подчиняется политике пары ({@link PublishPolicy}): изменение дельты в
+ * процентах меньше порога не публикуется, а результат, пришедший раньше минимального интервала,
+ * откладывается до его истечения, причем отложенный результат заменяется более новым.
  */
 @Service
 public class InstrumentPairService {
 
     private static final Logger log = LoggerFactory.getLogger(InstrumentPairService.class);
 
-    // Конфигурация производительности
-    private static final int PROCESSING_THREADS = Runtime.getRuntime().availableProcessors() * 2;
+    /** Интервал пересчета отмеченных пар */
+    static final long RECALC_INTERVAL_MS = 100;
+
+    /**
+     * Политика публикации результатов пары
+     *
+     * @param minIntervalMs минимальный интервал между публикациями (мс)
+     * @param minDeltaPercentChange минимальное изменение дельты в процентах относительно последней
+     *        публикации
+     */
+    public record PublishPolicy(long minIntervalMs, BigDecimal minDeltaPercentChange) {
+        public PublishPolicy {
+            if (minIntervalMs < 0 || minDeltaPercentChange == null
+                    || minDeltaPercentChange.signum() < 0) {
+                throw new IllegalArgumentException("Invalid publish policy: interval="
+                        + minIntervalMs + ", minDeltaPercentChange=" + minDeltaPercentChange);
+            }
+        }
+    }
+
+    /**
+     * Последняя публикация и отложенный результат пары (доступ только из потока пересчета)
+     */
+    private static final class PublishState {
+        private PairComparisonResult published;
+        private long publishedAtMs;
+        private PairComparisonResult deferred;
+    }
 
     // Хранилище пар инструментов
     private final Map<String, InstrumentPair> instrumentPairs = new ConcurrentHashMap<>();
 
+    // Обратный индекс FIGI -> пары с этим инструментом. Массивы не изменяются после публикации и
+    // заменяются целиком под блокировкой pairsLock, поэтому тик читает индекс без блокировок
+    private final Map<String, InstrumentPair[]> pairsByFigi = new ConcurrentHashMap<>();
+    private final Object pairsLock = new Object();
+
     // Инструмент кэш сервис для работы с данными инструментов
     private final InstrumentCacheService instrumentCacheService;
 
@@ -45,9 +90,24 @@ public class InstrumentPairService {
     private final Set<Consumer<PairComparisonResult>> comparisonSubscribers =
             new CopyOnWriteArraySet<>();
 
-    // Потоки для обработки
-    private final ExecutorService processingExecutor =
-            Executors.newFixedThreadPool(PROCESSING_THREADS);
+    // Политики публикации, заданные для отдельных пар (остальные используют политику по умолчанию)
+    private final Map<String, PublishPolicy> publishPolicies = new ConcurrentHashMap<>();
+    private final Map<String, PublishState> publishStates = new ConcurrentHashMap<>();
+
+    // Пары, ожидающие пересчета: pairId -> время последней котировки по ноге пары
+    private final Map<String, LocalDateTime> pendingPairs = new ConcurrentHashMap<>();
+
+    // Поток пересчета отмеченных пар
+    private final ScheduledExecutorService recalcScheduler =
+            Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "pair-recalc");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    // Источник обработанных котировок
+    private final NotificationService notificationService;
+    private final Consumer<QuoteData> quoteListener = this::onQuote;
 
     // Конфигурация
     private final InstrumentPairConfig config;
@@ -55,22 +115,34 @@ public class InstrumentPairService {
     // Статистика
     private final AtomicLong totalComparisonsProcessed = new AtomicLong(0);
     private final AtomicLong totalComparisonsSent = new AtomicLong(0);
+    private final AtomicLong totalUpdatesConflated = new AtomicLong(0);
+    private final AtomicLong totalComparisonsPublished = new AtomicLong(0);
+    private final AtomicLong totalComparisonsBelowThreshold = new AtomicLong(0);
+    private final AtomicLong totalComparisonsDeferred = new AtomicLong(0);
+    private final AtomicLong totalDeferredReplaced = new AtomicLong(0);
 
     public InstrumentPairService(InstrumentPairConfig config,
-            InstrumentCacheService instrumentCacheService) {
+            InstrumentCacheService instrumentCacheService,
+            NotificationService notificationService) {
         this.config = config;
         this.instrumentCacheService = instrumentCacheService;
+        this.notificationService = notificationService;
     }
 
     @PostConstruct
     public void init() {
         log.info("=== INSTRUMENT PAIR SERVICE INITIALIZATION ===");
-        log.info("Initializing InstrumentPairService with {} processing threads",
-                PROCESSING_THREADS);
+        log.info("Initializing InstrumentPairService with recalculation interval {} ms",
+                RECALC_INTERVAL_MS);
 
         // Загружаем пары из конфигурации
         loadPairsFromConfig();
 
+        // Пересчет пар по потоку обработанных котировок
+        notificationService.subscribe(quoteListener);
+        recalcScheduler.scheduleWithFixedDelay(this::recalculatePendingPairs, RECALC_INTERVAL_MS,
+                RECALC_INTERVAL_MS, TimeUnit.MILLISECONDS);
+
         log.info("===============================================");
     }
 
@@ -93,7 +165,18 @@ public class InstrumentPairService {
                         pairConfig.getFirstInstrument(), pairConfig.getSecondInstrument(),
                         pairConfig.getFirstInstrumentName(), pairConfig.getSecondInstrumentName());
 
-                instrumentPairs.put(pair.pairId(), pair);
+                putPair(pair);
+                if (pairConfig.getMinPublishIntervalMs() != null
+                        || pairConfig.getMinDeltaPercentChange() != null) {
+                    PublishPolicy defaults = getDefaultPublishPolicy();
+                    setPublishPolicy(pair.pairId(), new PublishPolicy(
+                            pairConfig.getMinPublishIntervalMs() != null
+                                    ? pairConfig.getMinPublishIntervalMs()
+                                    : defaults.minIntervalMs(),
+                            pairConfig.getMinDeltaPercentChange() != null
+                                    ? pairConfig.getMinDeltaPercentChange()
+                                    : defaults.minDeltaPercentChange()));
+                }
                 log.info("Loaded pair from config: {} ({} vs {})", pair.pairId(),
                         pair.firstInstrumentName(), pair.secondInstrumentName());
             } else {
@@ -108,7 +191,8 @@ public class InstrumentPairService {
     @PreDestroy
     public void shutdown() {
         log.info("Shutting down InstrumentPairService...");
-        processingExecutor.shutdown();
+        notificationService.unsubscribe(quoteListener);
+        recalcScheduler.shutdown();
         log.info("InstrumentPairService shutdown completed. Total processed: {} comparisons",
                 totalComparisonsProcessed.get());
     }
@@ -117,7 +201,12 @@ public class InstrumentPairService {
      * Добавление пары инструментов для сравнения
      */
     public void addInstrumentPair(InstrumentPair pair) {
-        instrumentPairs.put(pair.pairId(), pair);
+        if (pair.pairId() == null || pair.firstInstrument() == null
+                || pair.secondInstrument() == null) {
+            throw new IllegalArgumentException(
+                    "Pair id and both instruments are required: " + pair);
+        }
+        putPair(pair);
         log.info("Added instrument pair: {}", pair);
     }
 
@@ -125,12 +214,98 @@ public class InstrumentPairService {
      * Удаление пары инструментов
      */
     public void removeInstrumentPair(String pairId) {
-        InstrumentPair removed = instrumentPairs.remove(pairId);
+        InstrumentPair removed;
+        synchronized (pairsLock) {
+            removed = instrumentPairs.remove(pairId);
+            if (removed != null) {
+                unindex(removed);
+            }
+        }
+        publishPolicies.remove(pairId);
         if (removed != null) {
+            forgetPublishState(pairId);
             log.info("Removed instrument pair: {}", removed);
         }
     }
 
+    /**
+     * Удаление состояния публикации в потоке пересчета: после уже начатого пересчета пары, чтобы
+     * offerResult не создал состояние заново, а publishDeferred не отправил отложенный результат
+     */
+    private void forgetPublishState(String pairId) {
+        try {
+            recalcScheduler.execute(() -> publishStates.remove(pairId));
+        } catch (RejectedExecutionException e) {
+            log.debug("Publish state of pair {} not removed: service is stopping", pairId);
+        }
+    }
+
+    /**
+     * Сохранение пары с обновлением индекса (пара с тем же pairId заменяется)
+     */
+    private void putPair(InstrumentPair pair) {
+        synchronized (pairsLock) {
+            InstrumentPair previous = instrumentPairs.put(pair.pairId(), pair);
+            if (previous != null) {
+                unindex(previous);
+            }
+            index(pair.firstInstrument(), pair);
+            if (!pair.secondInstrument().equals(pair.firstInstrument())) {
+                index(pair.secondInstrument(), pair);
+            }
+        }
+    }
+
+    private void index(String figi, InstrumentPair pair) {
+        pairsByFigi.compute(figi, (key, pairs) -> {
+            if (pairs == null) {
+                return new InstrumentPair[] {pair};
+            }
+            InstrumentPair[] next = Arrays.copyOf(pairs, pairs.length + 1);
+            next[pairs.length] = pair;
+            return next;
+        });
+    }
+
+    private void unindex(InstrumentPair pair) {
+        for (String figi : new String[] {pair.firstInstrument(), pair.secondInstrument()}) {
+            pairsByFigi.computeIfPresent(figi, (key, pairs) -> {
+                InstrumentPair[] next = Arrays.stream(pairs)
+                        .filter(candidate -> !candidate.pairId().equals(pair.pairId()))
+                        .toArray(InstrumentPair[]::new);
+                return next.length == 0 ? null : next;
+            });
+        }
+    }
+
+    /**
+     * Политика публикации по умолчанию (из конфигурации)
+     */
+    public PublishPolicy getDefaultPublishPolicy() {
+        return new PublishPolicy(config.getMinPublishIntervalMs(),
+                config.getMinDeltaPercentChange());
+    }
+
+    /**
+     * Политика публикации пары
+     */
+    public PublishPolicy getPublishPolicy(String pairId) {
+        PublishPolicy policy = publishPolicies.get(pairId);
+        return policy != null ? policy : getDefaultPublishPolicy();
+    }
+
+    /**
+     * Установка политики публикации пары (null - вернуть политику по умолчанию)
+     */
+    public void setPublishPolicy(String pairId, PublishPolicy policy) {
+        if (policy == null) {
+            publishPolicies.remove(pairId);
+        } else {
+            publishPolicies.put(pairId, policy);
+        }
+        log.info("Publish policy for pair {}: {}", pairId, getPublishPolicy(pairId));
+    }
+
     /**
      * Получение всех пар инструментов
      */
@@ -144,41 +319,125 @@ public class InstrumentPairService {
     public void updateInstrumentPrice(String figi, BigDecimal price, LocalDateTime timestamp) {
         log.debug("Received price update for {}: {} at {}", figi, price, timestamp);
 
-        processingExecutor.submit(() -> {
-            try {
-                // Обновляем последнюю цену в кэше
-                instrumentCacheService.setLastPrice(figi, price);
-                log.debug("Updated price for {}: {}. Total prices stored: {}", figi, price,
-                        instrumentCacheService.getTrackedInstruments().size());
-
-                // Находим все пары, содержащие этот инструмент
-                int pairsFound = 0;
-                for (InstrumentPair pair : instrumentPairs.values()) {
-                    if (pair.firstInstrument().equals(figi)
-                            || pair.secondInstrument().equals(figi)) {
-                        pairsFound++;
-                        log.debug("Found pair {} containing instrument {}: first={}, second={}",
-                                pair.pairId(), figi, pair.firstInstrument(),
-                                pair.secondInstrument());
-                        calculateAndNotifyComparison(pair, timestamp);
-                    }
+        // Обновляем последнюю цену в кэше
+        instrumentCacheService.setLastPrice(figi, price);
+        markPairsForRecalculation(figi, timestamp);
+    }
+
+    /**
+     * Котировка из потока обработки: цена уже записана в кэш MarketDataProcessor
+     */
+    private void onQuote(QuoteData quoteData) {
+        if (FixedPoint.isPositive(quoteData.currentPriceScaled())) {
+            markPairsForRecalculation(quoteData.getFigi(), quoteData.getTimestamp());
+        }
+    }
+
+    /**
+     * Отметить пары с инструментом для пересчета (повторные отметки до пересчета сливаются)
+     */
+    private void markPairsForRecalculation(String figi, LocalDateTime timestamp) {
+        InstrumentPair[] pairs = pairsByFigi.get(figi);
+        if (pairs == null) {
+            return;
+        }
+        LocalDateTime time = timestamp != null ? timestamp : LocalDateTime.now();
+        for (InstrumentPair pair : pairs) {
+            LocalDateTime previous = pendingPairs.putIfAbsent(pair.pairId(), time);
+            if (previous != null) {
+                totalUpdatesConflated.incrementAndGet();
+                if (time.isAfter(previous)) {
+                    pendingPairs.replace(pair.pairId(), previous, time);
                 }
+            }
+        }
+    }
 
-                if (pairsFound == 0) {
-                    log.debug("No pairs found containing instrument {}. Available pairs: {}", figi,
-                            instrumentPairs.keySet());
+    /**
+     * Пересчет отмеченных пар по последним ценам и публикация отложенных результатов
+     */
+    private void recalculatePendingPairs() {
+        try {
+            long now = System.currentTimeMillis();
+            for (String pairId : pendingPairs.keySet()) {
+                // Отметка, поставленная после удаления, дождется следующего пересчета
+                LocalDateTime timestamp = pendingPairs.remove(pairId);
+                InstrumentPair pair = instrumentPairs.get(pairId);
+                if (timestamp != null && pair != null) {
+                    calculateAndNotifyComparison(pair, timestamp, now);
                 }
+            }
+            publishDeferred(now);
+        } catch (Exception e) {
+            log.error("Error recalculating instrument pairs", e);
+        }
+    }
 
-            } catch (Exception e) {
-                log.error("Error updating instrument price for {}", figi, e);
+    /**
+     * Публикация отложенных результатов, для которых истек минимальный интервал
+     */
+    private void publishDeferred(long now) {
+        for (Map.Entry<String, PublishState> entry : publishStates.entrySet()) {
+            PublishState state = entry.getValue();
+            // Пара удалена во время пересчета: состояние уберет задача forgetPublishState
+            if (state.deferred == null || !instrumentPairs.containsKey(entry.getKey())) {
+                continue;
             }
-        });
+            if (now - state.publishedAtMs >= getPublishPolicy(entry.getKey()).minIntervalMs()) {
+                PairComparisonResult result = state.deferred;
+                state.deferred = null;
+                publish(state, result, now);
+            }
+        }
+    }
+
+    /**
+     * Применение политики публикации к новому результату пары
+     */
+    private void offerResult(PairComparisonResult result, long now) {
+        PublishState state =
+                publishStates.computeIfAbsent(result.pairId(), id -> new PublishState());
+        PublishPolicy policy = getPublishPolicy(result.pairId());
+
+        if (state.published != null && !isSignificantChange(state.published, result, policy)) {
+            // Изменение ниже порога; отложенный результат тоже больше не актуален
+            totalComparisonsBelowThreshold.incrementAndGet();
+            state.deferred = null;
+            return;
+        }
+        if (state.published != null && now - state.publishedAtMs < policy.minIntervalMs()) {
+            if (state.deferred != null) {
+                totalDeferredReplaced.incrementAndGet();
+            }
+            totalComparisonsDeferred.incrementAndGet();
+            state.deferred = result;
+            return;
+        }
+        state.deferred = null;
+        publish(state, result, now);
+    }
+
+    private static boolean isSignificantChange(PairComparisonResult published,
+            PairComparisonResult result, PublishPolicy policy) {
+        if (!published.direction().equals(result.direction())) {
+            return true;
+        }
+        BigDecimal change = result.deltaPercent().subtract(published.deltaPercent()).abs();
+        return change.compareTo(policy.minDeltaPercentChange()) >= 0;
+    }
+
+    private void publish(PublishState state, PairComparisonResult result, long now) {
+        state.published = result;
+        state.publishedAtMs = now;
+        totalComparisonsPublished.incrementAndGet();
+        notifySubscribers(result);
     }
 
     /**
      * Расчет и уведомление о результате сравнения пары
      */
-    private void calculateAndNotifyComparison(InstrumentPair pair, LocalDateTime timestamp) {
+    private void calculateAndNotifyComparison(InstrumentPair pair, LocalDateTime timestamp,
+            long now) {
         try {
             BigDecimal firstPrice = instrumentCacheService.getLastPrice(pair.firstInstrument());
             BigDecimal secondPrice = instrumentCacheService.getLastPrice(pair.secondInstrument());
@@ -218,8 +477,8 @@ public class InstrumentPairService {
 
             totalComparisonsProcessed.incrementAndGet();
 
-            // Уведомляем всех подписчиков
-            notifySubscribers(result);
+            // Уведомляем подписчиков с учетом политики публикации пары
+            offerResult(result, now);
 
             if (log.isDebugEnabled()) {
                 log.debug("Processed comparison: {}", result);
@@ -282,11 +541,23 @@ public class InstrumentPairService {
      * Получение статистики сервиса
      */
     public Map<String, Object> getStats() {
-        return Map.of("totalComparisonsProcessed", totalComparisonsProcessed.get(),
-                "totalComparisonsSent", totalComparisonsSent.get(), "activeSubscribers",
-                comparisonSubscribers.size(), "trackedPairs", instrumentPairs.size(),
-                "trackedInstruments", instrumentCacheService.getTrackedInstruments().size(),
-                "pairs", instrumentPairs.keySet());
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("totalComparisonsProcessed", totalComparisonsProcessed.get());
+        stats.put("totalComparisonsPublished", totalComparisonsPublished.get());
+        stats.put("totalComparisonsBelowThreshold", totalComparisonsBelowThreshold.get());
+        stats.put("totalComparisonsDeferred", totalComparisonsDeferred.get());
+        stats.put("totalDeferredReplaced", totalDeferredReplaced.get());
+        stats.put("totalComparisonsSent", totalComparisonsSent.get());
+        stats.put("totalUpdatesConflated", totalUpdatesConflated.get());
+        stats.put("pendingPairs", pendingPairs.size());
+        stats.put("activeSubscribers", comparisonSubscribers.size());
+        stats.put("trackedPairs", instrumentPairs.size());
+        stats.put("trackedInstruments", instrumentCacheService.getTrackedInstruments().size());
+        stats.put("indexedInstruments", pairsByFigi.size());
+        stats.put("defaultPublishPolicy", getDefaultPublishPolicy());
+        stats.put("pairPublishPolicies", Map.copyOf(publishPolicies));
+        stats.put("pairs", instrumentPairs.keySet());
+        return stats;
     }
 
     /**
@@ -0,0 +1,173 @@
+package com.example.investmentdatascannerservice.service;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import com.example.investmentdatascannerservice.dto.MarketTick;
+import com.example.investmentdatascannerservice.utils.InstrumentSlots;
+
+/**
+ * Буфер слияния рыночных событий без потерь
+ *
+ * Между сбросами хранит для каждого FIGI последнее событие каждого типа: последнюю цену, последний
+ * стакан и последнюю сделку с суммированным объемом всех сделок интервала. При сбросе выдает не
+ * более одного объединенного события на FIGI и тип, поэтому объем сделок не теряется, а цены не
+ * устаревают.
+ *
+ * Не является Spring-бином - сброс по расписанию выполняет владелец (MarketDataProcessor).
+ */
+public class MarketDataCoalescer {
+
+    // Накопленные события по идентификатору инструмента (InstrumentRegistry)
+    private final InstrumentSlots<PendingTicks> pending = new InstrumentSlots<>();
+    private final Queue<PendingTicks> dirty = new ConcurrentLinkedQueue<>();
+    private final Consumer<MarketTick> sink;
+
+    // Статистика
+    private final AtomicLong totalOffered = new AtomicLong(0);
+    private final AtomicLong totalEmitted = new AtomicLong(0);
+
+    public MarketDataCoalescer(Consumer<MarketTick> sink) {
+        this.sink = sink;
+    }
+
+    /**
+     * Добавить событие в буфер (вызывается из потоков gRPC)
+     */
+    public void offer(MarketTick tick) {
+        totalOffered.incrementAndGet();
+        PendingTicks entry =
+                pending.computeIfAbsent(tick.instrumentId(), id -> new PendingTicks());
+        if (entry.merge(tick)) {
+            dirty.add(entry);
+        }
+    }
+
+    /**
+     * Выдать все накопленные объединенные события
+     *
+     * Обрабатываются только записи, стоявшие в очереди на момент вызова: события, возвращенные в
+     * буфер во время сброса (например, из-за переполнения получателя), выдаются следующим сбросом.
+     *
+     * @return количество выданных событий
+     */
+    public int flush() {
+        int emitted = 0;
+        int remaining = dirty.size();
+        PendingTicks entry;
+        while (remaining-- > 0 && (entry = dirty.poll()) != null) {
+            emitted += entry.drainTo(sink);
+        }
+        totalEmitted.addAndGet(emitted);
+        return emitted;
+    }
+
+    public long getTotalOffered() {
+        return totalOffered.get();
+    }
+
+    public long getTotalEmitted() {
+        return totalEmitted.get();
+    }
+
+    /**
+     * Количество событий, поглощенных слиянием
+     */
+    public long getTotalCoalesced() {
+        return totalOffered.get() - totalEmitted.get() - getPendingCount();
+    }
+
+    /**
+     * Количество FIGI, ожидающих сброса
+     */
+    public int getPendingCount() {
+        return dirty.size();
+    }
+
+    /**
+     * Количество инструментов, прошедших через буфер
+     */
+    public int getTrackedInstruments() {
+        return pending.count();
+    }
+
+    /**
+     * Накопленные события одного FIGI
+     */
+    private static final class PendingTicks {
+        private MarketTick lastPrice;
+        private MarketTick trade;
+        private long tradeVolume;
+        private MarketTick orderBook;
+        private boolean queued;
+
+        /**
+         * @return true, если запись нужно поставить в очередь на сброс
+         */
+        synchronized boolean merge(MarketTick tick) {
+            // Более старое событие (например, возвращенное после переполнения) не вытесняет новое
+            switch (tick.type()) {
+                case LAST_PRICE:
+                    lastPrice = latest(lastPrice, tick);
+                    break;
+                case TRADE:
+                    trade = latest(trade, tick);
+                    tradeVolume += tick.quantity();
+                    break;
+                case ORDER_BOOK:
+                    orderBook = latest(orderBook, tick);
+                    break;
+            }
+            if (queued) {
+                return false;
+            }
+            queued = true;
+            return true;
+        }
+
+        private static MarketTick latest(MarketTick current, MarketTick candidate) {
+            return current == null || candidate.timestampNanos() >= current.timestampNanos()
+                    ? candidate
+                    : current;
+        }
+
+        int drainTo(Consumer<MarketTick> sink) {
+            MarketTick book;
+            MarketTick mergedTrade;
+            MarketTick price;
+            synchronized (this) {
+                book = orderBook;
+                mergedTrade = trade != null ? trade.withQuantity(tradeVolume) : null;
+                price = lastPrice;
+                orderBook = null;
+                trade = null;
+                tradeVolume = 0;
+                lastPrice = null;
+                queued = false;
+            }
+
+            int emitted = 0;
+            if (book != null) {
+                sink.accept(book);
+                emitted++;
+            }
+            // Цену, пришедшую позже, выдаем последней, чтобы в кэше осталось актуальное значение
+            if (mergedTrade != null && price != null
+                    && mergedTrade.timestampNanos() > price.timestampNanos()) {
+                sink.accept(price);
+                sink.accept(mergedTrade);
+                return emitted + 2;
+            }
+            if (mergedTrade != null) {
+                sink.accept(mergedTrade);
+                emitted++;
+            }
+            if (price != null) {
+                sink.accept(price);
+                emitted++;
+            }
+            return emitted;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.example.investmentdatascannerservice.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Стадия разбора сообщений stream-соединений вне транспортных потоков gRPC
+ *
+ * Транспортный поток (канал работает с direct executor) только кладет сообщение в очередь полосы
+ * и сразу возвращается, а декодирование и передача в сканер выполняются потоком полосы.
+ * Stream-соединение закреплено за одной полосой по идентификатору, поэтому все его сообщения,
+ * включая ответы на подписку и завершение соединения, обрабатываются по порядку. Очередь не
+ * ограничена емкостью: ее размер ограничивает управление потоком gRPC - владелец запрашивает у
+ * сервера не больше окна необработанных сообщений на соединение, поэтому сообщения не
+ * отбрасываются, а при отставании сервер придерживает данные.
+ *
+ * Не является Spring-бином - жизненным циклом управляет владелец (MarketDataStreamingService).
+ */
+public class MarketDataDecodeStage {
+
+    private static final Logger log = LoggerFactory.getLogger(MarketDataDecodeStage.class);
+
+    private final Lane[] lanes;
+
+    public MarketDataDecodeStage(int laneCount) {
+        if (laneCount <= 0) {
+            throw new IllegalArgumentException("Lane count must be positive");
+        }
+        this.lanes = new Lane[laneCount];
+        for (int i = 0; i < laneCount; i++) {
+            lanes[i] = new Lane(i);
+        }
+    }
+
+    /**
+     * Запуск потоков полос
+     */
+    public void start() {
+        for (Lane lane : lanes) {
+            lane.thread.start();
+        }
+        log.info("MarketDataDecodeStage started: lanes={}", lanes.length);
+    }
+
+    /**
+     * Остановка потоков полос (необработанные сообщения в очередях отбрасываются)
+     */
+    public void stop() {
+        for (Lane lane : lanes) {
+            lane.running = false;
+            lane.thread.interrupt();
+        }
+        for (Lane lane : lanes) {
+            try {
+                lane.thread.join(TimeUnit.SECONDS.toMillis(1));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Поставить обработку сообщения в очередь полосы stream-соединения (не блокирует)
+     */
+    public void submit(int streamId, Runnable task) {
+        Lane lane = lanes[Math.floorMod(streamId, lanes.length)];
+        lane.queue.add(task);
+        lane.submitted.incrementAndGet();
+        int depth = lane.queue.size();
+        if (depth > lane.maxDepth.get()) {
+            lane.maxDepth.accumulateAndGet(depth, Math::max);
+        }
+    }
+
+    /**
+     * Суммарное количество сообщений в очередях всех полос
+     */
+    public int getQueuedCount() {
+        int total = 0;
+        for (Lane lane : lanes) {
+            total += lane.queue.size();
+        }
+        return total;
+    }
+
+    /**
+     * Статистика по каждой полосе
+     */
+    public List<Map<String, Object>> getLaneStats() {
+        List<Map<String, Object>> stats = new ArrayList<>(lanes.length);
+        for (Lane lane : lanes) {
+            stats.add(Map.of("lane", lane.index, "queueDepth", lane.queue.size(),
+                    "maxQueueDepth", lane.maxDepth.get(), "submitted", lane.submitted.get(),
+                    "processed", lane.processed.get(), "failed", lane.failed.get()));
+        }
+        return stats;
+    }
+
+    /**
+     * Полоса: очередь и единственный поток-обработчик
+     */
+    private static final class Lane implements Runnable {
+        private final int index;
+        private final BlockingQueue<Runnable> queue = new LinkedBlockingQueue<>();
+        private final Thread thread;
+        private volatile boolean running = true;
+
+        private final AtomicLong submitted = new AtomicLong(0);
+        private final AtomicLong processed = new AtomicLong(0);
+        private final AtomicLong failed = new AtomicLong(0);
+        private final AtomicLong maxDepth = new AtomicLong(0);
+
+        Lane(int index) {
+            this.index = index;
+            this.thread = new Thread(this, "MarketData-decode-" + index);
+            this.thread.setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                Runnable task;
+                try {
+                    task = queue.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+                try {
+                    task.run();
+                    processed.incrementAndGet();
+                } catch (Exception e) {
+                    failed.incrementAndGet();
+                    log.error("Error processing market data message in decode lane {}", index, e);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.example.investmentdatascannerservice.service;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import org.springframework.stereotype.Component;
+import com.example.investmentdatascannerservice.dto.MarketTick;
+import com.example.investmentdatascannerservice.utils.FixedPoint;
+import com.example.investmentdatascannerservice.utils.InstrumentRegistry;
+import com.google.protobuf.Timestamp;
+import ru.tinkoff.piapi.contract.v1.LastPrice;
+import ru.tinkoff.piapi.contract.v1.MarketDataResponse;
+import ru.tinkoff.piapi.contract.v1.Order;
+import ru.tinkoff.piapi.contract.v1.OrderBook;
+import ru.tinkoff.piapi.contract.v1.Trade;
+import ru.tinkoff.piapi.contract.v1.TradeDirection;
+
+/**
+ * Единая стадия декодирования рыночных данных
+ *
+ * Превращает LastPrice, Trade и OrderBook из protobuf в компактный MarketTick ровно один раз, чтобы
+ * потребители не повторяли конвертацию цен и времени. Здесь же FIGI один раз переводится в плотный
+ * идентификатор InstrumentRegistry, по которому дальше адресуется состояние инструмента.
+ */
+@Component
+public class MarketDataDecoder {
+
+    /** Московское время (UTC+3), используется для отображения времени событий */
+    public static final ZoneOffset MOSCOW_OFFSET = ZoneOffset.ofHours(3);
+
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+
+    private final InstrumentRegistry instrumentRegistry;
+
+    public MarketDataDecoder(InstrumentRegistry instrumentRegistry) {
+        this.instrumentRegistry = instrumentRegistry;
+    }
+
+    /**
+     * Декодирование ответа стрима рыночных данных
+     *
+     * @return событие или null, если ответ не содержит LastPrice, Trade или OrderBook
+     */
+    public MarketTick decode(MarketDataResponse response) {
+        if (response.hasLastPrice()) {
+            return decodeLastPrice(response.getLastPrice());
+        }
+        if (response.hasTrade()) {
+            return decodeTrade(response.getTrade());
+        }
+        if (response.hasOrderbook()) {
+            return decodeOrderBook(response.getOrderbook());
+        }
+        return null;
+    }
+
+    /**
+     * Декодирование последней цены
+     */
+    public MarketTick decodeLastPrice(LastPrice price) {
+        int id = instrumentRegistry.register(price.getFigi());
+        return MarketTick.lastPrice(instrumentRegistry.figiOf(id), id,
+                FixedPoint.fromQuotation(price.getPrice()), toEpochNanos(price.getTime()));
+    }
+
+    /**
+     * Декодирование сделки
+     */
+    public MarketTick decodeTrade(Trade trade) {
+        MarketTick.Direction direction = MarketTick.Direction.UNSPECIFIED;
+        if (trade.getDirection() == TradeDirection.TRADE_DIRECTION_BUY) {
+            direction = MarketTick.Direction.BUY;
+        } else if (trade.getDirection() == TradeDirection.TRADE_DIRECTION_SELL) {
+            direction = MarketTick.Direction.SELL;
+        }
+        int id = instrumentRegistry.register(trade.getFigi());
+        return MarketTick.trade(instrumentRegistry.figiOf(id), id,
+                FixedPoint.fromQuotation(trade.getPrice()), toEpochNanos(trade.getTime()),
+                trade.getQuantity(), direction);
+    }
+
+    /**
+     * Декодирование стакана (только первый уровень)
+     */
+    public MarketTick decodeOrderBook(OrderBook orderBook) {
+        long bestBid = 0L;
+        long bestBidQuantity = 0L;
+        if (orderBook.getBidsCount() > 0) {
+            Order bestBidOrder = orderBook.getBids(0);
+            bestBid = FixedPoint.fromQuotation(bestBidOrder.getPrice());
+            bestBidQuantity = bestBidOrder.getQuantity();
+        }
+
+        long bestAsk = 0L;
+        long bestAskQuantity = 0L;
+        if (orderBook.getAsksCount() > 0) {
+            Order bestAskOrder = orderBook.getAsks(0);
+            bestAsk = FixedPoint.fromQuotation(bestAskOrder.getPrice());
+            bestAskQuantity = bestAskOrder.getQuantity();
+        }
+
+        int id = instrumentRegistry.register(orderBook.getFigi());
+        return MarketTick.orderBook(instrumentRegistry.figiOf(id), id,
+                toEpochNanos(orderBook.getTime()), bestBid, bestBidQuantity, bestAsk,
+                bestAskQuantity);
+    }
+
+    /**
+     * Конвертация protobuf Timestamp в наносекунды от эпохи
+     */
+    public static long toEpochNanos(Timestamp timestamp) {
+        return timestamp.getSeconds() * NANOS_PER_SECOND + timestamp.getNanos();
+    }
+
+    /**
+     * Конвертация наносекунд от эпохи в московское время
+     */
+    public static LocalDateTime toMoscowTime(long epochNanos) {
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(epochNanos, NANOS_PER_SECOND),
+                (int) Math.floorMod(epochNanos, NANOS_PER_SECOND), MOSCOW_OFFSET);
+    }
+}
@@ -0,0 +1,185 @@
+package com.example.investmentdatascannerservice.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import com.example.investmentdatascannerservice.dto.MarketTick;
+
+/**
+ * Шардированный конвейер обработки рыночных событий
+ *
+ * Каждый инструмент закреплен за одним шардом (поток + ограниченная очередь) по своему плотному
+ * идентификатору из InstrumentRegistry, поэтому события одного инструмента обрабатываются строго
+ * по порядку и одним потоком. При переполнении очереди событие не выполняется в вызывающем потоке,
+ * а передается в обработчик переполнения (обычно обратно в буфер слияния) с учетом в статистике
+ * шарда.
+ *
+ * Не является Spring-бином - жизненным циклом управляет владелец (MarketDataProcessor).
+ */
+public class MarketDataPipeline {
+
+    private static final Logger log = LoggerFactory.getLogger(MarketDataPipeline.class);
+
+    private final Shard[] shards;
+    private final Consumer<MarketTick> handler;
+    private final Consumer<MarketTick> overflowHandler;
+
+    public MarketDataPipeline(int shardCount, int queueCapacity, Consumer<MarketTick> handler,
+            Consumer<MarketTick> overflowHandler) {
+        if (shardCount <= 0 || queueCapacity <= 0) {
+            throw new IllegalArgumentException("Shard count and queue capacity must be positive");
+        }
+        this.handler = handler;
+        this.overflowHandler = overflowHandler;
+        this.shards = new Shard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new Shard(i, queueCapacity);
+        }
+    }
+
+    /**
+     * Запуск потоков шардов
+     */
+    public void start() {
+        for (Shard shard : shards) {
+            shard.thread.start();
+        }
+        log.info("MarketDataPipeline started: shards={}, queueCapacity={}", shards.length,
+                shards[0].capacity);
+    }
+
+    /**
+     * Остановка потоков шардов (необработанные события в очередях отбрасываются)
+     */
+    public void stop() {
+        for (Shard shard : shards) {
+            shard.running = false;
+            shard.thread.interrupt();
+        }
+        for (Shard shard : shards) {
+            try {
+                shard.thread.join(TimeUnit.SECONDS.toMillis(1));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Поставить событие в очередь шарда, за которым закреплен инструмент
+     */
+    public void submit(MarketTick tick) {
+        Shard shard = shards[shardIndex(tick.instrumentId())];
+        if (shard.queue.offer(tick)) {
+            shard.submitted.incrementAndGet();
+            int depth = shard.queue.size();
+            if (depth > shard.maxDepth.get()) {
+                shard.maxDepth.accumulateAndGet(depth, Math::max);
+            }
+        } else {
+            shard.overflowed.incrementAndGet();
+            overflowHandler.accept(tick);
+        }
+    }
+
+    /**
+     * Номер шарда для инструмента (плотные идентификаторы распределяются равномерно)
+     */
+    public int shardIndex(int instrumentId) {
+        return Math.floorMod(instrumentId, shards.length);
+    }
+
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    /**
+     * Суммарное количество событий в очередях всех шардов
+     */
+    public int getQueuedCount() {
+        int total = 0;
+        for (Shard shard : shards) {
+            total += shard.queue.size();
+        }
+        return total;
+    }
+
+    /**
+     * Суммарное количество событий, не поместившихся в очереди
+     */
+    public long getOverflowCount() {
+        long total = 0;
+        for (Shard shard : shards) {
+            total += shard.overflowed.get();
+        }
+        return total;
+    }
+
+    /**
+     * Статистика по каждому шарду
+     */
+    public List<Map<String, Object>> getShardStats() {
+        List<Map<String, Object>> stats = new ArrayList<>(shards.length);
+        for (Shard shard : shards) {
+            stats.add(Map.of("shard", shard.index, "queueDepth", shard.queue.size(),
+                    "maxQueueDepth", shard.maxDepth.get(), "submitted", shard.submitted.get(),
+                    "processed", shard.processed.get(), "overflowed", shard.overflowed.get(),
+                    "failed", shard.failed.get()));
+        }
+        return stats;
+    }
+
+    /**
+     * Шард: ограниченная очередь и единственный поток-обработчик
+     */
+    private final class Shard implements Runnable {
+        private final int index;
+        private final int capacity;
+        private final BlockingQueue<MarketTick> queue;
+        private final Thread thread;
+        private volatile boolean running = true;
+
+        private final AtomicLong submitted = new AtomicLong(0);
+        private final AtomicLong processed = new AtomicLong(0);
+        private final AtomicLong overflowed = new AtomicLong(0);
+        private final AtomicLong failed = new AtomicLong(0);
+        private final AtomicLong maxDepth = new AtomicLong(0);
+
+        Shard(int index, int capacity) {
+            this.index = index;
+            this.capacity = capacity;
+            this.queue = new ArrayBlockingQueue<>(capacity);
+            this.thread = new Thread(this, "MarketData-shard-" + index);
+            this.thread.setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                MarketTick tick;
+                try {
+                    tick = queue.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+                try {
+                    handler.accept(tick);
+                    processed.incrementAndGet();
+                } catch (Exception e) {
+                    failed.incrementAndGet();
+                    log.error("Error processing {} for {} in shard {}", tick.type(), tick.figi(),
+                            index, e);
+                }
+            }
+        }
+    }
+}
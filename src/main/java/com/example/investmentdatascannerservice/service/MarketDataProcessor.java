@@ -1,24 +1,26 @@
 package com.example.investmentdatascannerservice.service;
 
-import java.math.BigDecimal;
+import java.util.HashMap;
 import java.util.Map;
-import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
+import com.example.investmentdatascannerservice.config.QuoteScannerConfig;
+import com.example.investmentdatascannerservice.dto.MarketTick;
 import com.example.investmentdatascannerservice.dto.QuoteData;
+import com.example.investmentdatascannerservice.utils.FixedPoint;
 import com.example.investmentdatascannerservice.utils.InstrumentCacheService;
+import com.example.investmentdatascannerservice.utils.InstrumentState;
 import com.example.investmentdatascannerservice.utils.SessionTimeService;
 import io.micrometer.core.instrument.Counter;
 import io.micrometer.core.instrument.MeterRegistry;
 import io.micrometer.core.instrument.Timer;
-import ru.tinkoff.piapi.contract.v1.LastPrice;
-import ru.tinkoff.piapi.contract.v1.OrderBook;
-import ru.tinkoff.piapi.contract.v1.Quotation;
-import ru.tinkoff.piapi.contract.v1.Trade;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 
 /**
  * Высокопроизводительный процессор рыночных данных
@@ -34,7 +36,6 @@ public class MarketDataProcessor {
     private final SessionTimeService sessionService;
     private final QuoteDataFactory quoteDataFactory;
     private final NotificationService notificationService;
-    private final ExecutorService processingExecutor;
     private final MeterRegistry meterRegistry;
     private final PriceCacheService priceCacheService;
 
@@ -47,24 +48,26 @@ public class MarketDataProcessor {
     // Статистика
     private final AtomicLong totalProcessed = new AtomicLong(0);
 
-    // Дедупликация для предотвращения повторной обработки
-    private final java.util.concurrent.ConcurrentHashMap<String, Long> lastProcessedTime =
-            new java.util.concurrent.ConcurrentHashMap<>();
-    private static final long MIN_PROCESSING_INTERVAL_MS = 100; // Минимальный интервал между
-                                                                // обработкой одного FIGI
-    private static final long CACHE_CLEANUP_INTERVAL_MS = 300000; // 5 минут
-    private long lastCacheCleanup = System.currentTimeMillis();
+    // Слияние событий между сбросами: последняя цена/стакан и суммарный объем сделок по FIGI
+    private static final long COALESCE_INTERVAL_MS = 100; // Интервал сброса объединенных событий
+    private final MarketDataCoalescer coalescer;
+    // Шарды обработки: каждый FIGI обрабатывается одним потоком строго по порядку
+    private final MarketDataPipeline pipeline;
+    private final ScheduledExecutorService flushScheduler =
+            Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "market-data-coalescer");
+                thread.setDaemon(true);
+                return thread;
+            });
 
     public MarketDataProcessor(InstrumentCacheService cacheService,
             SessionTimeService sessionService, QuoteDataFactory quoteDataFactory,
-            NotificationService notificationService,
-            @Qualifier("marketDataExecutor") ExecutorService processingExecutor,
-            MeterRegistry meterRegistry, PriceCacheService priceCacheService) {
+            NotificationService notificationService, MeterRegistry meterRegistry,
+            PriceCacheService priceCacheService, QuoteScannerConfig config) {
         this.cacheService = cacheService;
         this.sessionService = sessionService;
         this.quoteDataFactory = quoteDataFactory;
         this.notificationService = notificationService;
-        this.processingExecutor = processingExecutor;
         this.meterRegistry = meterRegistry;
         this.priceCacheService = priceCacheService;
 
@@ -76,127 +79,154 @@ public class MarketDataProcessor {
         this.orderBookProcessed = Counter.builder("market.data.processed").tag("type", "OrderBook")
                 .register(meterRegistry);
         this.processingTimer = Timer.builder("market.data.processing.time").register(meterRegistry);
+
+        // Переполненная очередь шарда возвращает событие в буфер слияния, а не блокирует поток
+        int shardCount = config.getMarketDataShards() > 0 ? config.getMarketDataShards()
+                : Runtime.getRuntime().availableProcessors();
+        this.pipeline = new MarketDataPipeline(shardCount, config.getMarketDataShardQueueCapacity(),
+                this::processTickInternal, this::requeue);
+        this.coalescer = new MarketDataCoalescer(pipeline::submit);
+    }
+
+    @PostConstruct
+    public void init() {
+        pipeline.start();
+        flushScheduler.scheduleAtFixedRate(this::flush, COALESCE_INTERVAL_MS,
+                COALESCE_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flushScheduler.shutdown();
+        try {
+            if (!flushScheduler.awaitTermination(1, TimeUnit.SECONDS)) {
+                flushScheduler.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            flushScheduler.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        pipeline.stop();
     }
 
     /**
-     * Обработка данных о последней цене
+     * Обработка декодированного рыночного события
      */
-    public void processLastPrice(LastPrice price) {
-        if (!sessionService.isAnySessionActive()) {
-            log.debug("Session not active, skipping LastPrice for {}", price.getFigi());
-            return;
+    public void process(MarketTick tick) {
+        switch (tick.type()) {
+            case LAST_PRICE:
+                processLastPrice(tick);
+                break;
+            case TRADE:
+                processTrade(tick);
+                break;
+            case ORDER_BOOK:
+                processOrderBook(tick);
+                break;
         }
+    }
 
-        // Проверяем дедупликацию
-        if (!shouldProcess(price.getFigi())) {
-            log.debug("Skipping LastPrice for {} - too frequent processing", price.getFigi());
+    /**
+     * Обработка данных о последней цене
+     */
+    public void processLastPrice(MarketTick tick) {
+        if (!sessionService.isAnySessionActive()) {
+            log.debug("Session not active, skipping LastPrice for {}", tick.figi());
             return;
         }
 
-        processingExecutor.submit(() -> {
-            Timer.Sample sample = Timer.start(meterRegistry);
-            try {
-                processLastPriceInternal(price);
-                lastPriceProcessed.increment();
-                totalProcessed.incrementAndGet();
-            } catch (Exception e) {
-                log.error("Error processing LastPrice for {}", price.getFigi(), e);
-            } finally {
-                sample.stop(processingTimer);
-            }
-        });
+        coalescer.offer(tick);
     }
 
     /**
      * Обработка данных о сделке
      */
-    public void processTrade(Trade trade) {
+    public void processTrade(MarketTick tick) {
         if (!sessionService.isAnySessionActive()) {
-            log.debug("Session not active, skipping Trade for {}", trade.getFigi());
+            log.debug("Session not active, skipping Trade for {}", tick.figi());
             return;
         }
 
-        // Проверяем дедупликацию
-        if (!shouldProcess(trade.getFigi())) {
-            log.debug("Skipping Trade for {} - too frequent processing", trade.getFigi());
-            return;
-        }
-
-        processingExecutor.submit(() -> {
-            Timer.Sample sample = Timer.start(meterRegistry);
-            try {
-                processTradeInternal(trade);
-                tradeProcessed.increment();
-                totalProcessed.incrementAndGet();
-            } catch (Exception e) {
-                log.error("Error processing Trade for {}", trade.getFigi(), e);
-            } finally {
-                sample.stop(processingTimer);
-            }
-        });
+        coalescer.offer(tick);
     }
 
     /**
      * Обработка данных стакана заявок
      */
-    public void processOrderBook(OrderBook orderBook) {
+    public void processOrderBook(MarketTick tick) {
         if (!sessionService.isAnySessionActive()) {
-            log.debug("Session not active, skipping OrderBook for {}", orderBook.getFigi());
+            log.debug("Session not active, skipping OrderBook for {}", tick.figi());
             return;
         }
 
-        // Проверяем дедупликацию
-        if (!shouldProcess(orderBook.getFigi())) {
-            log.debug("Skipping OrderBook for {} - too frequent processing", orderBook.getFigi());
-            return;
+        coalescer.offer(tick);
+    }
+
+    /**
+     * Сброс объединенных событий в шарды обработки
+     */
+    private void flush() {
+        try {
+            coalescer.flush();
+        } catch (Exception e) {
+            log.error("Error flushing coalesced market data", e);
         }
+    }
+
+    /**
+     * Возврат события в буфер слияния при переполнении очереди шарда
+     */
+    private void requeue(MarketTick tick) {
+        coalescer.offer(tick);
+        log.debug("Shard queue full, {} for {} re-coalesced", tick.type(), tick.figi());
+    }
 
-        processingExecutor.submit(() -> {
-            Timer.Sample sample = Timer.start(meterRegistry);
-            try {
-                processOrderBookInternal(orderBook);
-                orderBookProcessed.increment();
-                totalProcessed.incrementAndGet();
-            } catch (Exception e) {
-                log.error("Error processing OrderBook for {}", orderBook.getFigi(), e);
-            } finally {
-                sample.stop(processingTimer);
+    /**
+     * Обработка объединенного события в потоке шарда
+     */
+    private void processTickInternal(MarketTick tick) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        try {
+            switch (tick.type()) {
+                case LAST_PRICE:
+                    processLastPriceInternal(tick);
+                    lastPriceProcessed.increment();
+                    break;
+                case TRADE:
+                    processTradeInternal(tick);
+                    tradeProcessed.increment();
+                    break;
+                case ORDER_BOOK:
+                    processOrderBookInternal(tick);
+                    orderBookProcessed.increment();
+                    break;
             }
-        });
+            totalProcessed.incrementAndGet();
+        } finally {
+            sample.stop(processingTimer);
+        }
     }
 
     /**
      * Внутренняя обработка LastPrice
      */
-    private void processLastPriceInternal(LastPrice price) {
-        String figi = price.getFigi();
-        BigDecimal currentPrice = convertPrice(price.getPrice());
-
+    private void processLastPriceInternal(MarketTick tick) {
+        String figi = tick.figi();
+        long currentPrice = tick.price();
 
         log.debug("Processing LastPrice for FIGI: {}, price: {}", figi, currentPrice);
 
-        // Обновляем кэш
-        cacheService.setLastPrice(figi, currentPrice);
-        // Обновляем кэш цен для доступа через PriceCacheService
-        priceCacheService.updateLastPrice(figi, currentPrice);
-
-        // Если это первая цена за день, сохраняем как цену открытия
-        if (cacheService.getOpenPrice(figi) == null) {
-            cacheService.setOpenPrice(figi, currentPrice);
-        }
-
-        // Специальная логика для OTC инструментов: принудительно обновляем цену
-        // поскольку Trade события могут не работать для OTC
-        if (figi.equals("TCS00A105NV2")) {
-            // Принудительное обновление цены для OTC инструментов
-        }
+        // Обновляем кэш (первая цена за день сохраняется как цена открытия)
+        InstrumentState.Snapshot state =
+                cacheService.recordLastPrice(tick.instrumentId(), currentPrice);
+        // Обновляем кэш цен для доступа через PriceCacheService (REST, BigDecimal)
+        priceCacheService.updateLastPrice(figi, FixedPoint.toDecimal(currentPrice));
 
         // Создаем QuoteData
-        QuoteData quoteData = quoteDataFactory.createFromLastPrice(price, currentPrice);
+        QuoteData quoteData = quoteDataFactory.createFromLastPrice(tick, state);
 
         // Уведомляем подписчиков
-        notificationService.notifySubscribers(quoteData);
-
+        notificationService.notifySubscribers(tick.instrumentId(), quoteData);
 
         log.debug("Processed LastPrice for {}: {}", figi, quoteData);
     }
@@ -204,30 +234,25 @@ public class MarketDataProcessor {
     /**
      * Внутренняя обработка Trade
      */
-    private void processTradeInternal(Trade trade) {
-        String figi = trade.getFigi();
-        BigDecimal currentPrice = convertPrice(trade.getPrice());
-
+    private void processTradeInternal(MarketTick tick) {
+        String figi = tick.figi();
+        long currentPrice = tick.price();
 
         log.debug("Processing Trade for FIGI: {}, price: {}, quantity: {}", figi, currentPrice,
-                trade.getQuantity());
+                tick.quantity());
 
-        // Обновляем кэш
-        cacheService.setLastPrice(figi, currentPrice);
-        // Обновляем кэш цен для доступа через PriceCacheService
-        priceCacheService.updateLastPrice(figi, currentPrice);
-
-        // Накопляем объем только во время сессий выходного дня
-        if (sessionService.isWeekendSessionTime()) {
-            cacheService.addToAccumulatedVolume(figi, trade.getQuantity());
-        }
+        // Обновляем кэш; объем накапливаем только во время сессий выходного дня
+        long volume = sessionService.isWeekendSessionTime() ? tick.quantity() : 0L;
+        InstrumentState.Snapshot state =
+                cacheService.recordTrade(tick.instrumentId(), currentPrice, volume);
+        // Обновляем кэш цен для доступа через PriceCacheService (REST, BigDecimal)
+        priceCacheService.updateLastPrice(figi, FixedPoint.toDecimal(currentPrice));
 
         // Создаем QuoteData
-        QuoteData quoteData = quoteDataFactory.createFromTrade(trade, currentPrice);
+        QuoteData quoteData = quoteDataFactory.createFromTrade(tick, state);
 
         // Уведомляем подписчиков
-        notificationService.notifySubscribers(quoteData);
-
+        notificationService.notifySubscribers(tick.instrumentId(), quoteData);
 
         log.debug("Processed Trade for {}: {}", figi, quoteData);
     }
@@ -235,98 +260,51 @@ public class MarketDataProcessor {
     /**
      * Внутренняя обработка OrderBook
      */
-    private void processOrderBookInternal(OrderBook orderBook) {
-        String figi = orderBook.getFigi();
+    private void processOrderBookInternal(MarketTick tick) {
+        String figi = tick.figi();
 
         log.debug("Processing OrderBook for FIGI: {}", figi);
 
-        // Получаем лучший BID
-        BigDecimal bestBid = BigDecimal.ZERO;
-        long bestBidQuantity = 0;
-        if (orderBook.getBidsCount() > 0) {
-            var bestBidOrder = orderBook.getBids(0);
-            bestBid = convertPrice(bestBidOrder.getPrice());
-            bestBidQuantity = bestBidOrder.getQuantity();
-        }
-
-        // Получаем лучший ASK
-        BigDecimal bestAsk = BigDecimal.ZERO;
-        long bestAskQuantity = 0;
-        if (orderBook.getAsksCount() > 0) {
-            var bestAskOrder = orderBook.getAsks(0);
-            bestAsk = convertPrice(bestAskOrder.getPrice());
-            bestAskQuantity = bestAskOrder.getQuantity();
-        }
+        // Лучшие BID/ASK уже выделены при декодировании (0, если сторона пуста)
+        long bestBid = tick.bestBid();
+        long bestBidQuantity = tick.bestBidQuantity();
+        long bestAsk = tick.bestAsk();
+        long bestAskQuantity = tick.bestAskQuantity();
 
         // Обновляем данные стакана в кэше
-        cacheService.setBestBid(figi, bestBid);
-        cacheService.setBestAsk(figi, bestAsk);
-        cacheService.setBestBidQuantity(figi, bestBidQuantity);
-        cacheService.setBestAskQuantity(figi, bestAskQuantity);
+        InstrumentState.Snapshot state = cacheService.recordOrderBook(tick.instrumentId(),
+                bestBid, bestBidQuantity, bestAsk, bestAskQuantity);
 
         // Создаем QuoteData для уведомления подписчиков об обновлении стакана
         // Отправляем уведомление независимо от наличия currentPrice, так как стакан может быть
         // доступен даже без цены
-        QuoteData quoteData = quoteDataFactory.createFromOrderBook(figi, bestBid, bestAsk,
-                bestBidQuantity, bestAskQuantity);
+        QuoteData quoteData = quoteDataFactory.createFromOrderBook(tick, state);
 
         // Уведомляем подписчиков об обновлении стакана
-        notificationService.notifySubscribers(quoteData);
+        notificationService.notifySubscribers(tick.instrumentId(), quoteData);
 
         log.debug("Processed OrderBook for {}: BID {} ({}), ASK {} ({}), notified subscribers",
                 figi, bestBid, bestBidQuantity, bestAsk, bestAskQuantity);
     }
 
-    /**
-     * Конвертация цены из protobuf в BigDecimal
-     */
-    private BigDecimal convertPrice(Quotation quotation) {
-        return BigDecimal.valueOf(quotation.getUnits())
-                .add(BigDecimal.valueOf(quotation.getNano()).movePointLeft(9));
-    }
-
-
-    /**
-     * Проверка, следует ли обрабатывать данные для данного FIGI Предотвращает слишком частую
-     * обработку одного и того же инструмента
-     */
-    private boolean shouldProcess(String figi) {
-        long currentTime = System.currentTimeMillis();
-
-        // Периодическая очистка кэша для предотвращения утечек памяти
-        if (currentTime - lastCacheCleanup > CACHE_CLEANUP_INTERVAL_MS) {
-            cleanupCache(currentTime);
-            lastCacheCleanup = currentTime;
-        }
-
-        Long lastTime = lastProcessedTime.get(figi);
-
-        if (lastTime == null || (currentTime - lastTime) >= MIN_PROCESSING_INTERVAL_MS) {
-            lastProcessedTime.put(figi, currentTime);
-            return true;
-        }
-
-        return false;
-    }
-
-    /**
-     * Очистка устаревших записей из кэша дедупликации
-     */
-    private void cleanupCache(long currentTime) {
-        long cutoffTime = currentTime - CACHE_CLEANUP_INTERVAL_MS;
-        lastProcessedTime.entrySet().removeIf(entry -> entry.getValue() < cutoffTime);
-        log.debug("Cleaned up deduplication cache, remaining entries: {}",
-                lastProcessedTime.size());
-    }
 
     /**
      * Получение статистики процессора
      */
     public Map<String, Object> getStats() {
-        return Map.of("totalProcessed", totalProcessed.get(), "lastPriceProcessed",
-                lastPriceProcessed.count(), "tradeProcessed", tradeProcessed.count(),
-                "orderBookProcessed", orderBookProcessed.count(), "processingTime",
-                processingTimer.totalTime(TimeUnit.MILLISECONDS), "uniqueInstruments",
-                lastProcessedTime.size());
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("totalProcessed", totalProcessed.get());
+        stats.put("lastPriceProcessed", lastPriceProcessed.count());
+        stats.put("tradeProcessed", tradeProcessed.count());
+        stats.put("orderBookProcessed", orderBookProcessed.count());
+        stats.put("processingTime", processingTimer.totalTime(TimeUnit.MILLISECONDS));
+        stats.put("uniqueInstruments", coalescer.getTrackedInstruments());
+        stats.put("coalescedTicks", coalescer.getTotalCoalesced());
+        stats.put("pendingInstruments", coalescer.getPendingCount());
+        stats.put("shardCount", pipeline.getShardCount());
+        stats.put("queuedTicks", pipeline.getQueuedCount());
+        stats.put("shardOverflows", pipeline.getOverflowCount());
+        stats.put("shards", pipeline.getShardStats());
+        return stats;
     }
 }
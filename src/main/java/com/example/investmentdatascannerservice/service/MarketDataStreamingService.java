@@ -1,34 +1,38 @@
 package com.example.investmentdatascannerservice.service;
 
-import java.math.BigDecimal;
-import java.time.Instant;
-import java.time.LocalDateTime;
-import java.time.ZoneOffset;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
-import java.util.concurrent.locks.ReentrantLock;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 import com.example.investmentdatascannerservice.config.QuoteScannerConfig;
+import com.example.investmentdatascannerservice.dto.MarketTick;
+import com.example.investmentdatascannerservice.service.SubscriptionManager.DataType;
+import com.example.investmentdatascannerservice.utils.FixedPoint;
 import com.example.investmentdatascannerservice.utils.InstrumentCacheService;
 import com.example.investmentdatascannerservice.utils.SessionTimeService;
+import io.grpc.stub.ClientCallStreamObserver;
+import io.grpc.stub.ClientResponseObserver;
 import io.grpc.stub.StreamObserver;
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
-import ru.tinkoff.piapi.contract.v1.LastPrice;
 import ru.tinkoff.piapi.contract.v1.LastPriceInstrument;
 import ru.tinkoff.piapi.contract.v1.MarketDataRequest;
 import ru.tinkoff.piapi.contract.v1.MarketDataResponse;
 import ru.tinkoff.piapi.contract.v1.MarketDataStreamServiceGrpc;
-import ru.tinkoff.piapi.contract.v1.OrderBook;
 import ru.tinkoff.piapi.contract.v1.OrderBookInstrument;
 import ru.tinkoff.piapi.contract.v1.SubscribeLastPriceRequest;
 import ru.tinkoff.piapi.contract.v1.SubscribeLastPriceResponse;
@@ -38,8 +42,7 @@ import ru.tinkoff.piapi.contract.v1.SubscribeTradesRequest;
 import ru.tinkoff.piapi.contract.v1.SubscribeTradesResponse;
 import ru.tinkoff.piapi.contract.v1.SubscriptionAction;
 import ru.tinkoff.piapi.contract.v1.SubscriptionStatus;
-import ru.tinkoff.piapi.contract.v1.Trade;
-import ru.tinkoff.piapi.contract.v1.TradeDirection;
+import ru.tinkoff.piapi.contract.v1.TradeInstrument;
 
 /**
  * Высокопроизводительный сервис для потоковой обработки рыночных данных
@@ -67,14 +70,16 @@ public class MarketDataStreamingService {
     // Все типы подписок (LastPrice, Trades, OrderBook) считаются вместе
     private static final int MAX_REQUESTS_PER_MINUTE = 300;
 
-    // Рассчитываем минимальную задержку между запросами для соблюдения лимита 300 запросов/мин
-    // 60 секунд / 300 запросов = 0.2 секунды = 200 мс между запросами
-    // Для безопасности используем 250 мс (консервативное значение)
-    private static final long MIN_DELAY_BETWEEN_REQUESTS_MS = 250L; // 250 мс между запросами
+    // Глобальный планировщик подписок для всех stream-соединений (корзина на 300 запросов/мин)
+    private final SubscriptionScheduler subscriptionScheduler =
+            new SubscriptionScheduler(MAX_REQUESTS_PER_MINUTE);
 
-    // Глобальный rate limiter для всех stream-соединений (300 запросов/мин)
-    private final ReentrantLock globalRateLimiterLock = new ReentrantLock();
-    private volatile long lastRequestTime = 0;
+    // Желаемые и подтвержденные подписки по stream-соединениям
+    private final SubscriptionManager subscriptionManager =
+            new SubscriptionManager(MAX_INSTRUMENTS_PER_STREAM);
+
+    // FIGI, LastPrice которых подписывается первым (акции и панели индексов)
+    private volatile Set<String> primaryLastPriceFigis = Set.of();
 
     private final MarketDataStreamServiceGrpc.MarketDataStreamServiceStub streamStub;
     private final QuoteScannerService quoteScannerService;
@@ -82,6 +87,8 @@ public class MarketDataStreamingService {
     private final InstrumentCacheService instrumentCacheService;
     private final SessionTimeService sessionTimeService;
     private final WeekendScannerService weekendScannerService;
+    private final MarketDataDecoder marketDataDecoder;
+    private final StreamShardPlanner shardPlanner;
 
     // Планировщик для переподключений
     private final ScheduledExecutorService reconnectScheduler =
@@ -97,17 +104,30 @@ public class MarketDataStreamingService {
     // Множественные stream-соединения (каждое может обрабатывать до 300 инструментов)
     private final List<StreamConnection> streamConnections = new CopyOnWriteArrayList<>();
 
+    // Политики переподключения по идентификатору stream
+    private final Map<Integer, StreamReconnectPolicy> reconnectPolicies =
+            new ConcurrentHashMap<>();
+    private final AtomicLong totalStaleStreams = new AtomicLong(0);
+
+    // Разбор сообщений вне транспортных потоков gRPC
+    private final MarketDataDecodeStage decodeStage;
+
     public MarketDataStreamingService(
             MarketDataStreamServiceGrpc.MarketDataStreamServiceStub streamStub,
             QuoteScannerService quoteScannerService, QuoteScannerConfig config,
             InstrumentCacheService instrumentCacheService, SessionTimeService sessionTimeService,
-            WeekendScannerService weekendScannerService) {
+            WeekendScannerService weekendScannerService, MarketDataDecoder marketDataDecoder,
+            HistoryVolumeService historyVolumeService) {
         this.streamStub = streamStub;
         this.quoteScannerService = quoteScannerService;
         this.config = config;
         this.instrumentCacheService = instrumentCacheService;
         this.sessionTimeService = sessionTimeService;
         this.weekendScannerService = weekendScannerService;
+        this.marketDataDecoder = marketDataDecoder;
+        // Активность инструмента - количество исторических свечей с торгами
+        this.shardPlanner = new StreamShardPlanner(historyVolumeService::getTotalCandles);
+        this.decodeStage = new MarketDataDecodeStage(config.getMarketDataDecodeThreads());
     }
 
     /**
@@ -119,10 +139,24 @@ public class MarketDataStreamingService {
         log.info("Initializing high-performance MarketDataStreamingService (no database saving)");
 
         isRunning.set(true);
+        subscriptionScheduler.start();
+        decodeStage.start();
+
+        // Изменения панелей индексов применяются к подпискам без переподключения
+        quoteScannerService.addSubscriptionUpdateListener(this::refreshSubscriptions);
+        weekendScannerService.addSubscriptionUpdateListener(this::refreshSubscriptions);
+
+        // Проверка зависших stream-соединений
+        long staleTimeoutMs = config.getStaleStreamTimeoutMs();
+        if (staleTimeoutMs > 0) {
+            long checkIntervalMs = Math.max(1000, staleTimeoutMs / 4);
+            reconnectScheduler.scheduleWithFixedDelay(this::checkStaleStreams, checkIntervalMs,
+                    checkIntervalMs, TimeUnit.MILLISECONDS);
+        }
 
-        // Запуск потока данных
+        // Запуск потока данных в фоне: запуск приложения не ждет отправки подписок
         log.info("Starting initial market data stream...");
-        startLastPriceStream();
+        reconnectScheduler.execute(this::startLastPriceStream);
 
         log.info("MarketDataStreamingService initialized successfully");
         log.info("================================================================");
@@ -141,16 +175,16 @@ public class MarketDataStreamingService {
         log.info("Closing {} stream connection(s)...", streamConnections.size());
         for (StreamConnection conn : streamConnections) {
             try {
-                if (conn.requestObserver != null) {
-                    conn.requestObserver.onCompleted();
-                }
+                conn.complete();
             } catch (Exception e) {
                 log.warn("Error closing stream connection {}", conn.streamId, e);
             }
         }
         streamConnections.clear();
 
-        // Завершение планировщика
+        // Завершение планировщиков
+        subscriptionScheduler.stop();
+        decodeStage.stop();
         reconnectScheduler.shutdown();
 
         try {
@@ -277,14 +311,77 @@ public class MarketDataStreamingService {
      * обрабатывать до 300 инструментов
      */
     private static class StreamConnection {
-        private final StreamObserver<MarketDataRequest> requestObserver;
+        private volatile StreamObserver<MarketDataRequest> requestObserver;
+        // Исходящие вызовы (onNext, onCompleted, cancel) сериализуются: StreamObserver не
+        // потокобезопасен, а после закрытия запросы больше не отправляются
+        private final Object sendLock = new Object();
+        private boolean closed; // под sendLock
         private final int streamId;
         private final AtomicBoolean isConnected = new AtomicBoolean(false);
+        private volatile long lastMessageAtMs = System.currentTimeMillis();
+        // Время первой успешной подписки (0 - ни одной) и признак устойчивой работы
+        private volatile long subscribedAtMs;
+        private volatile boolean stable;
 
-        public StreamConnection(StreamObserver<MarketDataRequest> requestObserver, int streamId) {
-            this.requestObserver = requestObserver;
+        public StreamConnection(int streamId) {
             this.streamId = streamId;
         }
+
+        /**
+         * Запросить у сервера следующее сообщение взамен обработанного
+         */
+        void requestNext() {
+            if (requestObserver instanceof ClientCallStreamObserver<MarketDataRequest> call) {
+                call.request(1);
+            }
+        }
+
+        /**
+         * Отправить запрос, если соединение еще не закрыто
+         *
+         * @return false, если соединение уже закрыто
+         */
+        boolean send(MarketDataRequest request) {
+            synchronized (sendLock) {
+                if (closed || requestObserver == null) {
+                    return false;
+                }
+                requestObserver.onNext(request);
+                return true;
+            }
+        }
+
+        /**
+         * Завершить отправку запросов (после уже начатой отправки)
+         */
+        void complete() {
+            synchronized (sendLock) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                if (requestObserver != null) {
+                    requestObserver.onCompleted();
+                }
+            }
+        }
+
+        /**
+         * Закрыть соединение со стороны клиента (после уже начатой отправки)
+         */
+        void cancel(String reason) {
+            synchronized (sendLock) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                if (requestObserver instanceof ClientCallStreamObserver<MarketDataRequest> call) {
+                    call.cancel(reason, null);
+                } else if (requestObserver != null) {
+                    requestObserver.onCompleted();
+                }
+            }
+        }
     }
 
     /**
@@ -306,28 +403,6 @@ public class MarketDataStreamingService {
         }
     }
 
-    /**
-     * Разделить список инструментов на группы для распределения между stream-соединениями Каждая
-     * группа должна содержать не более MAX_INSTRUMENTS_PER_STREAM инструментов
-     * 
-     * @param instruments список инструментов с типами
-     * @param maxInstrumentsPerStream максимальное количество инструментов на один stream
-     * @return список групп инструментов
-     */
-    private List<List<InstrumentWithType>> splitIntoStreamGroups(
-            List<InstrumentWithType> instruments, int maxInstrumentsPerStream) {
-        if (instruments.isEmpty()) {
-            return Collections.emptyList();
-        }
-
-        List<List<InstrumentWithType>> groups = new ArrayList<>();
-        for (int i = 0; i < instruments.size(); i += maxInstrumentsPerStream) {
-            int end = Math.min(i + maxInstrumentsPerStream, instruments.size());
-            groups.add(new ArrayList<>(instruments.subList(i, end)));
-        }
-        return groups;
-    }
-
     /**
      * Создать список всех инструментов с типами для подписки
      */
@@ -353,42 +428,6 @@ public class MarketDataStreamingService {
         return instruments;
     }
 
-    /**
-     * Глобальный rate limiter для соблюдения лимита T-Invest API (300 запросов в минуту)
-     * Гарантирует минимальную задержку 250 мс между запросами подписки
-     * 
-     * Все типы подписок (LastPrice, Trades, OrderBook) и все stream-соединения используют один
-     * глобальный rate limiter. Это обеспечивает, что общее количество запросов не превысит лимит
-     * 300 запросов/мин.
-     */
-    private void waitForRateLimit() {
-        globalRateLimiterLock.lock();
-        try {
-            long currentTime = System.currentTimeMillis();
-            long timeSinceLastRequest = currentTime - lastRequestTime;
-
-            // Если это первый запрос (lastRequestTime == 0), не добавляем задержку
-            if (lastRequestTime > 0 && timeSinceLastRequest < MIN_DELAY_BETWEEN_REQUESTS_MS) {
-                long sleepTime = MIN_DELAY_BETWEEN_REQUESTS_MS - timeSinceLastRequest;
-                if (sleepTime > 0) {
-                    try {
-                        Thread.sleep(sleepTime);
-                        log.trace(
-                                "Global rate limiter: waited {} ms to comply with API limit ({} requests/min)",
-                                sleepTime, MAX_REQUESTS_PER_MINUTE);
-                    } catch (InterruptedException e) {
-                        Thread.currentThread().interrupt();
-                        log.warn("Global rate limiter interrupted", e);
-                    }
-                }
-            }
-
-            lastRequestTime = System.currentTimeMillis();
-        } finally {
-            globalRateLimiterLock.unlock();
-        }
-    }
-
     /**
      * Разбить список инструментов на батчи для подписки
      * 
@@ -407,225 +446,292 @@ public class MarketDataStreamingService {
     }
 
     /**
-     * Создание и настройка одного stream-соединения для группы инструментов
+     * Создать подписки для списка инструментов с учетом их типов
+     *
+     * LastPrice - для всех инструментов, Trades - для акций и фьючерсов (фьючерсы в выходные только
+     * с 8:30 МСК), OrderBook - для них же, если подписка на стаканы включена.
+     */
+    private Set<SubscriptionManager.Key> toSubscriptionKeys(List<InstrumentWithType> instruments) {
+        boolean futuresAllowed = sessionTimeService.canSubscribeToFutures();
+        boolean orderBooks = config.isEnableOrderBookSubscription();
+        Set<SubscriptionManager.Key> keys = new LinkedHashSet<>();
+        for (InstrumentWithType inst : instruments) {
+            keys.add(new SubscriptionManager.Key(inst.figi, DataType.LAST_PRICE));
+            boolean marketData = switch (inst.type) {
+                case SHARE -> true;
+                case FUTURE -> futuresAllowed;
+                case INDICATIVE -> false;
+            };
+            if (marketData) {
+                keys.add(new SubscriptionManager.Key(inst.figi, DataType.TRADES));
+                if (orderBooks) {
+                    keys.add(new SubscriptionManager.Key(inst.figi, DataType.ORDER_BOOK));
+                }
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * FIGI с первоочередной подпиской на LastPrice: акции и инструменты панелей индексов
+     */
+    private Set<String> getPrimaryLastPriceFigis(List<InstrumentWithType> instruments) {
+        Set<String> figis = getIndexBarFigis();
+        for (InstrumentWithType inst : instruments) {
+            if (inst.type == InstrumentWithType.InstrumentType.SHARE) {
+                figis.add(inst.figi);
+            }
+        }
+        return figis;
+    }
+
+    /**
+     * Создание stream-соединения и подписка на все его желаемые подписки
      * 
-     * @param instruments группа инструментов для подписки
-     * @param streamId идентификатор stream-соединения
+     * @param streamId идентификатор stream-соединения в плане SubscriptionManager
      */
-    private void createAndSubscribeStream(List<InstrumentWithType> instruments, int streamId) {
-        if (instruments.isEmpty()) {
-            log.warn("Stream {}: No instruments provided, skipping stream creation", streamId);
+    private void createAndSubscribeStream(int streamId) {
+        createAndSubscribeStream(streamId, subscriptionManager.desired(streamId));
+    }
+
+    /**
+     * Создание stream-соединения с заданным набором подписок
+     */
+    private void createAndSubscribeStream(int streamId, Set<SubscriptionManager.Key> keys) {
+        if (keys.isEmpty()) {
+            log.warn("Stream {}: No subscriptions planned, skipping stream creation", streamId);
             return;
         }
 
-        log.info("Stream {}: Creating stream connection for {} instruments", streamId,
-                instruments.size());
+        Map<DataType, Long> breakdown = new EnumMap<>(DataType.class);
+        for (SubscriptionManager.Key key : keys) {
+            breakdown.merge(key.type(), 1L, Long::sum);
+        }
+        log.info("Stream {}: Creating stream connection for {} subscriptions {}", streamId,
+                keys.size(), breakdown);
 
         try {
-            // Разделяем инструменты по типам
-            List<String> allFigis = new ArrayList<>();
-            List<String> shareFigis = new ArrayList<>();
-            List<String> futureFigis = new ArrayList<>();
-            List<String> indicativeFigis = new ArrayList<>();
-
-            for (InstrumentWithType inst : instruments) {
-                allFigis.add(inst.figi);
-                switch (inst.type) {
-                    case SHARE:
-                        shareFigis.add(inst.figi);
-                        break;
-                    case FUTURE:
-                        futureFigis.add(inst.figi);
-                        break;
-                    case INDICATIVE:
-                        indicativeFigis.add(inst.figi);
-                        break;
-                }
-            }
-
-            log.info("Stream {}: Instruments breakdown - Shares: {}, Futures: {}, Indicatives: {}",
-                    streamId, shareFigis.size(), futureFigis.size(), indicativeFigis.size());
+            StreamConnection streamConnection = new StreamConnection(streamId);
 
             // Создаем StreamObserver для этого stream
-            StreamObserver<MarketDataResponse> responseObserver = new StreamObserver<>() {
+            // Транспортный поток gRPC только передает сообщение в стадию разбора; сервер передает
+            // не больше окна необработанных сообщений, следующее запрашивается после разбора
+            int window = Math.max(1, config.getMarketDataStreamWindow());
+            ClientResponseObserver<MarketDataRequest, MarketDataResponse> responseObserver =
+                    new ClientResponseObserver<>() {
+                @Override
+                public void beforeStart(ClientCallStreamObserver<MarketDataRequest> requestStream) {
+                    requestStream.disableAutoRequestWithInitialRequest(window);
+                    streamConnection.requestObserver = requestStream;
+                }
+
                 @Override
                 public void onNext(MarketDataResponse resp) {
-                    if (resp.hasSubscribeLastPriceResponse()) {
-                        SubscribeLastPriceResponse sr = resp.getSubscribeLastPriceResponse();
-                        StreamConnection streamConn = findStreamConnection(streamId);
-                        if (streamConn != null) {
-                            streamConn.isConnected.set(true);
-                        }
-                        isConnected.set(true);
-                        log.info("Stream {}: === LastPrice SUBSCRIPTION RESPONSE ===", streamId);
-                        log.info("Stream {}: Total LastPrice subscriptions: {}", streamId,
-                                sr.getLastPriceSubscriptionsList().size());
-
-                        long successCount = sr.getLastPriceSubscriptionsList().stream().filter(
-                                s -> s.getSubscriptionStatus() == SubscriptionStatus.SUBSCRIPTION_STATUS_SUCCESS)
-                                .count();
-                        long errorCount = sr.getLastPriceSubscriptionsList().size() - successCount;
-
-                        log.info("Stream {}: Successful subscriptions: {}, Failed: {}", streamId,
-                                successCount, errorCount);
-
-                        if (errorCount > 0) {
-                            log.warn("Stream {}: Failed LastPrice subscriptions:", streamId);
-                            sr.getLastPriceSubscriptionsList().stream().filter(s -> s
-                                    .getSubscriptionStatus() != SubscriptionStatus.SUBSCRIPTION_STATUS_SUCCESS)
-                                    .forEach(s -> log.warn("Stream {}:   FIGI {} -> {}", streamId,
-                                            s.getFigi(), s.getSubscriptionStatus()));
-                        }
-                        log.info("Stream {}: =====================================", streamId);
-                        return;
-                    }
-
-                    if (resp.hasSubscribeTradesResponse()) {
-                        SubscribeTradesResponse sr = resp.getSubscribeTradesResponse();
-                        StreamConnection streamConn = findStreamConnection(streamId);
-                        if (streamConn != null) {
-                            streamConn.isConnected.set(true);
-                        }
-                        isConnected.set(true);
-                        log.info("Stream {}: === TRADES SUBSCRIPTION RESPONSE ===", streamId);
-                        log.info("Stream {}: Total Trades subscriptions: {}", streamId,
-                                sr.getTradeSubscriptionsList().size());
-
-                        long successCount = sr.getTradeSubscriptionsList().stream().filter(s -> s
-                                .getSubscriptionStatus() == SubscriptionStatus.SUBSCRIPTION_STATUS_SUCCESS)
-                                .count();
-                        long errorCount = sr.getTradeSubscriptionsList().size() - successCount;
-
-                        log.info("Stream {}: Successful subscriptions: {}, Failed: {}", streamId,
-                                successCount, errorCount);
-
-                        if (errorCount > 0) {
-                            log.warn("Stream {}: Failed Trades subscriptions:", streamId);
-                            sr.getTradeSubscriptionsList().stream().filter(s -> s
-                                    .getSubscriptionStatus() != SubscriptionStatus.SUBSCRIPTION_STATUS_SUCCESS)
-                                    .forEach(s -> log.warn("Stream {}:   FIGI {} -> {}", streamId,
-                                            s.getFigi(), s.getSubscriptionStatus()));
-                        }
-                        log.info("Stream {}: ===================================", streamId);
-                        return;
-                    }
-
-                    if (resp.hasSubscribeOrderBookResponse()) {
-                        SubscribeOrderBookResponse sr = resp.getSubscribeOrderBookResponse();
-                        StreamConnection streamConn = findStreamConnection(streamId);
-                        if (streamConn != null) {
-                            streamConn.isConnected.set(true);
+                    long now = System.currentTimeMillis();
+                    streamConnection.lastMessageAtMs = now;
+                    markStableIfDue(streamConnection, now);
+                    decodeStage.submit(streamId, () -> {
+                        try {
+                            handleMessage(streamConnection, resp);
+                        } finally {
+                            streamConnection.requestNext();
                         }
-                        isConnected.set(true);
-                        log.info("Stream {}: === ORDER BOOK SUBSCRIPTION RESPONSE ===", streamId);
-                        log.info("Stream {}: Total OrderBook subscriptions: {}", streamId,
-                                sr.getOrderBookSubscriptionsList().size());
-
-                        long successCount = sr.getOrderBookSubscriptionsList().stream().filter(
-                                s -> s.getSubscriptionStatus() == SubscriptionStatus.SUBSCRIPTION_STATUS_SUCCESS)
-                                .count();
-                        long errorCount = sr.getOrderBookSubscriptionsList().size() - successCount;
-
-                        log.info("Stream {}: Successful subscriptions: {}, Failed: {}", streamId,
-                                successCount, errorCount);
-
-                        if (errorCount > 0) {
-                            log.warn("Stream {}: Failed OrderBook subscriptions:", streamId);
-                            sr.getOrderBookSubscriptionsList().stream().filter(s -> s
-                                    .getSubscriptionStatus() != SubscriptionStatus.SUBSCRIPTION_STATUS_SUCCESS)
-                                    .forEach(s -> log.warn("Stream {}:   FIGI {} -> {}", streamId,
-                                            s.getFigi(), s.getSubscriptionStatus()));
-                        }
-                        log.info("Stream {}: ======================================", streamId);
-                        return;
-                    }
-
-                    // Обработка данных
-                    if (resp.hasLastPrice()) {
-                        processLastPrice(resp.getLastPrice());
-                        quoteScannerService.processLastPrice(resp.getLastPrice());
-                    } else if (resp.hasTrade()) {
-                        processTrade(resp.getTrade());
-                        quoteScannerService.processTrade(resp.getTrade());
-                    } else if (resp.hasOrderbook()) {
-                        processOrderBook(resp.getOrderbook());
-                        quoteScannerService.processOrderBook(resp.getOrderbook());
-                    }
+                    });
                 }
 
                 @Override
                 public void onError(Throwable t) {
-                    StreamConnection streamConn = findStreamConnection(streamId);
-                    if (streamConn != null) {
-                        streamConn.isConnected.set(false);
-                    }
-                    isConnected.set(false);
-                    log.error("Stream {}: Market data stream error, attempting reconnection...",
-                            streamId, t);
-                    scheduleStreamReconnect(streamId, instruments, RECONNECT_DELAY_MS);
+                    decodeStage.submit(streamId, () -> {
+                        // Соединение, закрытое нами (замена, принудительное переподключение), не
+                        // переподключаем
+                        if (!onStreamLost(streamConnection)) {
+                            return;
+                        }
+                        log.error("Stream {}: Market data stream error, attempting reconnection...",
+                                streamId, t);
+                        scheduleStreamReconnect(streamId);
+                    });
                 }
 
                 @Override
                 public void onCompleted() {
-                    StreamConnection streamConn = findStreamConnection(streamId);
-                    if (streamConn != null) {
-                        streamConn.isConnected.set(false);
-                    }
-                    isConnected.set(false);
-                    log.info("Stream {}: Market data stream completed, restarting subscription...",
-                            streamId);
-                    scheduleStreamReconnect(streamId, instruments, RECONNECT_DELAY_MS);
+                    decodeStage.submit(streamId, () -> {
+                        if (!onStreamLost(streamConnection)) {
+                            return;
+                        }
+                        log.info("Stream {}: Market data stream completed, "
+                                + "restarting subscription...", streamId);
+                        scheduleStreamReconnect(streamId);
+                    });
                 }
             };
 
             // Создаем stream-соединение
             log.info("Stream {}: Connecting to T-Invest API...", streamId);
-            StreamObserver<MarketDataRequest> requestObserver =
-                    streamStub.marketDataStream(responseObserver);
-            StreamConnection streamConnection = new StreamConnection(requestObserver, streamId);
             streamConnections.add(streamConnection);
+            streamConnection.requestObserver = streamStub.marketDataStream(responseObserver);
 
-            // Подписка на LastPrice для всех инструментов
-            log.info("Stream {}: === Subscribing to LastPrice ({} instruments) ===", streamId,
-                    allFigis.size());
-            subscribeToLastPrice(streamConnection, allFigis);
-
-            // Подписка на Trades для shares и futures
-            List<String> tradesFigis = new ArrayList<>(shareFigis);
-            if (sessionTimeService.canSubscribeToFutures()) {
-                tradesFigis.addAll(futureFigis);
-            } else {
-                log.info(
-                        "Stream {}: Skipping Trades subscription for {} futures (weekend before 8:30 MSK)",
-                        streamId, futureFigis.size());
-            }
-            if (!tradesFigis.isEmpty()) {
-                log.info("Stream {}: === Subscribing to Trades ({} instruments) ===", streamId,
-                        tradesFigis.size());
-                subscribeToTrades(streamConnection, tradesFigis);
+            sendSubscriptions(streamConnection, keys,
+                    SubscriptionAction.SUBSCRIPTION_ACTION_SUBSCRIBE);
+
+            log.info("Stream {}: Stream created, subscription requests queued", streamId);
+
+        } catch (Exception e) {
+            log.error("Stream {}: Error creating stream connection", streamId, e);
+        }
+    }
+
+    /**
+     * Обработка одного сообщения stream-соединения (в потоке стадии разбора)
+     */
+    private void handleMessage(StreamConnection streamConnection, MarketDataResponse resp) {
+        if (resp.hasSubscribeLastPriceResponse()) {
+            SubscribeLastPriceResponse sr = resp.getSubscribeLastPriceResponse();
+            onSubscribeResponse(streamConnection, DataType.LAST_PRICE,
+                    sr.getLastPriceSubscriptionsList().stream()
+                            .map(s -> Map.entry(s.getFigi(), s.getSubscriptionStatus()))
+                            .toList());
+            return;
+        }
+
+        if (resp.hasSubscribeTradesResponse()) {
+            SubscribeTradesResponse sr = resp.getSubscribeTradesResponse();
+            onSubscribeResponse(streamConnection, DataType.TRADES,
+                    sr.getTradeSubscriptionsList().stream()
+                            .map(s -> Map.entry(s.getFigi(), s.getSubscriptionStatus()))
+                            .toList());
+            return;
+        }
+
+        if (resp.hasSubscribeOrderBookResponse()) {
+            SubscribeOrderBookResponse sr = resp.getSubscribeOrderBookResponse();
+            onSubscribeResponse(streamConnection, DataType.ORDER_BOOK,
+                    sr.getOrderBookSubscriptionsList().stream()
+                            .map(s -> Map.entry(s.getFigi(), s.getSubscriptionStatus()))
+                            .toList());
+            return;
+        }
+
+        // Обработка данных: декодируем один раз и передаем событие дальше
+        MarketTick tick = marketDataDecoder.decode(resp);
+        if (tick != null) {
+            recordTick(tick);
+            quoteScannerService.processTick(tick);
+        }
+    }
+
+    /**
+     * Учет ответа на запрос подписки
+     */
+    private void onSubscribeResponse(StreamConnection streamConnection, DataType type,
+            List<Map.Entry<String, SubscriptionStatus>> statuses) {
+        int streamId = streamConnection.streamId;
+        streamConnection.isConnected.set(true);
+        isConnected.set(true);
+
+        long successCount = 0;
+        for (Map.Entry<String, SubscriptionStatus> status : statuses) {
+            boolean success = status.getValue() == SubscriptionStatus.SUBSCRIPTION_STATUS_SUCCESS;
+            subscriptionManager.onStatus(streamId, status.getKey(), type, success);
+            if (success) {
+                successCount++;
             }
+        }
+        long errorCount = statuses.size() - successCount;
+        if (successCount > 0 && streamConnection.subscribedAtMs == 0) {
+            streamConnection.subscribedAtMs = System.currentTimeMillis();
+        }
+
+        log.info("Stream {}: {} subscription response: {} subscriptions, successful: {}, "
+                + "failed: {}", streamId, type, statuses.size(), successCount, errorCount);
+        if (errorCount > 0) {
+            log.warn("Stream {}: Failed {} subscriptions:", streamId, type);
+            statuses.stream()
+                    .filter(s -> s.getValue() != SubscriptionStatus.SUBSCRIPTION_STATUS_SUCCESS)
+                    .forEach(s -> log.warn("Stream {}:   FIGI {} -> {}", streamId, s.getKey(),
+                            s.getValue()));
+        }
+    }
+
+    /**
+     * Соединение разорвано: сбрасываем его состояние и подтвержденные подписки
+     *
+     * @return false, если соединение уже не текущее (закрыто нами или заменено)
+     */
+    private boolean onStreamLost(StreamConnection streamConnection) {
+        streamConnection.isConnected.set(false);
+        // Вызов уже завершен сервером: отмена только запрещает дальнейшие отправки
+        streamConnection.cancel("Stream lost");
+        if (!streamConnections.remove(streamConnection)) {
+            return false;
+        }
+        isConnected.set(false);
+        markStableIfDue(streamConnection, System.currentTimeMillis());
+        subscriptionManager.onStreamLost(streamConnection.streamId);
+        return true;
+    }
+
+    /**
+     * Сбросить счетчик неудач переподключения, если соединение работает устойчиво: есть успешная
+     * подписка и с ее момента прошло не меньше stream-stable-after-ms
+     *
+     * Ответ на подписку сам по себе счетчик не сбрасывает - сервер, который принимает подписку и
+     * сразу обрывает соединение, должен приводить к размыканию цепи.
+     */
+    private void markStableIfDue(StreamConnection streamConnection, long now) {
+        long subscribedAtMs = streamConnection.subscribedAtMs;
+        if (streamConnection.stable || subscribedAtMs == 0
+                || now - subscribedAtMs < config.getStreamStableAfterMs()) {
+            return;
+        }
+        streamConnection.stable = true;
+        reconnectPolicy(streamConnection.streamId).onSuccess();
+        log.debug("Stream {}: Stable for {} ms, reconnect backoff reset",
+                streamConnection.streamId, now - subscribedAtMs);
+    }
 
-            // Подписка на OrderBook для shares и futures (если включено)
-            if (config.isEnableOrderBookSubscription()) {
-                List<String> orderBookFigis = new ArrayList<>(shareFigis);
-                if (sessionTimeService.canSubscribeToFutures()) {
-                    orderBookFigis.addAll(futureFigis);
-                } else {
-                    log.info(
-                            "Stream {}: Skipping OrderBook subscription for {} futures (weekend before 8:30 MSK)",
-                            streamId, futureFigis.size());
+    private StreamReconnectPolicy reconnectPolicy(int streamId) {
+        return reconnectPolicies.computeIfAbsent(streamId,
+                id -> new StreamReconnectPolicy(config.getStreamReconnectBaseDelayMs(),
+                        config.getStreamReconnectMaxDelayMs(),
+                        config.getStreamCircuitFailureThreshold(),
+                        config.getStreamCircuitOpenMs()));
+    }
+
+    /**
+     * Переподключение stream-соединений без данных во время торговой сессии
+     *
+     * Вне сессий отсутствие данных нормально, поэтому проверка выполняется только при активной
+     * утренней сессии или сессии выходного дня.
+     */
+    private void checkStaleStreams() {
+        try {
+            if (!isRunning.get() || !sessionTimeService.isAnySessionActive()) {
+                return;
+            }
+            long now = System.currentTimeMillis();
+            long timeoutMs = config.getStaleStreamTimeoutMs();
+            for (StreamConnection conn : streamConnections) {
+                long silentMs = now - conn.lastMessageAtMs;
+                if (silentMs < timeoutMs || !streamConnections.remove(conn)) {
+                    continue;
                 }
-                if (!orderBookFigis.isEmpty()) {
-                    log.info("Stream {}: === Subscribing to OrderBook ({} instruments) ===",
-                            streamId, orderBookFigis.size());
-                    subscribeToOrderBook(streamConnection, orderBookFigis);
+                totalStaleStreams.incrementAndGet();
+                log.warn("Stream {}: No data for {} ms during active session, reconnecting",
+                        conn.streamId, silentMs);
+                conn.isConnected.set(false);
+                markStableIfDue(conn, now);
+                subscriptionManager.onStreamLost(conn.streamId);
+                subscriptionScheduler.cancel(conn.streamId);
+                try {
+                    conn.cancel("Stale stream");
+                } catch (Exception e) {
+                    log.warn("Stream {}: Error cancelling stale stream", conn.streamId, e);
                 }
+                scheduleStreamReconnect(conn.streamId);
             }
-
-            log.info("Stream {}: Successfully created and subscribed", streamId);
-
         } catch (Exception e) {
-            log.error("Stream {}: Error creating stream connection", streamId, e);
+            log.error("Error checking stale streams", e);
         }
     }
 
@@ -638,109 +744,206 @@ public class MarketDataStreamingService {
     }
 
     /**
-     * Подписка на LastPrice для списка инструментов
+     * Отправить запросы подписки или отписки по типам данных
+     *
+     * LastPrice акций и инструментов панелей индексов отправляется с наивысшим приоритетом.
      */
-    private void subscribeToLastPrice(StreamConnection streamConnection, List<String> instruments) {
-        if (instruments.isEmpty()) {
-            return;
-        }
-        List<List<String>> batches = splitIntoBatches(instruments, SUBSCRIPTION_BATCH_SIZE);
-        log.info("Stream {}: Sending {} batches of LastPrice subscriptions (batch size: {})",
-                streamConnection.streamId, batches.size(), SUBSCRIPTION_BATCH_SIZE);
-        for (int i = 0; i < batches.size(); i++) {
-            waitForRateLimit(); // Глобальный rate limiter для всех stream
-            List<String> batch = batches.get(i);
-            SubscribeLastPriceRequest batchReq = SubscribeLastPriceRequest.newBuilder()
-                    .setSubscriptionAction(SubscriptionAction.SUBSCRIPTION_ACTION_SUBSCRIBE)
-                    .addAllInstruments(batch.stream()
-                            .map(f -> LastPriceInstrument.newBuilder().setInstrumentId(f).build())
-                            .toList())
-                    .build();
-            MarketDataRequest request =
-                    MarketDataRequest.newBuilder().setSubscribeLastPriceRequest(batchReq).build();
-            streamConnection.requestObserver.onNext(request);
-            log.debug("Stream {}: Sent LastPrice batch {}/{} ({} instruments)",
-                    streamConnection.streamId, i + 1, batches.size(), batch.size());
+    private void sendSubscriptions(StreamConnection streamConnection,
+            Collection<SubscriptionManager.Key> keys, SubscriptionAction action) {
+        Set<String> primary = primaryLastPriceFigis;
+        List<String> primaryLastPrice = new ArrayList<>();
+        List<String> lastPrice = new ArrayList<>();
+        List<String> trades = new ArrayList<>();
+        List<String> orderBooks = new ArrayList<>();
+        for (SubscriptionManager.Key key : keys) {
+            switch (key.type()) {
+                case LAST_PRICE -> (primary.contains(key.figi()) ? primaryLastPrice : lastPrice)
+                        .add(key.figi());
+                case TRADES -> trades.add(key.figi());
+                case ORDER_BOOK -> orderBooks.add(key.figi());
+            }
         }
+        sendBatches(streamConnection, DataType.LAST_PRICE, primaryLastPrice, action,
+                SubscriptionScheduler.Priority.PRIMARY_LAST_PRICE);
+        sendBatches(streamConnection, DataType.LAST_PRICE, lastPrice, action,
+                SubscriptionScheduler.Priority.LAST_PRICE);
+        sendBatches(streamConnection, DataType.TRADES, trades, action,
+                SubscriptionScheduler.Priority.TRADES);
+        sendBatches(streamConnection, DataType.ORDER_BOOK, orderBooks, action,
+                SubscriptionScheduler.Priority.ORDER_BOOK);
     }
 
     /**
-     * Подписка на Trades для списка инструментов
+     * Поставить в очередь запросы одного типа данных батчами по SUBSCRIPTION_BATCH_SIZE
      */
-    private void subscribeToTrades(StreamConnection streamConnection, List<String> instruments) {
+    private void sendBatches(StreamConnection streamConnection, DataType type,
+            List<String> instruments, SubscriptionAction action,
+            SubscriptionScheduler.Priority priority) {
         if (instruments.isEmpty()) {
             return;
         }
         List<List<String>> batches = splitIntoBatches(instruments, SUBSCRIPTION_BATCH_SIZE);
-        log.info("Stream {}: Sending {} batches of Trades subscriptions (batch size: {})",
-                streamConnection.streamId, batches.size(), SUBSCRIPTION_BATCH_SIZE);
+        log.info("Stream {}: Queueing {} batches of {} {} requests (batch size: {})",
+                streamConnection.streamId, batches.size(), type, action, SUBSCRIPTION_BATCH_SIZE);
         for (int i = 0; i < batches.size(); i++) {
-            waitForRateLimit(); // Глобальный rate limiter для всех stream
             List<String> batch = batches.get(i);
-            SubscribeTradesRequest batchReq =
-                    SubscribeTradesRequest.newBuilder()
-                            .setSubscriptionAction(SubscriptionAction.SUBSCRIPTION_ACTION_SUBSCRIBE)
-                            .addAllInstruments(batch.stream()
-                                    .map(f -> ru.tinkoff.piapi.contract.v1.TradeInstrument
-                                            .newBuilder().setInstrumentId(f).build())
-                                    .toList())
-                            .build();
-            MarketDataRequest request =
-                    MarketDataRequest.newBuilder().setSubscribeTradesRequest(batchReq).build();
-            streamConnection.requestObserver.onNext(request);
-            log.debug("Stream {}: Sent Trades batch {}/{} ({} instruments)",
-                    streamConnection.streamId, i + 1, batches.size(), batch.size());
+            enqueue(streamConnection, priority, buildRequest(type, batch, action),
+                    String.format("%s %s batch %d/%d (%d instruments)", type, action, i + 1,
+                            batches.size(), batch.size()));
         }
     }
 
     /**
-     * Подписка на OrderBook для списка инструментов
+     * Запрос подписки или отписки на один тип данных
      */
-    private void subscribeToOrderBook(StreamConnection streamConnection, List<String> instruments) {
-        if (instruments.isEmpty()) {
-            return;
-        }
-        List<List<String>> batches = splitIntoBatches(instruments, SUBSCRIPTION_BATCH_SIZE);
-        log.info("Stream {}: Sending {} batches of OrderBook subscriptions (batch size: {})",
-                streamConnection.streamId, batches.size(), SUBSCRIPTION_BATCH_SIZE);
-        for (int i = 0; i < batches.size(); i++) {
-            waitForRateLimit(); // Глобальный rate limiter для всех stream
-            List<String> batch = batches.get(i);
-            SubscribeOrderBookRequest batchReq = SubscribeOrderBookRequest.newBuilder()
-                    .setSubscriptionAction(SubscriptionAction.SUBSCRIPTION_ACTION_SUBSCRIBE)
-                    .addAllInstruments(batch.stream()
-                            .map(f -> OrderBookInstrument.newBuilder().setInstrumentId(f)
-                                    .setDepth(config.getOrderBookDepth()).build())
-                            .toList())
+    private MarketDataRequest buildRequest(DataType type, List<String> batch,
+            SubscriptionAction action) {
+        return switch (type) {
+            case LAST_PRICE -> MarketDataRequest.newBuilder()
+                    .setSubscribeLastPriceRequest(SubscribeLastPriceRequest.newBuilder()
+                            .setSubscriptionAction(action)
+                            .addAllInstruments(batch.stream()
+                                    .map(f -> LastPriceInstrument.newBuilder().setInstrumentId(f)
+                                            .build())
+                                    .toList()))
                     .build();
-            MarketDataRequest request =
-                    MarketDataRequest.newBuilder().setSubscribeOrderBookRequest(batchReq).build();
-            streamConnection.requestObserver.onNext(request);
-            log.debug("Stream {}: Sent OrderBook batch {}/{} ({} instruments)",
-                    streamConnection.streamId, i + 1, batches.size(), batch.size());
+            case TRADES -> MarketDataRequest.newBuilder()
+                    .setSubscribeTradesRequest(SubscribeTradesRequest.newBuilder()
+                            .setSubscriptionAction(action)
+                            .addAllInstruments(batch.stream()
+                                    .map(f -> TradeInstrument.newBuilder().setInstrumentId(f)
+                                            .build())
+                                    .toList()))
+                    .build();
+            case ORDER_BOOK -> MarketDataRequest.newBuilder()
+                    .setSubscribeOrderBookRequest(SubscribeOrderBookRequest.newBuilder()
+                            .setSubscriptionAction(action)
+                            .addAllInstruments(batch.stream()
+                                    .map(f -> OrderBookInstrument.newBuilder().setInstrumentId(f)
+                                            .setDepth(config.getOrderBookDepth()).build())
+                                    .toList()))
+                    .build();
+        };
+    }
+
+    /**
+     * Поставить запрос подписки в очередь планировщика
+     *
+     * Запрос не отправляется, если к моменту отправки соединение уже закрыто (заменено
+     * переподключением или больше не нужно).
+     */
+    private void enqueue(StreamConnection streamConnection, SubscriptionScheduler.Priority priority,
+            MarketDataRequest request, String description) {
+        subscriptionScheduler.submit(priority, streamConnection.streamId, description,
+                () -> streamConnection.send(request));
+    }
+
+    /**
+     * FIGI инструментов панелей индексов (утренний сканер и сканер выходного дня)
+     */
+    private Set<String> getIndexBarFigis() {
+        Set<String> figis = new HashSet<>(weekendScannerService.getIndexFigis());
+        for (Map<String, String> index : quoteScannerService.getCurrentIndices()) {
+            figis.add(index.get("figi"));
         }
+        return figis;
     }
 
     /**
      * Планирование переподключения для конкретного stream
+     *
+     * Задержку определяет политика переподключения этого stream (экспоненциальная со случайной
+     * составляющей, при разомкнутой цепи - пауза). Соединение восстанавливается только со своими
+     * подписками без отклоненных сервером; остальные соединения не затрагиваются.
      */
-    private void scheduleStreamReconnect(int streamId, List<InstrumentWithType> instruments,
-            long delayMs) {
+    private void scheduleStreamReconnect(int streamId) {
         if (!isRunning.get()) {
             return;
         }
+        subscriptionScheduler.cancel(streamId);
+        StreamReconnectPolicy policy = reconnectPolicy(streamId);
+        long delayMs = policy.onFailure();
+        if (policy.getState() == StreamReconnectPolicy.State.OPEN) {
+            log.warn("Stream {}: Circuit open after {} consecutive failures, next attempt in {} ms",
+                    streamId, policy.getConsecutiveFailures(), delayMs);
+        } else {
+            log.info("Stream {}: Reconnect attempt {} in {} ms", streamId,
+                    policy.getConsecutiveFailures(), delayMs);
+        }
         reconnectScheduler.schedule(() -> {
-            if (isRunning.get()) {
+            if (!isRunning.get() || findStreamConnection(streamId) != null) {
+                return;
+            }
+            Set<SubscriptionManager.Key> keys = subscriptionManager.resubscribable(streamId);
+            if (keys.isEmpty()) {
+                log.info("Stream {}: No subscriptions left, not reconnecting", streamId);
+                return;
+            }
+            log.info("Stream {}: Attempting to reconnect to T-Invest API...", streamId);
+            createAndSubscribeStream(streamId, keys);
+        }, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Применить изменения набора инструментов без переподключения
+     *
+     * Новые подписки отправляются на соединения по плану SubscriptionManager, удаленные -
+     * отписываются; соединение без подписок закрывается. Выполняется в потоке переподключений,
+     * поэтому не пересекается с полным запуском потоков.
+     */
+    public void refreshSubscriptions() {
+        if (!isRunning.get()) {
+            return;
+        }
+        reconnectScheduler.execute(this::applySubscriptionChanges);
+    }
+
+    private void applySubscriptionChanges() {
+        if (!isRunning.get() || subscriptionManager.getStreamIds().isEmpty()) {
+            // Потоки еще не запущены - полный запуск сам возьмет актуальный набор инструментов
+            return;
+        }
+        try {
+            List<InstrumentWithType> allInstruments = getAllInstrumentsWithTypes();
+            primaryLastPriceFigis = getPrimaryLastPriceFigis(allInstruments);
+            List<SubscriptionManager.Delta> deltas =
+                    subscriptionManager.reconcile(toSubscriptionKeys(allInstruments));
+            if (deltas.isEmpty()) {
+                log.info("Subscription refresh: no changes");
+                return;
+            }
+            for (SubscriptionManager.Delta delta : deltas) {
+                int streamId = delta.streamId();
+                log.info("Stream {}: Subscription changes: +{} -{}{}", streamId,
+                        delta.subscribe().size(), delta.unsubscribe().size(),
+                        delta.newStream() ? " (new stream)" : "");
+                if (delta.newStream()) {
+                    createAndSubscribeStream(streamId);
+                    continue;
+                }
                 StreamConnection streamConn = findStreamConnection(streamId);
-                if (streamConn == null || !streamConn.isConnected.get()) {
-                    log.info("Stream {}: Attempting to reconnect to T-Invest API...", streamId);
-                    // Удаляем старое соединение если оно есть
-                    streamConnections.removeIf(conn -> conn.streamId == streamId);
-                    // Создаем новое соединение
-                    createAndSubscribeStream(instruments, streamId);
+                if (streamConn == null) {
+                    // Соединение переподключается и подпишется на актуальный план
+                    continue;
                 }
+                if (subscriptionManager.desired(streamId).isEmpty()) {
+                    log.info("Stream {}: No subscriptions left, closing stream", streamId);
+                    streamConnections.remove(streamConn);
+                    subscriptionScheduler.cancel(streamId);
+                    subscriptionManager.onStreamLost(streamId);
+                    reconnectPolicies.remove(streamId);
+                    streamConn.complete();
+                    continue;
+                }
+                subscriptionManager.onUnsubscribeRequested(streamId, delta.unsubscribe());
+                sendSubscriptions(streamConn, delta.unsubscribe(),
+                        SubscriptionAction.SUBSCRIPTION_ACTION_UNSUBSCRIBE);
+                sendSubscriptions(streamConn, delta.subscribe(),
+                        SubscriptionAction.SUBSCRIPTION_ACTION_SUBSCRIBE);
             }
-        }, delayMs, TimeUnit.MILLISECONDS);
+        } catch (Exception e) {
+            log.error("Error applying subscription changes", e);
+        }
     }
 
     /**
@@ -784,34 +987,49 @@ public class MarketDataStreamingService {
                         : "");
         log.info(
                 "Futures subscription: In weekends (Sat/Sun), subscriptions start only from 8:30 MSK");
+        if (!sessionTimeService.canSubscribeToFutures()) {
+            log.info("Skipping Trades/OrderBook subscriptions for {} futures "
+                    + "(weekend before 8:30 MSK)", futuresCount);
+        }
         log.info("Batch size: {} instruments", SUBSCRIPTION_BATCH_SIZE);
-        log.info("Rate limiting: {} ms delay between requests (max {} requests/min)",
-                MIN_DELAY_BETWEEN_REQUESTS_MS, MAX_REQUESTS_PER_MINUTE);
+        log.info("Rate limiting: token bucket, max {} requests/min (bursts up to the budget)",
+                MAX_REQUESTS_PER_MINUTE);
         log.info("Max instruments per stream: {} (limit from T-Invest API quotes service)",
                 MAX_INSTRUMENTS_PER_STREAM);
 
         try {
-            // Очищаем старые соединения
+            // Закрываем старые соединения
+            List<StreamConnection> previous = new ArrayList<>(streamConnections);
             streamConnections.clear();
-            lastRequestTime = 0; // Сбрасываем глобальный rate limiter
+            subscriptionScheduler.cancelAll(); // Подписки старых соединений уже не нужны
+            reconnectPolicies.clear();
+            for (StreamConnection conn : previous) {
+                conn.cancel("Restarting market data streams");
+            }
 
-            // Разделяем инструменты на группы для stream-соединений
-            // Каждая группа содержит максимум MAX_INSTRUMENTS_PER_STREAM инструментов
-            List<List<InstrumentWithType>> streamGroups =
-                    splitIntoStreamGroups(allInstruments, MAX_INSTRUMENTS_PER_STREAM);
+            // Разделяем инструменты на группы для stream-соединений с выравниванием ожидаемого
+            // потока сообщений; каждая группа содержит максимум MAX_INSTRUMENTS_PER_STREAM
+            // инструментов
+            List<StreamShardPlanner.Shard> shards = shardPlanner
+                    .plan(toSubscriptionKeys(allInstruments), MAX_INSTRUMENTS_PER_STREAM);
+            primaryLastPriceFigis = getPrimaryLastPriceFigis(allInstruments);
+            subscriptionManager.reset(shards.stream().map(StreamShardPlanner.Shard::keys).toList());
 
-            int numberOfStreams = streamGroups.size();
+            int numberOfStreams = shards.size();
             log.info("=== Creating {} stream connection(s) for {} total instruments ===",
                     numberOfStreams, allInstruments.size());
             log.info("Max instruments per stream: {}", MAX_INSTRUMENTS_PER_STREAM);
+            for (int i = 0; i < shards.size(); i++) {
+                StreamShardPlanner.Shard shard = shards.get(i);
+                log.info("Stream {}: Will handle {} instruments, {} subscriptions, "
+                        + "expected load {}", i + 1, shard.instruments(), shard.keys().size(),
+                        Math.round(shard.expectedLoad()));
+            }
 
-            // Создаем отдельный stream для каждой группы инструментов синхронно
-            // Глобальный rate limiter гарантирует соблюдение лимита 300 запросов/мин
-            for (int i = 0; i < streamGroups.size(); i++) {
-                List<InstrumentWithType> group = streamGroups.get(i);
-                int streamId = i + 1;
-                log.info("Stream {}: Will handle {} instruments", streamId, group.size());
-                createAndSubscribeStream(group, streamId);
+            // Создаем отдельный stream для каждой группы инструментов; запросы подписки
+            // отправляет планировщик с соблюдением лимита 300 запросов/мин
+            for (int streamId : subscriptionManager.getStreamIds()) {
+                createAndSubscribeStream(streamId);
             }
 
             log.info("=== Successfully created {} stream connection(s) ===", numberOfStreams);
@@ -824,141 +1042,47 @@ public class MarketDataStreamingService {
     }
 
     /**
-     * Высокопроизводительная обработка данных о сделке с минимальной задержкой
-     */
-    private void processTrade(Trade trade) {
-        try {
-            totalTradeReceived.incrementAndGet();
-
-            Instant eventInstant =
-                    Instant.ofEpochSecond(trade.getTime().getSeconds(), trade.getTime().getNanos());
-            // Конвертируем время в UTC+3 (московское время)
-            LocalDateTime eventTime = LocalDateTime.ofInstant(eventInstant, ZoneOffset.of("+3"));
-
-            BigDecimal priceValue = BigDecimal.valueOf(trade.getPrice().getUnits())
-                    .add(BigDecimal.valueOf(trade.getPrice().getNano()).movePointLeft(9));
-
-            // Определяем направление сделки
-            String direction =
-                    trade.getDirection() == TradeDirection.TRADE_DIRECTION_BUY ? "BUY" : "SELL";
-
-            // Определяем источник сделки (по умолчанию EXCHANGE)
-            String tradeSource = "EXCHANGE";
-
-            log.debug("Processing Trade: FIGI={}, Time={}, Price={}, Direction={}, Quantity={}",
-                    trade.getFigi(), eventTime, priceValue, direction, trade.getQuantity());
-
-            // Логируем каждую 100-ю запись для мониторинга частоты
-            if (totalTradeReceived.get() % 100 == 0) {
-                log.info("Received {} trades from T-Invest API", totalTradeReceived.get());
-            }
-
-            if (log.isDebugEnabled()) {
-                log.debug("Processing trade for {} at {}: {} {} ({} lots)", trade.getFigi(),
-                        eventTime, priceValue, direction, trade.getQuantity());
-            }
-
-            if (log.isTraceEnabled()) {
-                log.trace("Processed trade for {} at {}: {} {} ({} lots) from {}", trade.getFigi(),
-                        eventTime, priceValue, direction, trade.getQuantity(), tradeSource);
-            }
-        } catch (Exception e) {
-            log.error("Error processing trade for {}", trade.getFigi(), e);
-        }
-    }
-
-    /**
-     * Высокопроизводительная обработка данных о последней цене
-     */
-    private void processLastPrice(LastPrice price) {
-        try {
-            totalReceived.incrementAndGet();
-
-            Instant eventInstant =
-                    Instant.ofEpochSecond(price.getTime().getSeconds(), price.getTime().getNanos());
-            // Конвертируем время в UTC+3 (московское время)
-            LocalDateTime eventTime = LocalDateTime.ofInstant(eventInstant, ZoneOffset.of("+3"));
-
-            BigDecimal priceValue = BigDecimal.valueOf(price.getPrice().getUnits())
-                    .add(BigDecimal.valueOf(price.getPrice().getNano()).movePointLeft(9));
-
-            log.debug("Processing LastPrice: FIGI={}, Time={}, Price={}", price.getFigi(),
-                    eventTime, priceValue);
-
-            // Логируем каждую 100-ю запись для мониторинга частоты
-            if (totalReceived.get() % 100 == 0) {
-                log.info("Received {} prices from T-Invest API", totalReceived.get());
-            }
-
-            if (log.isDebugEnabled()) {
-                log.debug("Processing price for {} at {}: {}", price.getFigi(), eventTime,
-                        priceValue);
-            }
-
-            if (log.isTraceEnabled()) {
-                log.trace("Processed price for {} at {}: {}", price.getFigi(), eventTime,
-                        priceValue);
-            }
-        } catch (Exception e) {
-            log.error("Error processing last price for {}", price.getFigi(), e);
-        }
-    }
-
-    /**
-     * Высокопроизводительная обработка данных стакана заявок
+     * Учет и логирование декодированного события
+     * 
+     * Вся конвертация уже выполнена в MarketDataDecoder, здесь только счетчики и отладочный вывод.
      */
-    private void processOrderBook(OrderBook orderBook) {
-        try {
-            totalOrderBookReceived.incrementAndGet();
-
-            Instant eventInstant = Instant.ofEpochSecond(orderBook.getTime().getSeconds(),
-                    orderBook.getTime().getNanos());
-            // Конвертируем время в UTC+3 (московское время)
-            LocalDateTime eventTime = LocalDateTime.ofInstant(eventInstant, ZoneOffset.of("+3"));
-
-            // Получаем лучший BID (первая заявка на покупку)
-            BigDecimal bestBid = BigDecimal.ZERO;
-            long bestBidQuantity = 0;
-            if (orderBook.getBidsCount() > 0) {
-                var bestBidOrder = orderBook.getBids(0);
-                bestBid = BigDecimal.valueOf(bestBidOrder.getPrice().getUnits()).add(
-                        BigDecimal.valueOf(bestBidOrder.getPrice().getNano()).movePointLeft(9));
-                bestBidQuantity = bestBidOrder.getQuantity();
-            }
-
-            // Получаем лучший ASK (первая заявка на продажу)
-            BigDecimal bestAsk = BigDecimal.ZERO;
-            long bestAskQuantity = 0;
-            if (orderBook.getAsksCount() > 0) {
-                var bestAskOrder = orderBook.getAsks(0);
-                bestAsk = BigDecimal.valueOf(bestAskOrder.getPrice().getUnits()).add(
-                        BigDecimal.valueOf(bestAskOrder.getPrice().getNano()).movePointLeft(9));
-                bestAskQuantity = bestAskOrder.getQuantity();
-            }
-
-            log.debug("Processing OrderBook: FIGI={}, Time={}, BestBid={} ({}), BestAsk={} ({})",
-                    orderBook.getFigi(), eventTime, bestBid, bestBidQuantity, bestAsk,
-                    bestAskQuantity);
-
-            // Логируем каждую 100-ю запись для мониторинга частоты
-            if (totalOrderBookReceived.get() % 100 == 0) {
-                log.info("Received {} order books from T-Invest API", totalOrderBookReceived.get());
-            }
-
-            if (log.isDebugEnabled()) {
-                log.debug("Processing order book for {} at {}: BID {} ({}), ASK {} ({})",
-                        orderBook.getFigi(), eventTime, bestBid, bestBidQuantity, bestAsk,
-                        bestAskQuantity);
-            }
-
-            if (log.isTraceEnabled()) {
-                log.trace(
-                        "Processed order book for {} at {}: BID {} ({}), ASK {} ({}), Total Bids: {}, Total Asks: {}",
-                        orderBook.getFigi(), eventTime, bestBid, bestBidQuantity, bestAsk,
-                        bestAskQuantity, orderBook.getBidsCount(), orderBook.getAsksCount());
-            }
-        } catch (Exception e) {
-            log.error("Error processing order book for {}", orderBook.getFigi(), e);
+    private void recordTick(MarketTick tick) {
+        switch (tick.type()) {
+            case LAST_PRICE:
+                long prices = totalReceived.incrementAndGet();
+                if (prices % 100 == 0) {
+                    log.info("Received {} prices from T-Invest API", prices);
+                }
+                if (log.isDebugEnabled()) {
+                    log.debug("Processing price for {} at {}: {}", tick.figi(),
+                            MarketDataDecoder.toMoscowTime(tick.timestampNanos()),
+                            FixedPoint.toDecimal(tick.price()));
+                }
+                break;
+            case TRADE:
+                long trades = totalTradeReceived.incrementAndGet();
+                if (trades % 100 == 0) {
+                    log.info("Received {} trades from T-Invest API", trades);
+                }
+                if (log.isDebugEnabled()) {
+                    log.debug("Processing trade for {} at {}: {} {} ({} lots)", tick.figi(),
+                            MarketDataDecoder.toMoscowTime(tick.timestampNanos()),
+                            FixedPoint.toDecimal(tick.price()), tick.direction(),
+                            tick.quantity());
+                }
+                break;
+            case ORDER_BOOK:
+                long orderBooks = totalOrderBookReceived.incrementAndGet();
+                if (orderBooks % 100 == 0) {
+                    log.info("Received {} order books from T-Invest API", orderBooks);
+                }
+                if (log.isDebugEnabled()) {
+                    log.debug("Processing order book for {} at {}: BID {} ({}), ASK {} ({})",
+                            tick.figi(), MarketDataDecoder.toMoscowTime(tick.timestampNanos()),
+                            FixedPoint.toDecimal(tick.bestBid()), tick.bestBidQuantity(),
+                            FixedPoint.toDecimal(tick.bestAsk()), tick.bestAskQuantity());
+                }
+                break;
         }
     }
 
@@ -986,7 +1110,30 @@ public class MarketDataStreamingService {
         boolean anyConnected = isConnected.get()
                 || streamConnections.stream().anyMatch(conn -> conn.isConnected.get());
         return new ServiceStats(isRunning.get(), anyConnected, totalReceived.get(),
-                totalTradeReceived.get(), totalOrderBookReceived.get());
+                totalTradeReceived.get(), totalOrderBookReceived.get(),
+                subscriptionScheduler.getQueueSize(), subscriptionScheduler.getTotalSent(),
+                subscriptionManager.getDesiredCount(), subscriptionManager.getConfirmedCount(),
+                subscriptionManager.getRejectedCount(), totalStaleStreams.get(),
+                getStreamStatuses(), decodeStage.getQueuedCount());
+    }
+
+    /**
+     * Состояние каждого stream-соединения из плана подписок
+     */
+    private List<StreamStatus> getStreamStatuses() {
+        long now = System.currentTimeMillis();
+        List<StreamStatus> statuses = new ArrayList<>();
+        for (int streamId : subscriptionManager.getStreamIds()) {
+            StreamConnection conn = findStreamConnection(streamId);
+            StreamReconnectPolicy policy = reconnectPolicy(streamId);
+            long nextAttemptAtMs = policy.getNextAttemptAtMs();
+            statuses.add(new StreamStatus(streamId, conn != null && conn.isConnected.get(),
+                    policy.getState().name(), policy.getConsecutiveFailures(),
+                    conn != null ? now - conn.lastMessageAtMs : -1,
+                    conn == null && nextAttemptAtMs > 0 ? Math.max(0, nextAttemptAtMs - now)
+                            : -1));
+        }
+        return statuses;
     }
 
     /**
@@ -996,17 +1143,18 @@ public class MarketDataStreamingService {
         log.info("Force reconnection requested for all stream connections");
         isConnected.set(false);
 
-        // Закрываем все существующие stream-соединения
-        for (StreamConnection conn : streamConnections) {
+        // Закрываем все существующие stream-соединения; они убираются из списка до закрытия,
+        // чтобы их завершение не запускало переподключение отдельных stream
+        List<StreamConnection> closing = new ArrayList<>(streamConnections);
+        streamConnections.clear();
+        subscriptionScheduler.cancelAll();
+        for (StreamConnection conn : closing) {
             try {
-                if (conn.requestObserver != null) {
-                    conn.requestObserver.onCompleted();
-                }
+                conn.complete();
             } catch (Exception e) {
                 log.warn("Error completing request observer for stream {}", conn.streamId, e);
             }
         }
-        streamConnections.clear();
 
         scheduleReconnect(100);
     }
@@ -1020,14 +1168,33 @@ public class MarketDataStreamingService {
         private final long totalReceived;
         private final long totalTradeReceived;
         private final long totalOrderBookReceived;
+        private final int pendingSubscriptionRequests;
+        private final long sentSubscriptionRequests;
+        private final int desiredSubscriptions;
+        private final int confirmedSubscriptions;
+        private final int rejectedSubscriptions;
+        private final long totalStaleStreams;
+        private final List<StreamStatus> streams;
+        private final int decodeQueued;
 
         public ServiceStats(boolean isRunning, boolean isConnected, long totalReceived,
-                long totalTradeReceived, long totalOrderBookReceived) {
+                long totalTradeReceived, long totalOrderBookReceived,
+                int pendingSubscriptionRequests, long sentSubscriptionRequests,
+                int desiredSubscriptions, int confirmedSubscriptions, int rejectedSubscriptions,
+                long totalStaleStreams, List<StreamStatus> streams, int decodeQueued) {
             this.isRunning = isRunning;
             this.isConnected = isConnected;
             this.totalReceived = totalReceived;
             this.totalTradeReceived = totalTradeReceived;
             this.totalOrderBookReceived = totalOrderBookReceived;
+            this.pendingSubscriptionRequests = pendingSubscriptionRequests;
+            this.sentSubscriptionRequests = sentSubscriptionRequests;
+            this.desiredSubscriptions = desiredSubscriptions;
+            this.confirmedSubscriptions = confirmedSubscriptions;
+            this.rejectedSubscriptions = rejectedSubscriptions;
+            this.totalStaleStreams = totalStaleStreams;
+            this.streams = streams;
+            this.decodeQueued = decodeQueued;
         }
 
         public boolean isRunning() {
@@ -1050,9 +1217,77 @@ public class MarketDataStreamingService {
             return totalOrderBookReceived;
         }
 
+        /**
+         * Запросы подписки, ожидающие отправки планировщиком
+         */
+        public int getPendingSubscriptionRequests() {
+            return pendingSubscriptionRequests;
+        }
+
+        public long getSentSubscriptionRequests() {
+            return sentSubscriptionRequests;
+        }
+
+        /**
+         * Подписки (FIGI и тип данных), которые должны быть активны
+         */
+        public int getDesiredSubscriptions() {
+            return desiredSubscriptions;
+        }
+
+        /**
+         * Подписки, подтвержденные сервером на текущих соединениях
+         */
+        public int getConfirmedSubscriptions() {
+            return confirmedSubscriptions;
+        }
+
+        public int getRejectedSubscriptions() {
+            return rejectedSubscriptions;
+        }
+
+        /**
+         * Количество переподключений зависших stream-соединений
+         */
+        public long getTotalStaleStreams() {
+            return totalStaleStreams;
+        }
+
+        /**
+         * Количество stream-соединений с разомкнутой цепью переподключения
+         */
+        public long getOpenCircuits() {
+            return streams.stream()
+                    .filter(stream -> StreamReconnectPolicy.State.OPEN.name()
+                            .equals(stream.reconnectState()))
+                    .count();
+        }
+
+        public List<StreamStatus> getStreams() {
+            return streams;
+        }
+
+        /**
+         * Сообщения, ожидающие разбора
+         */
+        public int getDecodeQueued() {
+            return decodeQueued;
+        }
+
         public long getTotalReceivedAll() {
             return totalReceived + totalTradeReceived + totalOrderBookReceived;
         }
+    }
+
+    /**
+     * Состояние одного stream-соединения
+     *
+     * @param reconnectState состояние политики переподключения (CLOSED, BACKOFF, OPEN)
+     * @param lastMessageAgeMs время с последнего сообщения (-1 - соединения нет)
+     * @param nextAttemptInMs время до следующей попытки переподключения (-1 - не запланирована)
+     */
+    public record StreamStatus(int streamId, boolean connected, String reconnectState,
+            int consecutiveFailures, long lastMessageAgeMs, long nextAttemptInMs) {
 
     }
 
@@ -1,39 +1,57 @@
 package com.example.investmentdatascannerservice.service;
 
-import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Arrays;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
 import com.example.investmentdatascannerservice.dto.QuoteData;
 import io.micrometer.core.instrument.Counter;
 import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
 
 /**
  * Сервис для асинхронных уведомлений подписчиков
  * 
- * Обеспечивает высокопроизводительную доставку уведомлений с минимальными задержками
+ * Обеспечивает высокопроизводительную доставку уведомлений с минимальными задержками. Подписчики
+ * хранятся в неизменяемом массиве, который заменяется при подписке и отписке, поэтому рассылка
+ * обходит его без копирования и блокировок. Каждая котировка доставляется всем подписчикам одной
+ * задачей в полосе доставки. Инструмент закреплен за одной однопоточной полосой (instrumentId по
+ * модулю количества полос), поэтому подписчики получают котировки инструмента в том порядке, в
+ * котором их выпустил шард обработки. При заполненной очереди полосы вызывающий поток ждет места,
+ * а не выполняет задачу сам, чтобы не обогнать уже поставленные котировки.
  */
 @Service
 public class NotificationService {
 
     private static final Logger log = LoggerFactory.getLogger(NotificationService.class);
 
-    private final Set<Consumer<QuoteData>> subscribers = ConcurrentHashMap.newKeySet();
-    private final ExecutorService notificationExecutor;
+    /** Количество полос доставки */
+    static final int LANE_COUNT = 8;
+    /** Емкость очереди одной полосы */
+    static final int LANE_QUEUE_CAPACITY = 1000;
+
+    @SuppressWarnings("unchecked")
+    private volatile Consumer<QuoteData>[] subscribers = new Consumer[0];
+    private final ExecutorService[] lanes = new ExecutorService[LANE_COUNT];
 
     // Метрики
     private final Counter notificationsSent;
     private final Counter notificationsFailed;
     private final Counter subscribersCount;
 
-    public NotificationService(
-            @Qualifier("notificationExecutor") ExecutorService notificationExecutor,
-            MeterRegistry meterRegistry) {
-        this.notificationExecutor = notificationExecutor;
+    public NotificationService(MeterRegistry meterRegistry) {
+        for (int i = 0; i < LANE_COUNT; i++) {
+            String name = "Notification-" + i;
+            lanes[i] = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<>(LANE_QUEUE_CAPACITY), r -> new Thread(r, name),
+                    NotificationService::waitForRoom);
+        }
 
         // Инициализация метрик
         this.notificationsSent = Counter.builder("notifications.sent")
@@ -44,51 +62,92 @@ public class NotificationService {
                 .description("Current number of subscribers").register(meterRegistry);
     }
 
+    @PreDestroy
+    public void shutdown() {
+        for (ExecutorService lane : lanes) {
+            lane.shutdownNow();
+        }
+    }
+
     /**
      * Уведомление всех подписчиков о новой котировке
+     *
+     * @param instrumentId идентификатор инструмента: котировки одного инструмента доставляются по
+     *        порядку вызова
      */
-    public void notifySubscribers(QuoteData quoteData) {
-        if (subscribers.isEmpty()) {
+    public void notifySubscribers(int instrumentId, QuoteData quoteData) {
+        Consumer<QuoteData>[] current = subscribers;
+        if (current.length == 0) {
             log.debug("No subscribers available, skipping notification for {}",
                     quoteData.getTicker());
             return;
         }
 
-        log.debug("Notifying {} subscribers about quote data for {}: {}", subscribers.size(),
+        log.debug("Notifying {} subscribers about quote data for {}: {}", current.length,
                 quoteData.getTicker(), quoteData);
 
-        // Параллельная отправка уведомлений
-        subscribers.parallelStream().forEach(subscriber -> {
-            notificationExecutor.submit(() -> {
-                try {
-                    subscriber.accept(quoteData);
-                    notificationsSent.increment();
-                    log.debug("Successfully notified subscriber about {}", quoteData.getTicker());
-                } catch (Exception e) {
-                    log.warn("Error notifying subscriber about {}", quoteData.getTicker(), e);
-                    notificationsFailed.increment();
-                }
-            });
-        });
+        // Одна задача на котировку: подписчики обходятся по снимку массива
+        lanes[Math.floorMod(instrumentId, LANE_COUNT)].execute(() -> deliver(current, quoteData));
+    }
+
+    /**
+     * Очередь полосы заполнена: ждем места вместо выполнения в вызывающем потоке
+     */
+    private static void waitForRoom(Runnable task, ThreadPoolExecutor lane) {
+        if (lane.isShutdown()) {
+            throw new RejectedExecutionException("Notification lane is shut down");
+        }
+        try {
+            lane.getQueue().put(task);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Interrupted while waiting for notification lane",
+                    e);
+        }
+    }
+
+    private void deliver(Consumer<QuoteData>[] current, QuoteData quoteData) {
+        for (Consumer<QuoteData> subscriber : current) {
+            try {
+                subscriber.accept(quoteData);
+                notificationsSent.increment();
+            } catch (Exception e) {
+                log.warn("Error notifying subscriber about {}", quoteData.getTicker(), e);
+                notificationsFailed.increment();
+            }
+        }
     }
 
     /**
      * Подписка на обновления котировок
      */
-    public void subscribe(Consumer<QuoteData> subscriber) {
-        subscribers.add(subscriber);
+    public synchronized void subscribe(Consumer<QuoteData> subscriber) {
+        Consumer<QuoteData>[] current = subscribers;
+        for (Consumer<QuoteData> existing : current) {
+            if (existing.equals(subscriber)) {
+                log.debug("Quote subscriber already registered");
+                return;
+            }
+        }
+        Consumer<QuoteData>[] next = Arrays.copyOf(current, current.length + 1);
+        next[current.length] = subscriber;
+        subscribers = next;
         subscribersCount.increment();
-        log.info("New quote subscriber added. Total subscribers: {}", subscribers.size());
+        log.info("New quote subscriber added. Total subscribers: {}", next.length);
     }
 
     /**
      * Отписка от обновлений котировок
      */
-    public void unsubscribe(Consumer<QuoteData> subscriber) {
-        boolean removed = subscribers.remove(subscriber);
-        if (removed) {
+    @SuppressWarnings("unchecked")
+    public synchronized void unsubscribe(Consumer<QuoteData> subscriber) {
+        Consumer<QuoteData>[] current = subscribers;
+        Consumer<QuoteData>[] next = Arrays.stream(current)
+                .filter(existing -> !existing.equals(subscriber)).toArray(Consumer[]::new);
+        if (next.length < current.length) {
+            subscribers = next;
             subscribersCount.increment(-1);
-            log.info("Quote subscriber removed. Total subscribers: {}", subscribers.size());
+            log.info("Quote subscriber removed. Total subscribers: {}", next.length);
         } else {
             log.warn("Attempted to remove non-existent subscriber");
         }
@@ -98,22 +157,23 @@ public class NotificationService {
      * Получение количества активных подписчиков
      */
     public int getSubscriberCount() {
-        return subscribers.size();
+        return subscribers.length;
     }
 
     /**
      * Проверка наличия подписчиков
      */
     public boolean hasSubscribers() {
-        return !subscribers.isEmpty();
+        return subscribers.length > 0;
     }
 
     /**
      * Очистка всех подписчиков
      */
-    public void clearSubscribers() {
-        int count = subscribers.size();
-        subscribers.clear();
+    @SuppressWarnings("unchecked")
+    public synchronized void clearSubscribers() {
+        int count = subscribers.length;
+        subscribers = new Consumer[0];
         subscribersCount.increment(-count);
         log.info("Cleared {} subscribers", count);
     }
@@ -126,7 +186,7 @@ public class NotificationService {
         long sentCount = (long) notificationsSent.count();
         long failedCount = (long) notificationsFailed.count();
 
-        return java.util.Map.of("subscriberCount", subscribers.size(), "notificationsSent",
+        return java.util.Map.of("subscriberCount", subscribers.length, "notificationsSent",
                 sentCount, "notificationsFailed", failedCount, "hasSubscribers", hasSubscribers());
     }
 }
@@ -1,16 +1,14 @@
 package com.example.investmentdatascannerservice.service;
 
 import java.math.BigDecimal;
-import java.time.Instant;
 import java.time.LocalDateTime;
-import java.time.ZoneOffset;
 import org.springframework.stereotype.Component;
+import com.example.investmentdatascannerservice.dto.MarketTick;
 import com.example.investmentdatascannerservice.dto.QuoteData;
 import com.example.investmentdatascannerservice.utils.ClosePriceEveningSessionService;
+import com.example.investmentdatascannerservice.utils.FixedPoint;
 import com.example.investmentdatascannerservice.utils.InstrumentCacheService;
-import ru.tinkoff.piapi.contract.v1.LastPrice;
-import ru.tinkoff.piapi.contract.v1.Trade;
-import ru.tinkoff.piapi.contract.v1.TradeDirection;
+import com.example.investmentdatascannerservice.utils.InstrumentState;
 import lombok.extern.slf4j.Slf4j;
 
 /**
@@ -34,30 +32,31 @@ public class QuoteDataFactory {
     /**
      * Создание QuoteData из LastPrice
      */
-    public QuoteData createFromLastPrice(LastPrice price, BigDecimal currentPrice) {
-        String figi = price.getFigi();
+    public QuoteData createFromLastPrice(MarketTick tick, InstrumentState.Snapshot state) {
+        String figi = tick.figi();
+        long currentPrice = tick.price();
         log.trace("Creating QuoteData from LastPrice for FIGI: {}", figi);
 
-        // Получаем данные из кэша
-        String ticker = cacheService.getInstrumentTicker(figi, figi);
-        String instrumentName = cacheService.getInstrumentName(figi, figi);
-        BigDecimal previousPrice = cacheService.getLastPrice(figi);
-        BigDecimal closePrice = cacheService.getClosePrice(figi);
-        BigDecimal openPrice = cacheService.getOpenPrice(figi);
-        BigDecimal closePriceVS = eveningSessionService.getEveningClosePrice(figi);
+        // Все данные инструмента берем из одного согласованного снимка
+        String ticker = tickerOf(state);
+        String instrumentName = nameOf(state);
+        long previousPrice = state.lastPrice();
+        long closePrice = state.closePrice();
+        long openPrice = state.openPrice();
+        long closePriceVS = eveningSessionService.getEveningClosePriceScaled(figi);
 
         // Получаем данные стакана
-        BigDecimal bestBid = cacheService.getBestBid(figi);
-        BigDecimal bestAsk = cacheService.getBestAsk(figi);
-        long bestBidQuantity = cacheService.getBestBidQuantity(figi);
-        long bestAskQuantity = cacheService.getBestAskQuantity(figi);
+        long bestBid = state.bestBid();
+        long bestAsk = state.bestAsk();
+        long bestBidQuantity = state.bestBidQuantity();
+        long bestAskQuantity = state.bestAskQuantity();
 
         // Агрегированные данные больше не доступны (таблица shares_aggregated_data удалена)
         BigDecimal avgVolumeMorning = null;
         BigDecimal avgVolumeWeekend = null;
 
         // Получаем накопленный объем
-        long accumulatedVolume = cacheService.getAccumulatedVolume(figi);
+        long accumulatedVolume = state.accumulatedVolume();
 
         // Определяем направление
         String direction = calculateDirection(previousPrice, currentPrice);
@@ -66,46 +65,47 @@ public class QuoteDataFactory {
         return new QuoteData(figi, ticker, instrumentName, currentPrice, previousPrice, closePrice,
                 openPrice, closePrice, closePriceVS, // closePriceOS = closePrice
                 bestBid, bestAsk, bestBidQuantity, bestAskQuantity,
-                convertTimestamp(price.getTime()), 0L, // volume = 0 для LastPrice
+                MarketDataDecoder.toMoscowTime(tick.timestampNanos()), 0L, // volume = 0 для LastPrice
                 accumulatedVolume, // totalVolume
-                direction, avgVolumeMorning, avgVolumeWeekend, cacheService.isShortEnabled(figi),
-                cacheService.hasRecentDividend(figi));
+                direction, avgVolumeMorning, avgVolumeWeekend, state.shortEnabled(),
+                state.hasDividend(), state.sequence());
     }
 
     /**
      * Создание QuoteData из Trade
      */
-    public QuoteData createFromTrade(Trade trade, BigDecimal currentPrice) {
-        String figi = trade.getFigi();
+    public QuoteData createFromTrade(MarketTick tick, InstrumentState.Snapshot state) {
+        String figi = tick.figi();
+        long currentPrice = tick.price();
         log.trace("Creating QuoteData from Trade for FIGI: {}, quantity: {}, direction: {}",
-                figi, trade.getQuantity(), trade.getDirection());
+                figi, tick.quantity(), tick.direction());
 
-        // Получаем данные из кэша
-        String ticker = cacheService.getInstrumentTicker(figi, figi);
-        String instrumentName = cacheService.getInstrumentName(figi, figi);
-        BigDecimal previousPrice = cacheService.getLastPrice(figi);
-        BigDecimal closePrice = cacheService.getClosePrice(figi);
-        BigDecimal openPrice = cacheService.getOpenPrice(figi);
-        BigDecimal closePriceVS = eveningSessionService.getEveningClosePrice(figi);
+        // Все данные инструмента берем из одного согласованного снимка
+        String ticker = tickerOf(state);
+        String instrumentName = nameOf(state);
+        long previousPrice = state.lastPrice();
+        long closePrice = state.closePrice();
+        long openPrice = state.openPrice();
+        long closePriceVS = eveningSessionService.getEveningClosePriceScaled(figi);
 
         // Получаем данные стакана
-        BigDecimal bestBid = cacheService.getBestBid(figi);
-        BigDecimal bestAsk = cacheService.getBestAsk(figi);
-        long bestBidQuantity = cacheService.getBestBidQuantity(figi);
-        long bestAskQuantity = cacheService.getBestAskQuantity(figi);
+        long bestBid = state.bestBid();
+        long bestAsk = state.bestAsk();
+        long bestBidQuantity = state.bestBidQuantity();
+        long bestAskQuantity = state.bestAskQuantity();
 
         // Агрегированные данные больше не доступны (таблица shares_aggregated_data удалена)
         BigDecimal avgVolumeMorning = null;
         BigDecimal avgVolumeWeekend = null;
 
         // Получаем накопленный объем
-        long accumulatedVolume = cacheService.getAccumulatedVolume(figi);
+        long accumulatedVolume = state.accumulatedVolume();
 
         // Определяем направление сделки
         String direction = "NEUTRAL";
-        if (trade.getDirection() == TradeDirection.TRADE_DIRECTION_BUY) {
+        if (tick.direction() == MarketTick.Direction.BUY) {
             direction = "UP";
-        } else if (trade.getDirection() == TradeDirection.TRADE_DIRECTION_SELL) {
+        } else if (tick.direction() == MarketTick.Direction.SELL) {
             direction = "DOWN";
         }
 
@@ -113,34 +113,36 @@ public class QuoteDataFactory {
         return new QuoteData(figi, ticker, instrumentName, currentPrice, previousPrice, closePrice,
                 openPrice, closePrice, closePriceVS, // closePriceOS = closePrice
                 bestBid, bestAsk, bestBidQuantity, bestAskQuantity,
-                convertTimestamp(trade.getTime()), trade.getQuantity(), // volume из сделки
+                MarketDataDecoder.toMoscowTime(tick.timestampNanos()), tick.quantity(), // volume из сделки
                 accumulatedVolume, // totalVolume
-                direction, avgVolumeMorning, avgVolumeWeekend, cacheService.isShortEnabled(figi),
-                cacheService.hasRecentDividend(figi));
+                direction, avgVolumeMorning, avgVolumeWeekend, state.shortEnabled(),
+                state.hasDividend(), state.sequence());
     }
 
     /**
      * Создание QuoteData из OrderBook (для немедленных обновлений стакана)
      */
-    public QuoteData createFromOrderBook(String figi, BigDecimal bestBid, BigDecimal bestAsk,
-            long bestBidQuantity, long bestAskQuantity) {
+    public QuoteData createFromOrderBook(MarketTick tick, InstrumentState.Snapshot state) {
+        String figi = tick.figi();
+        long bestBid = tick.bestBid();
+        long bestAsk = tick.bestAsk();
+        long bestBidQuantity = tick.bestBidQuantity();
+        long bestAskQuantity = tick.bestAskQuantity();
         log.trace("Creating QuoteData from OrderBook for FIGI: {}, bestBid: {}, bestAsk: {}, bestBidQuantity: {}, bestAskQuantity: {}",
                 figi, bestBid, bestAsk, bestBidQuantity, bestAskQuantity);
-        // Получаем данные из кэша
-        String ticker = cacheService.getInstrumentTicker(figi, figi);
-        String instrumentName = cacheService.getInstrumentName(figi, figi);
-        BigDecimal currentPrice = cacheService.getLastPrice(figi);
-        BigDecimal previousPrice = cacheService.getLastPrice(figi);
-        BigDecimal closePrice = cacheService.getClosePrice(figi);
-        BigDecimal openPrice = cacheService.getOpenPrice(figi);
-        BigDecimal closePriceVS = eveningSessionService.getEveningClosePrice(figi);
+        // Все данные инструмента берем из одного согласованного снимка
+        String ticker = tickerOf(state);
+        String instrumentName = nameOf(state);
+        long currentPrice = state.lastPrice();
+        long previousPrice = currentPrice;
+        long closePrice = state.closePrice();
+        long openPrice = state.openPrice();
+        long closePriceVS = eveningSessionService.getEveningClosePriceScaled(figi);
 
         // Если нет текущей цены, используем цену закрытия или 0
-        if (currentPrice == null) {
+        if (!FixedPoint.isPresent(currentPrice)) {
             log.debug("Current price is null for FIGI: {}, using closePrice or ZERO", figi);
-            currentPrice = closePrice != null ? closePrice : BigDecimal.ZERO;
-        }
-        if (previousPrice == null) {
+            currentPrice = FixedPoint.isPresent(closePrice) ? closePrice : 0L;
             previousPrice = currentPrice;
         }
 
@@ -149,7 +151,7 @@ public class QuoteDataFactory {
         BigDecimal avgVolumeWeekend = null;
 
         // Получаем накопленный объем
-        long accumulatedVolume = cacheService.getAccumulatedVolume(figi);
+        long accumulatedVolume = state.accumulatedVolume();
 
         // Определяем направление
         String direction = calculateDirection(previousPrice, currentPrice);
@@ -162,36 +164,41 @@ public class QuoteDataFactory {
                                                                                              // volume
                                                                                              // = 0
                 accumulatedVolume, // totalVolume
-                direction, avgVolumeMorning, avgVolumeWeekend, cacheService.isShortEnabled(figi),
-                cacheService.hasRecentDividend(figi));
+                direction, avgVolumeMorning, avgVolumeWeekend, state.shortEnabled(),
+                state.hasDividend(), state.sequence());
+    }
+
+    /**
+     * Тикер из снимка; при отсутствии - через кэш с дозагрузкой
+     */
+    private String tickerOf(InstrumentState.Snapshot state) {
+        return state.ticker() != null ? state.ticker()
+                : cacheService.getInstrumentTicker(state.figi(), state.figi());
+    }
+
+    /**
+     * Имя из снимка; при отсутствии - через кэш с дозагрузкой
+     */
+    private String nameOf(InstrumentState.Snapshot state) {
+        return state.name() != null ? state.name()
+                : cacheService.getInstrumentName(state.figi(), state.figi());
     }
 
     /**
      * Расчет направления изменения цены
      */
-    private String calculateDirection(BigDecimal previousPrice, BigDecimal currentPrice) {
-        if (previousPrice == null || currentPrice == null
-                || previousPrice.compareTo(BigDecimal.ZERO) <= 0
-                || currentPrice.compareTo(BigDecimal.ZERO) <= 0) {
+    private String calculateDirection(long previousPrice, long currentPrice) {
+        if (!FixedPoint.isPositive(previousPrice) || !FixedPoint.isPositive(currentPrice)) {
             log.trace("Cannot calculate direction: previousPrice={}, currentPrice={}", previousPrice, currentPrice);
             return "NEUTRAL";
         }
 
-        int comparison = currentPrice.compareTo(previousPrice);
-        if (comparison > 0) {
+        if (currentPrice > previousPrice) {
             return "UP";
-        } else if (comparison < 0) {
+        } else if (currentPrice < previousPrice) {
             return "DOWN";
         } else {
             return "NEUTRAL";
         }
     }
-
-    /**
-     * Конвертация времени из protobuf в LocalDateTime
-     */
-    private LocalDateTime convertTimestamp(com.google.protobuf.Timestamp timestamp) {
-        Instant instant = Instant.ofEpochSecond(timestamp.getSeconds(), timestamp.getNanos());
-        return LocalDateTime.ofInstant(instant, ZoneOffset.of("+3"));
-    }
 }
@@ -0,0 +1,296 @@
+package com.example.investmentdatascannerservice.service;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import com.example.investmentdatascannerservice.dto.LeaderboardUpdate;
+import com.example.investmentdatascannerservice.dto.QuoteData;
+import com.example.investmentdatascannerservice.utils.FixedPoint;
+import com.example.investmentdatascannerservice.utils.InstrumentCatalog;
+import com.example.investmentdatascannerservice.utils.InstrumentCatalogService;
+import jakarta.annotation.PostConstruct;
+
+/**
+ * Рейтинги инструментов (топ растущих/падающих) по потоку котировок
+ *
+ * Для каждого типа инструмента и метрики поддерживается упорядоченное множество, которое
+ * обновляется на каждой котировке за O(log n) без пересортировки всего списка. Раз в
+ * {@link #PUBLISH_INTERVAL_MS} первые и последние {@link #BOARD_SIZE} позиций каждого рейтинга
+ * сравниваются с последними опубликованными, и подписчикам отправляются только изменившиеся
+ * рейтинги.
+ */
+@Service
+public class QuoteRankingService {
+
+    private static final Logger log = LoggerFactory.getLogger(QuoteRankingService.class);
+
+    /** Количество позиций в рейтинге */
+    public static final int BOARD_SIZE = 50;
+
+    /** Интервал публикации изменений рейтингов */
+    static final long PUBLISH_INTERVAL_MS = 250;
+
+    /** Нет значения метрики (инструмент не участвует в рейтинге) */
+    private static final long NO_SCORE = Long.MIN_VALUE;
+
+    /**
+     * Метрика рейтинга
+     */
+    public enum Metric {
+        /** Изменение от цены закрытия основной сессии (или последней цены закрытия), б.п. */
+        CHANGE_CLOSE,
+        /** Изменение от цены закрытия вечерней сессии, б.п. */
+        CHANGE_VS,
+        /** Изменение от цены открытия, б.п. */
+        CHANGE_OPEN,
+        /** Общий объем за день */
+        VOLUME,
+        /** Спред между лучшими ASK и BID относительно середины, б.п. */
+        SPREAD
+    }
+
+    /**
+     * Сторона рейтинга: наибольшие или наименьшие значения метрики
+     */
+    public enum Side {
+        TOP, BOTTOM
+    }
+
+    private final QuoteScannerService quoteScannerService;
+    private final InstrumentCatalogService catalogService;
+
+    private final Map<InstrumentCatalog.Type, Ranking[]> rankings =
+            new EnumMap<>(InstrumentCatalog.Type.class);
+    private final Map<String, QuoteData> latest = new ConcurrentHashMap<>();
+
+    // Последние опубликованные позиции; доступ только из publishChanges
+    private final Map<String, List<LeaderboardUpdate.Entry>> published = new HashMap<>();
+
+    @SuppressWarnings("unchecked")
+    private volatile Consumer<LeaderboardUpdate>[] subscribers = new Consumer[0];
+    private final Consumer<QuoteData> quoteListener = this::onQuote;
+
+    public QuoteRankingService(QuoteScannerService quoteScannerService,
+            InstrumentCatalogService catalogService) {
+        this.quoteScannerService = quoteScannerService;
+        this.catalogService = catalogService;
+        for (InstrumentCatalog.Type type : InstrumentCatalog.Type.values()) {
+            Ranking[] byMetric = new Ranking[Metric.values().length];
+            for (int i = 0; i < byMetric.length; i++) {
+                byMetric[i] = new Ranking();
+            }
+            rankings.put(type, byMetric);
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        quoteScannerService.subscribeToQuotes(quoteListener);
+        log.info("QuoteRankingService subscribed to quotes, board size {}", BOARD_SIZE);
+    }
+
+    /**
+     * Подписка на изменения рейтингов
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized void subscribe(Consumer<LeaderboardUpdate> subscriber) {
+        if (Arrays.asList(subscribers).contains(subscriber)) {
+            return;
+        }
+        Consumer<LeaderboardUpdate>[] next = Arrays.copyOf(subscribers, subscribers.length + 1);
+        next[subscribers.length] = subscriber;
+        subscribers = next;
+    }
+
+    @SuppressWarnings("unchecked")
+    public synchronized void unsubscribe(Consumer<LeaderboardUpdate> subscriber) {
+        subscribers = Arrays.stream(subscribers).filter(s -> s != subscriber)
+                .toArray(Consumer[]::new);
+    }
+
+    /**
+     * Текущие рейтинги инструментов заданного типа
+     */
+    public List<LeaderboardUpdate> getLeaderboards(InstrumentCatalog.Type type) {
+        List<LeaderboardUpdate> boards = new ArrayList<>();
+        LocalDateTime now = LocalDateTime.now();
+        for (Metric metric : Metric.values()) {
+            for (Side side : Side.values()) {
+                boards.add(new LeaderboardUpdate(boardId(type, metric, side), type.name(),
+                        metric.name(), side.name(), entries(type, metric, side), now));
+            }
+        }
+        return boards;
+    }
+
+    /**
+     * Публикация изменившихся рейтингов
+     */
+    @Scheduled(fixedDelay = PUBLISH_INTERVAL_MS)
+    public void publishChanges() {
+        Consumer<LeaderboardUpdate>[] current = subscribers;
+        if (current.length == 0) {
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        for (InstrumentCatalog.Type type : InstrumentCatalog.Type.values()) {
+            for (Metric metric : Metric.values()) {
+                for (Side side : Side.values()) {
+                    String board = boardId(type, metric, side);
+                    List<LeaderboardUpdate.Entry> entries = entries(type, metric, side);
+                    if (entries.equals(published.get(board))) {
+                        continue;
+                    }
+                    published.put(board, entries);
+                    LeaderboardUpdate update = new LeaderboardUpdate(board, type.name(),
+                            metric.name(), side.name(), entries, now);
+                    for (Consumer<LeaderboardUpdate> subscriber : current) {
+                        try {
+                            subscriber.accept(update);
+                        } catch (Exception e) {
+                            log.warn("Error notifying leaderboard subscriber about {}", board, e);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Статистика рейтингов
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("instruments", latest.size());
+        stats.put("subscribers", subscribers.length);
+        rankings.forEach((type, byMetric) -> stats.put(type.name(), byMetric[0].size()));
+        return stats;
+    }
+
+    private void onQuote(QuoteData quoteData) {
+        InstrumentCatalog.Instrument instrument =
+                catalogService.current().getInstrument(quoteData.getFigi());
+        if (instrument == null) {
+            return;
+        }
+        latest.put(quoteData.getFigi(), quoteData);
+        Ranking[] byMetric = rankings.get(instrument.type());
+        for (Metric metric : Metric.values()) {
+            byMetric[metric.ordinal()].update(quoteData.getFigi(), score(metric, quoteData));
+        }
+    }
+
+    private List<LeaderboardUpdate.Entry> entries(InstrumentCatalog.Type type, Metric metric,
+            Side side) {
+        List<Ranking.Key> keys = rankings.get(type)[metric.ordinal()].head(side, BOARD_SIZE);
+        List<LeaderboardUpdate.Entry> entries = new ArrayList<>(keys.size());
+        for (Ranking.Key key : keys) {
+            QuoteData quote = latest.get(key.figi());
+            entries.add(new LeaderboardUpdate.Entry(key.figi(),
+                    quote != null ? quote.getTicker() : null,
+                    quote != null ? quote.getInstrumentName() : null, value(metric, key.score()),
+                    quote != null ? quote.getCurrentPrice() : null));
+        }
+        return entries;
+    }
+
+    static String boardId(InstrumentCatalog.Type type, Metric metric, Side side) {
+        return type.name() + ":" + metric.name() + ":" + side.name();
+    }
+
+    /**
+     * Значение метрики котировки (NO_SCORE, если его нельзя вычислить)
+     */
+    private static long score(Metric metric, QuoteData quote) {
+        long price = quote.currentPriceScaled();
+        return switch (metric) {
+            // Как на страницах сканеров: цена закрытия ОС, а при ее отсутствии - закрытия
+            case CHANGE_CLOSE -> change(price, FixedPoint.isPositive(quote.closePriceOSScaled())
+                    ? quote.closePriceOSScaled()
+                    : quote.closePriceScaled());
+            case CHANGE_VS -> change(price, quote.closePriceVSScaled());
+            case CHANGE_OPEN -> change(price, quote.openPriceScaled());
+            case VOLUME -> quote.getTotalVolume();
+            case SPREAD -> spread(quote.bestBidScaled(), quote.bestAskScaled());
+        };
+    }
+
+    private static long spread(long bid, long ask) {
+        if (!FixedPoint.isPositive(bid) || !FixedPoint.isPositive(ask) || ask < bid) {
+            return NO_SCORE;
+        }
+        return FixedPoint.changeBasisPoints(ask - bid, bid + (ask - bid) / 2);
+    }
+
+    private static long change(long price, long base) {
+        if (!FixedPoint.isPositive(price) || !FixedPoint.isPositive(base)) {
+            return NO_SCORE;
+        }
+        return FixedPoint.changeBasisPoints(price - base, base);
+    }
+
+    private static BigDecimal value(Metric metric, long score) {
+        return metric == Metric.VOLUME ? BigDecimal.valueOf(score)
+                : FixedPoint.basisPointsToPercent(score);
+    }
+
+    /**
+     * Упорядоченный по убыванию значения метрики набор инструментов
+     */
+    private static final class Ranking {
+
+        private record Key(long score, String figi) {
+        }
+
+        private static final Comparator<Key> ORDER =
+                Comparator.comparingLong(Key::score).reversed().thenComparing(Key::figi);
+
+        private final TreeSet<Key> ordered = new TreeSet<>(ORDER);
+        private final Map<String, Key> byFigi = new HashMap<>();
+
+        synchronized void update(String figi, long score) {
+            Key previous = byFigi.get(figi);
+            if (previous != null) {
+                if (previous.score() == score) {
+                    return;
+                }
+                ordered.remove(previous);
+                byFigi.remove(figi);
+            }
+            if (score != NO_SCORE) {
+                Key key = new Key(score, figi);
+                ordered.add(key);
+                byFigi.put(figi, key);
+            }
+        }
+
+        synchronized List<Key> head(Side side, int limit) {
+            List<Key> keys = new ArrayList<>(Math.min(limit, ordered.size()));
+            Iterator<Key> iterator =
+                    side == Side.TOP ? ordered.iterator() : ordered.descendingIterator();
+            while (iterator.hasNext() && keys.size() < limit) {
+                keys.add(iterator.next());
+            }
+            return keys;
+        }
+
+        synchronized int size() {
+            return ordered.size();
+        }
+    }
+}
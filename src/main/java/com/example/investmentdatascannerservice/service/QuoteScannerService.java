@@ -6,6 +6,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -15,6 +16,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 import com.example.investmentdatascannerservice.config.QuoteScannerConfig;
+import com.example.investmentdatascannerservice.dto.MarketTick;
 import com.example.investmentdatascannerservice.dto.QuoteData;
 import com.example.investmentdatascannerservice.utils.ClosePriceEveningSessionService;
 import com.example.investmentdatascannerservice.utils.ClosePriceService;
@@ -42,6 +44,7 @@ public class QuoteScannerService {
     // Основные сервисы
     private final QuoteScannerConfig config;
     private final MarketDataProcessor marketDataProcessor;
+    private final MarketDataDecoder marketDataDecoder;
     private final NotificationService notificationService;
     private final InstrumentCacheService instrumentCacheService;
     private final SessionTimeService sessionTimeService;
@@ -57,6 +60,9 @@ public class QuoteScannerService {
     // Менеджер индексов для полоски
     private final IndexBarManager indexBarManager = new IndexBarManager();
 
+    // Получатели уведомлений об изменении набора инструментов для подписки
+    private final List<Runnable> subscriptionUpdateListeners = new CopyOnWriteArrayList<>();
+
     // Планировщик для периодических задач
     private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
 
@@ -65,13 +71,15 @@ public class QuoteScannerService {
     private final AtomicLong totalQuotesSent = new AtomicLong(0);
 
     public QuoteScannerService(QuoteScannerConfig config, MarketDataProcessor marketDataProcessor,
-            NotificationService notificationService, InstrumentCacheService instrumentCacheService,
-            SessionTimeService sessionTimeService, InstrumentPairService instrumentPairService,
-            MeterRegistry meterRegistry, ClosePriceService closePriceService,
+            MarketDataDecoder marketDataDecoder, NotificationService notificationService,
+            InstrumentCacheService instrumentCacheService, SessionTimeService sessionTimeService,
+            InstrumentPairService instrumentPairService, MeterRegistry meterRegistry,
+            ClosePriceService closePriceService,
             ClosePriceEveningSessionService closePriceEveningSessionService,
             ShareService shareService, PriceCacheService priceCacheService) {
         this.config = config;
         this.marketDataProcessor = marketDataProcessor;
+        this.marketDataDecoder = marketDataDecoder;
         this.notificationService = notificationService;
         this.instrumentCacheService = instrumentCacheService;
         this.sessionTimeService = sessionTimeService;
@@ -185,23 +193,29 @@ public class QuoteScannerService {
     }
 
     /**
-     * Обработка данных о последней цене - делегируем MarketDataProcessor
+     * Обработка декодированного рыночного события - делегируем MarketDataProcessor
+     */
+    public void processTick(MarketTick tick) {
+        log.debug("Delegating {} processing to MarketDataProcessor for FIGI: {}", tick.type(),
+                tick.figi());
+        marketDataProcessor.process(tick);
+        if (tick.type() != MarketTick.Type.ORDER_BOOK) {
+            totalQuotesProcessed.incrementAndGet();
+        }
+    }
+
+    /**
+     * Обработка данных о последней цене - декодируем и делегируем MarketDataProcessor
      */
     public void processLastPrice(LastPrice price) {
-        log.debug("Delegating LastPrice processing to MarketDataProcessor for FIGI: {}",
-                price.getFigi());
-        marketDataProcessor.processLastPrice(price);
-        totalQuotesProcessed.incrementAndGet();
+        processTick(marketDataDecoder.decodeLastPrice(price));
     }
 
     /**
-     * Обработка данных о сделке - делегируем MarketDataProcessor
+     * Обработка данных о сделке - декодируем и делегируем MarketDataProcessor
      */
     public void processTrade(Trade trade) {
-        log.debug("Delegating Trade processing to MarketDataProcessor for FIGI: {}",
-                trade.getFigi());
-        marketDataProcessor.processTrade(trade);
-        totalQuotesProcessed.incrementAndGet();
+        processTick(marketDataDecoder.decodeTrade(trade));
     }
 
     /**
@@ -304,12 +318,10 @@ public class QuoteScannerService {
     }
 
     /**
-     * Обработка данных стакана заявок - делегируем MarketDataProcessor
+     * Обработка данных стакана заявок - декодируем и делегируем MarketDataProcessor
      */
     public void processOrderBook(OrderBook orderBook) {
-        log.debug("Delegating OrderBook processing to MarketDataProcessor for FIGI: {}",
-                orderBook.getFigi());
-        marketDataProcessor.processOrderBook(orderBook);
+        processTick(marketDataDecoder.decodeOrderBook(orderBook));
     }
 
 
@@ -502,12 +514,24 @@ public class QuoteScannerService {
         return allInstruments;
     }
 
+    /**
+     * Подписаться на изменения набора инструментов для подписки (добавление и удаление индексов)
+     */
+    public void addSubscriptionUpdateListener(Runnable listener) {
+        subscriptionUpdateListeners.add(listener);
+    }
+
     /**
      * Уведомить о необходимости обновить подписку
      */
     private void notifySubscriptionUpdate() {
-        // Здесь можно добавить логику для уведомления MarketDataStreamingService
-        // о необходимости обновить подписку на инструменты
+        for (Runnable listener : subscriptionUpdateListeners) {
+            try {
+                listener.run();
+            } catch (Exception e) {
+                log.warn("Error notifying subscription update listener", e);
+            }
+        }
         log.info("Subscription update notification sent - {} dynamic indices available",
                 indexBarManager.getCurrentIndices().size());
     }
@@ -0,0 +1,91 @@
+package com.example.investmentdatascannerservice.service;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Политика переподключения одного stream-соединения
+ *
+ * Задержка растет экспоненциально от baseDelayMs до maxDelayMs, к ней добавляется случайная
+ * составляющая (половина задержки случайна), чтобы соединения не переподключались синхронно. После
+ * failuresToOpen неудач подряд цепь размыкается: следующая попытка - только через openDurationMs.
+ * Счетчик неудач сбрасывается, когда соединение проработало устойчиво (см.
+ * MarketDataStreamingService), а не при первом ответе сервера: иначе соединение, которое
+ * принимает подписку и сразу обрывается, никогда не разомкнет цепь.
+ *
+ * Не является Spring-бином - хранится в MarketDataStreamingService по идентификатору stream.
+ */
+public class StreamReconnectPolicy {
+
+    /**
+     * Состояние переподключения
+     */
+    public enum State {
+        /** Соединение работает */
+        CLOSED,
+        /** Переподключение с экспоненциальной задержкой */
+        BACKOFF,
+        /** Цепь разомкнута после серии неудач, ждем openDurationMs */
+        OPEN
+    }
+
+    private final long baseDelayMs;
+    private final long maxDelayMs;
+    private final int failuresToOpen;
+    private final long openDurationMs;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long nextAttemptAtMs;
+
+    public StreamReconnectPolicy(long baseDelayMs, long maxDelayMs, int failuresToOpen,
+            long openDurationMs) {
+        this.baseDelayMs = Math.max(1, baseDelayMs);
+        this.maxDelayMs = Math.max(this.baseDelayMs, maxDelayMs);
+        this.failuresToOpen = Math.max(1, failuresToOpen);
+        this.openDurationMs = Math.max(this.maxDelayMs, openDurationMs);
+    }
+
+    /**
+     * Учесть неудачу и получить задержку до следующей попытки
+     */
+    public synchronized long onFailure() {
+        consecutiveFailures++;
+        long delayMs;
+        if (consecutiveFailures >= failuresToOpen) {
+            state = State.OPEN;
+            delayMs = openDurationMs;
+        } else {
+            state = State.BACKOFF;
+            int shift = Math.min(consecutiveFailures - 1, 30);
+            long exponential = Math.min(maxDelayMs, baseDelayMs << shift);
+            long half = exponential / 2;
+            delayMs = exponential - half + ThreadLocalRandom.current().nextLong(half + 1);
+        }
+        nextAttemptAtMs = System.currentTimeMillis() + delayMs;
+        return delayMs;
+    }
+
+    /**
+     * Соединение снова работает
+     */
+    public synchronized void onSuccess() {
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+        nextAttemptAtMs = 0;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    public synchronized int getConsecutiveFailures() {
+        return consecutiveFailures;
+    }
+
+    /**
+     * Время следующей попытки (0 - попытка не запланирована)
+     */
+    public synchronized long getNextAttemptAtMs() {
+        return nextAttemptAtMs;
+    }
+}
@@ -0,0 +1,135 @@
+package com.example.investmentdatascannerservice.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.ToLongFunction;
+import com.example.investmentdatascannerservice.service.SubscriptionManager.DataType;
+import com.example.investmentdatascannerservice.service.SubscriptionManager.Key;
+
+/**
+ * Распределение подписок по stream-соединениям с выравниванием ожидаемого потока сообщений
+ *
+ * Вес инструмента - его историческая активность (количество свечей с торгами), умноженная на
+ * сумму коэффициентов подписанных типов данных: стакан обновляется чаще сделок и последней цены.
+ * Инструменты без истории получают медианную активность, если на них есть подписка на сделки
+ * (акции и фьючерсы), иначе минимальную (индикативы). Инструменты раскладываются по убыванию веса
+ * на наименее нагруженное соединение со свободным местом, поэтому самые ликвидные инструменты
+ * оказываются на разных соединениях, а не все на первом.
+ *
+ * Не является Spring-бином - используется MarketDataStreamingService при полном запуске потоков.
+ */
+public class StreamShardPlanner {
+
+    // Относительная частота сообщений по типу данных при одинаковой активности инструмента
+    private static final double LAST_PRICE_FACTOR = 1.0;
+    private static final double TRADES_FACTOR = 1.0;
+    private static final double ORDER_BOOK_FACTOR = 2.0;
+
+    /**
+     * Подписки одного stream-соединения и их ожидаемая нагрузка
+     */
+    public record Shard(Set<Key> keys, int instruments, double expectedLoad) {
+    }
+
+    private record Weighted(String figi, List<Key> keys, double weight) {
+    }
+
+    private final ToLongFunction<String> activity;
+
+    /**
+     * @param activity историческая активность инструмента по FIGI (0 - нет данных)
+     */
+    public StreamShardPlanner(ToLongFunction<String> activity) {
+        this.activity = activity;
+    }
+
+    /**
+     * Разложить подписки по соединениям
+     *
+     * Количество соединений минимально возможное: ceil(инструментов / maxInstrumentsPerStream).
+     * Все подписки одного инструмента попадают на одно соединение.
+     */
+    public List<Shard> plan(Collection<Key> keys, int maxInstrumentsPerStream) {
+        Map<String, List<Key>> byFigi = new LinkedHashMap<>();
+        for (Key key : keys) {
+            byFigi.computeIfAbsent(key.figi(), figi -> new ArrayList<>()).add(key);
+        }
+        if (byFigi.isEmpty()) {
+            return List.of();
+        }
+
+        Map<String, Long> activities = new LinkedHashMap<>();
+        for (String figi : byFigi.keySet()) {
+            activities.put(figi, Math.max(0, activity.applyAsLong(figi)));
+        }
+        long median = median(activities.values());
+
+        List<Weighted> instruments = new ArrayList<>(byFigi.size());
+        for (Map.Entry<String, List<Key>> entry : byFigi.entrySet()) {
+            List<Key> instrumentKeys = entry.getValue();
+            long instrumentActivity = activities.get(entry.getKey());
+            if (instrumentActivity == 0) {
+                boolean traded = instrumentKeys.stream().anyMatch(k -> k.type() == DataType.TRADES);
+                instrumentActivity = traded ? median : 1;
+            }
+            double factor = 0;
+            for (Key key : instrumentKeys) {
+                factor += factor(key.type());
+            }
+            instruments.add(new Weighted(entry.getKey(), instrumentKeys,
+                    Math.max(1, instrumentActivity) * factor));
+        }
+        instruments.sort(Comparator.comparingDouble(Weighted::weight).reversed()
+                .thenComparing(Weighted::figi));
+
+        int streams = (instruments.size() + maxInstrumentsPerStream - 1) / maxInstrumentsPerStream;
+        List<Set<Key>> groups = new ArrayList<>(streams);
+        for (int i = 0; i < streams; i++) {
+            groups.add(new LinkedHashSet<>());
+        }
+        double[] loads = new double[streams];
+        int[] counts = new int[streams];
+        for (Weighted instrument : instruments) {
+            int target = -1;
+            for (int i = 0; i < streams; i++) {
+                if (counts[i] < maxInstrumentsPerStream
+                        && (target < 0 || loads[i] < loads[target])) {
+                    target = i;
+                }
+            }
+            groups.get(target).addAll(instrument.keys());
+            loads[target] += instrument.weight();
+            counts[target]++;
+        }
+
+        List<Shard> shards = new ArrayList<>(streams);
+        for (int i = 0; i < streams; i++) {
+            shards.add(new Shard(groups.get(i), counts[i], loads[i]));
+        }
+        return shards;
+    }
+
+    private static double factor(DataType type) {
+        return switch (type) {
+            case LAST_PRICE -> LAST_PRICE_FACTOR;
+            case TRADES -> TRADES_FACTOR;
+            case ORDER_BOOK -> ORDER_BOOK_FACTOR;
+        };
+    }
+
+    private static long median(Collection<Long> values) {
+        long[] known = values.stream().mapToLong(Long::longValue).filter(v -> v > 0).toArray();
+        if (known.length == 0) {
+            return 1;
+        }
+        Arrays.sort(known);
+        return known[known.length / 2];
+    }
+}
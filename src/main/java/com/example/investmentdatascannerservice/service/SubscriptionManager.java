@@ -0,0 +1,273 @@
+package com.example.investmentdatascannerservice.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Учет подписок на рыночные данные по stream-соединениям
+ *
+ * Хранит желаемый набор подписок (FIGI и тип данных) с распределением по stream-соединениям и
+ * подтвержденный набор по статусам из Subscribe*Response. При изменении набора инструментов
+ * {@link #reconcile(Set)} возвращает только разницу - что подписать и что отписать на каждом
+ * соединении, поэтому добавление одного инструмента не требует переподключения всех соединений.
+ *
+ * Не является Spring-бином - владелец (MarketDataStreamingService) отправляет запросы сам.
+ */
+public class SubscriptionManager {
+
+    /**
+     * Тип данных подписки
+     */
+    public enum DataType {
+        LAST_PRICE, TRADES, ORDER_BOOK
+    }
+
+    /**
+     * Подписка на один тип данных одного инструмента
+     */
+    public record Key(String figi, DataType type) {
+    }
+
+    /**
+     * Изменения подписок одного stream-соединения
+     *
+     * @param newStream соединение появилось в этом плане, его нужно создать
+     */
+    public record Delta(int streamId, List<Key> subscribe, List<Key> unsubscribe,
+            boolean newStream) {
+    }
+
+    private record StreamKey(int streamId, Key key) {
+    }
+
+    private final int maxInstrumentsPerStream;
+
+    // Желаемые подписки по соединениям; доступ под this
+    private final Map<Integer, Set<Key>> desiredByStream = new TreeMap<>();
+    private final Map<Key, Integer> streamByKey = new HashMap<>();
+    // Инструмент занимает место в соединении, пока у него есть хотя бы одна подписка
+    private final Map<String, Integer> keysByFigi = new HashMap<>();
+    private final Map<String, Integer> streamByFigi = new HashMap<>();
+    private final Map<Integer, Integer> instrumentsByStream = new HashMap<>();
+    // Отправленные отписки, ответ на которые еще не получен (количество по соединению и подписке)
+    private final Map<StreamKey, Integer> unsubscribing = new HashMap<>();
+
+    // Подтвержденные сервером подписки (подписка -> соединение) и отклоненные сервером
+    private final Map<Key, Integer> confirmed = new ConcurrentHashMap<>();
+    private final Set<Key> rejected = ConcurrentHashMap.newKeySet();
+
+    public SubscriptionManager(int maxInstrumentsPerStream) {
+        this.maxInstrumentsPerStream = maxInstrumentsPerStream;
+    }
+
+    /**
+     * Заменить план целиком: группа i обслуживается соединением i + 1
+     */
+    public synchronized void reset(List<? extends Collection<Key>> groups) {
+        desiredByStream.clear();
+        streamByKey.clear();
+        keysByFigi.clear();
+        streamByFigi.clear();
+        instrumentsByStream.clear();
+        unsubscribing.clear();
+        confirmed.clear();
+        rejected.clear();
+        for (int i = 0; i < groups.size(); i++) {
+            for (Key key : groups.get(i)) {
+                assign(key, i + 1);
+            }
+        }
+    }
+
+    /**
+     * Привести план к желаемому набору подписок
+     *
+     * Удаленные подписки отписываются на своем соединении, новые подписки инструмента, у которого
+     * уже есть подписки, попадают на то же соединение, остальные - на наименее загруженное
+     * соединение со свободным местом или на новое. Отклоненные сервером подписки отправляются
+     * повторно.
+     *
+     * @return изменения по соединениям (только соединения, где что-то изменилось)
+     */
+    public synchronized List<Delta> reconcile(Set<Key> desired) {
+        Set<Integer> existing = new LinkedHashSet<>(desiredByStream.keySet());
+        Map<Integer, List<Key>> subscribe = new TreeMap<>();
+        Map<Integer, List<Key>> unsubscribe = new TreeMap<>();
+
+        for (Key key : new ArrayList<>(streamByKey.keySet())) {
+            if (!desired.contains(key)) {
+                int streamId = unassign(key);
+                confirmed.remove(key);
+                rejected.remove(key);
+                unsubscribe.computeIfAbsent(streamId, id -> new ArrayList<>()).add(key);
+            }
+        }
+        for (Key key : desired) {
+            Integer streamId = streamByKey.get(key);
+            if (streamId == null) {
+                streamId = placeFor(key.figi());
+                assign(key, streamId);
+            } else if (!rejected.remove(key)) {
+                continue;
+            }
+            subscribe.computeIfAbsent(streamId, id -> new ArrayList<>()).add(key);
+        }
+
+        Set<Integer> changed = new LinkedHashSet<>(subscribe.keySet());
+        changed.addAll(unsubscribe.keySet());
+        List<Delta> deltas = new ArrayList<>(changed.size());
+        for (Integer streamId : changed) {
+            deltas.add(new Delta(streamId, subscribe.getOrDefault(streamId, List.of()),
+                    unsubscribe.getOrDefault(streamId, List.of()),
+                    !existing.contains(streamId)));
+        }
+        return deltas;
+    }
+
+    /**
+     * Желаемые подписки соединения
+     */
+    public synchronized Set<Key> desired(int streamId) {
+        Set<Key> keys = desiredByStream.get(streamId);
+        return keys != null ? new LinkedHashSet<>(keys) : new LinkedHashSet<>();
+    }
+
+    /**
+     * Подписки для восстановления соединения: желаемые подписки без отклоненных сервером
+     *
+     * Отклоненные подписки повторяются только при следующем {@link #reconcile(Set)}, чтобы
+     * переподключение не тратило лимит запросов на заведомо неуспешные подписки.
+     */
+    public synchronized Set<Key> resubscribable(int streamId) {
+        Set<Key> keys = desired(streamId);
+        keys.removeIf(rejected::contains);
+        return keys;
+    }
+
+    /**
+     * Идентификаторы соединений, у которых есть желаемые подписки
+     */
+    public synchronized List<Integer> getStreamIds() {
+        return new ArrayList<>(desiredByStream.keySet());
+    }
+
+    /**
+     * Отписка отправлена на соединение
+     *
+     * Ответ на отписку не отличается от ответа на подписку, поэтому, пока ответ не получен, первый
+     * статус подписки на этом соединении считается ответом на отписку - даже если подписка уже
+     * снова добавлена в план.
+     */
+    public synchronized void onUnsubscribeRequested(int streamId, Collection<Key> keys) {
+        for (Key key : keys) {
+            unsubscribing.merge(new StreamKey(streamId, key), 1, Integer::sum);
+        }
+    }
+
+    /**
+     * Учесть статус подписки из ответа сервера
+     *
+     * Ответы на отписку и статусы подписок, которых уже нет в плане соединения, не учитываются.
+     */
+    public void onStatus(int streamId, String figi, DataType type, boolean success) {
+        Key key = new Key(figi, type);
+        synchronized (this) {
+            StreamKey streamKey = new StreamKey(streamId, key);
+            Integer pendingUnsubscribes = unsubscribing.get(streamKey);
+            if (pendingUnsubscribes != null) {
+                if (pendingUnsubscribes > 1) {
+                    unsubscribing.put(streamKey, pendingUnsubscribes - 1);
+                } else {
+                    unsubscribing.remove(streamKey);
+                }
+                return;
+            }
+            Integer planned = streamByKey.get(key);
+            if (planned == null || planned != streamId) {
+                return;
+            }
+        }
+        if (success) {
+            confirmed.put(key, streamId);
+            rejected.remove(key);
+        } else {
+            confirmed.remove(key);
+            rejected.add(key);
+        }
+    }
+
+    /**
+     * Соединение разорвано или закрыто: его подписки больше не подтверждены, а ответов на
+     * отправленные отписки уже не будет
+     */
+    public void onStreamLost(int streamId) {
+        synchronized (this) {
+            unsubscribing.keySet().removeIf(streamKey -> streamKey.streamId() == streamId);
+        }
+        confirmed.values().removeIf(id -> id == streamId);
+    }
+
+    public synchronized int getDesiredCount() {
+        return streamByKey.size();
+    }
+
+    public int getConfirmedCount() {
+        return confirmed.size();
+    }
+
+    public int getRejectedCount() {
+        return rejected.size();
+    }
+
+    private void assign(Key key, int streamId) {
+        if (streamByKey.putIfAbsent(key, streamId) == null) {
+            desiredByStream.computeIfAbsent(streamId, id -> new LinkedHashSet<>()).add(key);
+            if (keysByFigi.merge(key.figi(), 1, Integer::sum) == 1) {
+                streamByFigi.put(key.figi(), streamId);
+                instrumentsByStream.merge(streamId, 1, Integer::sum);
+            }
+        }
+    }
+
+    private int unassign(Key key) {
+        int streamId = streamByKey.remove(key);
+        Set<Key> keys = desiredByStream.get(streamId);
+        keys.remove(key);
+        if (keys.isEmpty()) {
+            desiredByStream.remove(streamId);
+        }
+        if (keysByFigi.computeIfPresent(key.figi(),
+                (figi, count) -> count > 1 ? count - 1 : null) == null) {
+            streamByFigi.remove(key.figi());
+            instrumentsByStream.computeIfPresent(streamId,
+                    (id, count) -> count > 1 ? count - 1 : null);
+        }
+        return streamId;
+    }
+
+    private int placeFor(String figi) {
+        Integer current = streamByFigi.get(figi);
+        if (current != null) {
+            return current;
+        }
+        int best = -1;
+        int bestCount = Integer.MAX_VALUE;
+        int lastId = 0;
+        for (Map.Entry<Integer, Set<Key>> entry : desiredByStream.entrySet()) {
+            int count = instrumentsByStream.getOrDefault(entry.getKey(), 0);
+            if (count < maxInstrumentsPerStream && count < bestCount) {
+                best = entry.getKey();
+                bestCount = count;
+            }
+            lastId = Math.max(lastId, entry.getKey());
+        }
+        return best > 0 ? best : lastId + 1;
+    }
+}
@@ -0,0 +1,207 @@
+package com.example.investmentdatascannerservice.service;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Асинхронный планировщик запросов подписки с ограничением частоты
+ *
+ * Запросы ставятся в очередь с приоритетом и отправляются отдельным потоком, если за последние
+ * 60 секунд (с запасом {@link #WINDOW_MARGIN_MS}) отправлено меньше лимита запросов. Лимит брокера
+ * действует на скользящую минуту, поэтому учитываются времена самих отправок: после простоя
+ * запросы уходят пачкой до исчерпания лимита, а дальше - по мере выхода старых отправок из окна.
+ * Вызывающий поток никогда не ждет лимит.
+ *
+ * Не является Spring-бином - запуском и остановкой управляет владелец (MarketDataStreamingService).
+ */
+public class SubscriptionScheduler {
+
+    private static final Logger log = LoggerFactory.getLogger(SubscriptionScheduler.class);
+
+    /** Запас окна на расхождение часов и задержку доставки запроса до брокера */
+    static final long WINDOW_MARGIN_MS = 1000;
+
+    /**
+     * Приоритет запроса (меньший ordinal отправляется раньше)
+     */
+    public enum Priority {
+        /** LastPrice акций и инструментов панели индексов */
+        PRIMARY_LAST_PRICE,
+        /** LastPrice остальных инструментов */
+        LAST_PRICE,
+        TRADES,
+        ORDER_BOOK
+    }
+
+    private record Task(Priority priority, long sequence, int streamId, String description,
+            Runnable action) implements Comparable<Task> {
+
+        @Override
+        public int compareTo(Task other) {
+            int byPriority = priority.compareTo(other.priority);
+            return byPriority != 0 ? byPriority : Long.compare(sequence, other.sequence);
+        }
+    }
+
+    private final PriorityBlockingQueue<Task> queue = new PriorityBlockingQueue<>();
+    private final AtomicLong sequence = new AtomicLong(0);
+    private final RateWindow window;
+    private final Thread worker;
+
+    // Статистика
+    private final AtomicLong totalSubmitted = new AtomicLong(0);
+    private final AtomicLong totalSent = new AtomicLong(0);
+    private final AtomicLong totalCancelled = new AtomicLong(0);
+    private final AtomicLong totalFailed = new AtomicLong(0);
+
+    private volatile boolean running;
+
+    public SubscriptionScheduler(int requestsPerMinute) {
+        this.window = new RateWindow(requestsPerMinute,
+                TimeUnit.MINUTES.toNanos(1) + TimeUnit.MILLISECONDS.toNanos(WINDOW_MARGIN_MS),
+                System::nanoTime);
+        this.worker = new Thread(this::run, "subscription-scheduler");
+        this.worker.setDaemon(true);
+    }
+
+    public void start() {
+        running = true;
+        worker.start();
+    }
+
+    public void stop() {
+        running = false;
+        worker.interrupt();
+        queue.clear();
+    }
+
+    /**
+     * Поставить запрос в очередь
+     *
+     * @param action отправка запроса; выполняется в потоке планировщика
+     */
+    public void submit(Priority priority, int streamId, String description, Runnable action) {
+        queue.add(new Task(priority, sequence.incrementAndGet(), streamId, description, action));
+        totalSubmitted.incrementAndGet();
+    }
+
+    /**
+     * Отменить еще не отправленные запросы stream-соединения
+     *
+     * @return количество отмененных запросов
+     */
+    public int cancel(int streamId) {
+        int before = queue.size();
+        queue.removeIf(task -> task.streamId() == streamId);
+        int cancelled = Math.max(0, before - queue.size());
+        totalCancelled.addAndGet(cancelled);
+        return cancelled;
+    }
+
+    /**
+     * Отменить все еще не отправленные запросы
+     */
+    public void cancelAll() {
+        int cancelled = queue.size();
+        queue.clear();
+        totalCancelled.addAndGet(cancelled);
+    }
+
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    public long getTotalSubmitted() {
+        return totalSubmitted.get();
+    }
+
+    public long getTotalSent() {
+        return totalSent.get();
+    }
+
+    public long getTotalCancelled() {
+        return totalCancelled.get();
+    }
+
+    public long getTotalFailed() {
+        return totalFailed.get();
+    }
+
+    private void run() {
+        while (running) {
+            try {
+                Task task = queue.take();
+                long waitNanos = window.tryAcquire();
+                if (waitNanos > 0) {
+                    // Возвращаем запрос: пока ждем место в окне, может прийти более приоритетный
+                    queue.add(task);
+                    TimeUnit.NANOSECONDS.sleep(waitNanos);
+                    continue;
+                }
+                send(task);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                log.error("Subscription scheduler error", e);
+            }
+        }
+        log.info("Subscription scheduler stopped, {} request(s) left in queue", queue.size());
+    }
+
+    private void send(Task task) {
+        try {
+            task.action().run();
+            totalSent.incrementAndGet();
+            log.debug("Stream {}: Sent {} ({} request(s) queued)", task.streamId(),
+                    task.description(), queue.size());
+        } catch (Exception e) {
+            totalFailed.incrementAndGet();
+            log.warn("Stream {}: Failed to send {}", task.streamId(), task.description(), e);
+        }
+    }
+
+    /**
+     * Скользящее окно: не больше limit разрешений за любые windowNanos
+     *
+     * Хранит время выдачи каждого разрешения за последнее окно.
+     */
+    static final class RateWindow {
+        private final int limit;
+        private final long windowNanos;
+        private final LongSupplier clock;
+        private final ArrayDeque<Long> issuedAt;
+
+        RateWindow(int limit, long windowNanos, LongSupplier clock) {
+            if (limit <= 0 || windowNanos <= 0) {
+                throw new IllegalArgumentException("Limit and window must be positive");
+            }
+            this.limit = limit;
+            this.windowNanos = windowNanos;
+            this.clock = clock;
+            this.issuedAt = new ArrayDeque<>(limit);
+        }
+
+        /**
+         * Получить разрешение
+         *
+         * @return 0, если разрешение получено, иначе сколько наносекунд ждать освобождения окна
+         */
+        synchronized long tryAcquire() {
+            long now = clock.getAsLong();
+            while (!issuedAt.isEmpty() && now - issuedAt.peekFirst() >= windowNanos) {
+                issuedAt.pollFirst();
+            }
+            if (issuedAt.size() < limit) {
+                issuedAt.addLast(now);
+                return 0;
+            }
+            return Math.max(1, issuedAt.peekFirst() + windowNanos - now);
+        }
+    }
+}
@@ -3,6 +3,7 @@ package com.example.investmentdatascannerservice.service;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 import org.springframework.stereotype.Service;
 import com.example.investmentdatascannerservice.utils.InstrumentCacheService;
 import jakarta.annotation.PostConstruct;
@@ -22,6 +23,9 @@ public class WeekendScannerService {
     // Управление индексами вынесено в общий менеджер
     private final IndexBarManager indexBar = new IndexBarManager();
 
+    // Получатели уведомлений об изменении индексов для подписки
+    private final List<Runnable> subscriptionUpdateListeners = new CopyOnWriteArrayList<>();
+
     public WeekendScannerService(InstrumentCacheService instrumentCacheService) {
         this.instrumentCacheService = instrumentCacheService;
     }
@@ -60,6 +64,7 @@ public class WeekendScannerService {
             String figi = instrumentCacheService.getFigiByTicker(name);
             log.info("Weekend scanner: Added new index: {} (FIGI: {}, displayName: {})", name,
                     figi != null ? figi : name, displayName);
+            notifySubscriptionUpdate();
         } else {
             log.warn("Weekend scanner: Index with ticker '{}' already exists", name);
         }
@@ -73,12 +78,30 @@ public class WeekendScannerService {
         boolean removed = indexBar.removeIndex(ticker);
         if (removed) {
             log.info("Weekend scanner: Removed index: {}", ticker);
+            notifySubscriptionUpdate();
         } else {
             log.warn("Weekend scanner: Index with ticker '{}' not found", ticker);
         }
         return removed;
     }
 
+    /**
+     * Подписаться на изменения индексов для подписки
+     */
+    public void addSubscriptionUpdateListener(Runnable listener) {
+        subscriptionUpdateListeners.add(listener);
+    }
+
+    private void notifySubscriptionUpdate() {
+        for (Runnable listener : subscriptionUpdateListeners) {
+            try {
+                listener.run();
+            } catch (Exception e) {
+                log.warn("Weekend scanner: Error notifying subscription update listener", e);
+            }
+        }
+    }
+
     /**
      * Получить FIGI индексов для подписки
      */
@@ -26,8 +26,8 @@ public class ClosePriceEveningSessionService {
 
     private final ClosePriceEveningSessionRepository repository;
 
-    // Кеш для хранения цен закрытия вечерней сессии
-    private final Map<String, BigDecimal> eveningClosePrices = new HashMap<>();
+    // Кеш для хранения цен закрытия вечерней сессии (с фиксированной точкой, см. FixedPoint)
+    private final Map<String, Long> eveningClosePrices = new HashMap<>();
     private LocalDate lastLoadedDate = null;
 
     public ClosePriceEveningSessionService(ClosePriceEveningSessionRepository repository) {
@@ -70,8 +70,7 @@ public class ClosePriceEveningSessionService {
                     ));
 
             // Обновляем кеш
-            eveningClosePrices.clear();
-            eveningClosePrices.putAll(result);
+            replaceCachedPrices(result);
             lastLoadedDate = lastDate;
 
             log.info("Loaded {} evening close prices for date {}: {}", result.size(), lastDate,
@@ -125,7 +124,17 @@ public class ClosePriceEveningSessionService {
      * @return цена закрытия или null если не найдена
      */
     public BigDecimal getEveningClosePrice(String figi) {
-        return eveningClosePrices.get(figi);
+        return FixedPoint.toDecimal(getEveningClosePriceScaled(figi));
+    }
+
+    /**
+     * Получить цену закрытия вечерней сессии с фиксированной точкой
+     * 
+     * @param figi FIGI инструмента
+     * @return цена закрытия или FixedPoint.NONE если не найдена
+     */
+    public long getEveningClosePriceScaled(String figi) {
+        return FixedPoint.orNone(eveningClosePrices.get(figi));
     }
 
     /**
@@ -134,7 +143,9 @@ public class ClosePriceEveningSessionService {
      * @return Map с ценами закрытия (FIGI -> Price)
      */
     public Map<String, BigDecimal> getAllEveningClosePrices() {
-        return new HashMap<>(eveningClosePrices);
+        Map<String, BigDecimal> prices = new HashMap<>(eveningClosePrices.size());
+        eveningClosePrices.forEach((figi, price) -> prices.put(figi, FixedPoint.toDecimal(price)));
+        return prices;
     }
 
     /**
@@ -171,13 +182,24 @@ public class ClosePriceEveningSessionService {
      * @param date дата цен
      */
     public void updateEveningClosePrices(Map<String, BigDecimal> prices, LocalDate date) {
-        eveningClosePrices.clear();
-        eveningClosePrices.putAll(prices);
+        replaceCachedPrices(prices);
         lastLoadedDate = date;
         log.info("Updated evening close prices cache with {} prices for date {}", prices.size(),
                 date);
     }
 
+    /**
+     * Заменить содержимое кеша, переводя цены в фиксированную точку
+     */
+    private void replaceCachedPrices(Map<String, BigDecimal> prices) {
+        eveningClosePrices.clear();
+        prices.forEach((figi, price) -> {
+            if (price != null) {
+                eveningClosePrices.put(figi, FixedPoint.fromDecimal(price));
+            }
+        });
+    }
+
     /**
      * Получить статистику загруженных цен
      * 
@@ -0,0 +1,104 @@
+package com.example.investmentdatascannerservice.utils;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import ru.tinkoff.piapi.contract.v1.Quotation;
+
+/**
+ * Цены с фиксированной точкой в виде long
+ *
+ * Значение хранится как units * 10^9 + nano (как в Quotation), поэтому арифметика на горячем пути
+ * не создает объектов. В BigDecimal цена переводится только на границе JSON/REST. Отсутствующее
+ * значение обозначается {@link #NONE}.
+ */
+public final class FixedPoint {
+
+    /** Масштаб: количество единиц в одном рубле/пункте */
+    public static final long SCALE = 1_000_000_000L;
+
+    /** Признак отсутствующей цены (аналог null) */
+    public static final long NONE = Long.MIN_VALUE;
+
+    private static final int DECIMAL_SCALE = 9;
+    private static final long BASIS_POINTS = 10_000L;
+
+    private FixedPoint() {}
+
+    /**
+     * Конвертация Quotation в цену с фиксированной точкой
+     */
+    public static long fromQuotation(Quotation quotation) {
+        return quotation.getUnits() * SCALE + quotation.getNano();
+    }
+
+    /**
+     * Конвертация BigDecimal в цену с фиксированной точкой (null -> NONE)
+     */
+    public static long fromDecimal(BigDecimal value) {
+        if (value == null) {
+            return NONE;
+        }
+        return value.setScale(DECIMAL_SCALE, RoundingMode.HALF_UP).unscaledValue().longValue();
+    }
+
+    /**
+     * Конвертация цены в BigDecimal для JSON/REST (NONE -> null)
+     */
+    public static BigDecimal toDecimal(long value) {
+        if (value == NONE) {
+            return null;
+        }
+        return value == 0L ? BigDecimal.ZERO : BigDecimal.valueOf(value, DECIMAL_SCALE);
+    }
+
+    /**
+     * Конвертация Long из кэша (null -> NONE)
+     */
+    public static long orNone(Long value) {
+        return value != null ? value : NONE;
+    }
+
+    public static boolean isPresent(long value) {
+        return value != NONE;
+    }
+
+    /**
+     * Цена задана и больше нуля
+     */
+    public static boolean isPositive(long value) {
+        return value != NONE && value > 0L;
+    }
+
+    /**
+     * Изменение относительно базы в базисных пунктах (0.01%) с округлением HALF_UP
+     *
+     * Совпадает с change.divide(base, 4, HALF_UP) * 10000. База должна быть положительной.
+     */
+    public static long changeBasisPoints(long change, long base) {
+        long absChange = Math.abs(change);
+        long whole = absChange / base;
+        long remainder = absChange % base;
+        long scaledRemainder = remainder * BASIS_POINTS;
+        if (Math.multiplyHigh(remainder, BASIS_POINTS) != 0L || scaledRemainder < 0L) {
+            // Переполнение возможно только для очень больших цен - считаем через BigDecimal
+            return BigDecimal.valueOf(change)
+                    .divide(BigDecimal.valueOf(base), 4, RoundingMode.HALF_UP)
+                    .movePointRight(4).longValueExact();
+        }
+        long fraction = scaledRemainder / base;
+        // Сравнение без удвоения остатка: при базе больше Long.MAX_VALUE / 2 удвоение переполняется
+        long fractionRemainder = scaledRemainder % base;
+        if (fractionRemainder >= base - fractionRemainder) {
+            fraction++;
+        }
+        long result = whole * BASIS_POINTS + fraction;
+        return change < 0 ? -result : result;
+    }
+
+    /**
+     * Базисные пункты в процентах (BigDecimal с масштабом 4, как в прежнем расчете)
+     */
+    public static BigDecimal basisPointsToPercent(long basisPoints) {
+        return BigDecimal.valueOf(basisPoints * 100L, 4);
+    }
+}
@@ -2,6 +2,8 @@ package com.example.investmentdatascannerservice.utils;
 
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -11,15 +13,21 @@ import com.example.investmentdatascannerservice.repository.IndicativeRepository;
 
 /**
  * Сервис для работы с индексами из таблицы invest.indicatives
+ *
+ * Данные читаются из справочника {@link InstrumentCatalogService}, к базе обращается только
+ * точечный поиск по FIGI.
  */
 @Service
 public class IndicativeService {
 
     private static final Logger log = LoggerFactory.getLogger(IndicativeService.class);
 
+    private final InstrumentCatalogService catalogService;
     private final IndicativeRepository indicativeRepository;
 
-    public IndicativeService(IndicativeRepository indicativeRepository) {
+    public IndicativeService(InstrumentCatalogService catalogService,
+            IndicativeRepository indicativeRepository) {
+        this.catalogService = catalogService;
         this.indicativeRepository = indicativeRepository;
     }
 
@@ -27,21 +35,7 @@ public class IndicativeService {
      * Получить все индексы
      */
     public List<IndicativeEntity> getAllIndicatives() {
-        try {
-            List<IndicativeEntity> indicatives = indicativeRepository.findAllIndicatives();
-            log.info("Loaded {} indicatives from database", indicatives.size());
-            if (!indicatives.isEmpty()) {
-                log.info("First 3 indicatives: {}",
-                        indicatives.subList(0, Math.min(3, indicatives.size())).stream()
-                                .map(i -> String.format("FIGI=%s, ticker=%s, name=%s, exchange=%s",
-                                        i.getFigi(), i.getTicker(), i.getName(), i.getExchange()))
-                                .collect(Collectors.toList()));
-            }
-            return indicatives;
-        } catch (Exception e) {
-            log.error("Error loading indicatives from database", e);
-            return List.of();
-        }
+        return catalogService.current().getIndicatives();
     }
 
     /**
@@ -51,7 +45,7 @@ public class IndicativeService {
         List<IndicativeEntity> indicatives = getAllIndicatives();
         List<String> figis =
                 indicatives.stream().map(IndicativeEntity::getFigi).collect(Collectors.toList());
-        log.info("Returning {} FIGIs for indicatives scanning", figis.size());
+        log.debug("Returning {} FIGIs for indicatives scanning", figis.size());
         return figis;
     }
 
@@ -75,13 +69,7 @@ public class IndicativeService {
         Map<String, String> tickers =
                 indicatives.stream().collect(Collectors.toMap(IndicativeEntity::getFigi,
                         IndicativeEntity::getTicker, (existing, replacement) -> existing));
-        log.info("Loaded {} tickers from indicatives database", tickers.size());
-        if (!tickers.isEmpty()) {
-            log.info("First 5 tickers: {}",
-                    tickers.entrySet().stream().limit(5)
-                            .map(entry -> entry.getKey() + "=" + entry.getValue())
-                            .collect(Collectors.toList()));
-        }
+        log.debug("Returning {} indicative tickers", tickers.size());
         return tickers;
     }
 
@@ -89,71 +77,56 @@ public class IndicativeService {
      * Получить количество всех индексов
      */
     public long getAllIndicativesCount() {
-        try {
-            return indicativeRepository.count();
-        } catch (Exception e) {
-            log.error("Error counting indicatives", e);
-            return 0;
-        }
+        return getAllIndicatives().size();
     }
 
     /**
      * Получить индексы по бирже
      */
     public List<IndicativeEntity> getIndicativesByExchange(String exchange) {
-        try {
-            return indicativeRepository.findByExchange(exchange);
-        } catch (Exception e) {
-            log.error("Error loading indicatives by exchange: {}", exchange, e);
-            return List.of();
-        }
+        return filter(indicative -> exchange.equals(indicative.getExchange()));
     }
 
     /**
      * Получить индексы по валюте
      */
     public List<IndicativeEntity> getIndicativesByCurrency(String currency) {
-        try {
-            return indicativeRepository.findByCurrency(currency);
-        } catch (Exception e) {
-            log.error("Error loading indicatives by currency: {}", currency, e);
-            return List.of();
-        }
+        return filter(indicative -> currency.equals(indicative.getCurrency()));
     }
 
     /**
      * Получить индекс по тикеру
      */
     public IndicativeEntity getIndicativeByTicker(String ticker) {
-        try {
-            return indicativeRepository.findByTicker(ticker);
-        } catch (Exception e) {
-            log.error("Error loading indicative by ticker: {}", ticker, e);
-            return null;
-        }
+        return catalogService.current().findIndicativeByTicker(ticker);
     }
 
     /**
      * Получить индексы, доступные для покупки
      */
     public List<IndicativeEntity> getBuyAvailableIndicatives() {
-        try {
-            return indicativeRepository.findBuyAvailableIndicatives();
-        } catch (Exception e) {
-            log.error("Error loading buy available indicatives", e);
-            return List.of();
-        }
+        return filter(indicative -> Boolean.TRUE.equals(indicative.getBuyAvailableFlag()));
     }
 
     /**
      * Получить индексы, доступные для продажи
      */
     public List<IndicativeEntity> getSellAvailableIndicatives() {
-        try {
-            return indicativeRepository.findSellAvailableIndicatives();
-        } catch (Exception e) {
-            log.error("Error loading sell available indicatives", e);
-            return List.of();
-        }
+        return filter(indicative -> Boolean.TRUE.equals(indicative.getSellAvailableFlag()));
+    }
+
+    /**
+     * Найти индекс по FIGI точечным запросом в базе
+     *
+     * Используется для индексов, появившихся после загрузки справочника.
+     * Ошибка обращения к базе не перехватывается, чтобы ее можно было отличить от отсутствия
+     * инструмента.
+     */
+    public Optional<IndicativeEntity> findByFigi(String figi) {
+        return indicativeRepository.findById(figi);
+    }
+
+    private List<IndicativeEntity> filter(Predicate<IndicativeEntity> predicate) {
+        return getAllIndicatives().stream().filter(predicate).collect(Collectors.toList());
     }
 }
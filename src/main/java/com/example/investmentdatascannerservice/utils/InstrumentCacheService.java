@@ -2,6 +2,7 @@ package com.example.investmentdatascannerservice.utils;
 
 import java.math.BigDecimal;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -29,36 +30,18 @@ public class InstrumentCacheService {
     private final IndicativeService indicativeService;
     private final TodayVolumeService todayVolumeService;
     private final DividendRepository dividendRepository;
+    private final InstrumentRegistry instrumentRegistry;
+    private final InstrumentMetadataLoader metadataLoader;
+    private final InstrumentCatalogService catalogService;
 
-    // Кэш последних цен инструментов
-    private final Map<String, BigDecimal> lastPrices = new ConcurrentHashMap<>();
+    // Состояние инструментов (цены, стакан, объем, имя, тикер и флаги), индексированное
+    // идентификатором из InstrumentRegistry. Цены хранятся с фиксированной точкой (см.
+    // FixedPoint), BigDecimal - только в API для REST
+    private final InstrumentSlots<InstrumentState> states = new InstrumentSlots<>();
 
-    // Кэш имен инструментов (FIGI -> Название)
-    private final Map<String, String> instrumentNames = new ConcurrentHashMap<>();
-
-    // Кэш тикеров инструментов (FIGI -> Тикер)
-    private final Map<String, String> instrumentTickers = new ConcurrentHashMap<>();
-
-    // Кэш цен закрытия основной сессии
-    private final Map<String, BigDecimal> closePrices = new ConcurrentHashMap<>();
-
-    // Кэш цен открытия
-    private final Map<String, BigDecimal> openPrices = new ConcurrentHashMap<>();
-
-    // Кэш накопленных объемов
-    private final Map<String, Long> accumulatedVolumes = new ConcurrentHashMap<>();
-
-    // Кэш данных стакана заявок
-    private final Map<String, BigDecimal> bestBids = new ConcurrentHashMap<>();
-    private final Map<String, BigDecimal> bestAsks = new ConcurrentHashMap<>();
-    private final Map<String, Long> bestBidQuantities = new ConcurrentHashMap<>();
-    private final Map<String, Long> bestAskQuantities = new ConcurrentHashMap<>();
-
-    // Кэш short-флагов (FIGI -> доступен ли шорт)
-    private final Map<String, Boolean> shortFlagsByFigi = new ConcurrentHashMap<>();
-
-    // Кэш дивидендных событий (FIGI -> true если есть событие с declared_date >= NOW-1)
-    private final Map<String, Boolean> dividendFlagsByFigi = new ConcurrentHashMap<>();
+    // Тикеры инструментов, которых нет в справочнике (догружены точечно): нормализованный тикер
+    // -> FIGI. Основной индекс тикеров - в InstrumentCatalog
+    private final Map<String, String> extraTickerIndex = new ConcurrentHashMap<>();
 
     /**
      * Инициализация кэша инструментов
@@ -68,20 +51,20 @@ public class InstrumentCacheService {
 
         // Загружаем имена инструментов
         Map<String, String> namesToLoad = getInstrumentNamesForScanning();
-        instrumentNames.putAll(namesToLoad);
-        log.info("Loaded {} instrument names into cache", instrumentNames.size());
+        namesToLoad.forEach((figi, name) -> state(figi).setName(name));
+        log.info("Loaded {} instrument names into cache", namesToLoad.size());
 
         // Загружаем тикеры инструментов
         Map<String, String> tickersToLoad = getInstrumentTickersForScanning();
-        instrumentTickers.putAll(tickersToLoad);
-        log.info("Loaded {} tickers into cache", instrumentTickers.size());
+        tickersToLoad.forEach((figi, ticker) -> state(figi).setTicker(ticker));
+        log.info("Loaded {} tickers into cache", tickersToLoad.size());
 
         // Загружаем уже проторгованные объемы из today_volume_view
         loadWeekendExchangeVolumes();
 
-        if (!instrumentTickers.isEmpty()) {
+        if (!tickersToLoad.isEmpty()) {
             log.info("First 5 tickers in cache: {}",
-                    instrumentTickers.entrySet().stream().limit(5)
+                    tickersToLoad.entrySet().stream().limit(5)
                             .map(entry -> entry.getKey() + "=" + entry.getValue())
                             .collect(java.util.stream.Collectors.toList()));
         }
@@ -89,14 +72,14 @@ public class InstrumentCacheService {
         // Загружаем short-флаги акций и фьючерсов
         try {
             Map<String, Boolean> shareShortFlags = shareService.getShareShortFlags();
-            shortFlagsByFigi.putAll(shareShortFlags);
+            shareShortFlags.forEach((figi, flag) -> state(figi).setShortEnabled(flag));
             log.info("Loaded {} share short flags", shareShortFlags.size());
         } catch (Exception e) {
             log.warn("Failed to load share short flags: {}", e.getMessage());
         }
         try {
             Map<String, Boolean> futureShortFlags = futureService.getFutureShortFlags();
-            shortFlagsByFigi.putAll(futureShortFlags);
+            futureShortFlags.forEach((figi, flag) -> state(figi).setShortEnabled(flag));
             log.info("Loaded {} future short flags", futureShortFlags.size());
         } catch (Exception e) {
             log.warn("Failed to load future short flags: {}", e.getMessage());
@@ -115,7 +98,7 @@ public class InstrumentCacheService {
 
             java.util.List<String> figis =
                     dividendRepository.findFigiWithDeclaredBetween(fromDate, toDate);
-            figis.forEach(f -> dividendFlagsByFigi.put(f, true));
+            figis.forEach(f -> state(f).setHasDividend(true));
             log.info(
                     "Loaded {} dividend events for window [{}; {}) (MSK) for D-badge logic (daysBack={})",
                     figis.size(), fromDate, toDate, daysBack);
@@ -126,336 +109,499 @@ public class InstrumentCacheService {
         log.info("Instrument cache initialized successfully");
     }
 
+    /**
+     * Получить состояние инструмента (null, если инструмент еще не встречался)
+     */
+    public InstrumentState getState(String figi) {
+        return states.get(instrumentRegistry.idOf(figi));
+    }
+
+    /**
+     * Получить согласованный снимок состояния инструмента (null, если инструмент еще не
+     * встречался)
+     */
+    public InstrumentState.Snapshot getSnapshot(String figi) {
+        InstrumentState state = getState(figi);
+        return state != null ? state.snapshot() : null;
+    }
+
+    /**
+     * Получить согласованный снимок состояния по идентификатору инструмента
+     */
+    public InstrumentState.Snapshot getSnapshot(int instrumentId) {
+        InstrumentState state = states.get(instrumentId);
+        return state != null ? state.snapshot() : null;
+    }
+
+    /**
+     * Записать последнюю цену (первая цена дня становится ценой открытия)
+     *
+     * @return снимок состояния после обновления
+     */
+    public InstrumentState.Snapshot recordLastPrice(int instrumentId, long price) {
+        return state(instrumentId).recordLastPrice(price);
+    }
+
+    /**
+     * Записать сделку: последняя цена и добавка к накопленному объему
+     *
+     * @return снимок состояния после обновления
+     */
+    public InstrumentState.Snapshot recordTrade(int instrumentId, long price, long volume) {
+        return state(instrumentId).recordTrade(price, volume);
+    }
+
+    /**
+     * Записать лучшие BID/ASK стакана
+     *
+     * @return снимок состояния после обновления
+     */
+    public InstrumentState.Snapshot recordOrderBook(int instrumentId, long bestBid,
+            long bestBidQuantity, long bestAsk, long bestAskQuantity) {
+        return state(instrumentId).recordOrderBook(bestBid, bestBidQuantity, bestAsk,
+                bestAskQuantity);
+    }
+
     /**
      * Получить последнюю цену инструмента
      */
     public BigDecimal getLastPrice(String figi) {
-        return lastPrices.get(figi);
+        return FixedPoint.toDecimal(getLastPriceScaled(figi));
     }
 
     /**
      * Получить последнюю цену инструмента с значением по умолчанию
      */
     public BigDecimal getLastPrice(String figi, BigDecimal defaultValue) {
-        return lastPrices.getOrDefault(figi, defaultValue);
+        BigDecimal value = getLastPrice(figi);
+        return value != null ? value : defaultValue;
     }
 
     /**
      * Установить последнюю цену инструмента
      */
     public void setLastPrice(String figi, BigDecimal price) {
-        lastPrices.put(figi, price);
+        setLastPrice(figi, FixedPoint.fromDecimal(price));
+    }
+
+    /**
+     * Получить последнюю цену с фиксированной точкой (FixedPoint.NONE, если нет)
+     */
+    public long getLastPriceScaled(String figi) {
+        InstrumentState.Snapshot snapshot = getSnapshot(figi);
+        return snapshot != null ? snapshot.lastPrice() : FixedPoint.NONE;
+    }
+
+    /**
+     * Установить последнюю цену с фиксированной точкой
+     */
+    public void setLastPrice(String figi, long price) {
+        state(figi).setLastPrice(price);
     }
 
     /**
      * Получить имя инструмента
      */
     public String getInstrumentName(String figi) {
-        String name = instrumentNames.get(figi);
-        if (name == null) {
-            // Если имя не найдено, пытаемся загрузить его из базы данных
-            log.debug("Name not found in cache for FIGI: {}, attempting to load from database",
-                    figi);
-            Map<String, String> namesToLoad = getInstrumentNamesForScanning();
-            instrumentNames.putAll(namesToLoad);
-            name = instrumentNames.get(figi);
-        }
-        return name != null ? name : figi;
+        return getInstrumentName(figi, figi);
     }
 
     /**
      * Получить имя инструмента с значением по умолчанию
      */
     public String getInstrumentName(String figi, String defaultValue) {
-        String name = instrumentNames.get(figi);
+        InstrumentState.Snapshot snapshot = getSnapshot(figi);
+        String name = snapshot != null ? snapshot.name() : null;
         if (name == null) {
-            // Если имя не найдено, пытаемся загрузить его из базы данных
-            log.debug("Name not found in cache for FIGI: {}, attempting to load from database",
-                    figi);
-            Map<String, String> namesToLoad = getInstrumentNamesForScanning();
-            instrumentNames.putAll(namesToLoad);
-            name = instrumentNames.get(figi);
+            // Имя догружается в фоне точечным запросом, до этого возвращаем значение по умолчанию
+            metadataLoader.requestLoad(figi, this::applyMetadata);
+            return defaultValue;
         }
-        return name != null ? name : defaultValue;
+        return name;
     }
 
     /**
      * Получить тикер инструмента
      */
     public String getInstrumentTicker(String figi) {
-        String ticker = instrumentTickers.get(figi);
-        if (ticker == null) {
-            // Если тикер не найден, пытаемся загрузить его из базы данных
-            log.debug("Ticker not found in cache for FIGI: {}, attempting to load from database",
-                    figi);
-            Map<String, String> tickersToLoad = getInstrumentTickersForScanning();
-            instrumentTickers.putAll(tickersToLoad);
-            ticker = instrumentTickers.get(figi);
-        }
-        return ticker != null ? ticker : figi;
+        return getInstrumentTicker(figi, figi);
     }
 
     /**
      * Получить тикер инструмента с значением по умолчанию
      */
     public String getInstrumentTicker(String figi, String defaultValue) {
-        String ticker = instrumentTickers.get(figi);
+        InstrumentState.Snapshot snapshot = getSnapshot(figi);
+        String ticker = snapshot != null ? snapshot.ticker() : null;
         if (ticker == null) {
-            // Если тикер не найден, пытаемся загрузить его из базы данных
-            log.debug("Ticker not found in cache for FIGI: {}, attempting to load from database",
-                    figi);
-            Map<String, String> tickersToLoad = getInstrumentTickersForScanning();
-            instrumentTickers.putAll(tickersToLoad);
-            ticker = instrumentTickers.get(figi);
+            // Тикер догружается в фоне точечным запросом, до этого возвращаем значение по умолчанию
+            metadataLoader.requestLoad(figi, this::applyMetadata);
+            return defaultValue;
         }
-        return ticker != null ? ticker : defaultValue;
+        return ticker;
     }
 
     /**
-     * Получить FIGI по тикеру
+     * Записать в кэш тикер и имя, найденные точечной загрузкой
+     */
+    private void applyMetadata(InstrumentMetadataLoader.Metadata metadata) {
+        InstrumentState state = state(metadata.figi());
+        if (metadata.ticker() != null) {
+            state.setTicker(metadata.ticker());
+            String key = InstrumentCatalog.normalizeTicker(metadata.ticker());
+            if (key != null && catalogService.current().getInstrument(metadata.figi()) == null) {
+                extraTickerIndex.putIfAbsent(key, metadata.figi());
+            }
+        }
+        if (metadata.name() != null) {
+            state.setName(metadata.name());
+        }
+    }
+
+    /**
+     * Получить FIGI по тикеру без учета регистра
      * 
-     * Ищет в кэше, при необходимости загружает данные из базы
+     * Ищет в индексе тикеров справочника, затем среди точечно догруженных инструментов. Не
+     * обращается к базе данных.
      */
     public String getFigiByTicker(String ticker) {
-        if (ticker == null || ticker.trim().isEmpty()) {
+        String key = InstrumentCatalog.normalizeTicker(ticker);
+        if (key == null) {
             return null;
         }
 
-        // Ищем в кэше
-        for (Map.Entry<String, String> entry : instrumentTickers.entrySet()) {
-            if (ticker.equals(entry.getValue()) || ticker.equalsIgnoreCase(entry.getValue())) {
-                return entry.getKey();
-            }
+        String figi = catalogService.current().findFigiByTicker(ticker);
+        if (figi == null) {
+            figi = extraTickerIndex.get(key);
         }
-
-        // Если не найдено, пытаемся загрузить из базы
-        log.debug("FIGI not found in cache for ticker: {}, attempting to load from database",
-                ticker);
-        Map<String, String> tickersToLoad = getInstrumentTickersForScanning();
-        instrumentTickers.putAll(tickersToLoad);
-
-        // Повторяем поиск
-        for (Map.Entry<String, String> entry : instrumentTickers.entrySet()) {
-            if (ticker.equals(entry.getValue()) || ticker.equalsIgnoreCase(entry.getValue())) {
-                log.debug("Found FIGI {} for ticker {}", entry.getKey(), ticker);
-                return entry.getKey();
-            }
+        if (figi == null) {
+            log.debug("FIGI not found for ticker: {}", ticker);
         }
-
-        log.warn("FIGI not found for ticker: {}", ticker);
-        return null;
+        return figi;
     }
 
-
     /**
      * Получить цену закрытия основной сессии
      */
     public BigDecimal getClosePrice(String figi) {
-        return closePrices.get(figi);
+        return FixedPoint.toDecimal(getClosePriceScaled(figi));
     }
 
     /**
      * Получить цену закрытия основной сессии с значением по умолчанию
      */
     public BigDecimal getClosePrice(String figi, BigDecimal defaultValue) {
-        return closePrices.getOrDefault(figi, defaultValue);
+        BigDecimal value = getClosePrice(figi);
+        return value != null ? value : defaultValue;
     }
 
     /**
      * Установить цену закрытия основной сессии
      */
     public void setClosePrice(String figi, BigDecimal price) {
-        closePrices.put(figi, price);
+        setClosePrice(figi, FixedPoint.fromDecimal(price));
+    }
+
+    /**
+     * Получить цену закрытия основной сессии с фиксированной точкой (FixedPoint.NONE, если нет)
+     */
+    public long getClosePriceScaled(String figi) {
+        InstrumentState.Snapshot snapshot = getSnapshot(figi);
+        return snapshot != null ? snapshot.closePrice() : FixedPoint.NONE;
+    }
+
+    /**
+     * Установить цену закрытия основной сессии с фиксированной точкой
+     */
+    public void setClosePrice(String figi, long price) {
+        state(figi).setClosePrice(price);
     }
 
     /**
      * Получить цену открытия
      */
     public BigDecimal getOpenPrice(String figi) {
-        return openPrices.get(figi);
+        return FixedPoint.toDecimal(getOpenPriceScaled(figi));
     }
 
     /**
      * Получить цену открытия с значением по умолчанию
      */
     public BigDecimal getOpenPrice(String figi, BigDecimal defaultValue) {
-        return openPrices.getOrDefault(figi, defaultValue);
+        BigDecimal value = getOpenPrice(figi);
+        return value != null ? value : defaultValue;
     }
 
     /**
      * Установить цену открытия
      */
     public void setOpenPrice(String figi, BigDecimal price) {
-        openPrices.put(figi, price);
+        setOpenPrice(figi, FixedPoint.fromDecimal(price));
+    }
+
+    /**
+     * Получить цену открытия с фиксированной точкой (FixedPoint.NONE, если нет)
+     */
+    public long getOpenPriceScaled(String figi) {
+        InstrumentState.Snapshot snapshot = getSnapshot(figi);
+        return snapshot != null ? snapshot.openPrice() : FixedPoint.NONE;
+    }
+
+    /**
+     * Установить цену открытия с фиксированной точкой
+     */
+    public void setOpenPrice(String figi, long price) {
+        state(figi).setOpenPrice(price);
     }
 
     /**
      * Получить накопленный объем
      */
     public Long getAccumulatedVolume(String figi) {
-        return accumulatedVolumes.getOrDefault(figi, 0L);
+        return getAccumulatedVolume(figi, 0L);
     }
 
     /**
      * Получить накопленный объем с значением по умолчанию
      */
     public Long getAccumulatedVolume(String figi, Long defaultValue) {
-        return accumulatedVolumes.getOrDefault(figi, defaultValue);
+        InstrumentState.Snapshot snapshot = getSnapshot(figi);
+        return snapshot != null ? snapshot.accumulatedVolume() : defaultValue;
     }
 
     /**
      * Установить накопленный объем
      */
     public void setAccumulatedVolume(String figi, Long volume) {
-        accumulatedVolumes.put(figi, volume);
+        state(figi).setAccumulatedVolume(volume);
     }
 
     /**
      * Добавить к накопленному объему
      */
     public void addToAccumulatedVolume(String figi, Long additionalVolume) {
-        accumulatedVolumes.merge(figi, additionalVolume, Long::sum);
+        state(figi).addToAccumulatedVolume(additionalVolume);
     }
 
     /**
      * Получить лучший BID
      */
     public BigDecimal getBestBid(String figi) {
-        return bestBids.get(figi);
+        return FixedPoint.toDecimal(getBestBidScaled(figi));
     }
 
     /**
      * Получить лучший BID с значением по умолчанию
      */
     public BigDecimal getBestBid(String figi, BigDecimal defaultValue) {
-        return bestBids.getOrDefault(figi, defaultValue);
+        BigDecimal value = getBestBid(figi);
+        return value != null ? value : defaultValue;
     }
 
     /**
      * Установить лучший BID
      */
     public void setBestBid(String figi, BigDecimal price) {
-        bestBids.put(figi, price);
+        setBestBid(figi, FixedPoint.fromDecimal(price));
+    }
+
+    /**
+     * Получить лучший BID с фиксированной точкой (FixedPoint.NONE, если нет)
+     */
+    public long getBestBidScaled(String figi) {
+        InstrumentState.Snapshot snapshot = getSnapshot(figi);
+        return snapshot != null ? snapshot.bestBid() : FixedPoint.NONE;
+    }
+
+    /**
+     * Установить лучший BID с фиксированной точкой
+     */
+    public void setBestBid(String figi, long price) {
+        state(figi).setBestBid(price);
     }
 
     /**
      * Получить лучший ASK
      */
     public BigDecimal getBestAsk(String figi) {
-        return bestAsks.get(figi);
+        return FixedPoint.toDecimal(getBestAskScaled(figi));
     }
 
     /**
      * Получить лучший ASK с значением по умолчанию
      */
     public BigDecimal getBestAsk(String figi, BigDecimal defaultValue) {
-        return bestAsks.getOrDefault(figi, defaultValue);
+        BigDecimal value = getBestAsk(figi);
+        return value != null ? value : defaultValue;
     }
 
     /**
      * Установить лучший ASK
      */
     public void setBestAsk(String figi, BigDecimal price) {
-        bestAsks.put(figi, price);
+        setBestAsk(figi, FixedPoint.fromDecimal(price));
+    }
+
+    /**
+     * Получить лучший ASK с фиксированной точкой (FixedPoint.NONE, если нет)
+     */
+    public long getBestAskScaled(String figi) {
+        InstrumentState.Snapshot snapshot = getSnapshot(figi);
+        return snapshot != null ? snapshot.bestAsk() : FixedPoint.NONE;
+    }
+
+    /**
+     * Установить лучший ASK с фиксированной точкой
+     */
+    public void setBestAsk(String figi, long price) {
+        state(figi).setBestAsk(price);
     }
 
     /**
      * Получить количество лотов лучшего BID
      */
     public Long getBestBidQuantity(String figi) {
-        return bestBidQuantities.getOrDefault(figi, 0L);
+        return getBestBidQuantity(figi, 0L);
     }
 
     /**
      * Получить количество лотов лучшего BID с значением по умолчанию
      */
     public Long getBestBidQuantity(String figi, Long defaultValue) {
-        return bestBidQuantities.getOrDefault(figi, defaultValue);
+        InstrumentState.Snapshot snapshot = getSnapshot(figi);
+        return snapshot != null ? snapshot.bestBidQuantity() : defaultValue;
     }
 
     /**
      * Установить количество лотов лучшего BID
      */
     public void setBestBidQuantity(String figi, Long quantity) {
-        bestBidQuantities.put(figi, quantity);
+        state(figi).setBestBidQuantity(quantity);
     }
 
     /**
      * Получить количество лотов лучшего ASK
      */
     public Long getBestAskQuantity(String figi) {
-        return bestAskQuantities.getOrDefault(figi, 0L);
+        return getBestAskQuantity(figi, 0L);
     }
 
     /**
      * Получить количество лотов лучшего ASK с значением по умолчанию
      */
     public Long getBestAskQuantity(String figi, Long defaultValue) {
-        return bestAskQuantities.getOrDefault(figi, defaultValue);
+        InstrumentState.Snapshot snapshot = getSnapshot(figi);
+        return snapshot != null ? snapshot.bestAskQuantity() : defaultValue;
     }
 
     /**
      * Установить количество лотов лучшего ASK
      */
     public void setBestAskQuantity(String figi, Long quantity) {
-        bestAskQuantities.put(figi, quantity);
+        state(figi).setBestAskQuantity(quantity);
     }
 
     /**
      * Получить все отслеживаемые инструменты
      */
     public Set<String> getTrackedInstruments() {
-        return Set.copyOf(lastPrices.keySet());
+        Set<String> figis = new HashSet<>();
+        for (InstrumentState state : states.values()) {
+            if (FixedPoint.isPresent(state.snapshot().lastPrice())) {
+                figis.add(state.getFigi());
+            }
+        }
+        return Set.copyOf(figis);
     }
 
     /**
      * Получить все доступные инструменты с ценами
      */
     public Map<String, BigDecimal> getAvailableInstruments() {
-        return new HashMap<>(lastPrices);
+        Map<String, BigDecimal> prices = new HashMap<>();
+        for (InstrumentState state : states.values()) {
+            long lastPrice = state.snapshot().lastPrice();
+            if (FixedPoint.isPresent(lastPrice)) {
+                prices.put(state.getFigi(), FixedPoint.toDecimal(lastPrice));
+            }
+        }
+        return prices;
     }
 
     /**
      * Получить все доступные имена инструментов
      */
     public Map<String, String> getAvailableInstrumentNames() {
-        return new HashMap<>(instrumentNames);
+        Map<String, String> names = new HashMap<>();
+        for (InstrumentState state : states.values()) {
+            String name = state.snapshot().name();
+            if (name != null) {
+                names.put(state.getFigi(), name);
+            }
+        }
+        return names;
     }
 
     /**
      * Получить статистику кэша
      */
     public Map<String, Object> getCacheStats() {
-        return Map.of("trackedInstruments", lastPrices.size(), "instrumentNames",
-                instrumentNames.size(), "instrumentTickers", instrumentTickers.size(),
-                "closePrices", closePrices.size(), "openPrices", openPrices.size(),
-                "accumulatedVolumes", accumulatedVolumes.size(), "bestBids", bestBids.size(),
-                "bestAsks", bestAsks.size());
+        int trackedInstruments = 0;
+        int instrumentNames = 0;
+        int instrumentTickers = 0;
+        int closePrices = 0;
+        int openPrices = 0;
+        int accumulatedVolumes = 0;
+        int bestBids = 0;
+        int bestAsks = 0;
+        for (InstrumentState state : states.values()) {
+            InstrumentState.Snapshot snapshot = state.snapshot();
+            trackedInstruments += FixedPoint.isPresent(snapshot.lastPrice()) ? 1 : 0;
+            instrumentNames += snapshot.name() != null ? 1 : 0;
+            instrumentTickers += snapshot.ticker() != null ? 1 : 0;
+            closePrices += FixedPoint.isPresent(snapshot.closePrice()) ? 1 : 0;
+            openPrices += FixedPoint.isPresent(snapshot.openPrice()) ? 1 : 0;
+            accumulatedVolumes += snapshot.accumulatedVolume() > 0 ? 1 : 0;
+            bestBids += FixedPoint.isPresent(snapshot.bestBid()) ? 1 : 0;
+            bestAsks += FixedPoint.isPresent(snapshot.bestAsk()) ? 1 : 0;
+        }
+        return Map.of("trackedInstruments", trackedInstruments, "instrumentNames",
+                instrumentNames, "instrumentTickers", instrumentTickers, "closePrices",
+                closePrices, "openPrices", openPrices, "accumulatedVolumes", accumulatedVolumes,
+                "bestBids", bestBids, "bestAsks", bestAsks, "metadataLoader",
+                metadataLoader.getStats(), "catalog", catalogService.getStats());
     }
 
     /**
      * Очистить кэш
      */
     public void clearCache() {
-        lastPrices.clear();
-        instrumentNames.clear();
-        instrumentTickers.clear();
-        closePrices.clear();
-        openPrices.clear();
-        // НЕ очищаем accumulatedVolumes - они содержат уже проторгованные объемы
-        bestBids.clear();
-        bestAsks.clear();
-        bestBidQuantities.clear();
-        bestAskQuantities.clear();
+        // НЕ очищаем accumulatedVolume - он содержит уже проторгованные объемы
+        states.forEach(InstrumentState::clearExceptVolume);
         log.info("Instrument cache cleared (preserving accumulated volumes)");
     }
 
+    /**
+     * Состояние инструмента, создаваемое при первом обращении
+     */
+    private InstrumentState state(String figi) {
+        return state(instrumentRegistry.register(figi));
+    }
+
+    private InstrumentState state(int instrumentId) {
+        return states.computeIfAbsent(instrumentId,
+                id -> new InstrumentState(instrumentRegistry.figiOf(id)));
+    }
+
     /**
      * Перезагрузить кэш инструментов
      */
     public void reloadCache() {
         log.info("Reloading instrument cache...");
         clearCache();
+        catalogService.refresh();
+        metadataLoader.clear();
+        extraTickerIndex.clear();
         initializeCache();
         log.info("Instrument cache reloaded successfully");
     }
@@ -466,7 +612,7 @@ public class InstrumentCacheService {
      * Загрузить цены закрытия основной сессии
      */
     public void loadClosePrices(Map<String, BigDecimal> prices) {
-        closePrices.putAll(prices);
+        prices.forEach(this::setClosePrice);
         log.info("Loaded {} close prices into cache", prices.size());
     }
 
@@ -474,7 +620,7 @@ public class InstrumentCacheService {
      * Загрузить цены открытия
      */
     public void loadOpenPrices(Map<String, BigDecimal> prices) {
-        openPrices.putAll(prices);
+        prices.forEach(this::setOpenPrice);
         log.info("Loaded {} open prices into cache", prices.size());
     }
 
@@ -482,7 +628,7 @@ public class InstrumentCacheService {
      * Загрузить имена инструментов
      */
     public void loadInstrumentNames(Map<String, String> names) {
-        instrumentNames.putAll(names);
+        names.forEach((figi, name) -> state(figi).setName(name));
         log.info("Loaded {} instrument names into cache", names.size());
     }
 
@@ -494,10 +640,11 @@ public class InstrumentCacheService {
             Map<String, Long> todayVolumes = todayVolumeService.getAllTotalVolumes();
 
             // Очищаем накопленные объемы перед загрузкой новых
-            accumulatedVolumes.clear();
+            states.forEach(state -> state.setAccumulatedVolume(0L));
 
             // Загружаем проторгованные объемы (перезаписываем, а не суммируем)
-            accumulatedVolumes.putAll(todayVolumes);
+            todayVolumes.forEach((figi, volume) -> state(figi)
+                    .setAccumulatedVolume(volume != null ? volume : 0L));
 
             log.info("Cleared and loaded {} today volumes into accumulated volumes cache",
                     todayVolumes.size());
@@ -520,16 +667,16 @@ public class InstrumentCacheService {
      * 
      * Загружает все акции из таблицы invest.shares, фьючерсы из таблицы invest.futures и индексы из
      * таблицы invest.indicatives. Режим shares-mode определяет только дополнительные настройки
-     * отображения.
+     * отображения. Данные берутся из справочника InstrumentCatalogService без обращения к базе.
      */
     public List<String> getInstrumentsForScanning() {
-        // Загружаем все акции из базы данных
+        // Загружаем все акции из справочника
         List<String> shareFigis = shareService.getAllShareFigis();
 
-        // Загружаем все фьючерсы из базы данных
+        // Загружаем все фьючерсы из справочника
         List<String> futureFigis = futureService.getAllFutureFigis();
 
-        // Загружаем все индексы из базы данных
+        // Загружаем все индексы из справочника
         List<String> indicativeFigis = indicativeService.getAllIndicativeFigis();
 
         // Объединяем списки
@@ -650,9 +797,7 @@ public class InstrumentCacheService {
         if (figi == null) {
             return false;
         }
-        // Проверяем по тикеру индикативов (если FIGI есть в списке тикеров индикативов)
-        Map<String, String> indicativeTickers = indicativeService.getIndicativeTickers();
-        return indicativeTickers.containsKey(figi);
+        return catalogService.current().isIndicative(figi);
     }
 
     /**
@@ -680,13 +825,15 @@ public class InstrumentCacheService {
      * Получить short-флаг по FIGI (true если шорт доступен)
      */
     public boolean isShortEnabled(String figi) {
-        return Boolean.TRUE.equals(shortFlagsByFigi.get(figi));
+        InstrumentState state = getState(figi);
+        return state != null && state.snapshot().shortEnabled();
     }
 
     /**
      * Есть ли дивидендное событие (declared_date >= now-1d)
      */
     public boolean hasRecentDividend(String figi) {
-        return Boolean.TRUE.equals(dividendFlagsByFigi.get(figi));
+        InstrumentState state = getState(figi);
+        return state != null && state.snapshot().hasDividend();
     }
 }
@@ -0,0 +1,265 @@
+package com.example.investmentdatascannerservice.utils;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Function;
+import com.example.investmentdatascannerservice.entity.FutureEntity;
+import com.example.investmentdatascannerservice.entity.IndicativeEntity;
+import com.example.investmentdatascannerservice.entity.ShareEntity;
+
+/**
+ * Неизменяемый снимок справочника инструментов (акции, фьючерсы, индексы)
+ *
+ * Строится целиком при загрузке из базы и заменяется новым снимком при обновлении, поэтому
+ * читатели не видят частично обновленных данных. Помимо исходных списков содержит индексы по
+ * FIGI, тикеру, базовому активу и типу. Сущности внутри снимка используются только для чтения.
+ *
+ * Обратный индекс тикер -> FIGI строится по нормализованному тикеру (без пробелов по краям, в
+ * верхнем регистре). Если один тикер есть у нескольких инструментов, предпочтение отдается
+ * точному совпадению регистра, затем акциям, фьючерсам и индексам в этом порядке.
+ */
+public final class InstrumentCatalog {
+
+    /** Пустой справочник (до первой успешной загрузки) */
+    public static final InstrumentCatalog EMPTY =
+            build(0L, Instant.EPOCH, List.of(), List.of(), List.of());
+
+    /**
+     * Тип инструмента
+     */
+    public enum Type {
+        SHARE, FUTURE, INDICATIVE
+    }
+
+    /**
+     * Основные сведения об инструменте независимо от его типа
+     *
+     * name - отображаемое имя по тем же правилам, что и при загрузке имен: имя акции или индекса,
+     * базовый актив фьючерса, а при их отсутствии - тикер.
+     */
+    public record Instrument(String figi, Type type, String ticker, String name,
+            String basicAsset, String assetType, LocalDateTime expirationDate,
+            boolean shortEnabled) {
+    }
+
+    private final long version;
+    private final Instant loadedAt;
+
+    private final List<ShareEntity> shares;
+    private final List<FutureEntity> futures;
+    private final List<IndicativeEntity> indicatives;
+
+    private final Map<String, Instrument> byFigi;
+    private final Map<Type, List<Instrument>> byType;
+    private final Map<String, List<Instrument>> byTicker;
+    private final Map<String, List<ShareEntity>> sharesByTicker;
+    private final Map<String, List<FutureEntity>> futuresByTicker;
+    private final Map<String, List<FutureEntity>> futuresByBasicAsset;
+    private final Map<String, List<FutureEntity>> futuresByAssetType;
+    private final Map<String, IndicativeEntity> indicativesByTicker;
+
+    private InstrumentCatalog(long version, Instant loadedAt, List<ShareEntity> shares,
+            List<FutureEntity> futures, List<IndicativeEntity> indicatives) {
+        this.version = version;
+        this.loadedAt = loadedAt;
+        this.shares = List.copyOf(shares);
+        this.futures = List.copyOf(futures);
+        this.indicatives = List.copyOf(indicatives);
+
+        // При совпадении FIGI побеждает последний тип (как при объединении карт имен и тикеров)
+        Map<String, Instrument> instruments = new LinkedHashMap<>();
+        for (ShareEntity share : this.shares) {
+            instruments.put(share.getFigi(),
+                    new Instrument(share.getFigi(), Type.SHARE, share.getTicker(),
+                            share.getName() != null ? share.getName() : share.getTicker(), null,
+                            null, null, Boolean.TRUE.equals(share.getShortEnabled())));
+        }
+        for (FutureEntity future : this.futures) {
+            instruments.put(future.getFigi(),
+                    new Instrument(future.getFigi(), Type.FUTURE, future.getTicker(),
+                            future.getBasicAsset() != null ? future.getBasicAsset()
+                                    : future.getTicker(),
+                            future.getBasicAsset(), future.getAssetType(),
+                            future.getExpirationDate(),
+                            Boolean.TRUE.equals(future.getShortEnabled())));
+        }
+        for (IndicativeEntity indicative : this.indicatives) {
+            instruments.put(indicative.getFigi(),
+                    new Instrument(indicative.getFigi(), Type.INDICATIVE, indicative.getTicker(),
+                            indicative.getName() != null ? indicative.getName()
+                                    : indicative.getTicker(),
+                            null, null, null, false));
+        }
+        this.byFigi = Collections.unmodifiableMap(instruments);
+
+        Map<Type, List<Instrument>> types = new EnumMap<>(Type.class);
+        for (Type type : Type.values()) {
+            types.put(type, new ArrayList<>());
+        }
+        instruments.values().forEach(instrument -> types.get(instrument.type()).add(instrument));
+        types.replaceAll((type, list) -> List.copyOf(list));
+        this.byType = Collections.unmodifiableMap(types);
+
+        // Кандидаты по тикеру в порядке предпочтения типов (акции, фьючерсы, индексы)
+        Map<String, List<Instrument>> tickers = new HashMap<>();
+        for (Type type : Type.values()) {
+            for (Instrument instrument : types.get(type)) {
+                String key = normalizeTicker(instrument.ticker());
+                if (key != null) {
+                    tickers.computeIfAbsent(key, k -> new ArrayList<>()).add(instrument);
+                }
+            }
+        }
+        tickers.replaceAll((k, list) -> List.copyOf(list));
+        this.byTicker = Collections.unmodifiableMap(tickers);
+
+        this.sharesByTicker = groupBy(this.shares, ShareEntity::getTicker);
+        this.futuresByTicker = groupBy(this.futures, FutureEntity::getTicker);
+        this.futuresByBasicAsset = groupBy(this.futures, FutureEntity::getBasicAsset);
+        this.futuresByAssetType = groupBy(this.futures, FutureEntity::getAssetType);
+
+        Map<String, IndicativeEntity> indicativeTickers = new HashMap<>();
+        for (IndicativeEntity indicative : this.indicatives) {
+            if (indicative.getTicker() != null) {
+                indicativeTickers.putIfAbsent(indicative.getTicker(), indicative);
+            }
+        }
+        this.indicativesByTicker = Collections.unmodifiableMap(indicativeTickers);
+    }
+
+    /**
+     * Построить снимок справочника
+     */
+    public static InstrumentCatalog build(long version, Instant loadedAt,
+            List<ShareEntity> shares, List<FutureEntity> futures,
+            List<IndicativeEntity> indicatives) {
+        return new InstrumentCatalog(version, loadedAt, shares, futures, indicatives);
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public Instant getLoadedAt() {
+        return loadedAt;
+    }
+
+    public List<ShareEntity> getShares() {
+        return shares;
+    }
+
+    public List<FutureEntity> getFutures() {
+        return futures;
+    }
+
+    public List<IndicativeEntity> getIndicatives() {
+        return indicatives;
+    }
+
+    /**
+     * Инструмент по FIGI (null, если его нет в справочнике)
+     */
+    public Instrument getInstrument(String figi) {
+        return figi != null ? byFigi.get(figi) : null;
+    }
+
+    /**
+     * Все инструменты по FIGI
+     */
+    public Map<String, Instrument> getInstruments() {
+        return byFigi;
+    }
+
+    /**
+     * Инструменты заданного типа
+     */
+    public List<Instrument> getInstruments(Type type) {
+        return byType.get(type);
+    }
+
+    /**
+     * Является ли инструмент индексом
+     */
+    public boolean isIndicative(String figi) {
+        Instrument instrument = getInstrument(figi);
+        return instrument != null && instrument.type() == Type.INDICATIVE;
+    }
+
+    /**
+     * Все инструменты с тикером без учета регистра (в порядке предпочтения)
+     */
+    public List<Instrument> findInstrumentsByTicker(String ticker) {
+        String key = normalizeTicker(ticker);
+        return key != null ? byTicker.getOrDefault(key, List.of()) : List.of();
+    }
+
+    /**
+     * FIGI по тикеру без учета регистра (null, если тикер не найден)
+     */
+    public String findFigiByTicker(String ticker) {
+        List<Instrument> candidates = findInstrumentsByTicker(ticker);
+        if (candidates.isEmpty()) {
+            return null;
+        }
+        if (candidates.size() > 1) {
+            String exact = ticker.trim();
+            for (Instrument candidate : candidates) {
+                if (exact.equals(candidate.ticker())) {
+                    return candidate.figi();
+                }
+            }
+        }
+        return candidates.get(0).figi();
+    }
+
+    /**
+     * Нормализованный тикер для поиска (null для пустого тикера)
+     */
+    public static String normalizeTicker(String ticker) {
+        if (ticker == null) {
+            return null;
+        }
+        String trimmed = ticker.trim();
+        return trimmed.isEmpty() ? null : trimmed.toUpperCase(Locale.ROOT);
+    }
+
+    public List<ShareEntity> findSharesByTicker(String ticker) {
+        return sharesByTicker.getOrDefault(ticker, List.of());
+    }
+
+    public List<FutureEntity> findFuturesByTicker(String ticker) {
+        return futuresByTicker.getOrDefault(ticker, List.of());
+    }
+
+    public List<FutureEntity> findFuturesByBasicAsset(String basicAsset) {
+        return futuresByBasicAsset.getOrDefault(basicAsset, List.of());
+    }
+
+    public List<FutureEntity> findFuturesByAssetType(String assetType) {
+        return futuresByAssetType.getOrDefault(assetType, List.of());
+    }
+
+    public IndicativeEntity findIndicativeByTicker(String ticker) {
+        return ticker != null ? indicativesByTicker.get(ticker) : null;
+    }
+
+    private static <T> Map<String, List<T>> groupBy(List<T> items, Function<T, String> key) {
+        Map<String, List<T>> groups = new HashMap<>();
+        for (T item : items) {
+            String value = key.apply(item);
+            if (value != null) {
+                groups.computeIfAbsent(value, k -> new ArrayList<>()).add(item);
+            }
+        }
+        groups.replaceAll((k, list) -> List.copyOf(list));
+        return Collections.unmodifiableMap(groups);
+    }
+}
@@ -0,0 +1,184 @@
+package com.example.investmentdatascannerservice.utils;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import com.example.investmentdatascannerservice.entity.FutureEntity;
+import com.example.investmentdatascannerservice.entity.IndicativeEntity;
+import com.example.investmentdatascannerservice.entity.ShareEntity;
+import com.example.investmentdatascannerservice.repository.FutureRepository;
+import com.example.investmentdatascannerservice.repository.IndicativeRepository;
+import com.example.investmentdatascannerservice.repository.ShareRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Сервис справочника инструментов
+ *
+ * Загружает акции, фьючерсы и индексы из таблиц invest.shares, invest.futures и
+ * invest.indicatives одним проходом и хранит их в неизменяемом снимке {@link InstrumentCatalog}.
+ * Чтение справочника не обращается к базе. Снимок загружается при старте сервиса, обновляется
+ * каждый день в 6:10 по московскому времени и по запросу ({@link #refresh()}). При ошибке загрузки
+ * сохраняется предыдущий снимок (до первой успешной загрузки - пустой справочник), а повторная
+ * попытка выполняется в фоне с экспоненциальной задержкой от {@link #RETRY_BASE_DELAY_MS} до
+ * {@link #RETRY_MAX_DELAY_MS}.
+ */
+@Service
+public class InstrumentCatalogService {
+
+    private static final Logger log = LoggerFactory.getLogger(InstrumentCatalogService.class);
+
+    /** Задержка первой повторной загрузки после ошибки */
+    static final long RETRY_BASE_DELAY_MS = TimeUnit.SECONDS.toMillis(5);
+    /** Максимальная задержка повторной загрузки */
+    static final long RETRY_MAX_DELAY_MS = TimeUnit.MINUTES.toMillis(5);
+
+    private final ShareRepository shareRepository;
+    private final FutureRepository futureRepository;
+    private final IndicativeRepository indicativeRepository;
+
+    private volatile InstrumentCatalog catalog;
+    private long nextVersion = 1; // изменяется только под блокировкой
+
+    // Повторная загрузка после ошибки; состояние изменяется только под блокировкой
+    private final ScheduledExecutorService retryScheduler =
+            Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "instrument-catalog-retry");
+                thread.setDaemon(true);
+                return thread;
+            });
+    private ScheduledFuture<?> retryTask;
+    private long retryDelayMs = RETRY_BASE_DELAY_MS;
+    private volatile int consecutiveFailures;
+
+    public InstrumentCatalogService(ShareRepository shareRepository,
+            FutureRepository futureRepository, IndicativeRepository indicativeRepository) {
+        this.shareRepository = shareRepository;
+        this.futureRepository = futureRepository;
+        this.indicativeRepository = indicativeRepository;
+    }
+
+    /**
+     * Загрузка справочника при старте (при ошибке повторяется в фоне)
+     */
+    @PostConstruct
+    public synchronized void init() {
+        load();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        retryScheduler.shutdownNow();
+    }
+
+    /**
+     * Текущий снимок справочника (пустой до первой успешной загрузки)
+     *
+     * Никогда не обращается к базе и не блокируется: вызывается из горячего пути котировок.
+     */
+    public InstrumentCatalog current() {
+        InstrumentCatalog current = catalog;
+        return current != null ? current : InstrumentCatalog.EMPTY;
+    }
+
+    /**
+     * Перезагрузить справочник из базы данных
+     *
+     * @return true, если загружен новый снимок
+     */
+    public synchronized boolean refresh() {
+        return load();
+    }
+
+    /**
+     * Плановое обновление справочника каждый день в 6:10 по московскому времени
+     *
+     * Cron выражение: 0 10 6 * * ? - каждый день в 6:10:00 Timezone: Europe/Moscow
+     */
+    @Scheduled(cron = "0 10 6 * * ?", zone = "Europe/Moscow")
+    public void scheduledRefresh() {
+        log.info("Starting scheduled instrument catalog refresh");
+        refresh();
+    }
+
+    /**
+     * Статистика справочника
+     */
+    public Map<String, Object> getStats() {
+        InstrumentCatalog current = catalog;
+        if (current == null) {
+            return Map.of("loaded", false, "consecutiveFailures", consecutiveFailures);
+        }
+        return Map.of("loaded", true, "version", current.getVersion(), "loadedAt",
+                current.getLoadedAt().toString(), "shares", current.getShares().size(),
+                "futures", current.getFutures().size(), "indicatives",
+                current.getIndicatives().size(), "consecutiveFailures", consecutiveFailures);
+    }
+
+    private boolean load() {
+        try {
+            List<ShareEntity> shares = shareRepository.findAllShares();
+            List<FutureEntity> futures = futureRepository.findAll();
+            List<IndicativeEntity> indicatives = indicativeRepository.findAllIndicatives();
+            InstrumentCatalog loaded = InstrumentCatalog.build(nextVersion++, Instant.now(),
+                    shares, futures, indicatives);
+            catalog = loaded;
+            onLoadSucceeded();
+            log.info("Instrument catalog v{} loaded: {} shares, {} futures, {} indicatives",
+                    loaded.getVersion(), shares.size(), futures.size(), indicatives.size());
+            if (!shares.isEmpty()) {
+                log.info("First 3 shares: {}",
+                        shares.subList(0, Math.min(3, shares.size())).stream()
+                                .map(s -> String.format("FIGI=%s, ticker=%s, name=%s, exchange=%s",
+                                        s.getFigi(), s.getTicker(), s.getName(), s.getExchange()))
+                                .collect(Collectors.toList()));
+            }
+            return true;
+        } catch (Exception e) {
+            log.error("Error loading instrument catalog, keeping version {}",
+                    catalog != null ? catalog.getVersion() : 0, e);
+            scheduleRetry();
+            return false;
+        }
+    }
+
+    private void onLoadSucceeded() {
+        consecutiveFailures = 0;
+        retryDelayMs = RETRY_BASE_DELAY_MS;
+        if (retryTask != null) {
+            retryTask.cancel(false);
+            retryTask = null;
+        }
+    }
+
+    private void scheduleRetry() {
+        consecutiveFailures++;
+        if (retryTask != null && !retryTask.isDone()) {
+            return;
+        }
+        long delayMs = retryDelayMs;
+        retryDelayMs = Math.min(RETRY_MAX_DELAY_MS, retryDelayMs * 2);
+        try {
+            retryTask = retryScheduler.schedule(this::retry, delayMs, TimeUnit.MILLISECONDS);
+            log.warn("Instrument catalog reload scheduled in {} ms (failures in a row: {})",
+                    delayMs, consecutiveFailures);
+        } catch (RejectedExecutionException e) {
+            log.debug("Instrument catalog retry not scheduled: service is stopping");
+        }
+    }
+
+    private synchronized void retry() {
+        retryTask = null;
+        load();
+    }
+}
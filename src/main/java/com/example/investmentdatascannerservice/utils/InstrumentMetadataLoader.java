@@ -0,0 +1,168 @@
+package com.example.investmentdatascannerservice.utils;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+import com.example.investmentdatascannerservice.entity.FutureEntity;
+import com.example.investmentdatascannerservice.entity.IndicativeEntity;
+import com.example.investmentdatascannerservice.entity.ShareEntity;
+
+/**
+ * Точечная догрузка тикера и имени инструмента, отсутствующего в кэше
+ *
+ * Вызывается из горячего пути при промахе кэша и никогда не блокирует вызывающий поток: поиск
+ * по одному FIGI (справочник, затем акции, фьючерсы и индексы в базе) выполняется в
+ * databaseExecutor. Для каждого FIGI одновременно выполняется не больше одного поиска, а FIGI, не
+ * найденные в базе, запоминаются на {@link #ABSENT_TTL_MS} и до истечения срока повторно не
+ * ищутся. Поиск, завершившийся ошибкой базы, не запоминается.
+ */
+@Component
+public class InstrumentMetadataLoader {
+
+    private static final Logger log = LoggerFactory.getLogger(InstrumentMetadataLoader.class);
+
+    /** Время, в течение которого не найденный в базе FIGI повторно не ищется */
+    static final long ABSENT_TTL_MS = TimeUnit.MINUTES.toMillis(10);
+
+    /**
+     * Тикер и имя инструмента, найденные в базе
+     */
+    public record Metadata(String figi, String ticker, String name) {
+    }
+
+    private final InstrumentCatalogService catalogService;
+    private final ShareService shareService;
+    private final FutureService futureService;
+    private final IndicativeService indicativeService;
+    private final ExecutorService databaseExecutor;
+
+    private final Set<String> inFlight = ConcurrentHashMap.newKeySet();
+    private final Map<String, Long> absentUntil = new ConcurrentHashMap<>();
+
+    private final AtomicLong lookups = new AtomicLong(0);
+    private final AtomicLong found = new AtomicLong(0);
+    private final AtomicLong suppressed = new AtomicLong(0);
+    private final AtomicLong failed = new AtomicLong(0);
+
+    public InstrumentMetadataLoader(InstrumentCatalogService catalogService,
+            ShareService shareService, FutureService futureService,
+            IndicativeService indicativeService,
+            @Qualifier("databaseExecutor") ExecutorService databaseExecutor) {
+        this.catalogService = catalogService;
+        this.shareService = shareService;
+        this.futureService = futureService;
+        this.indicativeService = indicativeService;
+        this.databaseExecutor = databaseExecutor;
+    }
+
+    /**
+     * Запросить фоновую загрузку тикера и имени инструмента
+     *
+     * Возвращает управление сразу. Если поиск по этому FIGI уже выполняется или FIGI недавно не
+     * был найден, запрос игнорируется. При успехе результат передается в onLoaded в потоке
+     * databaseExecutor.
+     */
+    public void requestLoad(String figi, Consumer<Metadata> onLoaded) {
+        if (figi == null || isKnownAbsent(figi) || !inFlight.add(figi)) {
+            suppressed.incrementAndGet();
+            return;
+        }
+        try {
+            databaseExecutor.execute(() -> load(figi, onLoaded));
+        } catch (RejectedExecutionException e) {
+            inFlight.remove(figi);
+            log.warn("Metadata lookup for {} rejected: {}", figi, e.getMessage());
+        }
+    }
+
+    /**
+     * Забыть не найденные FIGI (например, после перезагрузки справочников)
+     */
+    public void clear() {
+        absentUntil.clear();
+    }
+
+    /**
+     * Статистика точечных загрузок
+     */
+    public Map<String, Object> getStats() {
+        return Map.of("lookups", lookups.get(), "found", found.get(), "failed", failed.get(),
+                "suppressed", suppressed.get(), "inFlight", inFlight.size(), "knownAbsent",
+                absentUntil.size());
+    }
+
+    private boolean isKnownAbsent(String figi) {
+        Long until = absentUntil.get(figi);
+        if (until == null) {
+            return false;
+        }
+        if (until > System.currentTimeMillis()) {
+            return true;
+        }
+        absentUntil.remove(figi, until);
+        return false;
+    }
+
+    private void load(String figi, Consumer<Metadata> onLoaded) {
+        try {
+            lookups.incrementAndGet();
+            Optional<Metadata> metadata = find(figi);
+            if (metadata.isEmpty()) {
+                absentUntil.put(figi, System.currentTimeMillis() + ABSENT_TTL_MS);
+                log.debug("Instrument {} not found in database, retry in {} ms", figi,
+                        ABSENT_TTL_MS);
+                return;
+            }
+            found.incrementAndGet();
+            onLoaded.accept(metadata.get());
+            log.debug("Loaded metadata for {}: ticker={}, name={}", figi,
+                    metadata.get().ticker(), metadata.get().name());
+        } catch (Exception e) {
+            // Ошибка базы не означает отсутствие инструмента: FIGI не запоминается и будет
+            // запрошен снова при следующем промахе кэша
+            failed.incrementAndGet();
+            log.warn("Error loading metadata for {}: {}", figi, e.getMessage());
+        } finally {
+            inFlight.remove(figi);
+        }
+    }
+
+    /**
+     * Поиск в справочнике и по таблицам с теми же правилами выбора имени, что и при полной загрузке
+     *
+     * @return пустой результат, только если инструмента нет ни в одной таблице; ошибки базы
+     *         пробрасываются
+     */
+    private Optional<Metadata> find(String figi) {
+        InstrumentCatalog.Instrument instrument = catalogService.current().getInstrument(figi);
+        if (instrument != null) {
+            return Optional.of(new Metadata(figi, instrument.ticker(), instrument.name()));
+        }
+        ShareEntity share = shareService.findByFigi(figi).orElse(null);
+        if (share != null) {
+            return Optional.of(new Metadata(figi, share.getTicker(),
+                    share.getName() != null ? share.getName() : share.getTicker()));
+        }
+        FutureEntity future = futureService.findByFigi(figi).orElse(null);
+        if (future != null) {
+            return Optional.of(new Metadata(figi, future.getTicker(),
+                    future.getBasicAsset() != null ? future.getBasicAsset() : future.getTicker()));
+        }
+        IndicativeEntity indicative = indicativeService.findByFigi(figi).orElse(null);
+        if (indicative != null) {
+            return Optional.of(new Metadata(figi, indicative.getTicker(),
+                    indicative.getName() != null ? indicative.getName() : indicative.getTicker()));
+        }
+        return Optional.empty();
+    }
+}
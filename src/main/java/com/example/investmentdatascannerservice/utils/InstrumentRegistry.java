@@ -0,0 +1,80 @@
+package com.example.investmentdatascannerservice.utils;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.springframework.stereotype.Component;
+
+/**
+ * Реестр инструментов с плотными числовыми идентификаторами
+ *
+ * Каждому FIGI (акция, фьючерс, индикатив) при первой регистрации присваивается следующий
+ * свободный int, начиная с 0. Идентификаторы не переиспользуются, поэтому по ним можно хранить
+ * состояние горячего пути в массивах вместо хэш-таблиц. Реестр также хранит каноничный экземпляр
+ * строки FIGI, чтобы события не удерживали дубликаты строк из protobuf.
+ */
+@Component
+public class InstrumentRegistry {
+
+    /** Идентификатор незарегистрированного инструмента */
+    public static final int UNKNOWN = -1;
+
+    private static final int INITIAL_CAPACITY = 4096;
+
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    private volatile String[] figis = new String[INITIAL_CAPACITY];
+    private int size; // изменяется только под блокировкой
+
+    /**
+     * Получить идентификатор FIGI, зарегистрировав его при первом обращении
+     */
+    public int register(String figi) {
+        Integer id = ids.get(figi);
+        return id != null ? id : registerNew(figi);
+    }
+
+    /**
+     * Получить идентификатор FIGI без регистрации
+     *
+     * @return идентификатор или {@link #UNKNOWN}
+     */
+    public int idOf(String figi) {
+        if (figi == null) {
+            return UNKNOWN;
+        }
+        Integer id = ids.get(figi);
+        return id != null ? id : UNKNOWN;
+    }
+
+    /**
+     * Каноничный FIGI по идентификатору
+     */
+    public String figiOf(int id) {
+        String[] current = figis;
+        return id >= 0 && id < current.length ? current[id] : null;
+    }
+
+    /**
+     * Количество зарегистрированных инструментов (все идентификаторы меньше этого значения)
+     */
+    public int size() {
+        return ids.size();
+    }
+
+    private synchronized int registerNew(String figi) {
+        Integer existing = ids.get(figi);
+        if (existing != null) {
+            return existing;
+        }
+        int id = size++;
+        String[] current = figis;
+        if (id >= current.length) {
+            current = Arrays.copyOf(current, current.length * 2);
+        }
+        current[id] = figi;
+        figis = current;
+        // Публикуем id после записи FIGI в массив: читатель, получивший id, увидит и FIGI
+        ids.put(figi, id);
+        return id;
+    }
+}
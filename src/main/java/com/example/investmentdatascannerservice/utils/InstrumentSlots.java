@@ -0,0 +1,95 @@
+package com.example.investmentdatascannerservice.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+
+/**
+ * Массив значений, индексированный идентификатором из {@link InstrumentRegistry}
+ *
+ * Чтение - одно обращение к массиву без блокировок. Создание значения и расширение массива
+ * выполняются под блокировкой и происходят только при первом обращении к инструменту.
+ */
+public final class InstrumentSlots<T> {
+
+    private static final int INITIAL_CAPACITY = 4096;
+
+    private volatile AtomicReferenceArray<T> slots = new AtomicReferenceArray<>(INITIAL_CAPACITY);
+
+    /**
+     * Значение по идентификатору (null, если еще не создано)
+     */
+    public T get(int id) {
+        AtomicReferenceArray<T> current = slots;
+        return id >= 0 && id < current.length() ? current.get(id) : null;
+    }
+
+    /**
+     * Значение по идентификатору, создаваемое при первом обращении
+     */
+    public T computeIfAbsent(int id, IntFunction<T> factory) {
+        T value = get(id);
+        if (value != null) {
+            return value;
+        }
+        synchronized (this) {
+            AtomicReferenceArray<T> current = ensureCapacity(id);
+            value = current.get(id);
+            if (value == null) {
+                value = factory.apply(id);
+                current.set(id, value);
+            }
+            return value;
+        }
+    }
+
+    /**
+     * Обход всех созданных значений
+     */
+    public void forEach(Consumer<T> action) {
+        AtomicReferenceArray<T> current = slots;
+        for (int i = 0; i < current.length(); i++) {
+            T value = current.get(i);
+            if (value != null) {
+                action.accept(value);
+            }
+        }
+    }
+
+    /**
+     * Копия всех созданных значений (для статистики и обхода вне горячего пути)
+     */
+    public List<T> values() {
+        List<T> values = new ArrayList<>();
+        forEach(values::add);
+        return values;
+    }
+
+    /**
+     * Количество созданных значений
+     */
+    public int count() {
+        int[] count = new int[1];
+        forEach(value -> count[0]++);
+        return count[0];
+    }
+
+    private AtomicReferenceArray<T> ensureCapacity(int id) {
+        AtomicReferenceArray<T> current = slots;
+        if (id < current.length()) {
+            return current;
+        }
+        int capacity = current.length();
+        while (capacity <= id) {
+            capacity *= 2;
+        }
+        AtomicReferenceArray<T> grown = new AtomicReferenceArray<>(capacity);
+        for (int i = 0; i < current.length(); i++) {
+            grown.set(i, current.get(i));
+        }
+        slots = grown;
+        return grown;
+    }
+}
@@ -0,0 +1,178 @@
+package com.example.investmentdatascannerservice.utils;
+
+/**
+ * Состояние одного инструмента в кэше
+ *
+ * Объединяет цены, стакан, накопленный объем, имя, тикер и флаги инструмента. Изменения выполняются
+ * под блокировкой объекта и публикуются неизменяемым снимком {@link Snapshot}, поэтому читатели за
+ * одно обращение получают согласованный набор значений без смеси старых и новых данных. Цены
+ * хранятся с фиксированной точкой (см. {@link FixedPoint}).
+ */
+public final class InstrumentState {
+
+    /**
+     * Неизменяемый снимок состояния инструмента
+     *
+     * sequence - номер снимка инструмента, возрастает с каждой публикацией
+     */
+    public record Snapshot(String figi, String ticker, String name, long lastPrice,
+            long closePrice, long openPrice, long bestBid, long bestAsk, long bestBidQuantity,
+            long bestAskQuantity, long accumulatedVolume, boolean shortEnabled,
+            boolean hasDividend, long sequence) {
+    }
+
+    private final String figi;
+
+    private String ticker;
+    private String name;
+    private long lastPrice = FixedPoint.NONE;
+    private long closePrice = FixedPoint.NONE;
+    private long openPrice = FixedPoint.NONE;
+    private long bestBid = FixedPoint.NONE;
+    private long bestAsk = FixedPoint.NONE;
+    private long bestBidQuantity;
+    private long bestAskQuantity;
+    private long accumulatedVolume;
+    private boolean shortEnabled;
+    private boolean hasDividend;
+    private long sequence;
+
+    private volatile Snapshot snapshot;
+
+    public InstrumentState(String figi) {
+        this.figi = figi;
+        publish();
+    }
+
+    public String getFigi() {
+        return figi;
+    }
+
+    /**
+     * Текущий согласованный снимок (без блокировок и копирования)
+     */
+    public Snapshot snapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Последняя цена; первая цена дня также становится ценой открытия
+     */
+    public synchronized Snapshot recordLastPrice(long price) {
+        lastPrice = price;
+        if (!FixedPoint.isPresent(openPrice)) {
+            openPrice = price;
+        }
+        return publish();
+    }
+
+    /**
+     * Сделка: обновляет последнюю цену и добавляет объем
+     */
+    public synchronized Snapshot recordTrade(long price, long volume) {
+        lastPrice = price;
+        accumulatedVolume += volume;
+        return publish();
+    }
+
+    /**
+     * Лучшие BID/ASK стакана
+     */
+    public synchronized Snapshot recordOrderBook(long bid, long bidQuantity, long ask,
+            long askQuantity) {
+        bestBid = bid;
+        bestBidQuantity = bidQuantity;
+        bestAsk = ask;
+        bestAskQuantity = askQuantity;
+        return publish();
+    }
+
+    public synchronized void setTicker(String ticker) {
+        this.ticker = ticker;
+        publish();
+    }
+
+    public synchronized void setName(String name) {
+        this.name = name;
+        publish();
+    }
+
+    public synchronized void setLastPrice(long price) {
+        lastPrice = price;
+        publish();
+    }
+
+    public synchronized void setClosePrice(long price) {
+        closePrice = price;
+        publish();
+    }
+
+    public synchronized void setOpenPrice(long price) {
+        openPrice = price;
+        publish();
+    }
+
+    public synchronized void setBestBid(long price) {
+        bestBid = price;
+        publish();
+    }
+
+    public synchronized void setBestAsk(long price) {
+        bestAsk = price;
+        publish();
+    }
+
+    public synchronized void setBestBidQuantity(long quantity) {
+        bestBidQuantity = quantity;
+        publish();
+    }
+
+    public synchronized void setBestAskQuantity(long quantity) {
+        bestAskQuantity = quantity;
+        publish();
+    }
+
+    public synchronized void setAccumulatedVolume(long volume) {
+        accumulatedVolume = volume;
+        publish();
+    }
+
+    public synchronized void addToAccumulatedVolume(long volume) {
+        accumulatedVolume += volume;
+        publish();
+    }
+
+    public synchronized void setShortEnabled(boolean shortEnabled) {
+        this.shortEnabled = shortEnabled;
+        publish();
+    }
+
+    public synchronized void setHasDividend(boolean hasDividend) {
+        this.hasDividend = hasDividend;
+        publish();
+    }
+
+    /**
+     * Сброс имен, тикера, цен и стакана с сохранением накопленного объема и флагов
+     */
+    public synchronized void clearExceptVolume() {
+        ticker = null;
+        name = null;
+        lastPrice = FixedPoint.NONE;
+        closePrice = FixedPoint.NONE;
+        openPrice = FixedPoint.NONE;
+        bestBid = FixedPoint.NONE;
+        bestAsk = FixedPoint.NONE;
+        bestBidQuantity = 0L;
+        bestAskQuantity = 0L;
+        publish();
+    }
+
+    private Snapshot publish() {
+        Snapshot next = new Snapshot(figi, ticker, name, lastPrice, closePrice, openPrice, bestBid,
+                bestAsk, bestBidQuantity, bestAskQuantity, accumulatedVolume, shortEnabled,
+                hasDividend, ++sequence);
+        snapshot = next;
+        return next;
+    }
+}
@@ -2,6 +2,7 @@ package com.example.investmentdatascannerservice.utils;
 
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.stream.Collectors;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -11,15 +12,20 @@ import com.example.investmentdatascannerservice.repository.ShareRepository;
 
 /**
  * Сервис для работы с акциями из таблицы invest.shares
+ *
+ * Данные читаются из справочника {@link InstrumentCatalogService}, к базе обращается только
+ * точечный поиск по FIGI.
  */
 @Service
 public class ShareService {
 
     private static final Logger log = LoggerFactory.getLogger(ShareService.class);
 
+    private final InstrumentCatalogService catalogService;
     private final ShareRepository shareRepository;
 
-    public ShareService(ShareRepository shareRepository) {
+    public ShareService(InstrumentCatalogService catalogService, ShareRepository shareRepository) {
+        this.catalogService = catalogService;
         this.shareRepository = shareRepository;
     }
 
@@ -27,21 +33,7 @@ public class ShareService {
      * Получить все акции
      */
     public List<ShareEntity> getAllShares() {
-        try {
-            List<ShareEntity> shares = shareRepository.findAllShares();
-            log.info("Loaded {} shares from database", shares.size());
-            if (!shares.isEmpty()) {
-                log.info("First 3 shares: {}",
-                        shares.subList(0, Math.min(3, shares.size())).stream()
-                                .map(s -> String.format("FIGI=%s, ticker=%s, name=%s, exchange=%s",
-                                        s.getFigi(), s.getTicker(), s.getName(), s.getExchange()))
-                                .collect(Collectors.toList()));
-            }
-            return shares;
-        } catch (Exception e) {
-            log.error("Error loading shares from database", e);
-            return List.of();
-        }
+        return catalogService.current().getShares();
     }
 
     /**
@@ -50,7 +42,7 @@ public class ShareService {
     public List<String> getAllShareFigis() {
         List<ShareEntity> shares = getAllShares();
         List<String> figis = shares.stream().map(ShareEntity::getFigi).collect(Collectors.toList());
-        log.info("Returning {} FIGIs for scanning", figis.size());
+        log.debug("Returning {} FIGIs for scanning", figis.size());
         return figis;
     }
 
@@ -71,13 +63,7 @@ public class ShareService {
         List<ShareEntity> shares = getAllShares();
         Map<String, String> tickers = shares.stream().collect(Collectors.toMap(ShareEntity::getFigi,
                 ShareEntity::getTicker, (existing, replacement) -> existing));
-        log.info("Loaded {} tickers from database", tickers.size());
-        if (!tickers.isEmpty()) {
-            log.info("First 5 tickers: {}",
-                    tickers.entrySet().stream().limit(5)
-                            .map(entry -> entry.getKey() + "=" + entry.getValue())
-                            .collect(Collectors.toList()));
-        }
+        log.debug("Returning {} share tickers", tickers.size());
         return tickers;
     }
 
@@ -85,41 +71,34 @@ public class ShareService {
      * Получить short-флаги по FIGI
      */
     public Map<String, Boolean> getShareShortFlags() {
-        try {
-            List<Object[]> rows = shareRepository.findShortFlags();
-            Map<String, Boolean> map = rows.stream().collect(Collectors.toMap(r -> (String) r[0],
-                    r -> (Boolean) r[1] == null ? false : (Boolean) r[1], (a, b) -> a));
-            log.info("Loaded {} share short flags from database", map.size());
-            return map;
-        } catch (Exception e) {
-            log.error("Error loading share short flags", e);
-            return Map.of();
-        }
+        return getAllShares().stream().collect(Collectors.toMap(ShareEntity::getFigi,
+                share -> Boolean.TRUE.equals(share.getShortEnabled()), (a, b) -> a));
     }
 
     /**
      * Получить количество всех акций
      */
     public long getAllSharesCount() {
-        try {
-            return shareRepository.count();
-        } catch (Exception e) {
-            log.error("Error counting shares", e);
-            return 0;
-        }
+        return getAllShares().size();
     }
 
     /**
      * Найти акции по тикеру
      */
     public List<ShareEntity> findByTicker(String ticker) {
-        try {
-            List<ShareEntity> shares = shareRepository.findByTicker(ticker);
-            log.info("Found {} shares with ticker: {}", shares.size(), ticker);
-            return shares;
-        } catch (Exception e) {
-            log.error("Error finding shares by ticker: {}", ticker, e);
-            return List.of();
-        }
+        List<ShareEntity> shares = catalogService.current().findSharesByTicker(ticker);
+        log.debug("Found {} shares with ticker: {}", shares.size(), ticker);
+        return shares;
+    }
+
+    /**
+     * Найти акцию по FIGI точечным запросом в базе
+     *
+     * Используется для акций, появившихся после загрузки справочника.
+     * Ошибка обращения к базе не перехватывается, чтобы ее можно было отличить от отсутствия
+     * инструмента.
+     */
+    public Optional<ShareEntity> findByFigi(String figi) {
+        return shareRepository.findById(figi);
     }
 }
@@ -0,0 +1,175 @@
+/**
+ * Декодер двоичного формата WebSocket (котировки /ws/quotes и пары /ws/pairs)
+ *
+ * Кадр - последовательность записей little-endian: u8 тип, u8 версия, u16 длина записи с
+ * заголовком, затем поля (см. BinaryFrames на сервере). Цены - i64 с фиксированной точкой
+ * (10^9), изменения в процентах - i64 в базисных пунктах, время - i64 секунды, строки - u16 длина
+ * и UTF-8. Записи неизвестного типа пропускаются.
+ */
+
+const BINARY_QUOTE_FULL = 1;
+const BINARY_QUOTE_COMPACT = 2;
+const BINARY_PAIR = 3;
+
+const BINARY_PRICE_SCALE = 1e9;
+const BINARY_NONE = -9223372036854775808n;
+const binaryTextDecoder = new TextDecoder('utf-8');
+
+/**
+ * Чтение полей одной записи
+ */
+class BinaryRecordReader {
+    constructor(view, offset) {
+        this.view = view;
+        this.offset = offset;
+    }
+
+    int32() {
+        const value = this.view.getInt32(this.offset, true);
+        this.offset += 4;
+        return value;
+    }
+
+    int64() {
+        const value = this.view.getBigInt64(this.offset, true);
+        this.offset += 8;
+        return value;
+    }
+
+    // Цена с фиксированной точкой (null - нет значения)
+    price() {
+        const value = this.int64();
+        return value === BINARY_NONE ? null : Number(value) / BINARY_PRICE_SCALE;
+    }
+
+    // Базисные пункты -> проценты
+    percent() {
+        return Number(this.int64()) / 100;
+    }
+
+    count() {
+        return Number(this.int64());
+    }
+
+    // Время в формате JSON ответа сервера (yyyy-MM-ddTHH:mm:ss)
+    timestamp() {
+        const value = this.int64();
+        return value === BINARY_NONE ? null
+            : new Date(Number(value) * 1000).toISOString().slice(0, 19);
+    }
+
+    uint8() {
+        const value = this.view.getUint8(this.offset);
+        this.offset += 1;
+        return value;
+    }
+
+    string() {
+        const length = this.view.getUint16(this.offset, true);
+        this.offset += 2;
+        const bytes = new Uint8Array(this.view.buffer, this.view.byteOffset + this.offset, length);
+        this.offset += length;
+        return length > 0 ? binaryTextDecoder.decode(bytes) : null;
+    }
+}
+
+/**
+ * Разбор двоичного кадра
+ * @param {ArrayBuffer} buffer - Кадр
+ * @param {function(number, BinaryRecordReader): *} onRecord - Обработчик записи (тип, чтение полей)
+ */
+function forEachBinaryRecord(buffer, onRecord) {
+    const view = new DataView(buffer);
+    let offset = 0;
+    while (offset + 4 <= view.byteLength) {
+        const type = view.getUint8(offset);
+        const length = view.getUint16(offset + 2, true);
+        if (length < 4 || offset + length > view.byteLength) {
+            console.warn('Некорректная двоичная запись', type, length);
+            return;
+        }
+        onRecord(type, new BinaryRecordReader(view, offset + 4));
+        offset += length;
+    }
+}
+
+/**
+ * Котировка из записи (тип 1 или 2); для записи без строк они берутся из instrument
+ * @returns {{id: number, quote: Object}}
+ */
+function readBinaryQuote(type, reader, instrumentsById) {
+    const id = reader.int32();
+    const quote = {
+        timestamp: reader.timestamp(),
+        currentPrice: reader.price(),
+        previousPrice: reader.price(),
+        priceChange: reader.price(),
+        priceChangePercent: reader.percent(),
+        closePrice: reader.price(),
+        openPrice: reader.price(),
+        closePriceChange: reader.price(),
+        closePriceChangePercent: reader.percent(),
+        closePriceOS: reader.price(),
+        closePriceVS: reader.price(),
+        closePriceVSChange: reader.price(),
+        closePriceVSChangePercent: reader.percent(),
+        bestBid: reader.price(),
+        bestAsk: reader.price(),
+        bestBidQuantity: reader.count(),
+        bestAskQuantity: reader.count(),
+        volume: reader.count(),
+        totalVolume: reader.count(),
+        avgVolumeMorning: reader.price(),
+        avgVolumeWeekend: reader.price()
+    };
+    const flags = reader.uint8();
+    quote.shortEnabled = (flags & 1) !== 0;
+    quote.hasDividend = (flags & 2) !== 0;
+    quote.direction = reader.string();
+    if (type === BINARY_QUOTE_FULL) {
+        const instrument = {
+            figi: reader.string(),
+            ticker: reader.string(),
+            instrumentName: reader.string()
+        };
+        instrumentsById.set(id, instrument);
+        Object.assign(quote, instrument);
+    } else {
+        const instrument = instrumentsById.get(id);
+        if (!instrument) {
+            return null;
+        }
+        Object.assign(quote, instrument);
+    }
+    return quote;
+}
+
+/**
+ * Результаты сравнения пар из двоичного кадра /ws/pairs
+ * @param {ArrayBuffer} buffer - Кадр
+ * @returns {Object[]}
+ */
+function decodeBinaryPairs(buffer) {
+    const pairs = [];
+    forEachBinaryRecord(buffer, (type, reader) => {
+        if (type !== BINARY_PAIR) {
+            return;
+        }
+        const pair = {
+            timestamp: reader.timestamp(),
+            firstPrice: reader.price(),
+            secondPrice: reader.price(),
+            delta: reader.price(),
+            deltaPercent: reader.price()
+        };
+        pair.hasValidPrices = (reader.uint8() & 1) !== 0;
+        pair.pairId = reader.string();
+        pair.firstInstrument = reader.string();
+        pair.secondInstrument = reader.string();
+        pair.firstInstrumentName = reader.string();
+        pair.secondInstrumentName = reader.string();
+        pair.direction = reader.string();
+        pairs.push(pair);
+    });
+    return pairs;
+}
@@ -65,6 +65,10 @@ let keyRate = 16.5;
 // Кэш результатов findNearAndFarFutures для оптимизации
 let nearFarFuturesCache = new Map();
 
+// Расчет расхождений с сервера (/ws/futures-basis); пока его нет, сравнения считаются локально
+let futuresBasisSocket = null;
+let futuresBasis = null;
+
 // Убрали дебаунсинг - обновляем напрямую, как в сканере выходного дня
 
 // Флаг для отладки (можно включить через консоль: window.DEBUG_FUTURES = true)
@@ -527,6 +531,8 @@ function connect() {
     try {
         console.log('Attempting to connect WebSocket...');
         websocket = new WebSocket(getWebSocketUrl('/ws/quotes'));
+        const quoteFrames = createQuoteFrameDecoder();
+        websocket.binaryType = 'arraybuffer';
 
         websocket.onopen = function () {
             console.log('WebSocket connected successfully');
@@ -535,6 +541,9 @@ function connect() {
             disconnectBtn.disabled = false;
             connectionStatus.textContent = 'Подключено';
             connectionStatus.className = 'status connected';
+            requestQuoteFormat(websocket, 'binary');
+            requestQuoteBatching(websocket, QUOTE_BATCH_INTERVAL_MS);
+            sendQuoteSubscription(websocket, 'futures');
 
             // Очищаем таблицы и состояние
             stockNearFuturesTableBody.innerHTML = '<tr><td colspan="10" class="no-data">Нет данных</td></tr>';
@@ -558,6 +567,7 @@ function connect() {
 
             // Загружаем данные о фьючерсах
             loadFuturesData();
+            connectFuturesBasis();
 
             updateTimer = setInterval(() => {
                 updateRate.textContent = updateCount + '/сек';
@@ -569,9 +579,10 @@ function connect() {
 
         websocket.onmessage = function (event) {
             try {
-                const quoteData = JSON.parse(event.data);
-                console.log('WebSocket message received:', quoteData.ticker, quoteData.figi);
-                updateQuote(quoteData);
+                quoteFrames.decode(event.data).forEach(quoteData => {
+                    console.log('WebSocket message received:', quoteData.ticker, quoteData.figi);
+                    updateQuote(quoteData);
+                });
             } catch (error) {
                 console.error('Error parsing quote data:', error);
             }
@@ -603,6 +614,68 @@ function disconnect() {
     if (websocket) {
         websocket.close();
     }
+    if (futuresBasisSocket) {
+        futuresBasisSocket.close();
+        futuresBasisSocket = null;
+    }
+    futuresBasis = null;
+}
+
+/**
+ * Подключение к серверному расчету расхождений акций и фьючерсов
+ */
+function connectFuturesBasis() {
+    if (futuresBasisSocket) {
+        futuresBasisSocket.close();
+    }
+    futuresBasis = null;
+    const protocol = window.location.protocol === 'https:' ? 'wss:' : 'ws:';
+    const socket = new WebSocket(`${protocol}//${window.location.host}/ws/futures-basis`);
+    futuresBasisSocket = socket;
+
+    socket.onmessage = function (event) {
+        try {
+            futuresBasis = JSON.parse(event.data);
+            if (futuresBasis.keyRate !== undefined) {
+                keyRate = futuresBasis.keyRate;
+            }
+            updateFuturesComparisons();
+        } catch (error) {
+            console.error('Error parsing futures basis:', error);
+        }
+    };
+
+    socket.onclose = function () {
+        // Без сервера возвращаемся к локальному расчету
+        if (futuresBasisSocket === socket) {
+            futuresBasis = null;
+        }
+    };
+
+    socket.onerror = function (error) {
+        console.error('Futures basis WebSocket error:', error);
+    };
+}
+
+/**
+ * Сравнения из серверного расчета в формате createComparison/createFuturesComparison
+ * (объемы и стакан берутся из котировок страницы, расхождения - с сервера)
+ */
+function comparisonsFromBasis(entries, createFn) {
+    const comparisons = [];
+    (entries || []).forEach(entry => {
+        const first = quotes.get(entry.firstFigi);
+        const second = quotes.get(entry.secondFigi);
+        if (!first || !second) return;
+        const comparison = createFn(entry.baseAsset, first, second);
+        comparison.lotSize = Number(entry.lotSize);
+        comparison.spreadPercent = Number(entry.spreadPercent);
+        comparison.annualizedSpread = Number(entry.annualizedSpread);
+        comparison.fairSpread = Math.round(Number(entry.fairSpread) * 100) / 100;
+        comparison.delta = Math.round(Number(entry.delta) * 100) / 100;
+        comparisons.push(comparison);
+    });
+    return comparisons;
 }
 
 function updateQuote(quoteData) {
@@ -727,6 +800,15 @@ function updateFuturesComparisons() {
         return;
     }
 
+    // Группировку и расчет выполняет сервер, локально только подставляются котировки
+    if (futuresBasis) {
+        applyComparisons(
+            comparisonsFromBasis(futuresBasis.stockNear, createComparison),
+            comparisonsFromBasis(futuresBasis.stockFar, createComparison),
+            comparisonsFromBasis(futuresBasis.nearFar, createFuturesComparison));
+        return;
+    }
+
     // Собираем все уникальные базовые тикеры
     // Важно: используем basicAsset из кэша, если доступен, для более точной группировки
     const baseTickers = new Set();
@@ -884,6 +966,10 @@ function updateFuturesComparisons() {
         }
     });
 
+    applyComparisons(stockNearComparisons, stockFarComparisons, nearFarComparisons);
+}
+
+function applyComparisons(stockNearComparisons, stockFarComparisons, nearFarComparisons) {
     // Сортируем и обновляем таблицы
     // Всегда создаем новые массивы, чтобы гарантировать обновление таблиц
     const newStockNearFutures = sortComparisons([...stockNearComparisons], stockNearSortBy, stockNearSortOrder).slice(0, stockNearMaxResults);
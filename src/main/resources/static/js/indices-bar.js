@@ -30,6 +30,32 @@ function initIndicesBar(config) {
     indicesBarConfig = { ...indicesBarConfig, ...config };
 }
 
+// Соединение и профиль последней подписки на котировки (для повторной отправки при смене индексов)
+let quoteSubscription = { websocket: null, profile: null };
+
+/**
+ * Отправка подписки на котировки профиля сканера и индексов из полоски
+ * Сервер после подписки присылает только котировки инструментов профиля и перечисленных FIGI/тикеров
+ * @param {WebSocket} websocket - Открытое соединение /ws/quotes
+ * @param {string} profile - Профиль сканера: morning, weekend, futures
+ */
+function sendQuoteSubscription(websocket, profile) {
+    quoteSubscription = { websocket, profile };
+    if (!websocket || websocket.readyState !== WebSocket.OPEN) {
+        return;
+    }
+    const figis = [];
+    const tickers = [];
+    (window.INDICES_CONFIG || []).forEach(config => {
+        if (config.figi) {
+            figis.push(config.figi);
+        } else if (config.name) {
+            tickers.push(config.name);
+        }
+    });
+    websocket.send(JSON.stringify({ action: 'subscribe', profile, figis, tickers }));
+}
+
 /**
  * Инициализация полоски индексов
  * @param {boolean} preserveData - Сохранять ли существующие данные индексов (по умолчанию false)
@@ -58,6 +84,11 @@ function initializeIndicesBar(preserveData = false) {
 
     indicesContainer.innerHTML = '';
     window.indices.clear();
+
+    // Индексы могли измениться - обновляем подписку на котировки
+    if (quoteSubscription.websocket) {
+        sendQuoteSubscription(quoteSubscription.websocket, quoteSubscription.profile);
+    }
     window.INDICES_CONFIG.forEach(config => {
         const indexElement = createIndexElement(config);
         indicesContainer.appendChild(indexElement);
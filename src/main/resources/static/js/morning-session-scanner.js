@@ -13,6 +13,7 @@ const lastUpdate = document.getElementById('lastUpdate');
 const indicesContainer = document.getElementById('indicesContainer');
 
 let websocket = null;
+let rankingClient = null; // серверные рейтинги (rankings.js)
 let isConnected = false;
 let quotes = new Map();
 let gainers = [];
@@ -54,6 +55,10 @@ function connect() {
   if (isConnected) return;
   try {
     websocket = new WebSocket(getWebSocketUrl('/ws/quotes'));
+    const quoteFrames = createQuoteFrameDecoder();
+    websocket.binaryType = 'arraybuffer';
+    if (rankingClient) rankingClient.close();
+    rankingClient = createRankingClient('morning');
 
     websocket.onopen = function () {
       isConnected = true;
@@ -61,6 +66,9 @@ function connect() {
       disconnectBtn.disabled = false;
       connectionStatus.textContent = 'Подключено';
       connectionStatus.className = 'status connected';
+      requestQuoteFormat(websocket, 'binary');
+      requestQuoteBatching(websocket, QUOTE_BATCH_INTERVAL_MS);
+      sendQuoteSubscription(websocket, 'morning');
 
       gainersTableBody.innerHTML = '<tr><td colspan="11" class="no-data">Нет данных</td></tr>';
       losersTableBody.innerHTML = '<tr><td colspan="11" class="no-data">Нет данных</td></tr>';
@@ -86,8 +94,7 @@ function connect() {
 
     websocket.onmessage = function (event) {
       try {
-        const quoteData = JSON.parse(event.data);
-        updateQuote(quoteData);
+        quoteFrames.decode(event.data).forEach(updateQuote);
       } catch (error) {
         console.error('Error parsing quote data:', error);
       }
@@ -115,6 +122,10 @@ function connect() {
 
 function disconnect() {
   if (websocket) websocket.close();
+  if (rankingClient) {
+    rankingClient.close();
+    rankingClient = null;
+  }
 }
 
 function updateQuote(quoteData) {
@@ -188,13 +199,31 @@ function updateTopLists() {
     return change < 0;
   });
 
-  gainers = sortQuotesAdvanced([...gainersQuotes], gainersSortBy, gainersSortOrder).slice(0, gainersMaxResults);
-  losers = sortLosersQuotes([...losersQuotes], losersSortBy, losersSortOrder).slice(0, losersMaxResults);
+  // Для сортировки по изменению от ОС порядок берется из серверного рейтинга, если он доступен
+  const changeOSPositive = quote => getChangeOS(quote) > 0;
+  const changeOSNegative = quote => getChangeOS(quote) < 0;
+  const rankedGainers = gainersSortBy === 'changeOS' && gainersSortOrder === 'desc'
+    ? rankedQuotes(rankingClient, 'SHARE:CHANGE_CLOSE:TOP', quotes, gainersMaxResults, changeOSPositive)
+    : null;
+  const rankedLosers = losersSortBy === 'changeOS' && losersSortOrder === 'asc'
+    ? rankedQuotes(rankingClient, 'SHARE:CHANGE_CLOSE:BOTTOM', quotes, losersMaxResults, changeOSNegative)
+    : null;
+
+  gainers = rankedGainers
+    || sortQuotesAdvanced([...gainersQuotes], gainersSortBy, gainersSortOrder).slice(0, gainersMaxResults);
+  losers = rankedLosers
+    || sortLosersQuotes([...losersQuotes], losersSortBy, losersSortOrder).slice(0, losersMaxResults);
 
   updateGainersTable();
   updateLosersTable();
 }
 
+function getChangeOS(quote) {
+  const priceOS = quote.closePriceOS || quote.closePrice;
+  if (!priceOS || priceOS <= 0 || !quote.currentPrice || quote.currentPrice <= 0) return 0;
+  return ((quote.currentPrice - priceOS) / priceOS) * 100;
+}
+
 function updateSortingSettings() {
   gainersSortBy = document.getElementById('gainersSortBy').value;
   gainersSortOrder = document.getElementById('gainersSortOrder').value;
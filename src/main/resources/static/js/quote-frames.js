@@ -0,0 +1,77 @@
+/**
+ * Декодер кадров котировок /ws/quotes
+ * Используется во всех сканерах: weekend-scanner, morning-session-scanner, futures-scanner
+ *
+ * После запроса дельта-формата сервер присылает снимок {"t":"s","i":id,"v":версия,"q":{...}}
+ * и затем дельты {"t":"d","i":id,"v":версия,"q":{изменившиеся поля}}. Декодер восстанавливает
+ * полный объект котировки; сообщения прежнего формата возвращаются как есть. При пакетной
+ * отправке кадр - JSON массив таких сообщений. Двоичные кадры разбираются binary-frames.js.
+ */
+
+// Интервал пакетной отправки котировок сервером (мс)
+const QUOTE_BATCH_INTERVAL_MS = 100;
+
+/**
+ * Создание декодера (один на соединение)
+ * @returns {{decode: function((string|ArrayBuffer)): Object[]}} decode возвращает котировки из кадра
+ */
+function createQuoteFrameDecoder() {
+    const quotes = new Map(); // id инструмента -> последняя котировка
+    const instruments = new Map(); // id инструмента -> figi, ticker, instrumentName (двоичный формат)
+
+    function decodeMessage(message) {
+        if (message.t === 's') {
+            quotes.set(message.i, message.q);
+            return message.q;
+        }
+        if (message.t === 'd') {
+            const previous = quotes.get(message.i);
+            if (!previous) {
+                // Без снимка дельту применить не к чему; сервер пришлет снимок при ресинхронизации
+                return null;
+            }
+            const quote = { ...previous, ...message.q };
+            quotes.set(message.i, quote);
+            return quote;
+        }
+        return message;
+    }
+
+    return {
+        decode(raw) {
+            if (raw instanceof ArrayBuffer) {
+                const decoded = [];
+                forEachBinaryRecord(raw, (type, reader) => {
+                    if (type === BINARY_QUOTE_FULL || type === BINARY_QUOTE_COMPACT) {
+                        const quote = readBinaryQuote(type, reader, instruments);
+                        if (quote) {
+                            decoded.push(quote);
+                        }
+                    }
+                });
+                return decoded;
+            }
+            const message = JSON.parse(raw);
+            const messages = Array.isArray(message) ? message : [message];
+            return messages.map(decodeMessage).filter(quote => quote);
+        }
+    };
+}
+
+/**
+ * Запрос формата котировок
+ * @param {WebSocket} websocket - Открытое соединение /ws/quotes (для binary - binaryType 'arraybuffer')
+ * @param {string} format - json, delta или binary
+ */
+function requestQuoteFormat(websocket, format) {
+    websocket.send(JSON.stringify({ action: 'format', format }));
+}
+
+/**
+ * Запрос пакетной отправки котировок: сервер присылает накопленные за интервал котировки одним кадром
+ * @param {WebSocket} websocket - Открытое соединение /ws/quotes
+ * @param {number} intervalMs - Интервал в миллисекундах (0 - выключить)
+ */
+function requestQuoteBatching(websocket, intervalMs) {
+    websocket.send(JSON.stringify({ action: 'batch', intervalMs }));
+}
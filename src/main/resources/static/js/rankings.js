@@ -0,0 +1,77 @@
+/**
+ * Клиент рейтингов инструментов /ws/rankings
+ * Используется в сканерах: weekend-scanner, morning-session-scanner
+ *
+ * Сервер поддерживает рейтинги "ТИП:МЕТРИКА:СТОРОНА" (например SHARE:CHANGE_CLOSE:TOP) по
+ * потоку котировок и присылает рейтинг целиком только при его изменении. Страница берет
+ * порядок инструментов из рейтинга, а данные строк - из своих котировок, поэтому не
+ * пересортировывает все котировки на каждом обновлении.
+ */
+
+/**
+ * Подключение к рейтингам профиля сканера
+ * @param {string} profile - профиль сканера: 'morning', 'weekend' или 'futures'
+ * @param {function(Object)} onUpdate - вызывается при получении обновления рейтинга
+ * @returns {{boards: Map, close: function()}} boards: id рейтинга -> позиции
+ */
+function createRankingClient(profile, onUpdate) {
+    const protocol = window.location.protocol === 'https:' ? 'wss:' : 'ws:';
+    const socket = new WebSocket(`${protocol}//${window.location.host}/ws/rankings`);
+    const boards = new Map();
+
+    socket.onopen = function () {
+        socket.send(JSON.stringify({ action: 'subscribe', profile: profile }));
+    };
+
+    socket.onmessage = function (event) {
+        try {
+            const update = JSON.parse(event.data);
+            boards.set(update.board, update.entries);
+            if (onUpdate) onUpdate(update);
+        } catch (error) {
+            console.error('Error parsing leaderboard update:', error);
+        }
+    };
+
+    socket.onclose = function () {
+        // Без соединения рейтинги устаревают - страница вернется к локальной сортировке
+        boards.clear();
+    };
+
+    socket.onerror = function (error) {
+        console.error('Rankings WebSocket error:', error);
+    };
+
+    return {
+        boards: boards,
+        close: function () {
+            socket.close();
+            boards.clear();
+        }
+    };
+}
+
+/**
+ * Котировки страницы в порядке серверного рейтинга
+ * @param {Object} client - клиент из createRankingClient (может быть null)
+ * @param {string} board - id рейтинга, например 'SHARE:CHANGE_CLOSE:TOP'
+ * @param {Map} quotes - котировки страницы по figi
+ * @param {number} limit - сколько позиций нужно
+ * @param {function(Object): boolean} predicate - отбор котировок
+ * @returns {Object[]|null} котировки или null, если рейтинг недоступен
+ */
+function rankedQuotes(client, board, quotes, limit, predicate) {
+    const entries = client ? client.boards.get(board) : null;
+    if (!entries) {
+        return null;
+    }
+    const result = [];
+    for (const entry of entries) {
+        const quote = quotes.get(entry.figi);
+        if (quote && predicate(quote)) {
+            result.push(quote);
+            if (result.length >= limit) break;
+        }
+    }
+    return result;
+}
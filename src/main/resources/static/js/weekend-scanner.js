@@ -21,6 +21,7 @@ function getWebSocketUrl(path) {
 
 // Состояние
 let websocket = null;
+let rankingClient = null; // серверные рейтинги (rankings.js)
 let isConnected = false;
 let quotes = new Map();
 let gainers = [];
@@ -62,6 +63,10 @@ function connect() {
 
     try {
         websocket = new WebSocket(getWebSocketUrl('/ws/quotes'));
+        const quoteFrames = createQuoteFrameDecoder();
+        websocket.binaryType = 'arraybuffer';
+        if (rankingClient) rankingClient.close();
+        rankingClient = createRankingClient('weekend');
 
         websocket.onopen = function () {
             console.log('WebSocket connected successfully');
@@ -70,6 +75,9 @@ function connect() {
             disconnectBtn.disabled = false;
             connectionStatus.textContent = 'Подключено';
             connectionStatus.className = 'status connected';
+            requestQuoteFormat(websocket, 'binary');
+            requestQuoteBatching(websocket, QUOTE_BATCH_INTERVAL_MS);
+            sendQuoteSubscription(websocket, 'weekend');
 
             // Очищаем таблицы и состояние
             gainersTableBody.innerHTML = '<tr><td colspan="12" class="no-data">Нет данных</td></tr>';
@@ -98,9 +106,10 @@ function connect() {
         websocket.onmessage = function (event) {
             try {
                 console.log('WebSocket received data:', event.data);
-                const quoteData = JSON.parse(event.data);
-                console.log('Parsed quote data:', quoteData);
-                updateQuote(quoteData);
+                quoteFrames.decode(event.data).forEach(quoteData => {
+                    console.log('Parsed quote data:', quoteData);
+                    updateQuote(quoteData);
+                });
             } catch (error) {
                 console.error('Error parsing quote data:', error);
             }
@@ -133,6 +142,10 @@ function disconnect() {
     if (websocket) {
         websocket.close();
     }
+    if (rankingClient) {
+        rankingClient.close();
+        rankingClient = null;
+    }
 }
 
 function updateQuote(quoteData) {
@@ -315,13 +328,31 @@ function updateTopLists() {
         return change < 0;
     });
 
-    gainers = sortQuotesAdvanced([...gainersQuotes], gainersSortBy, gainersSortOrder).slice(0, gainersMaxResults);
-    losers = sortLosersQuotes([...losersQuotes], losersSortBy, losersSortOrder).slice(0, losersMaxResults);
+    // Для сортировки по изменению от ОС порядок берется из серверного рейтинга, если он доступен
+    const changeOSPositive = quote => getChangeOS(quote) > 0;
+    const changeOSNegative = quote => getChangeOS(quote) < 0;
+    const rankedGainers = gainersSortBy === 'changeOS' && gainersSortOrder === 'desc'
+        ? rankedQuotes(rankingClient, 'SHARE:CHANGE_CLOSE:TOP', quotes, gainersMaxResults, changeOSPositive)
+        : null;
+    const rankedLosers = losersSortBy === 'changeOS' && losersSortOrder === 'desc'
+        ? rankedQuotes(rankingClient, 'SHARE:CHANGE_CLOSE:BOTTOM', quotes, losersMaxResults, changeOSNegative)
+        : null;
+
+    gainers = rankedGainers
+        || sortQuotesAdvanced([...gainersQuotes], gainersSortBy, gainersSortOrder).slice(0, gainersMaxResults);
+    losers = rankedLosers
+        || sortLosersQuotes([...losersQuotes], losersSortBy, losersSortOrder).slice(0, losersMaxResults);
 
     updateGainersTable();
     updateLosersTable();
 }
 
+function getChangeOS(quote) {
+    const priceOS = quote.closePriceOS || quote.closePrice;
+    if (!priceOS || priceOS <= 0 || !quote.currentPrice || quote.currentPrice <= 0) return 0;
+    return ((quote.currentPrice - priceOS) / priceOS) * 100;
+}
+
 // --- Сортировки ---
 function updateSortingSettings() {
     gainersSortBy = document.getElementById('gainersSortBy').value;
@@ -0,0 +1,229 @@
+package com.example.investmentdatascannerservice.controller;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.socket.BinaryMessage;
+import com.example.investmentdatascannerservice.dto.PairComparisonResult;
+import com.example.investmentdatascannerservice.dto.QuoteData;
+import com.example.investmentdatascannerservice.utils.FixedPoint;
+
+/**
+ * Разбор записей повторяет static/js/binary-frames.js, чтобы сервер и клиент не разошлись
+ */
+class BinaryFramesTest {
+
+    private static final LocalDateTime TIME = LocalDateTime.of(2026, 10, 17, 10, 30, 15);
+
+    /**
+     * Чтение полей записи (как BinaryRecordReader в binary-frames.js)
+     */
+    private static final class Reader {
+
+        private final ByteBuffer buffer;
+
+        Reader(byte[] record) {
+            buffer = ByteBuffer.wrap(record).order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        int type() {
+            return buffer.get() & 0xFF;
+        }
+
+        int formatVersion() {
+            return buffer.get() & 0xFF;
+        }
+
+        int length() {
+            return buffer.getShort() & 0xFFFF;
+        }
+
+        int int32() {
+            return buffer.getInt();
+        }
+
+        long int64() {
+            return buffer.getLong();
+        }
+
+        int uint8() {
+            return buffer.get() & 0xFF;
+        }
+
+        String string() {
+            byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+            buffer.get(bytes);
+            return bytes.length > 0 ? new String(bytes, StandardCharsets.UTF_8) : null;
+        }
+
+        int remaining() {
+            return buffer.remaining();
+        }
+    }
+
+    private static QuoteData quote(LocalDateTime timestamp) {
+        return new QuoteData("BBG004730N88", "SBER", "Сбербанк", 305_500_000_000L,
+                300 * FixedPoint.SCALE, 290 * FixedPoint.SCALE, 301 * FixedPoint.SCALE,
+                290 * FixedPoint.SCALE, FixedPoint.NONE, 305 * FixedPoint.SCALE,
+                306 * FixedPoint.SCALE, 10, 20, timestamp, 5, 100, "UP",
+                new BigDecimal("1234.5"), null, true, false, 7);
+    }
+
+    private static byte[] bytes(BinaryMessage message) {
+        ByteBuffer payload = message.getPayload();
+        byte[] bytes = new byte[payload.remaining()];
+        payload.get(bytes);
+        return bytes;
+    }
+
+    @Test
+    void headerIsLittleEndianTypeVersionAndLength() {
+        byte[] record = bytes(BinaryFrames.quote(0x01020304, quote(TIME), true));
+
+        assertEquals(BinaryFrames.QUOTE_FULL, record[0]);
+        assertEquals(1, record[1]);
+        assertEquals(record.length, (record[2] & 0xFF) | (record[3] & 0xFF) << 8);
+        // id сразу после заголовка, младший байт первым
+        assertEquals(0x04, record[4]);
+        assertEquals(0x03, record[5]);
+        assertEquals(0x02, record[6]);
+        assertEquals(0x01, record[7]);
+    }
+
+    @Test
+    void fullQuoteRecordLayout() {
+        QuoteData quote = quote(TIME);
+        Reader reader = new Reader(bytes(BinaryFrames.quote(42, quote, true)));
+
+        assertEquals(BinaryFrames.QUOTE_FULL, reader.type());
+        assertEquals(1, reader.formatVersion());
+        reader.length();
+        assertEquals(42, reader.int32());
+        assertEquals(TIME.toEpochSecond(ZoneOffset.UTC), reader.int64());
+        assertEquals(305_500_000_000L, reader.int64()); // currentPrice
+        assertEquals(300 * FixedPoint.SCALE, reader.int64()); // previousPrice
+        assertEquals(5_500_000_000L, reader.int64()); // priceChange
+        assertEquals(183, reader.int64()); // priceChangePercent, б.п.
+        assertEquals(290 * FixedPoint.SCALE, reader.int64()); // closePrice
+        assertEquals(301 * FixedPoint.SCALE, reader.int64()); // openPrice
+        assertEquals(15_500_000_000L, reader.int64()); // closePriceChange
+        assertEquals(534, reader.int64()); // closePriceChangePercent
+        assertEquals(290 * FixedPoint.SCALE, reader.int64()); // closePriceOS
+        assertEquals(FixedPoint.NONE, reader.int64()); // closePriceVS
+        assertEquals(0, reader.int64()); // closePriceVSChange
+        assertEquals(0, reader.int64()); // closePriceVSChangePercent
+        assertEquals(305 * FixedPoint.SCALE, reader.int64()); // bestBid
+        assertEquals(306 * FixedPoint.SCALE, reader.int64()); // bestAsk
+        assertEquals(10, reader.int64()); // bestBidQuantity
+        assertEquals(20, reader.int64()); // bestAskQuantity
+        assertEquals(5, reader.int64()); // volume
+        assertEquals(100, reader.int64()); // totalVolume
+        assertEquals(1_234_500_000_000L, reader.int64()); // avgVolumeMorning
+        assertEquals(FixedPoint.NONE, reader.int64()); // avgVolumeWeekend
+        assertEquals(1, reader.uint8()); // shortEnabled
+        assertEquals("UP", reader.string());
+        assertEquals("BBG004730N88", reader.string());
+        assertEquals("SBER", reader.string());
+        assertEquals("Сбербанк", reader.string());
+        assertEquals(0, reader.remaining());
+    }
+
+    @Test
+    void compactQuoteRecordEndsAfterDirection() {
+        QuoteData quote = quote(TIME);
+        byte[] full = bytes(BinaryFrames.quote(42, quote, true));
+        Reader reader = new Reader(bytes(BinaryFrames.quote(42, quote, false)));
+
+        assertEquals(BinaryFrames.QUOTE_COMPACT, reader.type());
+        reader.formatVersion();
+        int length = reader.length();
+        // Без figi, ticker и instrumentName: 3 длины строк и UTF-8 байты ("Сбербанк" - 16 байт)
+        assertEquals(full.length - 3 * 2 - 12 - 4 - 16, length);
+        reader.int32();
+        // timestamp и 20 числовых полей
+        for (int i = 0; i < 21; i++) {
+            reader.int64();
+        }
+        reader.uint8();
+        assertEquals("UP", reader.string());
+        assertEquals(0, reader.remaining());
+    }
+
+    @Test
+    void missingTimestampAndDirectionAreEncodedAsAbsent() {
+        QuoteData quote = new QuoteData("FIGI", null, null, FixedPoint.NONE, FixedPoint.NONE,
+                FixedPoint.NONE, FixedPoint.NONE, FixedPoint.NONE, FixedPoint.NONE,
+                FixedPoint.NONE, FixedPoint.NONE, 0, 0, null, 0, 0, null, null, null, false,
+                true, 1);
+        Reader reader = new Reader(bytes(BinaryFrames.quote(1, quote, true)));
+
+        reader.type();
+        reader.formatVersion();
+        reader.length();
+        reader.int32();
+        assertEquals(Long.MIN_VALUE, reader.int64()); // timestamp
+        assertEquals(FixedPoint.NONE, reader.int64()); // currentPrice
+        for (int i = 0; i < 19; i++) {
+            reader.int64();
+        }
+        assertEquals(2, reader.uint8()); // hasDividend
+        assertNull(reader.string()); // direction
+        assertEquals("FIGI", reader.string());
+        assertNull(reader.string());
+        assertNull(reader.string());
+        assertEquals(0, reader.remaining());
+    }
+
+    @Test
+    void pairRecordLayout() {
+        PairComparisonResult pair = new PairComparisonResult("SBER-SBERP", "F1", "F2", "Сбер",
+                "Сбер-п", new BigDecimal("305.5"), new BigDecimal("300"), new BigDecimal("5.5"),
+                new BigDecimal("1.83"), "UP", TIME, true);
+        byte[] record = bytes(BinaryFrames.pair(pair));
+        Reader reader = new Reader(record);
+
+        assertEquals(BinaryFrames.PAIR, reader.type());
+        assertEquals(1, reader.formatVersion());
+        assertEquals(record.length, reader.length());
+        assertEquals(TIME.toEpochSecond(ZoneOffset.UTC), reader.int64());
+        assertEquals(305_500_000_000L, reader.int64());
+        assertEquals(300 * FixedPoint.SCALE, reader.int64());
+        assertEquals(5_500_000_000L, reader.int64());
+        assertEquals(1_830_000_000L, reader.int64());
+        assertEquals(1, reader.uint8());
+        assertEquals("SBER-SBERP", reader.string());
+        assertEquals("F1", reader.string());
+        assertEquals("F2", reader.string());
+        assertEquals("Сбер", reader.string());
+        assertEquals("Сбер-п", reader.string());
+        assertEquals("UP", reader.string());
+        assertEquals(0, reader.remaining());
+    }
+
+    @Test
+    void recordLengthAllowsSkippingUnknownRecords() {
+        byte[] first = bytes(BinaryFrames.quote(1, quote(TIME), true));
+        byte[] second = bytes(BinaryFrames.pair(new PairComparisonResult()));
+        ByteBuffer frame = ByteBuffer.allocate(first.length + second.length)
+                .order(ByteOrder.LITTLE_ENDIAN).put(first).put(second).flip();
+
+        // Как forEachBinaryRecord: переход к следующей записи только по длине из заголовка
+        int offset = 0;
+        int records = 0;
+        while (offset + 4 <= frame.limit()) {
+            int length = frame.getShort(offset + 2) & 0xFFFF;
+            assertTrue(length >= 4 && offset + length <= frame.limit());
+            offset += length;
+            records++;
+        }
+        assertEquals(2, records);
+        assertEquals(frame.limit(), offset);
+    }
+}
@@ -0,0 +1,175 @@
+package com.example.investmentdatascannerservice.controller;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import com.example.investmentdatascannerservice.controller.QuoteFrameEncoder.QuoteFrame;
+import com.example.investmentdatascannerservice.dto.QuoteData;
+import com.example.investmentdatascannerservice.utils.FixedPoint;
+import com.example.investmentdatascannerservice.utils.InstrumentRegistry;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+class QuoteFrameEncoderTest {
+
+    private static final String FIGI = "BBG004730N88";
+
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+    private final InstrumentRegistry registry = new InstrumentRegistry();
+    private final AtomicLong now = new AtomicLong(1_000_000L);
+    private final QuoteFrameEncoder encoder =
+            new QuoteFrameEncoder(objectMapper, registry, now::get);
+
+    private static QuoteData quote(long sequence, long price, long bestBid) {
+        return new QuoteData(FIGI, "SBER", "Сбербанк", price * FixedPoint.SCALE,
+                300 * FixedPoint.SCALE, 300 * FixedPoint.SCALE, 301 * FixedPoint.SCALE,
+                300 * FixedPoint.SCALE, FixedPoint.NONE, bestBid * FixedPoint.SCALE,
+                (bestBid + 1) * FixedPoint.SCALE, 10, 20, LocalDateTime.of(2026, 10, 17, 10, 0),
+                5, 100, "UP", null, null, true, false, sequence);
+    }
+
+    private JsonNode json(WebSocketMessage<?> message) throws Exception {
+        return objectMapper.readTree(((TextMessage) message).getPayload());
+    }
+
+    /**
+     * Поля кадра совпадают с JSON котировки; числа сравниваются как в JS клиенте (по значению,
+     * без учета записи 305 или 305.000000000)
+     */
+    private void assertSameFields(QuoteData quote, JsonNode actual) throws Exception {
+        JsonNode expected = objectMapper.readTree(objectMapper.writeValueAsBytes(quote));
+        Comparator<JsonNode> byValue = (a, b) -> a.equals(b)
+                || a.isNumber() && b.isNumber() && a.doubleValue() == b.doubleValue() ? 0 : 1;
+        assertTrue(expected.equals(byValue, actual), "expected " + expected + " but was " + actual);
+    }
+
+    private static int recordType(WebSocketMessage<?> message) {
+        return ((BinaryMessage) message).getPayload().get(0);
+    }
+
+    @Test
+    void firstQuoteIsSnapshotWithAllFields() throws Exception {
+        QuoteData quote = quote(1, 305, 304);
+
+        JsonNode frame = json(encoder.encode(quote, true).since(-1));
+
+        assertEquals("s", frame.get("t").asText());
+        assertEquals(registry.idOf(FIGI), frame.get("i").asInt());
+        assertEquals(1, frame.get("v").asLong());
+        assertSameFields(quote, frame.get("q"));
+    }
+
+    @Test
+    void plainFrameIsFullQuoteData() throws Exception {
+        QuoteData quote = quote(1, 305, 304);
+
+        JsonNode plain = json(encoder.encode(quote, true).plain());
+
+        assertSameFields(quote, plain);
+        assertFalse(plain.has("sequence"));
+    }
+
+    @Test
+    void deltaHasOnlyChangedFieldsAndRestoresQuote() throws Exception {
+        QuoteData first = quote(1, 305, 304);
+        QuoteData second = quote(4, 306, 304);
+        JsonNode snapshot = json(encoder.encode(first, true).since(-1));
+
+        JsonNode delta = json(encoder.encode(second, true).since(1));
+
+        assertEquals("d", delta.get("t").asText());
+        assertEquals(4, delta.get("v").asLong());
+        Set<String> changed = new HashSet<>();
+        delta.get("q").fieldNames().forEachRemaining(changed::add);
+        assertEquals(Set.of("currentPrice", "priceChange", "priceChangePercent",
+                "closePriceChange", "closePriceChangePercent"), changed);
+
+        // Как декодер клиента: поля дельты поверх предыдущего снимка
+        ObjectNode restored = ((ObjectNode) snapshot.get("q")).deepCopy();
+        restored.setAll((ObjectNode) delta.get("q"));
+        assertSameFields(second, restored);
+    }
+
+    @Test
+    void sessionWithoutBaseVersionGetsSnapshot() throws Exception {
+        encoder.encode(quote(1, 305, 304), true);
+        QuoteFrame frame = encoder.encode(quote(4, 306, 304), true);
+
+        assertEquals("s", json(frame.since(-1)).get("t").asText());
+        assertEquals("s", json(frame.since(3)).get("t").asText());
+        assertEquals("d", json(frame.since(1)).get("t").asText());
+    }
+
+    @Test
+    void staleQuoteIsSnapshotAndKeepsDeltaBase() throws Exception {
+        encoder.encode(quote(5, 305, 304), true);
+
+        QuoteFrame stale = encoder.encode(quote(3, 310, 309), true);
+        assertEquals(3, stale.version());
+        assertEquals("s", json(stale.since(-1)).get("t").asText());
+        assertEquals(BinaryFrames.QUOTE_FULL, recordType(stale.binary().since(2)));
+
+        // Дельта следующей котировки считается от версии 5, а не от запоздавшей
+        JsonNode delta = json(encoder.encode(quote(6, 306, 304), true).since(5));
+        assertEquals("d", delta.get("t").asText());
+        assertTrue(delta.get("q").has("currentPrice"));
+        assertFalse(delta.get("q").has("bestBid"));
+    }
+
+    @Test
+    void snapshotIsForcedAfterResyncInterval() throws Exception {
+        encoder.encode(quote(1, 305, 304), true);
+        now.addAndGet(QuoteFrameEncoder.RESYNC_INTERVAL_MS - 1);
+        assertEquals("d", json(encoder.encode(quote(2, 306, 304), true).since(1)).get("t")
+                .asText());
+
+        now.addAndGet(1);
+        QuoteFrame resync = encoder.encode(quote(3, 307, 304), true);
+        assertEquals("s", json(resync.since(2)).get("t").asText());
+        assertEquals(BinaryFrames.QUOTE_FULL, recordType(resync.binary().since(2)));
+
+        // Следующий интервал отсчитывается от ресинхронизации
+        assertEquals("d", json(encoder.encode(quote(4, 308, 304), true).since(3)).get("t")
+                .asText());
+    }
+
+    @Test
+    void binaryRecordOmitsStringsOnlyAfterFirstRecord() {
+        QuoteFrame first = encoder.encode(quote(1, 305, 304), false);
+        QuoteFrame second = encoder.encode(quote(2, 306, 304), false);
+
+        assertEquals(BinaryFrames.QUOTE_FULL, recordType(first.binary().since(-1)));
+        assertEquals(BinaryFrames.QUOTE_COMPACT, recordType(second.binary().since(1)));
+        assertEquals(BinaryFrames.QUOTE_FULL, recordType(second.binary().since(-1)));
+    }
+
+    @Test
+    void frameWithoutJsonSubscribersIsSentAsSnapshot() throws Exception {
+        encoder.encode(quote(1, 305, 304), false);
+        QuoteFrame frame = encoder.encode(quote(2, 306, 304), true);
+
+        // У предыдущей котировки не было JSON полей - дельту посчитать не от чего
+        assertEquals("s", json(frame.since(1)).get("t").asText());
+    }
+
+    @Test
+    void clearStartsFromSnapshot() throws Exception {
+        encoder.encode(quote(1, 305, 304), true);
+        encoder.clear();
+
+        QuoteFrame frame = encoder.encode(quote(2, 306, 304), true);
+
+        assertEquals(1, encoder.size());
+        assertEquals("s", json(frame.since(1)).get("t").asText());
+    }
+}
@@ -0,0 +1,210 @@
+package com.example.investmentdatascannerservice.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+import com.example.investmentdatascannerservice.service.SubscriptionManager.DataType;
+import com.example.investmentdatascannerservice.service.SubscriptionManager.Delta;
+import com.example.investmentdatascannerservice.service.SubscriptionManager.Key;
+
+class SubscriptionManagerTest {
+
+    private static Key lastPrice(String figi) {
+        return new Key(figi, DataType.LAST_PRICE);
+    }
+
+    private static Key trades(String figi) {
+        return new Key(figi, DataType.TRADES);
+    }
+
+    private static Set<Key> keys(Key... keys) {
+        return new LinkedHashSet<>(List.of(keys));
+    }
+
+    private static SubscriptionManager managerWith(int maxInstrumentsPerStream,
+            List<Set<Key>> groups) {
+        SubscriptionManager manager = new SubscriptionManager(maxInstrumentsPerStream);
+        manager.reset(groups);
+        return manager;
+    }
+
+    @Test
+    void unchangedSetProducesNoDeltas() {
+        SubscriptionManager manager = managerWith(10,
+                List.of(keys(lastPrice("A"), trades("A")), keys(lastPrice("B"))));
+
+        assertTrue(manager.reconcile(keys(lastPrice("A"), trades("A"), lastPrice("B"))).isEmpty());
+        assertEquals(List.of(1, 2), manager.getStreamIds());
+        assertEquals(3, manager.getDesiredCount());
+    }
+
+    @Test
+    void removedKeysAreUnsubscribedOnTheirStream() {
+        SubscriptionManager manager = managerWith(10,
+                List.of(keys(lastPrice("A"), trades("A")), keys(lastPrice("B"))));
+
+        List<Delta> deltas = manager.reconcile(keys(lastPrice("A"), lastPrice("B")));
+
+        assertEquals(List.of(new Delta(1, List.of(), List.of(trades("A")), false)), deltas);
+        assertEquals(keys(lastPrice("A")), manager.desired(1));
+    }
+
+    @Test
+    void newKeyOfKnownInstrumentGoesToItsStream() {
+        SubscriptionManager manager =
+                managerWith(10, List.of(keys(lastPrice("A")), keys(lastPrice("B"))));
+
+        List<Delta> deltas =
+                manager.reconcile(keys(lastPrice("A"), lastPrice("B"), trades("B")));
+
+        assertEquals(List.of(new Delta(2, List.of(trades("B")), List.of(), false)), deltas);
+    }
+
+    @Test
+    void newInstrumentGoesToLeastLoadedStreamWithRoom() {
+        SubscriptionManager manager = managerWith(2,
+                List.of(keys(lastPrice("A"), lastPrice("B")), keys(lastPrice("C"))));
+
+        List<Delta> deltas = manager.reconcile(
+                keys(lastPrice("A"), lastPrice("B"), lastPrice("C"), lastPrice("D")));
+
+        assertEquals(List.of(new Delta(2, List.of(lastPrice("D")), List.of(), false)), deltas);
+        assertEquals(keys(lastPrice("C"), lastPrice("D")), manager.desired(2));
+    }
+
+    @Test
+    void newInstrumentOpensNewStreamWhenAllAreFull() {
+        SubscriptionManager manager = managerWith(1,
+                List.of(keys(lastPrice("A"), trades("A")), keys(lastPrice("B"))));
+
+        List<Delta> deltas = manager.reconcile(
+                keys(lastPrice("A"), trades("A"), lastPrice("B"), lastPrice("C"), trades("C")));
+
+        assertEquals(List.of(new Delta(3, List.of(lastPrice("C"), trades("C")), List.of(), true)),
+                deltas);
+        assertEquals(List.of(1, 2, 3), manager.getStreamIds());
+    }
+
+    @Test
+    void streamLosingAllKeysIsDropped() {
+        SubscriptionManager manager =
+                managerWith(10, List.of(keys(lastPrice("A")), keys(lastPrice("B"))));
+
+        List<Delta> deltas = manager.reconcile(keys(lastPrice("A")));
+
+        assertEquals(List.of(new Delta(2, List.of(), List.of(lastPrice("B")), false)), deltas);
+        assertTrue(manager.desired(2).isEmpty());
+        assertEquals(List.of(1), manager.getStreamIds());
+    }
+
+    @Test
+    void freedSlotIsReusedByNextInstrument() {
+        SubscriptionManager manager = managerWith(1,
+                List.of(keys(lastPrice("A")), keys(lastPrice("B"))));
+
+        manager.reconcile(keys(lastPrice("A")));
+        List<Delta> deltas = manager.reconcile(keys(lastPrice("A"), lastPrice("C")));
+
+        assertEquals(List.of(new Delta(2, List.of(lastPrice("C")), List.of(), true)), deltas);
+    }
+
+    @Test
+    void statusesTrackConfirmedAndRejected() {
+        SubscriptionManager manager =
+                managerWith(10, List.of(keys(lastPrice("A"), lastPrice("B"))));
+
+        manager.onStatus(1, "A", DataType.LAST_PRICE, true);
+        manager.onStatus(1, "B", DataType.LAST_PRICE, false);
+
+        assertEquals(1, manager.getConfirmedCount());
+        assertEquals(1, manager.getRejectedCount());
+        assertEquals(keys(lastPrice("A")), manager.resubscribable(1));
+    }
+
+    @Test
+    void statusForOtherStreamOrUnknownKeyIsIgnored() {
+        SubscriptionManager manager =
+                managerWith(10, List.of(keys(lastPrice("A")), keys(lastPrice("B"))));
+
+        manager.onStatus(2, "A", DataType.LAST_PRICE, true);
+        manager.onStatus(1, "X", DataType.LAST_PRICE, true);
+
+        assertEquals(0, manager.getConfirmedCount());
+    }
+
+    @Test
+    void rejectedKeysAreRetriedOnNextReconcile() {
+        SubscriptionManager manager =
+                managerWith(10, List.of(keys(lastPrice("A"), lastPrice("B"))));
+        manager.onStatus(1, "A", DataType.LAST_PRICE, true);
+        manager.onStatus(1, "B", DataType.LAST_PRICE, false);
+
+        List<Delta> deltas = manager.reconcile(keys(lastPrice("A"), lastPrice("B")));
+
+        assertEquals(List.of(new Delta(1, List.of(lastPrice("B")), List.of(), false)), deltas);
+        assertEquals(0, manager.getRejectedCount());
+        assertTrue(manager.reconcile(keys(lastPrice("A"), lastPrice("B"))).isEmpty());
+    }
+
+    @Test
+    void streamLossClearsConfirmedOfThatStreamOnly() {
+        SubscriptionManager manager =
+                managerWith(10, List.of(keys(lastPrice("A")), keys(lastPrice("B"))));
+        manager.onStatus(1, "A", DataType.LAST_PRICE, true);
+        manager.onStatus(2, "B", DataType.LAST_PRICE, true);
+
+        manager.onStreamLost(1);
+
+        assertEquals(1, manager.getConfirmedCount());
+        assertEquals(keys(lastPrice("A")), manager.desired(1));
+    }
+
+    @Test
+    void unsubscribeResponseDoesNotConfirmReaddedKey() {
+        SubscriptionManager manager = managerWith(10, List.of(keys(lastPrice("A"), trades("A"))));
+        manager.onStatus(1, "A", DataType.TRADES, true);
+
+        List<Delta> removed = manager.reconcile(keys(lastPrice("A")));
+        manager.onUnsubscribeRequested(1, removed.get(0).unsubscribe());
+        List<Delta> readded = manager.reconcile(keys(lastPrice("A"), trades("A")));
+        assertEquals(List.of(new Delta(1, List.of(trades("A")), List.of(), false)), readded);
+
+        // Первым приходит успешный ответ на отписку - подписка еще не подтверждена
+        manager.onStatus(1, "A", DataType.TRADES, true);
+        assertEquals(0, manager.getConfirmedCount());
+
+        // Затем ответ на повторную подписку
+        manager.onStatus(1, "A", DataType.TRADES, false);
+        assertEquals(1, manager.getRejectedCount());
+        assertFalse(manager.resubscribable(1).contains(trades("A")));
+    }
+
+    @Test
+    void streamLossForgetsPendingUnsubscribes() {
+        SubscriptionManager manager = managerWith(10, List.of(keys(lastPrice("A"), trades("A"))));
+        List<Delta> removed = manager.reconcile(keys(lastPrice("A")));
+        manager.onUnsubscribeRequested(1, removed.get(0).unsubscribe());
+        manager.reconcile(keys(lastPrice("A"), trades("A")));
+
+        manager.onStreamLost(1);
+        manager.onStatus(1, "A", DataType.TRADES, true);
+
+        assertEquals(1, manager.getConfirmedCount());
+    }
+
+    @Test
+    void resetReplacesPlanAndState() {
+        SubscriptionManager manager = managerWith(10, List.of(keys(lastPrice("A"))));
+        manager.onStatus(1, "A", DataType.LAST_PRICE, false);
+
+        manager.reset(List.of(keys(lastPrice("B")), keys(trades("C"))));
+
+        assertEquals(List.of(1, 2), manager.getStreamIds());
+        assertEquals(0, manager.getRejectedCount());
+        assertEquals(keys(trades("C")), manager.desired(2));
+    }
+}
@@ -0,0 +1,114 @@
+package com.example.investmentdatascannerservice.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+import com.example.investmentdatascannerservice.service.SubscriptionScheduler.Priority;
+import com.example.investmentdatascannerservice.service.SubscriptionScheduler.RateWindow;
+
+class SubscriptionSchedulerTest {
+
+    private static final long WINDOW_NANOS = TimeUnit.SECONDS.toNanos(60);
+
+    @Test
+    void windowAdmitsBurstUpToLimit() {
+        AtomicLong now = new AtomicLong(0);
+        RateWindow window = new RateWindow(3, WINDOW_NANOS, now::get);
+
+        assertEquals(0, window.tryAcquire());
+        assertEquals(0, window.tryAcquire());
+        assertEquals(0, window.tryAcquire());
+        assertEquals(WINDOW_NANOS, window.tryAcquire());
+    }
+
+    @Test
+    void windowNeverExceedsLimitWithinRollingWindow() {
+        AtomicLong now = new AtomicLong(0);
+        RateWindow window = new RateWindow(300, WINDOW_NANOS, now::get);
+        long step = TimeUnit.MILLISECONDS.toNanos(100);
+        List<Long> admitted = new ArrayList<>();
+
+        // Запросы идут непрерывно 3 минуты: в любом окне 60 с - не больше лимита
+        for (long t = 0; t < TimeUnit.MINUTES.toNanos(3); t += step) {
+            now.set(t);
+            while (window.tryAcquire() == 0) {
+                admitted.add(t);
+            }
+        }
+        for (int i = 0; i < admitted.size(); i++) {
+            long from = admitted.get(i);
+            long inWindow = admitted.stream().filter(t -> t >= from && t < from + WINDOW_NANOS)
+                    .count();
+            assertTrue(inWindow <= 300, "Admitted " + inWindow + " in window from " + from);
+        }
+        assertEquals(900, admitted.size());
+    }
+
+    @Test
+    void windowReleasesPermitsAsOldestExpire() {
+        AtomicLong now = new AtomicLong(0);
+        RateWindow window = new RateWindow(2, WINDOW_NANOS, now::get);
+
+        window.tryAcquire();
+        now.set(TimeUnit.SECONDS.toNanos(10));
+        window.tryAcquire();
+
+        now.set(TimeUnit.SECONDS.toNanos(30));
+        assertEquals(TimeUnit.SECONDS.toNanos(30), window.tryAcquire());
+
+        now.set(WINDOW_NANOS);
+        assertEquals(0, window.tryAcquire());
+        assertEquals(TimeUnit.SECONDS.toNanos(10), window.tryAcquire());
+    }
+
+    @Test
+    void sendsByPriorityThenSubmissionOrder() throws InterruptedException {
+        SubscriptionScheduler scheduler = new SubscriptionScheduler(1000);
+        List<String> sent = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(5);
+        Runnable[] actions = new Runnable[5];
+        String[] names = {"orderbook-1", "trades-1", "primary-1", "lastprice-1", "primary-2"};
+        for (int i = 0; i < names.length; i++) {
+            String name = names[i];
+            actions[i] = () -> {
+                sent.add(name);
+                done.countDown();
+            };
+        }
+        scheduler.submit(Priority.ORDER_BOOK, 1, names[0], actions[0]);
+        scheduler.submit(Priority.TRADES, 1, names[1], actions[1]);
+        scheduler.submit(Priority.PRIMARY_LAST_PRICE, 1, names[2], actions[2]);
+        scheduler.submit(Priority.LAST_PRICE, 2, names[3], actions[3]);
+        scheduler.submit(Priority.PRIMARY_LAST_PRICE, 2, names[4], actions[4]);
+
+        scheduler.start();
+        try {
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+        } finally {
+            scheduler.stop();
+        }
+        assertEquals(List.of("primary-1", "primary-2", "lastprice-1", "trades-1", "orderbook-1"),
+                sent);
+    }
+
+    @Test
+    void cancelRemovesOnlyPendingRequestsOfStream() {
+        SubscriptionScheduler scheduler = new SubscriptionScheduler(1000);
+        scheduler.submit(Priority.TRADES, 1, "trades-1", () -> {
+        });
+        scheduler.submit(Priority.TRADES, 2, "trades-2", () -> {
+        });
+        scheduler.submit(Priority.ORDER_BOOK, 1, "orderbook-1", () -> {
+        });
+
+        assertEquals(2, scheduler.cancel(1));
+        assertEquals(1, scheduler.getQueueSize());
+        assertEquals(2, scheduler.getTotalCancelled());
+    }
+}
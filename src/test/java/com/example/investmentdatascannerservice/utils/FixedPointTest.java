@@ -0,0 +1,118 @@
+package com.example.investmentdatascannerservice.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+class FixedPointTest {
+
+    /** Эталон: прежний расчет через BigDecimal */
+    private static long expectedBasisPoints(long change, long base) {
+        return BigDecimal.valueOf(change).divide(BigDecimal.valueOf(base), 4, RoundingMode.HALF_UP)
+                .movePointRight(4).longValueExact();
+    }
+
+    private static void assertMatchesDecimal(long change, long base) {
+        assertEquals(expectedBasisPoints(change, base), FixedPoint.changeBasisPoints(change, base),
+                "change=" + change + ", base=" + base);
+    }
+
+    @Test
+    void basisPointsForSimpleChanges() {
+        // 100 -> 105: +5%
+        assertEquals(500, FixedPoint.changeBasisPoints(5 * FixedPoint.SCALE,
+                100 * FixedPoint.SCALE));
+        assertEquals(-500, FixedPoint.changeBasisPoints(-5 * FixedPoint.SCALE,
+                100 * FixedPoint.SCALE));
+        assertEquals(0, FixedPoint.changeBasisPoints(0, 100 * FixedPoint.SCALE));
+        assertEquals(10000, FixedPoint.changeBasisPoints(7, 7));
+    }
+
+    @Test
+    void exactHalfRoundsAwayFromZero() {
+        // 1 / 20000 = 0.00005 -> 0.0001 (1 б.п.), для отрицательного изменения -1
+        assertEquals(1, FixedPoint.changeBasisPoints(1, 20000));
+        assertEquals(-1, FixedPoint.changeBasisPoints(-1, 20000));
+        // 3 / 20000 = 0.00015 -> 2 б.п.
+        assertEquals(2, FixedPoint.changeBasisPoints(3, 20000));
+        assertEquals(-2, FixedPoint.changeBasisPoints(-3, 20000));
+        assertMatchesDecimal(1, 20000);
+        assertMatchesDecimal(-3, 20000);
+    }
+
+    @Test
+    void belowHalfRoundsTowardZero() {
+        assertEquals(0, FixedPoint.changeBasisPoints(1, 20001));
+        assertEquals(0, FixedPoint.changeBasisPoints(-1, 20001));
+        assertMatchesDecimal(-1, 20001);
+    }
+
+    @Test
+    void matchesDecimalOnRandomPrices() {
+        Random random = new Random(42);
+        for (int i = 0; i < 100_000; i++) {
+            long base = 1 + (random.nextLong() & Long.MAX_VALUE) % (1_000_000 * FixedPoint.SCALE);
+            long change = random.nextLong() % (2 * base);
+            assertMatchesDecimal(change, base);
+        }
+    }
+
+    @Test
+    void largeRemainderUsesOverflowFallback() {
+        // remainder * 10000 не помещается в long - расчет через BigDecimal
+        long base = Long.MAX_VALUE / 1000;
+        long change = base - 1;
+        assertTrue(Math.multiplyHigh(change % base, 10_000L) != 0L
+                || (change % base) * 10_000L < 0L);
+        assertMatchesDecimal(change, base);
+        assertMatchesDecimal(-change, base);
+        assertMatchesDecimal(base / 2, base);
+    }
+
+    @Test
+    void roundingCheckDoesNotOverflowForHugeBase() {
+        // Остаток * 10000 помещается в long, но удвоенный остаток - уже нет
+        long base = Long.MAX_VALUE - 1;
+        assertMatchesDecimal(500_000_000_000_000L, base);
+        assertMatchesDecimal(-500_000_000_000_000L, base);
+        assertMatchesDecimal(400_000_000_000_000L, base);
+    }
+
+    @Test
+    void decimalRoundTrip() {
+        BigDecimal price = new BigDecimal("123.456789012");
+        long value = FixedPoint.fromDecimal(price);
+        assertEquals(123_456_789_012L, value);
+        assertEquals(price, FixedPoint.toDecimal(value));
+
+        BigDecimal negative = new BigDecimal("-0.000000001");
+        assertEquals(negative, FixedPoint.toDecimal(FixedPoint.fromDecimal(negative)));
+
+        // Лишние знаки округляются HALF_UP до 9 знаков
+        assertEquals(1_000_000_001L, FixedPoint.fromDecimal(new BigDecimal("1.0000000005")));
+        assertEquals(BigDecimal.ZERO, FixedPoint.toDecimal(0L));
+    }
+
+    @Test
+    void noneMapsToNull() {
+        assertEquals(FixedPoint.NONE, FixedPoint.fromDecimal(null));
+        assertNull(FixedPoint.toDecimal(FixedPoint.NONE));
+        assertEquals(FixedPoint.NONE, FixedPoint.orNone(null));
+        assertEquals(5L, FixedPoint.orNone(5L));
+        assertFalse(FixedPoint.isPresent(FixedPoint.NONE));
+        assertFalse(FixedPoint.isPositive(FixedPoint.NONE));
+        assertFalse(FixedPoint.isPositive(0L));
+        assertTrue(FixedPoint.isPositive(1L));
+    }
+
+    @Test
+    void basisPointsToPercent() {
+        assertEquals(new BigDecimal("5.0000"), FixedPoint.basisPointsToPercent(500));
+        assertEquals(new BigDecimal("-0.0100"), FixedPoint.basisPointsToPercent(-1));
+    }
+}